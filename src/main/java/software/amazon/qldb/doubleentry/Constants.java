@@ -18,6 +18,7 @@
 
 package software.amazon.qldb.doubleentry;
 
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -28,13 +29,90 @@ import java.util.List;
 public final class Constants {
 
     public static final int RETRY_LIMIT = 4;
+    public static final String TRANSFER_LANE_SESSIONS_PROPERTY = "lanes.transfer.sessions";
+    public static final int TRANSFER_LANE_SESSIONS = 32;
+    public static final int TRANSFER_LANE_SESSION_TIMEOUT_MS = 5_000;
+    public static final String READ_LANE_SESSIONS_PROPERTY = "lanes.read.sessions";
+    public static final int READ_LANE_SESSIONS = 8;
+    public static final int READ_LANE_SESSION_TIMEOUT_MS = 60_000;
+    public static final int INITIAL_CONCURRENCY_LIMIT = 8;
+    public static final long FUNDS_RESERVATION_STALENESS_MS = 5_000L;
     public static final String LEDGER_NAME = "double-entry-ledger";
+    public static final long LEDGER_POLL_INITIAL_PERIOD_MS = 250L;
+    public static final long LEDGER_POLL_MAX_PERIOD_MS = 5_000L;
 
     public static final String BUSINESSES_TABLE_NAME = "Businesses";
     public static final String ACCOUNTS_TABLE_NAME = "Accounts";
     public static final String TRANSACTIONS_TABLE_NAME = "Transactions";
+    public static final String HOLDS_TABLE_NAME = "Holds";
+    public static final String ACCOUNT_BALANCES_TABLE_NAME = "AccountBalances";
     public static final String BUSINESS_ID_INDEX_NAME = "BusinessId";
     public static final String ACCOUNT_ID_INDEX_NAME = "AccountId";
+    public static final String HOLD_ID_INDEX_NAME = "HoldId";
+    public static final String HOLD_STATUS_INDEX_NAME = "Status";
+    public static final String BALANCE_ID_INDEX_NAME = "BalanceId";
+    public static final String IDEMPOTENCY_KEY_INDEX_NAME = "IdempotencyKey";
+
+    public static final String BALANCE_LAYOUT_PROPERTY = "balance.layout";
+    public static final int DOCUMENT_ID_CACHE_SIZE = 10_000;
+    public static final int BALANCE_SNAPSHOTS_PER_ACCOUNT = 1_000;
+    public static final int BALANCE_BATCH_CHUNK_SIZE = 100;
+    public static final int BALANCE_BATCH_PARALLELISM = 8;
+    public static final long BALANCE_SNAPSHOT_PERIOD_MS = 3_600_000L;
+    public static final int BALANCE_TABLE_MAX_ACCOUNTS = 50_000_000;
+    public static final String HEDGED_READS_PROPERTY = "reads.hedging";
+    public static final String HEDGE_PERCENTILE_PROPERTY = "reads.hedging.percentile";
+    public static final double HEDGE_PERCENTILE = 95.0;
+    public static final double HEDGE_MAX_RATIO = 0.05;
+    public static final int HEDGE_MIN_SAMPLES = 100;
+    public static final long HEDGE_DELAY_REFRESH_MS = 1_000L;
+
+    public static final String LEDGER_STORE_PROPERTY = "store";
+    public static final String LEDGER_STORE_EMBEDDED = "embedded";
+    public static final String EMBEDDED_STORE_PATH_PROPERTY = "store.path";
+    public static final String EMBEDDED_STORE_DEFAULT_PATH = "ledger-store/journal.dat";
+    public static final int EMBEDDED_STORE_SEGMENT_BYTES = 64 * 1024 * 1024;
+
+    public static final int MERKLE_PARENTS_CACHE_SIZE = 1_000_000;
+    public static final int SYNTHETIC_REVISIONS = 100_000;
+
+    public static final int JOURNAL_QUEUE_CAPACITY = 256;
+
+    public static final int HISTORY_PAGE_SIZE = 100;
+    public static final int HISTORY_AUDIT_CONCURRENCY = 4;
+
+    public static final String HOLD_ACCOUNT_PREFIX = "HOLD:";
+    public static final Duration DEFAULT_HOLD_DURATION = Duration.ofDays(7);
+    public static final long HOLDS_SWEEP_PERIOD_MS = 60_000L;
+
+    public static final String LEDGER_PROPERTY = "ledger";
+    public static final String LEDGER_EMULATOR = "emulator";
+    public static final String EMULATOR_LATENCY_PROPERTY = "emulator.latency";
+
+    public static final String METRICS_PORT_PROPERTY = "metrics.port";
+    public static final String METRICS_LOG_PROPERTY = "metrics.log";
+    public static final long METRICS_LOG_PERIOD_MS = 10_000L;
+
+    public static final String INTAKE_DIRECTORY_PROPERTY = "intake.dir";
+    public static final String INTAKE_DEFAULT_DIRECTORY = "intake";
+    public static final int INTAKE_SEGMENT_BYTES = 16 * 1024 * 1024;
+    public static final long INTAKE_RETRY_INITIAL_MS = 100L;
+    public static final long INTAKE_RETRY_MAX_MS = 30_000L;
+
+    public static final String GROUP_COMMIT_PROPERTY = "service.groupCommit";
+    public static final int GROUP_COMMIT_RING_SIZE = 1024;
+    public static final int QLDB_MAX_DOCUMENTS_PER_TRANSACTION = 40;
+    // A batch of 12 transfers modifies at most 36 documents, one Transactions document and two balance
+    // documents per transfer, below QLDB_MAX_DOCUMENTS_PER_TRANSACTION
+    public static final int GROUP_COMMIT_MAX_BATCH = 12;
+    public static final long GROUP_COMMIT_MAX_DELAY_MICROS = 500L;
+
+    public static final String SERVICE_PORT_PROPERTY = "service.port";
+    public static final int SERVICE_DEFAULT_PORT = 8080;
+    public static final int SERVICE_MAX_CONCURRENT_REQUESTS = 64;
+    public static final int SERVICE_MAX_BATCH_SIZE = 100;
+    public static final int SERVICE_MAX_BODY_BYTES = 1024 * 1024;
+    public static final long SERVICE_DRAIN_TIMEOUT_MS = 30_000L;
 
     public static final List<String> SUPPORTED_CURRENCIES = Collections.unmodifiableList(
             Arrays.asList("USD", "JPY", "INR", "SGD"));
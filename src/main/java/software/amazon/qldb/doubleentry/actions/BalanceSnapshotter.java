@@ -0,0 +1,102 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.actions;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Background job which periodically takes a snapshot of the balances of
+ * every account, so that {@link Banking#getBalancesAsOf} never has to replay
+ * more than one period of transfers.
+ * </p>
+ *
+ * <p>
+ * Every account is snapshotted in its own QLDB Transaction, which only reads
+ * the balances of that account.
+ * </p>
+ */
+@Slf4j
+public class BalanceSnapshotter {
+
+    private Banking banking;
+
+    private ScheduledExecutorService scheduler;
+
+    public BalanceSnapshotter(@NonNull final Banking banking) {
+        this.banking = banking;
+    }
+
+    /**
+     * Take a snapshot of the balances of all accounts.
+     *
+     * @return The number of snapshots taken
+     */
+    public int snapshotAll() {
+        final List<String> accountIds = banking.getAccountIds();
+        int taken = 0;
+        for (final String accountId : accountIds) {
+            try {
+                if (banking.takeBalanceSnapshot(accountId).isPresent()) {
+                    taken++;
+                }
+            } catch (final Exception e) {
+                log.error("Could not take a balance snapshot of account {}. It will be retried on the next run",
+                        accountId, e);
+            }
+        }
+        log.info("Took balance snapshots of {} out of {} accounts", taken, accountIds.size());
+        return taken;
+    }
+
+    /**
+     * Start taking snapshots periodically on a background thread.
+     */
+    public synchronized void start(final long periodMs) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "balance-snapshotter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                snapshotAll();
+            } catch (final Exception e) {
+                log.error("Error while taking balance snapshots", e);
+            }
+        }, 0, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
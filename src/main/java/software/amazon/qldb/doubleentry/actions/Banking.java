@@ -19,29 +19,71 @@
 package software.amazon.qldb.doubleentry.actions;
 
 import com.amazon.ion.Decimal;
+import com.amazon.ion.IonInt;
+import com.amazon.ion.IonSequence;
 import com.amazon.ion.IonStruct;
+import com.amazon.ion.IonTimestamp;
 import com.amazon.ion.IonValue;
+import com.amazon.ion.Timestamp;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.Validate;
 import software.amazon.qldb.Result;
 import software.amazon.qldb.TransactionExecutor;
 import software.amazon.qldb.doubleentry.Constants;
+import software.amazon.qldb.doubleentry.helpers.BalanceSnapshotIndex;
+import software.amazon.qldb.doubleentry.helpers.DocumentIdCache;
+import software.amazon.qldb.doubleentry.helpers.FundsReservations;
+import software.amazon.qldb.doubleentry.helpers.HedgedReads;
 import software.amazon.qldb.doubleentry.helpers.IonHelper;
+import software.amazon.qldb.doubleentry.helpers.Lane;
+import software.amazon.qldb.doubleentry.helpers.PreparedTransfer;
+import software.amazon.qldb.doubleentry.helpers.SingleFlight;
 import software.amazon.qldb.doubleentry.helpers.TransactionsHandler;
+import software.amazon.qldb.doubleentry.jfr.StatementEvent;
+import software.amazon.qldb.doubleentry.metrics.Counter;
+import software.amazon.qldb.doubleentry.metrics.LatencyHistogram;
+import software.amazon.qldb.doubleentry.metrics.MetricNames;
+import software.amazon.qldb.doubleentry.metrics.MetricsRegistry;
+import software.amazon.qldb.doubleentry.models.AccountBalance;
+import software.amazon.qldb.doubleentry.models.AuthorizationRequest;
 import software.amazon.qldb.doubleentry.models.Balance;
+import software.amazon.qldb.doubleentry.models.BalanceLayout;
+import software.amazon.qldb.doubleentry.models.BalanceSnapshot;
+import software.amazon.qldb.doubleentry.models.Hold;
+import software.amazon.qldb.doubleentry.models.HoldResponse;
+import software.amazon.qldb.doubleentry.models.HoldStatus;
 import software.amazon.qldb.doubleentry.models.Transaction;
 import software.amazon.qldb.doubleentry.models.TransactionEntry;
 import software.amazon.qldb.doubleentry.models.TransactionType;
 import software.amazon.qldb.doubleentry.models.TransferRequest;
 import software.amazon.qldb.doubleentry.models.TransferResponse;
+import software.amazon.qldb.doubleentry.store.EmbeddedLedgerStore;
+import software.amazon.qldb.doubleentry.store.LedgerStore;
 
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 /**
  * <p>
@@ -53,31 +95,313 @@ import java.util.Optional;
  * We inject the TransactionHandler, which manages the interaction with
  * QLDB driver.
  * </p>
+ *
+ * <p>
+ * Every statement is timed with a {@link StatementEvent}, so that JDK Flight
+ * Recorder shows which part of a slow transfer is slow.
+ * </p>
+ *
+ * <p>
+ * Transfer throughput and latency by outcome, and balance read latency, are
+ * recorded in the {@link MetricsRegistry}.
+ * </p>
+ *
+ * <p>
+ * Transfers are first admitted by {@link FundsReservations}, which rejects
+ * transfers that the sender obviously cannot afford without opening a QLDB
+ * session.
+ * </p>
+ *
+ * <p>
+ * The balances are read and written in the given {@link BalanceLayout}. In
+ * the per currency layout, transfers only read and update the documents of
+ * the currency they move, so that transfers in other currencies on the same
+ * accounts do not conflict with them.
+ * </p>
+ *
+ * <p>
+ * The document ids of the balance documents are kept in a
+ * {@link DocumentIdCache}, so that after the first transfer of an account
+ * its balances are read and written by document id rather than through the
+ * AccountId or BalanceId index.
+ * </p>
+ *
+ * <p>
+ * Concurrent reads of the balances of the same account are coalesced by a
+ * {@link SingleFlight}: while one read is in flight, the other callers wait
+ * for its result rather than opening their own QLDB transaction. When
+ * {@link HedgedReads} are enabled, a read which is slower than most is sent
+ * a second time on another session, and the first answer is used.
+ * </p>
+ *
+ * <p>
+ * The balances of many accounts are read with
+ * {@link #getBalancesForAccounts(Collection)} in chunks of AccountIds, one
+ * query and one QLDB transaction per chunk, with the chunks read in parallel.
+ * </p>
+ *
+ * <p>
+ * Reads which do not take part in a transfer run in the read {@link Lane} of
+ * the TransactionsHandler, so that they never take a session of the transfer
+ * lane.
+ * </p>
+ *
+ * <p>
+ * Transfers, balance reads and the list of accounts go through a
+ * {@link LedgerStore}. By default it is QLDB, through the TransactionsHandler;
+ * with an {@link EmbeddedLedgerStore} they run without QLDB. Holds, snapshots
+ * and past balances always use QLDB.
+ * </p>
  */
 @Slf4j
 public class Banking {
 
+    private static final String OUTCOME_SUCCESS = "success";
+    private static final String OUTCOME_INSUFFICIENT_FUNDS = "insufficient_funds";
+    private static final String OUTCOME_DECLINED = "declined";
+    private static final String OUTCOME_FAILURE = "failure";
+
+    private static final String READ_ACCOUNT_BY_ID = "SELECT r.data.AccountId, r.data.Balances "
+            + "FROM _ql_committed_Accounts AS r WHERE r.metadata.id = ?";
+    private static final String READ_ACCOUNT_BY_KEY = "SELECT r.metadata.id, r.data.Balances "
+            + "FROM _ql_committed_Accounts AS r WHERE r.data.AccountId = ?";
+    private static final String READ_BALANCE_BY_ID = "SELECT r.data.BalanceId, r.data.Currency, r.data.CurrencyBalance "
+            + "FROM _ql_committed_AccountBalances AS r WHERE r.metadata.id = ?";
+    private static final String READ_BALANCE_BY_KEY = "SELECT r.metadata.id, r.data.Currency, r.data.CurrencyBalance "
+            + "FROM _ql_committed_AccountBalances AS r WHERE r.data.BalanceId = ?";
+    private static final String READ_ACCOUNTS_BY_KEYS = "SELECT AccountId, Balances FROM Accounts "
+            + "WHERE AccountId IN (%s)";
+    private static final String READ_BALANCES_BY_ACCOUNT_KEYS = "SELECT AccountId, Currency, CurrencyBalance "
+            + "FROM AccountBalances WHERE AccountId IN (%s)";
+    private static final String READ_TRANSACTION_BY_IDEMPOTENCY_KEY = "SELECT IdempotencyKey FROM Transactions "
+            + "WHERE IdempotencyKey = ?";
+    private static final String UPDATE_ACCOUNT_BY_ID = "UPDATE Accounts AS a BY id SET a.Balances = ? WHERE id = ?";
+    private static final String UPDATE_ACCOUNT_BY_KEY = "UPDATE Accounts SET Balances = ? WHERE AccountId = ?";
+    private static final String UPDATE_BALANCE_BY_ID =
+            "UPDATE AccountBalances AS b BY id SET b.CurrencyBalance = ? WHERE id = ?";
+    private static final String UPDATE_BALANCE_BY_KEY =
+            "UPDATE AccountBalances SET CurrencyBalance = ? WHERE BalanceId = ?";
+    private static final String SNAPSHOT_ACCOUNT = "SELECT r.blockAddress.sequenceNo, r.metadata.txTime, "
+            + "r.data.Balances FROM _ql_committed_Accounts AS r WHERE r.data.AccountId = ?";
+    private static final String SNAPSHOT_BALANCES = "SELECT r.blockAddress.sequenceNo, r.metadata.txTime, "
+            + "r.data.Currency, r.data.CurrencyBalance FROM _ql_committed_AccountBalances AS r "
+            + "WHERE r.data.AccountId = ?";
+    private static final String HISTORY_ACCOUNT = "SELECT h.blockAddress.sequenceNo, h.metadata.txTime, "
+            + "h.data.Balances FROM history(Accounts, `%s`, `%s`) AS h WHERE h.data.AccountId = ?";
+    private static final String HISTORY_BALANCES = "SELECT h.blockAddress.sequenceNo, h.metadata.txTime, "
+            + "h.data.Currency, h.data.CurrencyBalance FROM history(AccountBalances, `%s`, `%s`) AS h "
+            + "WHERE h.data.AccountId = ?";
+    private static final String REPLAY_TRANSACTIONS = "SELECT h.data.%1$s FROM history(Transactions, `%2$s`, `%3$s`) "
+            + "AS h WHERE h.data.%1$s.AccountId = ? AND h.blockAddress.sequenceNo > ?";
+    private static final List<String> TRANSACTION_ENTRIES =
+            Collections.unmodifiableList(Arrays.asList("SenderAccountEntry", "ReceiverAccountEntry"));
+
     private TransactionsHandler transactionsHandler;
 
     private IonHelper ionHelper;
 
+    private FundsReservations fundsReservations;
+
+    private BalanceLayout balanceLayout;
+
+    private DocumentIdCache documentIdCache;
+
+    private BalanceSnapshotIndex balanceSnapshots;
+
+    private SingleFlight<String, List<Balance>> balanceReads;
+
+    private HedgedReads balanceReadHedging;
+
+    private LedgerStore ledgerStore;
+
+    private ExecutorService batchReadExecutor;
+
+    private Map<String, TransferMetrics> transferMetrics;
+
+    private LatencyHistogram balanceReadLatency;
+
     public Banking(@NonNull final TransactionsHandler transactionsHandler,
                    @NonNull final IonHelper ionHelper) {
+        this(transactionsHandler, ionHelper, new FundsReservations(Constants.FUNDS_RESERVATION_STALENESS_MS),
+                new MetricsRegistry(), BalanceLayout.EMBEDDED, HedgedReads.disabled(), Optional.empty());
+    }
+
+    public Banking(@NonNull final TransactionsHandler transactionsHandler,
+                   @NonNull final IonHelper ionHelper,
+                   @NonNull final FundsReservations fundsReservations,
+                   @NonNull final MetricsRegistry metricsRegistry,
+                   @NonNull final BalanceLayout balanceLayout,
+                   @NonNull final HedgedReads balanceReadHedging,
+                   @NonNull final Optional<LedgerStore> ledgerStore) {
         this.transactionsHandler = transactionsHandler;
         this.ionHelper = ionHelper;
+        this.fundsReservations = fundsReservations;
+        this.balanceLayout = balanceLayout;
+        this.documentIdCache = new DocumentIdCache(Constants.DOCUMENT_ID_CACHE_SIZE, metricsRegistry);
+        this.balanceSnapshots = new BalanceSnapshotIndex(Constants.BALANCE_SNAPSHOTS_PER_ACCOUNT);
+        this.balanceReads = new SingleFlight<>("getBalancesForAccount", metricsRegistry);
+        this.balanceReadHedging = balanceReadHedging;
+        this.ledgerStore = ledgerStore.orElseGet(() -> new QldbLedgerStore());
+        this.batchReadExecutor = Executors.newFixedThreadPool(Constants.BALANCE_BATCH_PARALLELISM, runnable -> {
+            final Thread thread = new Thread(runnable, "balance-batch-read");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.transferMetrics = new HashMap<>();
+        for (final String outcome : Arrays.asList(OUTCOME_SUCCESS, OUTCOME_INSUFFICIENT_FUNDS,
+                OUTCOME_DECLINED, OUTCOME_FAILURE)) {
+            transferMetrics.put(outcome, new TransferMetrics(metricsRegistry, outcome));
+        }
+        this.balanceReadLatency = metricsRegistry.histogram(MetricNames.BALANCE_READ_LATENCY,
+                "Latency of reading the balances of an account");
     }
 
     /**
      * Get the balances for the given AccountId. This method is intended to
      * be used from the example code and just  logs the balance.
      *
+     * <p>
+     * If the balances of the same account are already being read, this
+     * waits for that read and returns its result.
+     * </p>
+     *
      * @param accountId The AccountId to get the balances for
      */
     public List<Balance> getBalancesForAccount(@NonNull final String accountId) {
-        return transactionsHandler.executeTransaction(txn -> {
-            final List<Balance> balances = this.getBalancesForAccount(txn, accountId);
-            return balances;
-        }, (retry) -> log.info("There was an error while checking for balance. Retrying "));
+        final long start = System.nanoTime();
+        try {
+            final List<Balance> balances = balanceReads.execute(accountId, () -> balanceReadHedging.execute(() -> {
+                final long stamp = fundsReservations.stamp();
+                final List<Balance> read = ledgerStore.getBalances(accountId);
+                fundsReservations.observe(accountId, read, stamp);
+                return read;
+            }));
+            // The callers sharing a read must not see each other's changes to the list
+            return new ArrayList<>(balances);
+        } finally {
+            balanceReadLatency.recordSince(start);
+        }
+    }
+
+    /**
+     * Same as {@link #getBalancesForAccounts(Collection, int)}, in chunks of
+     * {@link Constants#BALANCE_BATCH_CHUNK_SIZE} AccountIds
+     */
+    public Map<String, List<Balance>> getBalancesForAccounts(@NonNull final Collection<String> accountIds) {
+        return getBalancesForAccounts(accountIds, Constants.BALANCE_BATCH_CHUNK_SIZE);
+    }
+
+    /**
+     * <p>
+     * Get the balances of many accounts. The AccountIds are split into chunks
+     * of the given size, and the balances of every chunk are read with one
+     * "WHERE AccountId IN (...)" query, in its own QLDB transaction. Up to
+     * {@link Constants#BALANCE_BATCH_PARALLELISM} chunks are read at a time,
+     * each on its own session.
+     * </p>
+     *
+     * <p>
+     * The balances of different chunks are read in different transactions, so
+     * they are not a consistent snapshot of all the accounts.
+     * </p>
+     *
+     * @return The balances by AccountId, in the order of the given AccountIds.
+     * Accounts which do not exist have an empty list.
+     */
+    public Map<String, List<Balance>> getBalancesForAccounts(@NonNull final Collection<String> accountIds,
+                                                            final int chunkSize) {
+        Validate.isTrue(chunkSize > 0);
+        final List<String> distinctIds = new ArrayList<>(new LinkedHashSet<>(accountIds));
+        final List<CompletableFuture<Map<String, List<Balance>>>> chunks = new ArrayList<>();
+        for (int from = 0; from < distinctIds.size(); from += chunkSize) {
+            final List<String> chunk = distinctIds.subList(from, Math.min(from + chunkSize, distinctIds.size()));
+            chunks.add(CompletableFuture.supplyAsync(() -> getBalancesForChunk(chunk), batchReadExecutor));
+        }
+
+        final Map<String, List<Balance>> balances = new LinkedHashMap<>();
+        distinctIds.forEach(accountId -> balances.put(accountId, new ArrayList<>()));
+        for (final CompletableFuture<Map<String, List<Balance>>> chunk : chunks) {
+            try {
+                balances.putAll(chunk.join());
+            } catch (final CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        return balances;
+    }
+
+    private Map<String, List<Balance>> getBalancesForChunk(@NonNull final List<String> accountIds) {
+        final long stamp = fundsReservations.stamp();
+        final Map<String, List<Balance>> balances = ledgerStore.getBalances(accountIds);
+        balances.forEach((accountId, accountBalances) -> fundsReservations.observe(accountId, accountBalances, stamp));
+        return balances;
+    }
+
+    /**
+     * <p>
+     * Get the balances the given AccountId had at the given time.
+     * </p>
+     *
+     * <p>
+     * The balances are computed from the latest snapshot taken at or before
+     * that time (see {@link #takeBalanceSnapshot(String)}), by replaying the
+     * entries of the account in the Transactions documents committed after
+     * the snapshot, up to the given time. The replay reads the history of
+     * the Transactions table between the two times, so it costs as much as
+     * the number of transfers since the snapshot.
+     * </p>
+     *
+     * <p>
+     * Without such a snapshot, the balances are read from the history of the
+     * balance documents of the account up to the given time instead, and
+     * kept as a snapshot for the next query.
+     * </p>
+     *
+     * @return The balances, or an empty list if the account did not exist yet
+     */
+    public List<Balance> getBalancesAsOf(@NonNull final String accountId, @NonNull final Instant instant) {
+        final Optional<BalanceSnapshot> snapshot = balanceSnapshots.floor(accountId, instant);
+        return transactionsHandler.executeTransaction(Lane.READ, "getBalancesAsOf", txn -> {
+            if (snapshot.isPresent()) {
+                return replayTransactions(txn, snapshot.get(), instant);
+            }
+            final List<IonStruct> revisions = ionHelper.toIonStructs(execute(txn, "ReadBalanceHistory", accountId,
+                    String.format(balanceLayout.isPerCurrency() ? HISTORY_BALANCES : HISTORY_ACCOUNT,
+                            ionTimestamp(Instant.EPOCH), ionTimestamp(instant)),
+                    Collections.singletonList(ionHelper.toIonValue(accountId))));
+            final Optional<BalanceSnapshot> historySnapshot = toBalanceSnapshot(accountId, revisions);
+            historySnapshot.ifPresent(balanceSnapshots::add);
+            return historySnapshot.map(BalanceSnapshot::getBalances).orElse(Collections.emptyList());
+        }, (retry) -> log.info("There was an error while reading past balances. Retrying "));
+    }
+
+    /**
+     * Take a snapshot of the current balances of the given AccountId for
+     * {@link #getBalancesAsOf(String, Instant)}. It is tagged with the block
+     * and the commit time of the latest revision of the balances.
+     *
+     * @return The snapshot, or empty if the account does not exist
+     */
+    public Optional<BalanceSnapshot> takeBalanceSnapshot(@NonNull final String accountId) {
+        final Optional<BalanceSnapshot> snapshot = transactionsHandler.executeTransaction(Lane.READ,
+                "takeBalanceSnapshot", txn -> toBalanceSnapshot(accountId, ionHelper.toIonStructs(
+                        execute(txn, "SnapshotBalances", accountId,
+                                balanceLayout.isPerCurrency() ? SNAPSHOT_BALANCES : SNAPSHOT_ACCOUNT,
+                                Collections.singletonList(ionHelper.toIonValue(accountId))))),
+                (retry) -> log.info("There was an error while taking a balance snapshot. Retrying "));
+        snapshot.ifPresent(balanceSnapshots::add);
+        return snapshot;
+    }
+
+    /**
+     * The AccountIds of all accounts
+     */
+    public List<String> getAccountIds() {
+        return ledgerStore.getAccountIds();
     }
 
     /**
@@ -106,71 +430,460 @@ public class Banking {
      * reading the balances, doing the business validations again with the new
      * values, and then updating the balance to the correct values.
      * </p>
+     *
+     * <p>
+     * Before the QLDB Transaction is started, the amount is held on the sender
+     * account by {@link FundsReservations}. If the last known balance minus
+     * the amounts held for other in-flight transfers cannot cover the amount,
+     * the transfer is rejected straight away. The hold is released once the
+     * QLDB Transaction commits or fails.
+     * </p>
      */
     public TransferResponse transfer(@NonNull final TransferRequest transferRequest) {
 
         //Validate that the input parameters are correct
         validateParameters(transferRequest);
 
-        /*
-        * The executeTransaction Method of TransactionsHandler will take care
-        * of getting the QLDB session and executing  the given transaction
-        * body(via the anonymous function)
-        *
-        * If there is an OCC while doing the transaction, this entire anonymous
-        * function will be tried again, meaning, the balances will be read
-        * again, the balance checks will be done again and the new balances
-        * will be computed  and the transaction commit will be tried again.
-        *
-        */
+        final long start = System.nanoTime();
+        final AtomicReference<String> outcome = new AtomicReference<>(OUTCOME_FAILURE);
+        try {
+            return reserveAndTransfer(transferRequest, outcome);
+        } finally {
+            transferMetrics.get(outcome.get()).record(start);
+        }
+    }
+
+    private TransferResponse reserveAndTransfer(@NonNull final TransferRequest transferRequest,
+                                                @NonNull final AtomicReference<String> outcome) {
 
         final String senderAccountId = transferRequest.getSenderAccountId();
         final String receiverAccountId = transferRequest.getReceiverAccountId();
         final String currency = transferRequest.getCurrency();
         final double amount = transferRequest.getAmount();
 
-        /*
-        * transferSuccessful flag should default to false unless we actually
-        * mark it to true when Transfer is done successfully
-        */
-        final TransferResponse response = TransferResponse.builder()
+        final Optional<FundsReservations.Reservation> reservation =
+                fundsReservations.tryReserve(senderAccountId, currency, amount);
+        if (!reservation.isPresent()) {
+            log.info("Account {} does not have enough available {} balance for the transfer. "
+                    + "Rejecting it without starting a QLDB transaction", senderAccountId, currency);
+            outcome.set(OUTCOME_INSUFFICIENT_FUNDS);
+            return declinedTransferResponse();
+        }
+
+        try {
+            final TransferResponse transferResponse = executeTransfer(transferRequest, outcome);
+            if (transferResponse.getTransferSuccessful()) {
+                reservation.get().commit(transferResponse.getUpdatedSenderBalances());
+                fundsReservations.observe(receiverAccountId,
+                        transferResponse.getUpdatedReceiverBalances(), fundsReservations.stamp());
+            }
+            return transferResponse;
+        } finally {
+            reservation.get().release();
+        }
+    }
+
+    /**
+     * transferSuccessful flag should default to false unless we actually
+     * mark it to true when Transfer is done successfully
+     */
+    private TransferResponse declinedTransferResponse() {
+        return TransferResponse.builder()
                 .transferSuccessful(false)
                 .build();
+    }
 
-        return transactionsHandler.executeTransaction(txn -> {
-            final List<Balance> senderAccountBalances =
-                    getBalancesForAccount(txn, senderAccountId);
+    /**
+     * Run a transfer in the {@link LedgerStore}, with the balance checks of Banking.
+     *
+     * @param outcome Set to the metrics outcome of the last attempt
+     */
+    private TransferResponse executeTransfer(@NonNull final TransferRequest transferRequest,
+                                             @NonNull final AtomicReference<String> outcome) {
 
-            log.debug("The Balance for AccountId {} is {}",
-                    senderAccountId, senderAccountBalances);
+        /*
+        * The store calls the check with the balances it read, and calls it
+        * again if it retries the transfer, e.g. after an OCC conflict in
+        * QLDB. So the outcome is the one of the last attempt. A transfer with
+        * the idempotency key of a committed one is not checked at all, and
+        * counts as a success.
+        */
+        final TransferResponse transferResponse = ledgerStore.transfer(transferRequest,
+                transferCheck(transferRequest, outcome, fundsReservations.stamp()));
+        if (transferResponse.getTransferSuccessful()) {
+            outcome.set(OUTCOME_SUCCESS);
+        }
+        return transferResponse;
+    }
 
-            final List<Balance> receiverAccountBalances =
-                    getBalancesForAccount(txn, receiverAccountId);
+    /**
+     * The balance checks of a transfer, which hand the balances of the sender
+     * to {@link FundsReservations} and set the outcome of the attempt when
+     * they refuse it.
+     *
+     * @param stamp The {@link FundsReservations#stamp()} taken before the store reads the balances
+     */
+    private LedgerStore.TransferCheck transferCheck(@NonNull final TransferRequest transferRequest,
+                                                    @NonNull final AtomicReference<String> outcome,
+                                                    final long stamp) {
+        final String senderAccountId = transferRequest.getSenderAccountId();
+        final LedgerStore.TransferCheck check = transferCheck(transferRequest, outcome);
+        return (senderAccountBalances, receiverAccountBalances) -> {
+            fundsReservations.observe(senderAccountId, senderAccountBalances, stamp);
+            return check.accepts(senderAccountBalances, receiverAccountBalances);
+        };
+    }
 
+    /**
+     * The balance checks of a transfer, which set the outcome of the attempt
+     * when they refuse it
+     */
+    private LedgerStore.TransferCheck transferCheck(@NonNull final TransferRequest transferRequest,
+                                                    @NonNull final AtomicReference<String> outcome) {
+        final String senderAccountId = transferRequest.getSenderAccountId();
+        final String receiverAccountId = transferRequest.getReceiverAccountId();
+        final String currency = transferRequest.getCurrency();
+        final double amount = transferRequest.getAmount();
+        return (senderAccountBalances, receiverAccountBalances) -> {
+            log.debug("The Balance for AccountId {} is {}",
+                    senderAccountId, senderAccountBalances);
             log.debug("The Balance for AccountId {} is {}",
                     receiverAccountId, receiverAccountBalances);
 
-            if (senderHasSufficientBalance(senderAccountBalances, currency, amount) &&
-                    receiverAcceptsCurrency(receiverAccountBalances, currency)) {
+            if (!senderHasSufficientBalance(senderAccountBalances, currency, amount)) {
+                outcome.set(OUTCOME_INSUFFICIENT_FUNDS);
+                return false;
+            }
+            if (!receiverAcceptsCurrency(receiverAccountBalances, currency)) {
+                outcome.set(OUTCOME_DECLINED);
+                return false;
+            }
+            return true;
+        };
+    }
+
+    /**
+     * <p>
+     * Make many transfers together. The transfers go through the same checks
+     * as {@link #transfer(TransferRequest)}, one after the other, each seeing
+     * the balances left by the transfers before it. With QLDB, they are all
+     * made in a single QLDB Transaction, so they share one commit.
+     * </p>
+     *
+     * <p>
+     * A transfer which is refused by the checks does not stop the others. If
+     * the QLDB Transaction fails, none of the transfers is made and the
+     * exception is thrown.
+     * </p>
+     *
+     * @return The responses, in the order of the requests
+     */
+    public List<TransferResponse> transferAll(@NonNull final List<TransferRequest> transferRequests) {
+        transferRequests.forEach(this::validateParameters);
+
+        final long start = System.nanoTime();
+        final int count = transferRequests.size();
+        final List<AtomicReference<String>> outcomes = new ArrayList<>(count);
+        final List<Optional<FundsReservations.Reservation>> reservations = new ArrayList<>(count);
+        final TransferResponse[] responses = new TransferResponse[count];
+        final List<TransferRequest> admitted = new ArrayList<>(count);
+        final List<Integer> admittedIndexes = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                final TransferRequest transferRequest = transferRequests.get(i);
+                outcomes.add(new AtomicReference<>(OUTCOME_FAILURE));
+                reservations.add(fundsReservations.tryReserve(transferRequest.getSenderAccountId(),
+                        transferRequest.getCurrency(), transferRequest.getAmount()));
+                if (reservations.get(i).isPresent()) {
+                    admitted.add(transferRequest);
+                    admittedIndexes.add(i);
+                } else {
+                    outcomes.get(i).set(OUTCOME_INSUFFICIENT_FUNDS);
+                    responses[i] = declinedTransferResponse();
+                }
+            }
+
+            // The checks see the balances left by the transfers before them, which are not committed, so
+            // they do not hand them to FundsReservations. The QLDB store observes the balances it read instead.
+            final List<LedgerStore.TransferCheck> checks = new ArrayList<>(admitted.size());
+            for (final int index : admittedIndexes) {
+                checks.add(transferCheck(transferRequests.get(index), outcomes.get(index)));
+            }
+            final List<TransferResponse> made = admitted.isEmpty() ? Collections.emptyList()
+                    : ledgerStore.transferAll(admitted, checks);
+            for (int i = 0; i < made.size(); i++) {
+                final int index = admittedIndexes.get(i);
+                final TransferResponse transferResponse = made.get(i);
+                if (transferResponse.getTransferSuccessful()) {
+                    outcomes.get(index).set(OUTCOME_SUCCESS);
+                    reservations.get(index).get().commit(transferResponse.getUpdatedSenderBalances());
+                    fundsReservations.observe(transferRequests.get(index).getReceiverAccountId(),
+                            transferResponse.getUpdatedReceiverBalances(), fundsReservations.stamp());
+                }
+                responses[index] = transferResponse;
+            }
+            return Arrays.asList(responses);
+        } finally {
+            reservations.forEach(reservation -> reservation.ifPresent(FundsReservations.Reservation::release));
+            outcomes.forEach(outcome -> transferMetrics.get(outcome.get()).record(start));
+        }
+    }
 
-                addEntryInTransactions(txn, transferRequest);
+
+    /**
+     * <p>
+     * Authorize a payment by holding the amount on the sender account. In a
+     * single QLDB Transaction we:
+     * </p>
+     * <ol>
+     *     <li>Read the Balances of the Sender Account</li>
+     *     <li>Check that the Sender Account has balance more than the
+     *     requested amount</li>
+     *     <li>Create a document in the Holds table</li>
+     *     <li>Create an entry in the Transactions table, moving the amount
+     *     from the Sender Account to the hold</li>
+     *     <li>Calculate and update the balance of Sender Account</li>
+     * </ol>
+     *
+     * <p>
+     * The receiver account is not touched until the hold is captured, so only
+     * one account document takes part in the transaction. The hold has to be
+     * captured or voided before it expires, otherwise it is released back to
+     * the sender by the {@link HoldsSweeper}.
+     * </p>
+     */
+    public HoldResponse authorize(@NonNull final AuthorizationRequest authorizationRequest) {
+
+        validateParameters(authorizationRequest);
+
+        final String senderAccountId = authorizationRequest.getSenderAccountId();
+        final String currency = authorizationRequest.getCurrency();
+        final double amount = authorizationRequest.getAmount();
+        final Duration holdDuration = Optional.ofNullable(authorizationRequest.getHoldDuration())
+                .orElse(Constants.DEFAULT_HOLD_DURATION);
+
+        final Hold hold = Hold.builder()
+                .holdId(UUID.randomUUID().toString())
+                .accountId(senderAccountId)
+                .receiverAccountId(authorizationRequest.getReceiverAccountId())
+                .currency(currency)
+                .amount(Decimal.valueOf(amount))
+                .status(HoldStatus.AUTHORIZED.name())
+                .notes(authorizationRequest.getNotes())
+                .expiresAt(Instant.now().plus(holdDuration))
+                .build();
+
+        final Optional<FundsReservations.Reservation> reservation =
+                fundsReservations.tryReserve(senderAccountId, currency, amount);
+        if (!reservation.isPresent()) {
+            log.info("Account {} does not have enough available {} balance for the authorization. "
+                    + "Rejecting it without starting a QLDB transaction", senderAccountId, currency);
+            return failedHoldResponse(hold.getHoldId(), null);
+        }
+
+        try {
+            final HoldResponse holdResponse = transactionsHandler.executeTransaction("authorize", txn -> {
+                final long stamp = fundsReservations.stamp();
+                final List<Balance> senderAccountBalances =
+                        readBalances(txn, senderAccountId, Collections.singleton(currency));
+                fundsReservations.observe(senderAccountId, senderAccountBalances, stamp);
+
+                if (!senderHasSufficientBalance(senderAccountBalances, currency, amount)) {
+                    return failedHoldResponse(hold.getHoldId(), null);
+                }
+
+                insertHold(txn, hold);
+
+                addEntryInTransactions(txn,
+                        transactionEntry(senderAccountId, TransactionType.DEBIT,
+                                currency, amount, hold.getNotes()),
+                        transactionEntry(holdAccountId(hold.getHoldId()), TransactionType.CREDIT,
+                                currency, amount, hold.getNotes()));
 
                 updateBalance(txn, senderAccountBalances, senderAccountId,
                         currency, amount, TransactionType.DEBIT);
 
-                updateBalance(txn, receiverAccountBalances, receiverAccountId,
-                        currency, amount, TransactionType.CREDIT);
-                response.setTransferSuccessful(true);
-                response.setUpdatedReceiverBalances(receiverAccountBalances);
-                response.setUpdatedSenderBalances(senderAccountBalances);
-                return response;
+                return HoldResponse.builder()
+                        .successful(true)
+                        .holdId(hold.getHoldId())
+                        .status(HoldStatus.AUTHORIZED.name())
+                        .accountId(senderAccountId)
+                        .updatedBalances(senderAccountBalances)
+                        .build();
+            }, (retry) -> log.info("There was an error while authorizing. Retrying "));
+
+            if (holdResponse.getSuccessful()) {
+                reservation.get().commit(holdResponse.getUpdatedBalances());
             }
-            return response;
-        }, (retry) -> log.info("There was an error "));
+            return holdResponse;
+        } finally {
+            reservation.get().release();
+        }
     }
 
+    /**
+     * Capture an authorized hold. In a single QLDB Transaction we read the
+     * hold and the Balances of the Receiver Account, create an entry in the
+     * Transactions table moving the amount from the hold to the Receiver
+     * Account, update the balance of the Receiver Account and mark the hold
+     * as captured. The sender account was already debited when the hold was
+     * authorized and is not touched again.
+     */
+    public HoldResponse capture(@NonNull final String holdId) {
+        Validate.notBlank(holdId);
 
-    private void validateParameters(
+        final HoldResponse holdResponse = transactionsHandler.executeTransaction("capture", txn -> {
+            final Optional<Hold> hold = getAuthorizedHold(txn, holdId);
+            if (!hold.isPresent()) {
+                return failedHoldResponse(holdId, null);
+            }
+            if (!hold.get().getExpiresAt().isAfter(Instant.now())) {
+                log.info("Hold {} expired at {} and can no longer be captured",
+                        holdId, hold.get().getExpiresAt());
+                return failedHoldResponse(holdId, hold.get().getStatus());
+            }
+
+            final String receiverAccountId = hold.get().getReceiverAccountId();
+            final String currency = hold.get().getCurrency();
+            final double amount = hold.get().getAmount().doubleValue();
+
+            final List<Balance> receiverAccountBalances =
+                    readBalances(txn, receiverAccountId, Collections.singleton(currency));
+            if (!receiverAcceptsCurrency(receiverAccountBalances, currency)) {
+                log.info("Account {} does not accept {}. Hold {} can not be captured",
+                        receiverAccountId, currency, holdId);
+                return failedHoldResponse(holdId, hold.get().getStatus());
+            }
+
+            addEntryInTransactions(txn,
+                    transactionEntry(holdAccountId(holdId), TransactionType.DEBIT,
+                            currency, amount, hold.get().getNotes()),
+                    transactionEntry(receiverAccountId, TransactionType.CREDIT,
+                            currency, amount, hold.get().getNotes()));
+
+            updateBalance(txn, receiverAccountBalances, receiverAccountId,
+                    currency, amount, TransactionType.CREDIT);
+
+            updateHoldStatus(txn, holdId, HoldStatus.CAPTURED);
+
+            return HoldResponse.builder()
+                    .successful(true)
+                    .holdId(holdId)
+                    .status(HoldStatus.CAPTURED.name())
+                    .accountId(receiverAccountId)
+                    .updatedBalances(receiverAccountBalances)
+                    .build();
+        }, (retry) -> log.info("There was an error while capturing. Retrying "));
+
+        observeCommittedBalances(holdResponse);
+        return holdResponse;
+    }
+
+    /**
+     * Void an authorized hold, returning the held amount to the sender
+     * account. Only the sender account document is touched.
+     */
+    public HoldResponse voidHold(@NonNull final String holdId) {
+        Validate.notBlank(holdId);
+
+        final HoldResponse holdResponse = transactionsHandler.executeTransaction("voidHold", txn -> {
+            final Optional<Hold> hold = getAuthorizedHold(txn, holdId);
+            if (!hold.isPresent()) {
+                return failedHoldResponse(holdId, null);
+            }
+
+            final List<Balance> senderAccountBalances =
+                    releaseHolds(txn, hold.get().getAccountId(),
+                            Collections.singletonList(hold.get()), HoldStatus.VOIDED);
+
+            return HoldResponse.builder()
+                    .successful(true)
+                    .holdId(holdId)
+                    .status(HoldStatus.VOIDED.name())
+                    .accountId(hold.get().getAccountId())
+                    .updatedBalances(senderAccountBalances)
+                    .build();
+        }, (retry) -> log.info("There was an error while voiding. Retrying "));
+
+        observeCommittedBalances(holdResponse);
+        return holdResponse;
+    }
+
+    /**
+     * Find the authorized holds which expired before the given instant,
+     * grouped by the AccountId they were taken from.
+     */
+    public Map<String, List<String>> findExpiredHolds(@NonNull final Instant now) {
+        return transactionsHandler.executeTransaction(Lane.READ, "findExpiredHolds", txn -> {
+            final String query = "SELECT HoldId, AccountId FROM Holds WHERE Status = ? AND ExpiresAt < ?";
+            final List<IonValue> parameters = new ArrayList<>();
+            parameters.add(ionHelper.toIonValue(HoldStatus.AUTHORIZED.name()));
+            parameters.add(ionHelper.toIonTimestamp(now));
+
+            final Map<String, List<String>> expiredHolds = new HashMap<>();
+            for (final IonStruct document : ionHelper.toIonStructs(
+                    execute(txn, "FindExpiredHolds", null, query, parameters))) {
+                final String accountId = ionHelper.readIonValue(document.get("AccountId"), String.class);
+                final String holdId = ionHelper.readIonValue(document.get("HoldId"), String.class);
+                expiredHolds.computeIfAbsent(accountId, id -> new ArrayList<>()).add(holdId);
+            }
+            return expiredHolds;
+        }, (retry) -> log.info("There was an error while looking for expired holds. Retrying "));
+    }
+
+    /**
+     * <p>
+     * Release the given expired holds of a single account. Releasing a hold
+     * modifies two documents, its Holds document and a new Transactions
+     * document, so the holds are released in chunks which stay within
+     * {@link Constants#QLDB_MAX_DOCUMENTS_PER_TRANSACTION} together with the
+     * balance documents of the account, one QLDB Transaction per chunk. The
+     * balance documents are updated once per chunk, however many holds it
+     * has.
+     * </p>
+     *
+     * <p>
+     * Holds that were captured, voided or extended in the meantime are
+     * skipped.
+     * </p>
+     *
+     * @return The number of holds released
+     */
+    public int releaseExpiredHolds(@NonNull final String accountId,
+                                   @NonNull final Collection<String> holdIds,
+                                   @NonNull final Instant now) {
+        final int balanceDocuments = balanceLayout.isPerCurrency() ? Constants.SUPPORTED_CURRENCIES.size() : 1;
+        final int chunkSize = (Constants.QLDB_MAX_DOCUMENTS_PER_TRANSACTION - balanceDocuments) / 2;
+        final List<String> distinctIds = new ArrayList<>(new LinkedHashSet<>(holdIds));
+        int released = 0;
+        for (int from = 0; from < distinctIds.size(); from += chunkSize) {
+            final List<String> chunk = distinctIds.subList(from, Math.min(from + chunkSize, distinctIds.size()));
+            released += transactionsHandler.executeTransaction("releaseExpiredHolds", txn -> {
+                final List<Hold> expiredHolds = new ArrayList<>();
+                for (final String holdId : chunk) {
+                    getAuthorizedHold(txn, holdId)
+                            .filter(hold -> accountId.equals(hold.getAccountId()))
+                            .filter(hold -> hold.getExpiresAt().isBefore(now))
+                            .ifPresent(expiredHolds::add);
+                }
+                if (expiredHolds.isEmpty()) {
+                    return 0;
+                }
+                releaseHolds(txn, accountId, expiredHolds, HoldStatus.EXPIRED);
+                return expiredHolds.size();
+            }, (retry) -> log.info("There was an error while releasing expired holds. Retrying "));
+        }
+
+        log.info("Released {} expired holds of account {}", released, accountId);
+        return released;
+    }
+
+    /**
+     * Check that the transfer request is well formed, as {@link #transfer(TransferRequest)} does
+     *
+     * @throws IllegalArgumentException if it is not
+     */
+    public void validateParameters(
             @NonNull final TransferRequest transferRequest) {
 
         Validate.isTrue(transferRequest.getAmount() > 0);
@@ -180,6 +893,143 @@ public class Banking {
         Validate.isTrue(!transferRequest.getSenderAccountId().equals(transferRequest.getReceiverAccountId()));
     }
 
+    private void validateParameters(
+            @NonNull final AuthorizationRequest authorizationRequest) {
+
+        Validate.isTrue(authorizationRequest.getAmount() > 0);
+        Validate.notBlank(authorizationRequest.getSenderAccountId());
+        Validate.notBlank(authorizationRequest.getReceiverAccountId());
+        Validate.isTrue(Constants.SUPPORTED_CURRENCIES.contains(authorizationRequest.getCurrency()));
+        Validate.isTrue(!authorizationRequest.getSenderAccountId().equals(authorizationRequest.getReceiverAccountId()));
+        Validate.isTrue(authorizationRequest.getHoldDuration() == null
+                || !authorizationRequest.getHoldDuration().isNegative());
+    }
+
+    private HoldResponse failedHoldResponse(final String holdId, final String status) {
+        return HoldResponse.builder()
+                .successful(false)
+                .holdId(holdId)
+                .status(status)
+                .build();
+    }
+
+    private void observeCommittedBalances(@NonNull final HoldResponse holdResponse) {
+        if (holdResponse.getSuccessful()) {
+            fundsReservations.observe(holdResponse.getAccountId(),
+                    holdResponse.getUpdatedBalances(), fundsReservations.stamp());
+        }
+    }
+
+    /**
+     * The AccountId used for the hold side of the entries in the Transactions
+     * table, so that every movement of money in and out of a hold is journaled.
+     */
+    private String holdAccountId(@NonNull final String holdId) {
+        return Constants.HOLD_ACCOUNT_PREFIX + holdId;
+    }
+
+    /**
+     * Credit the given authorized holds back to the account they were taken
+     * from and mark them with the given status. All holds must belong to the
+     * given account.
+     *
+     * @return The updated balances of the account
+     */
+    private List<Balance> releaseHolds(@NonNull final TransactionExecutor txn,
+                                       @NonNull final String accountId,
+                                       @NonNull final List<Hold> holds,
+                                       @NonNull final HoldStatus status) {
+        final Collection<String> currencies = new LinkedHashSet<>();
+        holds.forEach(hold -> currencies.add(hold.getCurrency()));
+        final List<Balance> accountBalances = readBalances(txn, accountId, currencies);
+
+        for (final Hold hold : holds) {
+            final double amount = hold.getAmount().doubleValue();
+            addEntryInTransactions(txn,
+                    transactionEntry(holdAccountId(hold.getHoldId()), TransactionType.DEBIT,
+                            hold.getCurrency(), amount, hold.getNotes()),
+                    transactionEntry(accountId, TransactionType.CREDIT,
+                            hold.getCurrency(), amount, hold.getNotes()));
+            updateBalanceForCurrency(accountBalances, hold.getCurrency(), hold.getAmount(), TransactionType.CREDIT);
+            updateHoldStatus(txn, hold.getHoldId(), status);
+        }
+
+        writeBalances(txn, accountBalances, accountId);
+        return accountBalances;
+    }
+
+    /**
+     * Read the hold with the given HoldId, if it exists and is still authorized
+     */
+    private Optional<Hold> getAuthorizedHold(@NonNull final TransactionExecutor txn,
+                                             @NonNull final String holdId) {
+        final String query = "SELECT * FROM Holds WHERE HoldId = ?";
+        final List<IonValue> parameters = Collections.singletonList(ionHelper.toIonValue(holdId));
+
+        final List<IonStruct> documents =
+                ionHelper.toIonStructs(execute(txn, "ReadHold", null, query, parameters));
+        if (1 != documents.size()) {
+            log.error("Expected exactly one hold with HoldId {} but found {}", holdId, documents.size());
+            return Optional.empty();
+        }
+
+        final Hold hold = ionHelper.readIonValue(documents.get(0), Hold.class);
+        if (!HoldStatus.AUTHORIZED.name().equals(hold.getStatus())) {
+            log.info("Hold {} is {} and can no longer be changed", holdId, hold.getStatus());
+            return Optional.empty();
+        }
+        return Optional.of(hold);
+    }
+
+    private List<String> insertHold(@NonNull final TransactionExecutor txn,
+                                    @NonNull final Hold hold) {
+        final String query = "INSERT INTO Holds VALUE ?";
+        final List<IonValue> parameters = Collections.singletonList(ionHelper.toIonValue(hold));
+
+        final Result result = execute(txn, "InsertHold", hold.getAccountId(), query, parameters);
+        final List<String> insertedDocumentIds = ionHelper.getDocumentIdsFromDmlResult(result);
+        log.info("Created hold {} on account {}. Inserted document ids {}",
+                hold.getHoldId(), hold.getAccountId(), insertedDocumentIds);
+        return insertedDocumentIds;
+    }
+
+    private List<String> updateHoldStatus(@NonNull final TransactionExecutor txn,
+                                          @NonNull final String holdId,
+                                          @NonNull final HoldStatus status) {
+        final String query = "UPDATE Holds SET Status = ? WHERE HoldId = ?";
+        final List<IonValue> parameters = new ArrayList<>();
+        parameters.add(ionHelper.toIonValue(status.name()));
+        parameters.add(ionHelper.toIonValue(holdId));
+
+        return ionHelper.getDocumentIdsFromDmlResult(execute(txn, "UpdateHold", null, query, parameters));
+    }
+
+    /**
+     * Execute a statement as a part of the QLDB Transaction, timing it with a
+     * {@link StatementEvent}.
+     *
+     * @param statement What the statement does, recorded in the event
+     * @param accountId The AccountId the statement is about, if any
+     */
+    private Result execute(@NonNull final TransactionExecutor txn,
+                           @NonNull final String statement,
+                           final String accountId,
+                           @NonNull final String query,
+                           @NonNull final List<IonValue> parameters) {
+        final StatementEvent event = new StatementEvent();
+        event.begin();
+        final Result result = txn.execute(query, parameters);
+        event.end();
+        if (event.shouldCommit()) {
+            event.statement = statement;
+            event.accountId = accountId;
+            event.parameterCount = parameters.size();
+            event.parameterSize = parameters.stream().mapToLong(p -> p.toString().length()).sum();
+            event.commit();
+        }
+        return result;
+    }
+
     /**
      * Given an AccountId, get all the balances of the account
      * This method is called as a part of the QLDB Transaction and takes in the
@@ -193,21 +1043,39 @@ public class Banking {
     private List<Balance> getBalancesForAccount(
             @NonNull final TransactionExecutor txn,
             @NonNull final String accountId) {
+        return getBalancesForAccount(txn, accountId, ionHelper.toIonValue(accountId));
+    }
 
-        List<Balance> balances = new ArrayList<>();
+    /**
+     * Same as {@link #getBalancesForAccount(TransactionExecutor, String)},
+     * with the AccountId already encoded to Ion
+     */
+    private List<Balance> getBalancesForAccount(
+            @NonNull final TransactionExecutor txn,
+            @NonNull final String accountId,
+            @NonNull final IonValue accountIdParameter) {
 
-        final String queryString = "SELECT Balances FROM Accounts WHERE AccountId = ?";
-        final List<IonValue> parameters = Collections.singletonList(
-                ionHelper.toIonValue(accountId));
+        List<Balance> balances = new ArrayList<>();
 
         log.debug("Reading the balance for AccountID {}", accountId);
-        final Result result = txn.execute(queryString, parameters);
-        if (result.isEmpty()) {
-            log.error("Could not find any balances for the account {}", result);
+        if (balanceLayout.isPerCurrency()) {
+            final String query = "SELECT Currency, CurrencyBalance FROM AccountBalances WHERE AccountId = ?";
+            final List<IonValue> parameters = Collections.singletonList(accountIdParameter);
+            for (final IonStruct document : ionHelper.toIonStructs(
+                    execute(txn, "ReadAccountBalances", accountId, query, parameters))) {
+                balances.add(ionHelper.readIonValue(document, Balance.class));
+            }
+            return balances;
+        }
+
+        final List<IonStruct> documents = readDocument(txn, "ReadBalances", accountId,
+                Constants.ACCOUNTS_TABLE_NAME, "AccountId", accountId, accountIdParameter,
+                READ_ACCOUNT_BY_ID, READ_ACCOUNT_BY_KEY);
+        if (documents.isEmpty()) {
+            log.error("Could not find any balances for the account {}", accountId);
             return balances;
         }
 
-        final List<IonStruct> documents = ionHelper.toIonStructs(result);
         if (1 != documents.size()) {
             log.error("More than one accounts exist for the same Account Id {}. Cannot decide which account to "
                     + "pick", accountId);
@@ -219,35 +1087,216 @@ public class Banking {
     }
 
     /**
-     * Create an entry in the Transaction Table. This creates a single document
-     * in the transactions table
+     * Apply the entries of the snapshot account in the Transactions documents
+     * committed after the snapshot and up to the given time to its balances
+     */
+    private List<Balance> replayTransactions(@NonNull final TransactionExecutor txn,
+                                             @NonNull final BalanceSnapshot snapshot,
+                                             @NonNull final Instant instant) {
+        final Map<String, BigDecimal> balances = new LinkedHashMap<>();
+        snapshot.getBalances().forEach(balance -> balances.put(balance.getCurrency(), balance.getCurrencyBalance()));
+
+        final List<IonValue> parameters = new ArrayList<>();
+        parameters.add(ionHelper.toIonValue(snapshot.getAccountId()));
+        parameters.add(ionHelper.toIonValue(snapshot.getSequenceNo()));
+        int replayed = 0;
+        for (final String entryField : TRANSACTION_ENTRIES) {
+            final String query = String.format(REPLAY_TRANSACTIONS, entryField,
+                    ionTimestamp(snapshot.getTakenAt()), ionTimestamp(instant));
+            for (final IonStruct document : ionHelper.toIonStructs(
+                    execute(txn, "ReplayTransactions", snapshot.getAccountId(), query, parameters))) {
+                final TransactionEntry entry = ionHelper.readIonValue(document.get(entryField), TransactionEntry.class);
+                final BigDecimal amount = TransactionType.DEBIT.name().equals(entry.getTransactionType())
+                        ? entry.getAmount().negate() : entry.getAmount();
+                balances.merge(entry.getCurrency(), amount, BigDecimal::add);
+                replayed++;
+            }
+        }
+        log.debug("Replayed {} entries of account {} since the snapshot taken at {}",
+                replayed, snapshot.getAccountId(), snapshot.getTakenAt());
+
+        final List<Balance> result = new ArrayList<>();
+        balances.forEach((currency, balance) -> result.add(Balance.builder()
+                .currency(currency)
+                .currencyBalance(Decimal.valueOf(balance))
+                .build()));
+        return result;
+    }
+
+    /**
+     * Build a snapshot from revisions of the balance documents of an account,
+     * each with its block sequence number and commit time. The latest
+     * revision of every balance is used.
+     */
+    private Optional<BalanceSnapshot> toBalanceSnapshot(@NonNull final String accountId,
+                                                        @NonNull final List<IonStruct> revisions) {
+        final Map<String, IonStruct> latestByCurrency = new LinkedHashMap<>();
+        IonStruct latest = null;
+        for (final IonStruct revision : revisions) {
+            if (latest == null || sequenceNo(revision) > sequenceNo(latest)) {
+                latest = revision;
+            }
+            if (balanceLayout.isPerCurrency()) {
+                latestByCurrency.merge(ionHelper.readIonValue(revision.get("Currency"), String.class), revision,
+                        (kept, other) -> sequenceNo(other) > sequenceNo(kept) ? other : kept);
+            }
+        }
+        if (latest == null) {
+            return Optional.empty();
+        }
+
+        final List<Balance> balances = new ArrayList<>();
+        if (balanceLayout.isPerCurrency()) {
+            latestByCurrency.values().forEach(revision -> balances.add(Balance.builder()
+                    .currency(ionHelper.readIonValue(revision.get("Currency"), String.class))
+                    .currencyBalance(ionHelper.readIonValue(revision.get("CurrencyBalance"), Decimal.class))
+                    .build()));
+        } else if (latest.get("Balances") instanceof IonSequence) {
+            ((IonSequence) latest.get("Balances")).forEach(
+                    balance -> balances.add(ionHelper.readIonValue(balance, Balance.class)));
+        }
+        final Instant takenAt = Instant.ofEpochMilli(((IonTimestamp) latest.get("txTime")).getMillis());
+        return Optional.of(new BalanceSnapshot(accountId, sequenceNo(latest), takenAt, balances));
+    }
+
+    private static long sequenceNo(final IonStruct revision) {
+        return ((IonInt) revision.get("sequenceNo")).longValue();
+    }
+
+    /**
+     * The Ion text of the timestamp of the given instant, for the time range
+     * of a history() query
+     */
+    private static String ionTimestamp(final Instant instant) {
+        return Timestamp.forMillis(instant.toEpochMilli(), 0).toString();
+    }
+
+    /**
+     * Read the balances of the given AccountId which are needed to move money
+     * in the given currencies. In the embedded layout these are all the
+     * balances of the account, since they live in one document. In the per
+     * currency layout only the documents of the given currencies are read, so
+     * that the QLDB Transaction does not conflict with changes to the others.
+     * A currency the account does not support has no balance in the result.
+     */
+    private List<Balance> readBalances(@NonNull final TransactionExecutor txn,
+                                       @NonNull final String accountId,
+                                       @NonNull final Collection<String> currencies) {
+        return readBalances(txn, accountId, ionHelper.toIonValue(accountId), currencies);
+    }
+
+    private List<Balance> readBalances(@NonNull final TransactionExecutor txn,
+                                       @NonNull final String accountId,
+                                       @NonNull final IonValue accountIdParameter,
+                                       @NonNull final Collection<String> currencies) {
+        if (!balanceLayout.isPerCurrency()) {
+            return getBalancesForAccount(txn, accountId, accountIdParameter);
+        }
+
+        final List<Balance> balances = new ArrayList<>();
+        for (final String currency : currencies) {
+            final String balanceId = AccountBalance.balanceId(accountId, currency);
+            final List<IonStruct> documents = readDocument(txn, "ReadBalance", accountId,
+                    Constants.ACCOUNT_BALANCES_TABLE_NAME, "BalanceId", balanceId, ionHelper.toIonValue(balanceId),
+                    READ_BALANCE_BY_ID, READ_BALANCE_BY_KEY);
+            if (documents.size() > 1) {
+                log.error("More than one {} balance exists for the Account Id {}. Cannot decide which one to pick",
+                        currency, accountId);
+            } else if (documents.size() == 1) {
+                balances.add(Balance.builder()
+                        .currency(ionHelper.readIonValue(documents.get(0).get("Currency"), String.class))
+                        .currencyBalance(ionHelper.readIonValue(documents.get(0).get("CurrencyBalance"), Decimal.class))
+                        .build());
+            }
+        }
+        return balances;
+    }
+
+    /**
+     * <p>
+     * Read the documents of the given table whose key field has the given
+     * value, through the committed view of the table.
+     * </p>
+     *
+     * <p>
+     * If the id of the document is cached, it is read by its id, and the
+     * cache entry is dropped if the document no longer has the key. Otherwise
+     * the document is looked up through the index of the key field, and its
+     * id is cached if exactly one document has the key.
+     * </p>
+     *
+     * @param readById The query by r.metadata.id, which has to select the key field
+     * @param readByKey The query by the key field, which has to select r.metadata.id
+     */
+    private List<IonStruct> readDocument(@NonNull final TransactionExecutor txn,
+                                         @NonNull final String statement,
+                                         @NonNull final String accountId,
+                                         @NonNull final String tableName,
+                                         @NonNull final String keyField,
+                                         @NonNull final String key,
+                                         @NonNull final IonValue keyParameter,
+                                         @NonNull final String readById,
+                                         @NonNull final String readByKey) {
+        final Optional<String> documentId = documentIdCache.get(tableName, key);
+        if (documentId.isPresent()) {
+            final List<IonStruct> documents = ionHelper.toIonStructs(execute(txn, statement + "ById", accountId,
+                    readById, Collections.singletonList(ionHelper.toIonValue(documentId.get()))));
+            if (documents.size() == 1
+                    && key.equals(ionHelper.readIonValue(documents.get(0).get(keyField), String.class))) {
+                return documents;
+            }
+            log.info("Document {} of the {} table no longer has the key {}", documentId.get(), tableName, key);
+            documentIdCache.invalidate(tableName, key);
+        }
+
+        final List<IonStruct> documents = ionHelper.toIonStructs(execute(txn, statement, accountId,
+                readByKey, Collections.singletonList(keyParameter)));
+        if (documents.size() == 1) {
+            documentIdCache.put(tableName, key, ionHelper.readIonValue(documents.get(0).get("id"), String.class));
+        }
+        return documents;
+    }
+
+    /**
+     * Set a field of the document of the given table with the given key. It
+     * is updated by its id if the id is cached, which it is once the document
+     * was read by {@link #readDocument}, and through the index otherwise.
+     *
+     * @param updateById The update by the id bound with BY id
+     * @param updateByKey The update by the key field
+     * @return List of modified documents
+     */
+    private List<String> updateDocument(@NonNull final TransactionExecutor txn,
+                                        @NonNull final String statement,
+                                        @NonNull final String accountId,
+                                        @NonNull final String tableName,
+                                        @NonNull final String key,
+                                        @NonNull final IonValue keyParameter,
+                                        @NonNull final IonValue value,
+                                        @NonNull final String updateById,
+                                        @NonNull final String updateByKey) {
+        final Optional<String> documentId = documentIdCache.get(tableName, key);
+        final List<IonValue> parameters = new ArrayList<>();
+        parameters.add(value);
+        if (documentId.isPresent()) {
+            parameters.add(ionHelper.toIonValue(documentId.get()));
+            return ionHelper.getDocumentIdsFromDmlResult(
+                    execute(txn, statement + "ById", accountId, updateById, parameters));
+        }
+        parameters.add(keyParameter);
+        return ionHelper.getDocumentIdsFromDmlResult(execute(txn, statement, accountId, updateByKey, parameters));
+    }
+
+    /**
+     * Create a single document in the transactions table from the given
+     * debit and credit entries
      *
-     * @param txn The TransactionExecutor object which is instantiated during
-     *            the QLDB Transaction
-     * @param transferRequest
      * @return List of documentIds created in the transactions table
      */
     private List<String> addEntryInTransactions(
             @NonNull final TransactionExecutor txn,
-            @NonNull final TransferRequest transferRequest) {
-
-        final TransactionEntry senderTransactionEntry =
-                TransactionEntry.builder()
-                .accountId(transferRequest.getSenderAccountId())
-                .transactionType(TransactionType.DEBIT.name())
-                .notes(transferRequest.getNotes())
-                .amount(Decimal.valueOf(transferRequest.getAmount()))
-                .currency(transferRequest.getCurrency())
-                .build();
-
-        final TransactionEntry receiverTransactionEntry =
-                TransactionEntry.builder()
-                .accountId(transferRequest.getReceiverAccountId())
-                .transactionType(TransactionType.CREDIT.name())
-                .notes(transferRequest.getNotes())
-                .amount(Decimal.valueOf(transferRequest.getAmount()))
-                .currency(transferRequest.getCurrency())
-                .build();
+            @NonNull final TransactionEntry senderTransactionEntry,
+            @NonNull final TransactionEntry receiverTransactionEntry) {
 
         final Transaction transaction = Transaction.builder()
                 .transactionTime(LocalDate.now())
@@ -255,14 +1304,26 @@ public class Banking {
                 .receiverAccountEntry(receiverTransactionEntry)
                 .build();
 
-        final String query = "INSERT INTO Transactions VALUE ? ";
-        final IonValue transactionDocument =
-                ionHelper.toIonValue(transaction);
+        return insertTransactionDocument(txn, senderTransactionEntry.getAccountId(),
+                ionHelper.toIonValue(transaction));
+    }
 
+    /**
+     * Create an entry in the Transaction Table from a document which is
+     * already encoded to Ion
+     *
+     * @param accountId The AccountId of the sender entry
+     * @return List of documentIds created in the transactions table
+     */
+    private List<String> insertTransactionDocument(@NonNull final TransactionExecutor txn,
+                                                   @NonNull final String accountId,
+                                                   @NonNull final IonValue transactionDocument) {
+
+        final String query = "INSERT INTO Transactions VALUE ? ";
         final List<IonValue> parameters =
                 Collections.singletonList(transactionDocument);
 
-        final Result result = txn.execute(query, parameters);
+        final Result result = execute(txn, "InsertTransaction", accountId, query, parameters);
         final List<String> insertedDocumentIds = ionHelper.getDocumentIdsFromDmlResult(result);
 
         log.info("Created entries in Transactions table. " +
@@ -271,6 +1332,20 @@ public class Banking {
         return insertedDocumentIds;
     }
 
+    private TransactionEntry transactionEntry(@NonNull final String accountId,
+                                              @NonNull final TransactionType transactionType,
+                                              @NonNull final String currency,
+                                              final double amount,
+                                              final String notes) {
+        return TransactionEntry.builder()
+                .accountId(accountId)
+                .transactionType(transactionType.name())
+                .notes(notes)
+                .amount(Decimal.valueOf(amount))
+                .currency(currency)
+                .build();
+    }
+
     /**
      * Update the balance, of a particular currency, for the given AccountId.
      * This method computes the balance to be updated and
@@ -291,25 +1366,77 @@ public class Banking {
                                        @NonNull final String currency,
                                        final double amount,
                                        final TransactionType transactionType) {
+        return updateBalance(txn, balances, accountId, ionHelper.toIonValue(accountId),
+                currency, Decimal.valueOf(amount), transactionType);
+    }
+
+    /**
+     * Same as {@link #updateBalance(TransactionExecutor, List, String, String, double, TransactionType)},
+     * with the AccountId already encoded to Ion
+     */
+    private List<String> updateBalance(@NonNull final TransactionExecutor txn,
+                                       @NonNull final List<Balance> balances,
+                                       @NonNull final String accountId,
+                                       @NonNull final IonValue accountIdParameter,
+                                       @NonNull final String currency,
+                                       @NonNull final Decimal amount,
+                                       final TransactionType transactionType) {
 
         final List<Balance> updatedCurrencyBalances =
                 updateBalanceForCurrency(balances, currency, amount,
                         transactionType);
 
-        final String query = "UPDATE Accounts SET Balances = ? WHERE AccountId = ?";
+        return writeBalances(txn, updatedCurrencyBalances, accountId, accountIdParameter);
+    }
 
-        final List<IonValue> parameters = new ArrayList<>();
-        parameters.add(ionHelper.toIonValue(updatedCurrencyBalances));
-        parameters.add(ionHelper.toIonValue(accountId));
+    /**
+     * Write the given balances to the Accounts document of the given
+     * AccountId, or in the per currency layout, to the AccountBalances
+     * document of each of them
+     *
+     * @return List of modified documents
+     */
+    private List<String> writeBalances(@NonNull final TransactionExecutor txn,
+                                       @NonNull final List<Balance> balances,
+                                       @NonNull final String accountId) {
+        return writeBalances(txn, balances, accountId, ionHelper.toIonValue(accountId));
+    }
 
-        final Result result = txn.execute(query, parameters);
-        final List<String> insertedDocumentIds = ionHelper.getDocumentIdsFromDmlResult(result);
+    private List<String> writeBalances(@NonNull final TransactionExecutor txn,
+                                       @NonNull final List<Balance> balances,
+                                       @NonNull final String accountId,
+                                       @NonNull final IonValue accountIdParameter) {
+
+        if (balanceLayout.isPerCurrency()) {
+            return writeAccountBalances(txn, balances, accountId);
+        }
+
+        final List<String> insertedDocumentIds = updateDocument(txn, "UpdateBalances", accountId,
+                Constants.ACCOUNTS_TABLE_NAME, accountId, accountIdParameter, ionHelper.toIonValue(balances),
+                UPDATE_ACCOUNT_BY_ID, UPDATE_ACCOUNT_BY_KEY);
 
         log.info("Updated entries in Accounts table for Account Id {}. Affected document ids are {}",
                 accountId, insertedDocumentIds);
         return insertedDocumentIds;
     }
 
+    private List<String> writeAccountBalances(@NonNull final TransactionExecutor txn,
+                                              @NonNull final List<Balance> balances,
+                                              @NonNull final String accountId) {
+
+        final List<String> updatedDocumentIds = new ArrayList<>();
+        for (final Balance balance : balances) {
+            final String balanceId = AccountBalance.balanceId(accountId, balance.getCurrency());
+            updatedDocumentIds.addAll(updateDocument(txn, "UpdateBalance", accountId,
+                    Constants.ACCOUNT_BALANCES_TABLE_NAME, balanceId, ionHelper.toIonValue(balanceId),
+                    ionHelper.toIonValue(balance.getCurrencyBalance()), UPDATE_BALANCE_BY_ID, UPDATE_BALANCE_BY_KEY));
+        }
+
+        log.info("Updated entries in AccountBalances table for Account Id {}. Affected document ids are {}",
+                accountId, updatedDocumentIds);
+        return updatedDocumentIds;
+    }
+
     /**
      * Check if the sender account has enough balance for the given currency
      */
@@ -357,20 +1484,291 @@ public class Banking {
      */
     private List<Balance> updateBalanceForCurrency(@NonNull final List<Balance> balances,
                                                    @NonNull final String currency,
-                                                   final double amount,
+                                                   @NonNull final Decimal amount,
                                                    final TransactionType transactionType) {
         balances.forEach(balance -> {
             if(currency.equals(balance.getCurrency())) {
                 if (TransactionType.DEBIT.equals(transactionType)) {
                     balance.setCurrencyBalance(
-                            Decimal.valueOf(balance.getCurrencyBalance().subtract(Decimal.valueOf(amount))));
+                            Decimal.valueOf(balance.getCurrencyBalance().subtract(amount)));
                 } else if (TransactionType.CREDIT.equals(transactionType)) {
                     balance.setCurrencyBalance(
-                            Decimal.valueOf(balance.getCurrencyBalance().add(Decimal.valueOf(amount))));
+                            Decimal.valueOf(balance.getCurrencyBalance().add(amount)));
                 }
             }
         });
         return balances;
     }
 
+    /**
+     * The {@link LedgerStore} which keeps the ledger in QLDB, through the
+     * TransactionsHandler and the statements of Banking.
+     */
+    private final class QldbLedgerStore implements LedgerStore {
+
+        @Override
+        public List<Balance> getBalances(@NonNull final String accountId) {
+            return transactionsHandler.executeTransaction(Lane.READ, "getBalancesForAccount",
+                    txn -> getBalancesForAccount(txn, accountId),
+                    (retry) -> log.info("There was an error while checking for balance. Retrying "));
+        }
+
+        @Override
+        public Map<String, List<Balance>> getBalances(@NonNull final Collection<String> accountIds) {
+            final String placeholders = String.join(", ", Collections.nCopies(accountIds.size(), "?"));
+            final List<IonValue> parameters = new ArrayList<>(accountIds.size());
+            accountIds.forEach(accountId -> parameters.add(ionHelper.toIonValue(accountId)));
+            return transactionsHandler.executeTransaction(Lane.READ, "getBalancesForAccounts", txn -> {
+                final Map<String, List<Balance>> balances = new HashMap<>();
+                if (balanceLayout.isPerCurrency()) {
+                    for (final IonStruct document : ionHelper.toIonStructs(execute(txn, "ReadAccountBalancesBatch",
+                            null, String.format(READ_BALANCES_BY_ACCOUNT_KEYS, placeholders), parameters))) {
+                        balances.computeIfAbsent(ionHelper.readIonValue(document.get("AccountId"), String.class),
+                                accountId -> new ArrayList<>()).add(Balance.builder()
+                                .currency(ionHelper.readIonValue(document.get("Currency"), String.class))
+                                .currencyBalance(ionHelper.readIonValue(document.get("CurrencyBalance"),
+                                        Decimal.class))
+                                .build());
+                    }
+                } else {
+                    final Set<String> duplicates = new HashSet<>();
+                    for (final IonStruct document : ionHelper.toIonStructs(execute(txn, "ReadBalancesBatch",
+                            null, String.format(READ_ACCOUNTS_BY_KEYS, placeholders), parameters))) {
+                        final String accountId = ionHelper.readIonValue(document.get("AccountId"), String.class);
+                        final List<Balance> accountBalances = new ArrayList<>(Arrays.asList(
+                                ionHelper.readIonValue(document.get("Balances"), Balance[].class)));
+                        if (balances.put(accountId, accountBalances) != null) {
+                            duplicates.add(accountId);
+                        }
+                    }
+                    for (final String accountId : duplicates) {
+                        log.error("More than one accounts exist for the same Account Id {}. Cannot decide which "
+                                + "account to pick", accountId);
+                        balances.remove(accountId);
+                    }
+                }
+                return balances;
+            }, (retry) -> log.info("There was an error while checking for balances. Retrying "));
+        }
+
+        @Override
+        public List<String> getAccountIds() {
+            return transactionsHandler.executeTransaction(Lane.READ, "getAccountIds", txn -> {
+                final List<String> accountIds = new ArrayList<>();
+                for (final IonStruct document : ionHelper.toIonStructs(
+                        execute(txn, "ReadAccountIds", null, "SELECT AccountId FROM Accounts",
+                                Collections.emptyList()))) {
+                    accountIds.add(ionHelper.readIonValue(document.get("AccountId"), String.class));
+                }
+                return accountIds;
+            }, (retry) -> log.info("There was an error while listing the accounts. Retrying "));
+        }
+
+        @Override
+        public TransferResponse transfer(@NonNull final TransferRequest transferRequest,
+                                         @NonNull final TransferCheck check) {
+            final String senderAccountId = transferRequest.getSenderAccountId();
+            final String receiverAccountId = transferRequest.getReceiverAccountId();
+            final String currency = transferRequest.getCurrency();
+
+            /*
+            * The executeTransaction Method of TransactionsHandler will take care
+            * of getting the QLDB session and executing  the given transaction
+            * body(via the anonymous function)
+            *
+            * If there is an OCC while doing the transaction, this entire anonymous
+            * function will be tried again, meaning, the balances will be read
+            * again, the balance checks will be done again and the new balances
+            * will be computed  and the transaction commit will be tried again.
+            * This is why the response is created afresh by every attempt.
+            *
+            * Nothing else changes between attempts, so the Transactions document
+            * and the parameters are encoded once, before the transaction.
+            *
+            */
+            final PreparedTransfer preparedTransfer = new PreparedTransfer(transferRequest, ionHelper);
+
+            return transactionsHandler.executeTransaction("transfer", txn -> {
+                if (isCommitted(txn, transferRequest)) {
+                    return committedTransferResponse();
+                }
+
+                final List<Balance> senderAccountBalances = readBalances(txn, senderAccountId,
+                        preparedTransfer.getSenderAccountIdParameter(), Collections.singleton(currency));
+                final List<Balance> receiverAccountBalances = readBalances(txn, receiverAccountId,
+                        preparedTransfer.getReceiverAccountIdParameter(), Collections.singleton(currency));
+
+                if (!check.accepts(senderAccountBalances, receiverAccountBalances)) {
+                    return declinedTransferResponse();
+                }
+
+                insertTransactionDocument(txn, senderAccountId, preparedTransfer.getTransactionDocument());
+
+                updateBalance(txn, senderAccountBalances, senderAccountId,
+                        preparedTransfer.getSenderAccountIdParameter(),
+                        currency, preparedTransfer.getAmount(), TransactionType.DEBIT);
+
+                updateBalance(txn, receiverAccountBalances, receiverAccountId,
+                        preparedTransfer.getReceiverAccountIdParameter(),
+                        currency, preparedTransfer.getAmount(), TransactionType.CREDIT);
+
+                return TransferResponse.builder()
+                        .transferSuccessful(true)
+                        .updatedReceiverBalances(receiverAccountBalances)
+                        .updatedSenderBalances(senderAccountBalances)
+                        .build();
+            }, (retry) -> log.info("There was an error "));
+        }
+
+        /**
+         * <p>
+         * Makes all the transfers in one QLDB Transaction. Every account is
+         * read once, in all the currencies the transfers use, and written
+         * once at the end, so the Transaction modifies one Transactions
+         * document per transfer and at most two balance documents per
+         * account, whatever the number of transfers.
+         * </p>
+         *
+         * <p>
+         * The transfers are checked one after the other against the balances
+         * in memory, which already include the transfers made before them. If
+         * the Transaction is retried after an OCC conflict, it starts again
+         * from the balances read by the new attempt.
+         * </p>
+         */
+        @Override
+        public List<TransferResponse> transferAll(@NonNull final List<TransferRequest> transferRequests,
+                                                  @NonNull final List<TransferCheck> checks) {
+            Validate.isTrue(transferRequests.size() == checks.size(), "Every transfer needs its own check");
+
+            final List<PreparedTransfer> preparedTransfers = new ArrayList<>(transferRequests.size());
+            final Map<String, Set<String>> currenciesByAccount = new LinkedHashMap<>();
+            for (final TransferRequest transferRequest : transferRequests) {
+                preparedTransfers.add(new PreparedTransfer(transferRequest, ionHelper));
+                currenciesByAccount.computeIfAbsent(transferRequest.getSenderAccountId(),
+                        accountId -> new LinkedHashSet<>()).add(transferRequest.getCurrency());
+                currenciesByAccount.computeIfAbsent(transferRequest.getReceiverAccountId(),
+                        accountId -> new LinkedHashSet<>()).add(transferRequest.getCurrency());
+            }
+
+            return transactionsHandler.executeTransaction("transferBatch", txn -> {
+                final long stamp = fundsReservations.stamp();
+                final Map<String, List<Balance>> balances = new HashMap<>();
+                currenciesByAccount.forEach((accountId, currencies) -> {
+                    final List<Balance> read = readBalances(txn, accountId, currencies);
+                    // Only the balances as read are committed, the transfers below change them in memory
+                    fundsReservations.observe(accountId, read, stamp);
+                    balances.put(accountId, read);
+                });
+
+                final Set<String> idempotencyKeys = new HashSet<>();
+                final Map<String, Set<String>> updatedCurrencies = new LinkedHashMap<>();
+                final List<TransferResponse> responses = new ArrayList<>(preparedTransfers.size());
+                for (int i = 0; i < preparedTransfers.size(); i++) {
+                    final PreparedTransfer preparedTransfer = preparedTransfers.get(i);
+                    final TransferRequest transferRequest = preparedTransfer.getTransferRequest();
+                    final String idempotencyKey = transferRequest.getIdempotencyKey();
+                    if (idempotencyKey != null
+                            && (idempotencyKeys.contains(idempotencyKey) || isCommitted(txn, transferRequest))) {
+                        responses.add(committedTransferResponse());
+                        continue;
+                    }
+
+                    final String senderAccountId = transferRequest.getSenderAccountId();
+                    final String receiverAccountId = transferRequest.getReceiverAccountId();
+                    final String currency = transferRequest.getCurrency();
+                    final List<Balance> senderAccountBalances = balances.get(senderAccountId);
+                    final List<Balance> receiverAccountBalances = balances.get(receiverAccountId);
+                    if (!checks.get(i).accepts(senderAccountBalances, receiverAccountBalances)) {
+                        responses.add(declinedTransferResponse());
+                        continue;
+                    }
+
+                    insertTransactionDocument(txn, senderAccountId, preparedTransfer.getTransactionDocument());
+                    updateBalanceForCurrency(senderAccountBalances, currency, preparedTransfer.getAmount(),
+                            TransactionType.DEBIT);
+                    updateBalanceForCurrency(receiverAccountBalances, currency, preparedTransfer.getAmount(),
+                            TransactionType.CREDIT);
+                    updatedCurrencies.computeIfAbsent(senderAccountId, accountId -> new HashSet<>()).add(currency);
+                    updatedCurrencies.computeIfAbsent(receiverAccountId, accountId -> new HashSet<>()).add(currency);
+                    if (idempotencyKey != null) {
+                        idempotencyKeys.add(idempotencyKey);
+                    }
+
+                    // Later transfers of the batch keep changing the balances in memory
+                    responses.add(TransferResponse.builder()
+                            .transferSuccessful(true)
+                            .updatedSenderBalances(copyOf(senderAccountBalances))
+                            .updatedReceiverBalances(copyOf(receiverAccountBalances))
+                            .build());
+                }
+
+                updatedCurrencies.forEach((accountId, currencies) -> {
+                    final List<Balance> accountBalances = balances.get(accountId);
+                    writeBalances(txn, balanceLayout.isPerCurrency()
+                            ? accountBalances.stream()
+                                    .filter(balance -> currencies.contains(balance.getCurrency()))
+                                    .collect(Collectors.toList())
+                            : accountBalances, accountId);
+                });
+                return responses;
+            }, (retry) -> log.info("There was an error while making a batch of transfers. Retrying "));
+        }
+
+        /**
+         * Whether a transfer with the idempotency key of the request was
+         * already committed
+         */
+        private boolean isCommitted(@NonNull final TransactionExecutor txn,
+                                    @NonNull final TransferRequest transferRequest) {
+            if (transferRequest.getIdempotencyKey() == null || ionHelper.toIonStructs(execute(txn,
+                    "ReadIdempotencyKey", transferRequest.getSenderAccountId(), READ_TRANSACTION_BY_IDEMPOTENCY_KEY,
+                    Collections.singletonList(ionHelper.toIonValue(transferRequest.getIdempotencyKey()))))
+                    .isEmpty()) {
+                return false;
+            }
+            log.info("The transfer with idempotency key {} was already committed",
+                    transferRequest.getIdempotencyKey());
+            return true;
+        }
+
+        private TransferResponse committedTransferResponse() {
+            return TransferResponse.builder()
+                    .transferSuccessful(true)
+                    .updatedSenderBalances(new ArrayList<>())
+                    .updatedReceiverBalances(new ArrayList<>())
+                    .build();
+        }
+
+        private List<Balance> copyOf(final List<Balance> balances) {
+            final List<Balance> copy = new ArrayList<>(balances.size());
+            balances.forEach(balance -> copy.add(Balance.builder()
+                    .currency(balance.getCurrency())
+                    .currencyBalance(balance.getCurrencyBalance())
+                    .build()));
+            return copy;
+        }
+    }
+
+    /**
+     * Throughput and latency of transfers with a given outcome
+     */
+    private static final class TransferMetrics {
+
+        private final Counter transfers;
+
+        private final LatencyHistogram latency;
+
+        private TransferMetrics(final MetricsRegistry metricsRegistry, final String outcome) {
+            transfers = metricsRegistry.counter(MetricNames.TRANSFERS,
+                    "Transfers by outcome", MetricNames.OUTCOME_LABEL, outcome);
+            latency = metricsRegistry.histogram(MetricNames.TRANSFER_LATENCY,
+                    "Latency of transfers by outcome", MetricNames.OUTCOME_LABEL, outcome);
+        }
+
+        private void record(final long startNanos) {
+            transfers.increment();
+            latency.recordSince(startNanos);
+        }
+    }
 }
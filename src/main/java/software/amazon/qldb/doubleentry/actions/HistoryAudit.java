@@ -0,0 +1,251 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.actions;
+
+import com.amazon.ion.IonInt;
+import com.amazon.ion.IonStruct;
+import com.amazon.ion.IonSystem;
+import com.amazon.ion.IonValue;
+import com.amazon.ion.IonWriter;
+import com.amazon.ion.system.IonTextWriterBuilder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.Validate;
+import software.amazon.qldb.doubleentry.helpers.Lane;
+import software.amazon.qldb.doubleentry.helpers.TransactionsHandler;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ * Write every revision of the given documents of a table, as returned by the
+ * history() function, to one Ion text file per document.
+ * </p>
+ *
+ * <p>
+ * The history of a document is read in pages of a fixed number of versions,
+ * one QLDB transaction per page, and every revision is written to the file
+ * as the driver fetches it, so memory use does not depend on the length of
+ * the history. After a page was flushed to disk, the next version and the
+ * length of the file are saved in the checkpoint file of the document. A new
+ * audit into the same directory truncates the files to their checkpointed
+ * length and goes on from there, which also picks up the revisions committed
+ * since.
+ * </p>
+ *
+ * <p>
+ * A bounded number of documents are read at the same time. The document ids
+ * name the files, so only QLDB document ids are accepted.
+ * </p>
+ */
+@Slf4j
+public class HistoryAudit {
+
+    private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+
+    /**
+     * QLDB document ids are 22 characters of base62
+     */
+    private static final Pattern DOCUMENT_ID = Pattern.compile("[0-9A-Za-z]{22}");
+
+    private static final String HISTORY_PAGE = "SELECT * FROM history(%s) AS h "
+            + "WHERE h.metadata.id = ? AND h.metadata.version >= ? AND h.metadata.version < ?";
+
+    private TransactionsHandler transactionsHandler;
+
+    private IonSystem ionSystem;
+
+    private final int pageSize;
+
+    private final int concurrency;
+
+    public HistoryAudit(@NonNull final TransactionsHandler transactionsHandler,
+                        @NonNull final IonSystem ionSystem,
+                        final int pageSize,
+                        final int concurrency) {
+        if (pageSize < 1 || concurrency < 1) {
+            throw new IllegalArgumentException("Page size and concurrency have to be positive");
+        }
+        this.transactionsHandler = transactionsHandler;
+        this.ionSystem = ionSystem;
+        this.pageSize = pageSize;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * @return The number of revisions written by this audit, not counting
+     *         those written by an audit it resumed
+     */
+    public long audit(@NonNull final String tableName,
+                      @NonNull final Collection<String> documentIds,
+                      @NonNull final Path directory) throws IOException {
+        for (final String documentId : documentIds) {
+            Validate.isTrue(DOCUMENT_ID.matcher(documentId).matches(), "Not a QLDB document id: %s", documentId);
+        }
+        Files.createDirectories(directory);
+        final ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        try {
+            final List<Future<Long>> audits = new ArrayList<>();
+            for (final String documentId : documentIds) {
+                audits.add(executor.submit(() -> auditDocument(tableName, documentId, directory)));
+            }
+            long revisions = 0;
+            for (final Future<Long> audit : audits) {
+                revisions += audit.get();
+            }
+            return revisions;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while auditing the history of " + tableName, e);
+        } catch (final ExecutionException e) {
+            throw new IOException("Failed to audit the history of " + tableName, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private long auditDocument(final String tableName,
+                               final String documentId,
+                               final Path directory) throws IOException {
+        final Checkpoint checkpoint = new Checkpoint(ionSystem, directory.resolve(documentId + CHECKPOINT_SUFFIX));
+        final Checkpoint.Position start = checkpoint.get();
+        long version = start.version;
+        long revisions = 0;
+        try (FileChannel channel = FileChannel.open(directory.resolve(documentId + ".ion"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long length = start.length;
+            while (true) {
+                final int written = writePage(tableName, documentId, version, channel, length);
+                channel.force(false);
+                length = channel.size();
+                version += written;
+                revisions += written;
+                checkpoint.save(new Checkpoint.Position(version, length));
+                if (written < pageSize) {
+                    break;
+                }
+            }
+        }
+        log.info("Wrote {} revisions of document {}, up to version {}", revisions, documentId, version - 1);
+        return revisions;
+    }
+
+    /**
+     * Write the revisions of one page at the given offset of the file.
+     *
+     * @return The number of revisions written
+     */
+    private int writePage(final String tableName,
+                          final String documentId,
+                          final long firstVersion,
+                          final FileChannel channel,
+                          final long offset) {
+        final List<IonValue> parameters = new ArrayList<>();
+        parameters.add(ionSystem.newString(documentId));
+        parameters.add(ionSystem.newInt(firstVersion));
+        parameters.add(ionSystem.newInt(firstVersion + pageSize));
+        return transactionsHandler.executeTransaction(Lane.READ, "auditHistory", txn -> {
+            try {
+                // A retried attempt overwrites whatever the failed one wrote
+                channel.truncate(offset);
+                channel.position(offset);
+                final OutputStream output = new BufferedOutputStream(Channels.newOutputStream(channel));
+                // Finish and flush rather than close: closing the writer would close the
+                // channel, which the caller keeps using for the rest of the document
+                final IonWriter writer = IonTextWriterBuilder.standard().build(output);
+                int written = 0;
+                for (final IonValue revision : txn.execute(String.format(HISTORY_PAGE, tableName), parameters)) {
+                    revision.writeTo(writer);
+                    written++;
+                }
+                writer.finish();
+                output.flush();
+                return written;
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, (retryAttempt) -> log.info("Retrying due to OCC conflict..."));
+    }
+
+    /**
+     * The next version to read and the length of the file written so far,
+     * for one document. Saved as an Ion struct, replaced atomically, so a save
+     * costs the same however many documents the audit reads.
+     */
+    private static final class Checkpoint {
+
+        private final IonSystem ionSystem;
+
+        private final Path file;
+
+        private Checkpoint(final IonSystem ionSystem, final Path file) {
+            this.ionSystem = ionSystem;
+            this.file = file;
+        }
+
+        private Position get() throws IOException {
+            if (!Files.exists(file)) {
+                return new Position(0, 0);
+            }
+            final IonStruct position = (IonStruct) ionSystem.singleValue(Files.readAllBytes(file));
+            return new Position(((IonInt) position.get("version")).longValue(),
+                    ((IonInt) position.get("length")).longValue());
+        }
+
+        private void save(final Position position) throws IOException {
+            final IonStruct value = ionSystem.newEmptyStruct();
+            value.put("version", ionSystem.newInt(position.version));
+            value.put("length", ionSystem.newInt(position.length));
+            final Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(temporary, value.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        private static final class Position {
+
+            private final long version;
+
+            private final long length;
+
+            private Position(final long version, final long length) {
+                this.version = version;
+                this.length = length;
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.doubleentry.actions;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Background job which releases authorized holds that were neither captured
+ * nor voided before they expired.
+ * </p>
+ *
+ * <p>
+ * Each sweep first looks up all expired holds, and then releases them
+ * account by account. The expired holds of an account are released in as
+ * few QLDB Transactions as the limit of documents per Transaction allows,
+ * each of which updates the balance documents of the account only once.
+ * </p>
+ */
+@Slf4j
+public class HoldsSweeper {
+
+    private Banking banking;
+
+    private ScheduledExecutorService scheduler;
+
+    public HoldsSweeper(@NonNull final Banking banking) {
+        this.banking = banking;
+    }
+
+    /**
+     * Release all the holds that have expired by now.
+     *
+     * @return The number of holds released
+     */
+    public int sweep() {
+        final Instant now = Instant.now();
+        final Map<String, List<String>> expiredHolds = banking.findExpiredHolds(now);
+        log.info("Found expired holds on {} accounts", expiredHolds.size());
+
+        int released = 0;
+        for (final Map.Entry<String, List<String>> accountHolds : expiredHolds.entrySet()) {
+            try {
+                released += banking.releaseExpiredHolds(accountHolds.getKey(), accountHolds.getValue(), now);
+            } catch (final Exception e) {
+                log.error("Could not release the expired holds of account {}. They will be retried on "
+                        + "the next sweep", accountHolds.getKey(), e);
+            }
+        }
+        return released;
+    }
+
+    /**
+     * Start sweeping periodically on a background thread.
+     */
+    public synchronized void start(final long periodMs) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "holds-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                sweep();
+            } catch (final Exception e) {
+                log.error("Error while sweeping expired holds", e);
+            }
+        }, 0, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
@@ -25,6 +25,8 @@ import com.amazonaws.services.qldb.model.PermissionsMode;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.function.Supplier;
+
 
 /**
  * Create a ledger and wait for it to be active.
@@ -35,9 +37,9 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class CreateLedger {
 
-    private AmazonQLDB client;
+    private final Supplier<AmazonQLDB> client;
 
-    public CreateLedger(@NonNull final AmazonQLDB client) {
+    public CreateLedger(@NonNull final Supplier<AmazonQLDB> client) {
         this.client = client;
     }
 
@@ -48,7 +50,7 @@ public class CreateLedger {
         CreateLedgerRequest request = new CreateLedgerRequest()
                 .withName(ledgerName)
                 .withPermissionsMode(PermissionsMode.ALLOW_ALL);
-        CreateLedgerResult result = client.createLedger(request);
+        CreateLedgerResult result = client.get().createLedger(request);
         return result;
     }
 
@@ -24,6 +24,8 @@ import com.amazonaws.services.qldb.model.DescribeLedgerResult;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.function.Supplier;
+
 /**
  * Describe a QLDB ledger.
  *
@@ -33,9 +35,9 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class DescribeLedger {
 
-    private AmazonQLDB client;
+    private final Supplier<AmazonQLDB> client;
 
-    public DescribeLedger(@NonNull final AmazonQLDB client) {
+    public DescribeLedger(@NonNull final Supplier<AmazonQLDB> client) {
         this.client = client;
     }
 
@@ -44,7 +46,7 @@ public class DescribeLedger {
      */
     public DescribeLedgerResult describe(final String ledgerName) {
         DescribeLedgerRequest request = new DescribeLedgerRequest().withName(ledgerName);
-        DescribeLedgerResult result = client.describeLedger(request);
+        DescribeLedgerResult result = client.get().describeLedger(request);
         return result;
     }
 }
@@ -25,6 +25,7 @@ import com.amazonaws.services.qldb.model.ListLedgersResult;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
@@ -38,9 +39,9 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class ListLedgers {
 
-    private AmazonQLDB client;
+    private final Supplier<AmazonQLDB> client;
 
-    public ListLedgers(@NonNull final AmazonQLDB client) {
+    public ListLedgers(@NonNull final Supplier<AmazonQLDB> client) {
         this.client = client;
     }
     /**
@@ -51,7 +52,7 @@ public class ListLedgers {
         String nextToken = null;
         do {
             ListLedgersRequest request = new ListLedgersRequest().withNextToken(nextToken);
-            ListLedgersResult result = client.listLedgers(request);
+            ListLedgersResult result = client.get().listLedgers(request);
             ledgerSummaries.addAll(result.getLedgers());
             nextToken = result.getNextToken();
         } while (nextToken != null);
@@ -26,12 +26,38 @@ import software.amazon.qldb.doubleentry.Constants;
 import software.amazon.qldb.doubleentry.helpers.IonHelper;
 import software.amazon.qldb.doubleentry.helpers.TransactionsHandler;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Create indexes on the tables
  */
 @Slf4j
 public class CreateIndexes {
 
+    /**
+     * The indexed fields of every table
+     */
+    public static final Map<String, List<String>> INDEXED_FIELDS;
+
+    static {
+        final Map<String, List<String>> indexedFields = new LinkedHashMap<>();
+        indexedFields.put(Constants.BUSINESSES_TABLE_NAME, Collections.singletonList(Constants.BUSINESS_ID_INDEX_NAME));
+        indexedFields.put(Constants.ACCOUNTS_TABLE_NAME,
+                Arrays.asList(Constants.ACCOUNT_ID_INDEX_NAME, Constants.BUSINESS_ID_INDEX_NAME));
+        indexedFields.put(Constants.TRANSACTIONS_TABLE_NAME,
+                Collections.singletonList(Constants.IDEMPOTENCY_KEY_INDEX_NAME));
+        indexedFields.put(Constants.HOLDS_TABLE_NAME,
+                Arrays.asList(Constants.HOLD_ID_INDEX_NAME, Constants.HOLD_STATUS_INDEX_NAME));
+        indexedFields.put(Constants.ACCOUNT_BALANCES_TABLE_NAME,
+                Arrays.asList(Constants.BALANCE_ID_INDEX_NAME, Constants.ACCOUNT_ID_INDEX_NAME));
+        INDEXED_FIELDS = Collections.unmodifiableMap(indexedFields);
+    }
+
     private TransactionsHandler transactionsHandler;
 
     public CreateIndexes(@NonNull final TransactionsHandler transactionsHandler) {
@@ -48,11 +74,16 @@ public class CreateIndexes {
         return IonHelper.toIonValues(result).size();
     }
 
-    public void createAllIndexes() {
-        transactionsHandler.executeTransactionWithNoReturn(txn-> {
-            createIndex(txn, Constants.BUSINESSES_TABLE_NAME, Constants.BUSINESS_ID_INDEX_NAME);
-            createIndex(txn, Constants.ACCOUNTS_TABLE_NAME, Constants.ACCOUNT_ID_INDEX_NAME);
-            createIndex(txn, Constants.ACCOUNTS_TABLE_NAME, Constants.BUSINESS_ID_INDEX_NAME);
+    /**
+     * Create the given indexes of a single table in one transaction, so that
+     * the indexes of several tables can be created in parallel
+     */
+    public void createIndexes(@NonNull final String tableName, @NonNull final Collection<String> fields) {
+        if (fields.isEmpty()) {
+            return;
+        }
+        transactionsHandler.executeTransactionWithNoReturn("createIndexes", txn -> {
+            fields.forEach(field -> createIndex(txn, tableName, field));
         }, (retryAttempt) -> log.info("Retrying due to OCC conflict..."));
     }
 
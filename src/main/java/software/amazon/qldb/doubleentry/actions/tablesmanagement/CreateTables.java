@@ -26,12 +26,23 @@ import software.amazon.qldb.doubleentry.Constants;
 import software.amazon.qldb.doubleentry.helpers.IonHelper;
 import software.amazon.qldb.doubleentry.helpers.TransactionsHandler;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Create tables in the given ledger
  */
 @Slf4j
 public class CreateTables {
 
+    public static final List<String> ALL_TABLES = Collections.unmodifiableList(Arrays.asList(
+            Constants.BUSINESSES_TABLE_NAME,
+            Constants.ACCOUNTS_TABLE_NAME,
+            Constants.TRANSACTIONS_TABLE_NAME,
+            Constants.HOLDS_TABLE_NAME,
+            Constants.ACCOUNT_BALANCES_TABLE_NAME));
+
     private TransactionsHandler transactionsHandler;
 
     public CreateTables(@NonNull final TransactionsHandler transactionsHandler) {
@@ -46,11 +57,13 @@ public class CreateTables {
         return IonHelper.toIonValues(result).size();
     }
 
-    public void createAllTables() {
-        transactionsHandler.executeTransactionWithNoReturn(txn-> {
-            createTable(txn, Constants.BUSINESSES_TABLE_NAME);
-            createTable(txn, Constants.ACCOUNTS_TABLE_NAME);
-            createTable(txn, Constants.TRANSACTIONS_TABLE_NAME);
+    /**
+     * Create a single table in its own transaction, so that several tables
+     * can be created in parallel
+     */
+    public void createTable(@NonNull final String tableName) {
+        transactionsHandler.executeTransactionWithNoReturn("createTable", txn -> {
+            createTable(txn, tableName);
         }, (retryAttempt) -> log.info("Retrying due to OCC conflict..."));
     }
 
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.actions.tablesmanagement;
+
+import com.amazon.ion.IonSequence;
+import com.amazon.ion.IonStruct;
+import com.amazon.ion.IonValue;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.qldb.doubleentry.helpers.IonHelper;
+import software.amazon.qldb.doubleentry.helpers.TransactionsHandler;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read the active tables of the ledger and the fields they are indexed on
+ * from information_schema.user_tables
+ */
+@Slf4j
+public class LedgerSchema {
+
+    private static final String USER_TABLES =
+            "SELECT name, indexes FROM information_schema.user_tables WHERE status = 'ACTIVE'";
+
+    private TransactionsHandler transactionsHandler;
+
+    private IonHelper ionHelper;
+
+    public LedgerSchema(@NonNull final TransactionsHandler transactionsHandler,
+                        @NonNull final IonHelper ionHelper) {
+        this.transactionsHandler = transactionsHandler;
+        this.ionHelper = ionHelper;
+    }
+
+    /**
+     * @return The indexed fields of every active table, by table name
+     */
+    public Map<String, Set<String>> describeTables() {
+        return transactionsHandler.executeTransaction("describeTables", txn -> {
+            final Map<String, Set<String>> tables = new HashMap<>();
+            for (final IonStruct table : ionHelper.toIonStructs(txn.execute(USER_TABLES))) {
+                final Set<String> indexedFields = new HashSet<>();
+                final IonValue indexes = table.get("indexes");
+                if (indexes instanceof IonSequence) {
+                    for (final IonValue index : (IonSequence) indexes) {
+                        // The expression of an index on a field is "[field]"
+                        final String expression =
+                                ionHelper.readIonValue(((IonStruct) index).get("expr"), String.class);
+                        indexedFields.add(expression.replaceAll("^\\[|\\]$", ""));
+                    }
+                }
+                tables.put(ionHelper.readIonValue(table.get("name"), String.class), indexedFields);
+            }
+            log.info("Found the tables {} in the ledger", tables);
+            return tables;
+        }, (retryAttempt) -> log.info("Retrying due to OCC conflict..."));
+    }
+}
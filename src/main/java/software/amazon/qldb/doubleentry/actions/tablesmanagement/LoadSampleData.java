@@ -18,6 +18,7 @@
 
 package software.amazon.qldb.doubleentry.actions.tablesmanagement;
 
+import com.amazon.ion.IonStruct;
 import com.amazon.ion.IonValue;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
@@ -28,8 +29,11 @@ import software.amazon.qldb.doubleentry.helpers.IonHelper;
 import software.amazon.qldb.doubleentry.helpers.SampleData;
 import software.amazon.qldb.doubleentry.helpers.TransactionsHandler;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Load sample data defined in {@link SampleData} into the tables
@@ -54,7 +58,7 @@ public class LoadSampleData {
 
     private List<String> insertDocuments(final TransactionExecutor txn,
                                          final String tableName,
-                                         final List documents) {
+                                         final List<?> documents) {
         final String query = String.format("INSERT INTO %s ?", tableName);
         final IonValue ionDocuments = ionHelper.toIonValue(documents);
 
@@ -66,15 +70,51 @@ public class LoadSampleData {
         return insertedDocumentIds;
     }
 
-    public void loadSampleDataForBusinesses() {
-        transactionsHandler.executeTransactionWithNoReturn(txn -> {
-            insertDocuments(txn, Constants.BUSINESSES_TABLE_NAME, sampleData.getBusinesses());
-        }, (retryAttempt) -> log.info("Retrying due to OCC conflict..."));
+    /**
+     * Insert the sample businesses which are not in the table yet
+     *
+     * @return The number of businesses inserted
+     */
+    public int loadMissingBusinesses() {
+        return loadMissingDocuments(Constants.BUSINESSES_TABLE_NAME, Constants.BUSINESS_ID_INDEX_NAME,
+                sampleData.getBusinesses());
+    }
+
+    /**
+     * Insert the sample accounts which are not in the table yet
+     *
+     * @return The number of accounts inserted
+     */
+    public int loadMissingAccounts() {
+        return loadMissingDocuments(Constants.ACCOUNTS_TABLE_NAME, Constants.ACCOUNT_ID_INDEX_NAME,
+                sampleData.getAccounts());
     }
 
-    public void loadSampleDataForAccounts() {
-        transactionsHandler.executeTransactionWithNoReturn(txn -> {
-            insertDocuments(txn, Constants.ACCOUNTS_TABLE_NAME, sampleData.getAccounts());
+    /**
+     * Insert the documents whose key is not in the table yet, in a single
+     * transaction which first reads the keys of the table
+     */
+    private int loadMissingDocuments(final String tableName, final String keyField, final List<?> documents) {
+        return transactionsHandler.executeTransaction("loadSampleData", txn -> {
+            final Set<String> existingKeys = new HashSet<>();
+            final String query = String.format("SELECT %s FROM %s", keyField, tableName);
+            for (final IonStruct document : ionHelper.toIonStructs(txn.execute(query))) {
+                existingKeys.add(ionHelper.readIonValue(document.get(keyField), String.class));
+            }
+
+            final List<Object> missing = new ArrayList<>();
+            for (final Object document : documents) {
+                final IonStruct ionDocument = (IonStruct) ionHelper.toIonValue(document);
+                if (!existingKeys.contains(ionHelper.readIonValue(ionDocument.get(keyField), String.class))) {
+                    missing.add(document);
+                }
+            }
+            if (!missing.isEmpty()) {
+                insertDocuments(txn, tableName, missing);
+            }
+            log.info("Inserted {} documents into {}, {} were already there",
+                    missing.size(), tableName, documents.size() - missing.size());
+            return missing.size();
         }, (retryAttempt) -> log.info("Retrying due to OCC conflict..."));
     }
 }
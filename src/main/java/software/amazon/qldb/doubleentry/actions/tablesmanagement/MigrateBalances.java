@@ -0,0 +1,162 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.actions.tablesmanagement;
+
+import com.amazon.ion.IonStruct;
+import com.amazon.ion.IonValue;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.qldb.TransactionExecutor;
+import software.amazon.qldb.doubleentry.Constants;
+import software.amazon.qldb.doubleentry.helpers.IonHelper;
+import software.amazon.qldb.doubleentry.helpers.TransactionsHandler;
+import software.amazon.qldb.doubleentry.models.AccountBalance;
+import software.amazon.qldb.doubleentry.models.Balance;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <p>
+ * Migrate the balances of all accounts from the Balances array of the
+ * Accounts documents to one document per account and currency in the
+ * AccountBalances table, which is created with its indexes if it does not
+ * exist yet.
+ * </p>
+ *
+ * <p>
+ * Every account is migrated in its own QLDB Transaction, and balances which
+ * already have a document are skipped, so the migration can be run again
+ * after a failure. It has to run while no transfers are made, since
+ * transfers in the embedded layout keep updating the Balances array. The
+ * array is left in place, but is no longer updated once the application
+ * runs with the per currency layout.
+ * </p>
+ */
+@Slf4j
+public class MigrateBalances {
+
+    private TransactionsHandler transactionsHandler;
+
+    private IonHelper ionHelper;
+
+    public MigrateBalances(@NonNull final TransactionsHandler transactionsHandler,
+                           @NonNull final IonHelper ionHelper) {
+        this.transactionsHandler = transactionsHandler;
+        this.ionHelper = ionHelper;
+    }
+
+    /**
+     * @return The number of AccountBalances documents created
+     */
+    public int migrateAllAccounts() {
+        createAccountBalancesTable();
+
+        final List<String> accountIds = transactionsHandler.executeTransaction("listAccounts", txn -> {
+            final List<String> ids = new ArrayList<>();
+            for (final IonStruct document : ionHelper.toIonStructs(txn.execute("SELECT AccountId FROM Accounts"))) {
+                ids.add(ionHelper.readIonValue(document.get("AccountId"), String.class));
+            }
+            return ids;
+        }, (retryAttempt) -> log.info("Retrying due to OCC conflict..."));
+
+        int created = 0;
+        for (final String accountId : accountIds) {
+            created += migrateAccount(accountId);
+        }
+        log.info("Migrated the balances of {} accounts. Created {} documents in the {} table",
+                accountIds.size(), created, Constants.ACCOUNT_BALANCES_TABLE_NAME);
+        return created;
+    }
+
+    private void createAccountBalancesTable() {
+        final boolean exists = transactionsHandler.executeTransaction("listTables", txn -> {
+            final String query = "SELECT name FROM information_schema.user_tables WHERE status = 'ACTIVE'";
+            for (final IonStruct document : ionHelper.toIonStructs(txn.execute(query))) {
+                final String name = ionHelper.readIonValue(document.get("name"), String.class);
+                if (Constants.ACCOUNT_BALANCES_TABLE_NAME.equals(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }, (retryAttempt) -> log.info("Retrying due to OCC conflict..."));
+        if (exists) {
+            log.info("The {} table already exists", Constants.ACCOUNT_BALANCES_TABLE_NAME);
+            return;
+        }
+
+        log.info("Creating the '{}' table...", Constants.ACCOUNT_BALANCES_TABLE_NAME);
+        transactionsHandler.executeTransactionWithNoReturn(txn ->
+                txn.execute(String.format("CREATE TABLE %s", Constants.ACCOUNT_BALANCES_TABLE_NAME)),
+                (retryAttempt) -> log.info("Retrying due to OCC conflict..."));
+        transactionsHandler.executeTransactionWithNoReturn(txn -> {
+            for (final String indexAttribute : new String[] {
+                    Constants.BALANCE_ID_INDEX_NAME, Constants.ACCOUNT_ID_INDEX_NAME}) {
+                txn.execute(String.format("CREATE INDEX ON %s (%s)",
+                        Constants.ACCOUNT_BALANCES_TABLE_NAME, indexAttribute));
+            }
+        }, (retryAttempt) -> log.info("Retrying due to OCC conflict..."));
+    }
+
+    private int migrateAccount(final String accountId) {
+        return transactionsHandler.executeTransaction("migrateBalances", txn -> {
+            final List<IonValue> parameters = Collections.singletonList(ionHelper.toIonValue(accountId));
+
+            final List<IonStruct> accounts = ionHelper.toIonStructs(
+                    txn.execute("SELECT Balances FROM Accounts WHERE AccountId = ?", parameters));
+            if (1 != accounts.size() || accounts.get(0).get("Balances") == null) {
+                log.error("Expected exactly one account with AccountId {} but found {}", accountId, accounts.size());
+                return 0;
+            }
+
+            final Set<String> migratedCurrencies = new HashSet<>();
+            for (final IonStruct document : ionHelper.toIonStructs(
+                    txn.execute("SELECT Currency FROM AccountBalances WHERE AccountId = ?", parameters))) {
+                migratedCurrencies.add(ionHelper.readIonValue(document.get("Currency"), String.class));
+            }
+
+            final List<AccountBalance> accountBalances = new ArrayList<>();
+            for (final Balance balance : ionHelper.readIonValue(accounts.get(0).get("Balances"), Balance[].class)) {
+                if (!migratedCurrencies.contains(balance.getCurrency())) {
+                    accountBalances.add(AccountBalance.builder()
+                            .balanceId(AccountBalance.balanceId(accountId, balance.getCurrency()))
+                            .accountId(accountId)
+                            .currency(balance.getCurrency())
+                            .currencyBalance(balance.getCurrencyBalance())
+                            .build());
+                }
+            }
+            if (!accountBalances.isEmpty()) {
+                insertAccountBalances(txn, accountBalances);
+            }
+            log.info("Created {} balance documents for account {}", accountBalances.size(), accountId);
+            return accountBalances.size();
+        }, (retryAttempt) -> log.info("Retrying due to OCC conflict..."));
+    }
+
+    private void insertAccountBalances(final TransactionExecutor txn, final List<AccountBalance> accountBalances) {
+        final String query = String.format("INSERT INTO %s ?", Constants.ACCOUNT_BALANCES_TABLE_NAME);
+        final List<IonValue> parameters = Collections.singletonList(ionHelper.toIonValue(accountBalances));
+        txn.execute(query, parameters);
+    }
+}
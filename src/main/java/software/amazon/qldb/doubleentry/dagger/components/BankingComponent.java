@@ -22,16 +22,43 @@ import dagger.Component;
 import software.amazon.qldb.doubleentry.dagger.modules.BankingModule;
 import software.amazon.qldb.doubleentry.dagger.modules.DriverClientModule;
 import software.amazon.qldb.doubleentry.dagger.modules.HelpersModule;
+import software.amazon.qldb.doubleentry.dagger.modules.SetupModule;
 import software.amazon.qldb.doubleentry.dagger.modules.TasksModule;
+import software.amazon.qldb.doubleentry.dagger.modules.VerificationModule;
+import software.amazon.qldb.doubleentry.tasks.AuditAccountHistory;
+import software.amazon.qldb.doubleentry.tasks.JournalAnalytics;
+import software.amazon.qldb.doubleentry.tasks.LoadTest;
+import software.amazon.qldb.doubleentry.tasks.ServeTransfers;
+import software.amazon.qldb.doubleentry.tasks.TransferBenchmark;
 import software.amazon.qldb.doubleentry.tasks.TransferMoney;
+import software.amazon.qldb.doubleentry.tasks.VerifyRevisions;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
 
 @Singleton
-@Component(modules = {TasksModule.class, DriverClientModule.class, HelpersModule.class, BankingModule.class})
+@Component(modules = {TasksModule.class, DriverClientModule.class, HelpersModule.class, BankingModule.class,
+        SetupModule.class, VerificationModule.class})
 public interface BankingComponent {
 
     @Named("transferMoney")
     TransferMoney providesTransferMoney();
+
+    @Named("loadTest")
+    LoadTest providesLoadTest();
+
+    @Named("transferBenchmark")
+    TransferBenchmark providesTransferBenchmark();
+
+    @Named("verifyRevisions")
+    VerifyRevisions providesVerifyRevisions();
+
+    @Named("journalAnalytics")
+    JournalAnalytics providesJournalAnalytics();
+
+    @Named("auditAccountHistory")
+    AuditAccountHistory providesAuditAccountHistory();
+
+    @Named("serveTransfers")
+    ServeTransfers providesServeTransfers();
 }
@@ -23,6 +23,8 @@ import software.amazon.qldb.doubleentry.dagger.modules.SetupModule;
 import software.amazon.qldb.doubleentry.dagger.modules.DriverClientModule;
 import software.amazon.qldb.doubleentry.dagger.modules.HelpersModule;
 import software.amazon.qldb.doubleentry.dagger.modules.TasksModule;
+import software.amazon.qldb.doubleentry.tasks.Bootstrap;
+import software.amazon.qldb.doubleentry.tasks.MigrateToPerCurrencyBalances;
 import software.amazon.qldb.doubleentry.tasks.SetupLedger;
 import software.amazon.qldb.doubleentry.tasks.SetupTables;
 
@@ -36,6 +38,12 @@ public interface SetupComponent {
     @Named("setupLedger")
     SetupLedger providesSetupLedger();
 
+    @Named("bootstrap")
+    Bootstrap providesBootstrap();
+
     @Named("setupTables")
     SetupTables providesSetupTables();
+
+    @Named("migrateToPerCurrencyBalances")
+    MigrateToPerCurrencyBalances providesMigrateToPerCurrencyBalances();
 }
@@ -18,22 +18,119 @@
 
 package software.amazon.qldb.doubleentry.dagger.modules;
 
+import com.amazon.ion.IonSystem;
+import dagger.Lazy;
 import dagger.Module;
 import dagger.Provides;
+import software.amazon.qldb.doubleentry.Constants;
+import software.amazon.qldb.doubleentry.actions.BalanceSnapshotter;
 import software.amazon.qldb.doubleentry.actions.Banking;
+import software.amazon.qldb.doubleentry.actions.HistoryAudit;
+import software.amazon.qldb.doubleentry.actions.HoldsSweeper;
+import software.amazon.qldb.doubleentry.helpers.FundsReservations;
+import software.amazon.qldb.doubleentry.helpers.HedgedReads;
 import software.amazon.qldb.doubleentry.helpers.IonHelper;
 import software.amazon.qldb.doubleentry.helpers.TransactionsHandler;
+import software.amazon.qldb.doubleentry.intake.TransferIntake;
+import software.amazon.qldb.doubleentry.intake.TransferPipeline;
+import software.amazon.qldb.doubleentry.metrics.MetricsRegistry;
+import software.amazon.qldb.doubleentry.models.BalanceLayout;
+import software.amazon.qldb.doubleentry.service.BankingHttpService;
+import software.amazon.qldb.doubleentry.store.LedgerStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
 
 import javax.inject.Named;
+import javax.inject.Singleton;
 
 @Module
 public class BankingModule {
 
     @Provides
+    @Singleton
     @Named("banking")
     public Banking providesBanking(
             @Named("transactionHandler") final TransactionsHandler transactionsHandler,
+            @Named("ionHelper") final IonHelper ionHelper,
+            @Named("fundsReservations") final FundsReservations fundsReservations,
+            @Named("metricsRegistry") final MetricsRegistry metricsRegistry,
+            @Named("balanceLayout") final BalanceLayout balanceLayout,
+            @Named("balanceReadHedging") final HedgedReads balanceReadHedging,
+            @Named("ledgerStore") final Optional<LedgerStore> ledgerStore) {
+        return new Banking(transactionsHandler, ionHelper, fundsReservations, metricsRegistry, balanceLayout,
+                balanceReadHedging, ledgerStore);
+    }
+
+    @Provides
+    @Named("holdsSweeper")
+    public HoldsSweeper providesHoldsSweeper(@Named("banking") final Banking banking) {
+        return new HoldsSweeper(banking);
+    }
+
+    @Provides
+    @Named("balanceSnapshotter")
+    public BalanceSnapshotter providesBalanceSnapshotter(@Named("banking") final Banking banking) {
+        return new BalanceSnapshotter(banking);
+    }
+
+    @Provides
+    @Named("historyAudit")
+    public HistoryAudit providesHistoryAudit(
+            @Named("transactionHandler") final TransactionsHandler transactionsHandler,
+            @Named("ionSystem") final IonSystem ionSystem) {
+        return new HistoryAudit(transactionsHandler, ionSystem, Constants.HISTORY_PAGE_SIZE,
+                Constants.HISTORY_AUDIT_CONCURRENCY);
+    }
+
+    @Provides
+    @Singleton
+    @Named("fundsReservations")
+    public FundsReservations providesFundsReservations() {
+        return new FundsReservations(Constants.FUNDS_RESERVATION_STALENESS_MS);
+    }
+
+    @Provides
+    @Singleton
+    @Named("bankingHttpService")
+    public BankingHttpService providesBankingHttpService(
+            @Named("banking") final Banking banking,
+            @Named("transferIntake") final Lazy<TransferIntake> transferIntake,
+            @Named("transferPipeline") final Lazy<TransferPipeline> transferPipeline,
+            @Named("ionSystem") final IonSystem ionSystem,
             @Named("ionHelper") final IonHelper ionHelper) {
-        return new Banking(transactionsHandler, ionHelper);
+        // The intake only opens its files when the first transfer is submitted to it
+        return new BankingHttpService(banking, transferIntake::get,
+                Boolean.getBoolean(Constants.GROUP_COMMIT_PROPERTY)
+                        ? Optional.of(transferPipeline.get()) : Optional.empty(),
+                ionSystem, ionHelper, Constants.SERVICE_MAX_CONCURRENT_REQUESTS, Constants.SERVICE_MAX_BATCH_SIZE,
+                Constants.SERVICE_MAX_BODY_BYTES);
+    }
+
+    @Provides
+    @Singleton
+    @Named("transferPipeline")
+    public TransferPipeline providesTransferPipeline(@Named("banking") final Banking banking,
+                                                     @Named("metricsRegistry") final MetricsRegistry metricsRegistry) {
+        return new TransferPipeline(banking, Constants.GROUP_COMMIT_RING_SIZE, Constants.GROUP_COMMIT_MAX_BATCH,
+                Constants.GROUP_COMMIT_MAX_DELAY_MICROS, metricsRegistry);
+    }
+
+    @Provides
+    @Singleton
+    @Named("transferIntake")
+    public TransferIntake providesTransferIntake(@Named("banking") final Banking banking,
+                                                 @Named("metricsRegistry") final MetricsRegistry metricsRegistry) {
+        final Path directory = Paths.get(System.getProperty(Constants.INTAKE_DIRECTORY_PROPERTY,
+                Constants.INTAKE_DEFAULT_DIRECTORY));
+        try {
+            return new TransferIntake(banking, directory, Constants.INTAKE_SEGMENT_BYTES,
+                    Constants.INTAKE_RETRY_INITIAL_MS, Constants.INTAKE_RETRY_MAX_MS, metricsRegistry);
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Could not open the transfer intake at " + directory, e);
+        }
     }
 }
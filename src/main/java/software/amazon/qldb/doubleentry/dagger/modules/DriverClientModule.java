@@ -18,13 +18,26 @@
 
 package software.amazon.qldb.doubleentry.dagger.modules;
 
+import com.amazon.ion.IonSystem;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
+import com.amazonaws.regions.Regions;
 import com.amazonaws.services.qldb.AmazonQLDB;
 import com.amazonaws.services.qldb.AmazonQLDBClientBuilder;
 import com.amazonaws.services.qldbsession.AmazonQLDBSessionClientBuilder;
+import dagger.Lazy;
 import dagger.Module;
 import dagger.Provides;
 import software.amazon.qldb.PooledQldbDriver;
 import software.amazon.qldb.doubleentry.Constants;
+import software.amazon.qldb.doubleentry.emulator.LedgerEmulator;
+import software.amazon.qldb.doubleentry.emulator.StatementLatency;
+import software.amazon.qldb.doubleentry.helpers.Lane;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -32,14 +45,37 @@ import javax.inject.Singleton;
 @Module
 public class DriverClientModule {
 
+    /**
+     * The driver of the transfer lane. Transfers wait for a session only
+     * briefly, and fail rather than queue behind a backlog.
+     */
+    @Provides
+    @Singleton
+    @Named("driverForTransfers")
+    public PooledQldbDriver providesTransfersDriver(
+            @Named("qldbSessionClientBuilder") final AmazonQLDBSessionClientBuilder builder) {
+        return buildDriver(builder, Lane.TRANSFER);
+    }
+
+    /**
+     * The driver of the read lane. Reports and audits get a pool of their
+     * own, so however many sessions they take, the transfer lane keeps all of
+     * its sessions.
+     */
     @Provides
     @Singleton
-    @Named("driverForDoubleEntryLedger")
-    public PooledQldbDriver providesQLDBDriver(
+    @Named("driverForReads")
+    public PooledQldbDriver providesReadsDriver(
             @Named("qldbSessionClientBuilder") final AmazonQLDBSessionClientBuilder builder) {
+        return buildDriver(builder, Lane.READ);
+    }
+
+    private static PooledQldbDriver buildDriver(final AmazonQLDBSessionClientBuilder builder, final Lane lane) {
         return PooledQldbDriver.builder()
                 .withLedger(Constants.LEDGER_NAME)
                 .withRetryLimit(Constants.RETRY_LIMIT)
+                .withPoolLimit(lane.sessions())
+                .withPoolTimeout(lane.sessionTimeoutMillis())
                 .withSessionClientBuilder(builder)
                 .build();
     }
@@ -47,8 +83,35 @@ public class DriverClientModule {
     @Provides
     @Singleton
     @Named("qldbSessionClientBuilder")
-    public AmazonQLDBSessionClientBuilder providesSessionClientBuilder() {
-        return AmazonQLDBSessionClientBuilder.standard();
+    public AmazonQLDBSessionClientBuilder providesSessionClientBuilder(
+            @Named("ledgerEmulator") final Lazy<LedgerEmulator> ledgerEmulator) {
+        // Every driver builds its own client, with as many connections as the driver has sessions at most
+        final AmazonQLDBSessionClientBuilder builder = AmazonQLDBSessionClientBuilder.standard()
+                .withClientConfiguration(new ClientConfiguration()
+                        .withMaxConnections(Math.max(Lane.TRANSFER.sessions(), Lane.READ.sessions())));
+        if (!Constants.LEDGER_EMULATOR.equals(System.getProperty(Constants.LEDGER_PROPERTY))) {
+            return builder;
+        }
+        // The emulator does not check the signature of the requests, any credentials will do
+        return builder
+                .withEndpointConfiguration(new EndpointConfiguration(
+                        ledgerEmulator.get().getEndpoint().toString(), Regions.US_EAST_1.getName()))
+                .withCredentials(new AWSStaticCredentialsProvider(
+                        new BasicAWSCredentials("emulator", "emulator")));
+    }
+
+    @Provides
+    @Singleton
+    @Named("ledgerEmulator")
+    public LedgerEmulator providesLedgerEmulator(@Named("ionSystem") final IonSystem ionSystem) {
+        final LedgerEmulator ledgerEmulator = new LedgerEmulator(ionSystem,
+                StatementLatency.parse(System.getProperty(Constants.EMULATOR_LATENCY_PROPERTY, "")));
+        try {
+            ledgerEmulator.start(0);
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Could not start the ledger emulator", e);
+        }
+        return ledgerEmulator;
     }
 
     @Provides
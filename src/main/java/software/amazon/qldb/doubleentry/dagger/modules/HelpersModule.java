@@ -18,38 +18,153 @@
 
 package software.amazon.qldb.doubleentry.dagger.modules;
 
+import com.amazon.ion.IonSystem;
 import com.amazon.ion.system.IonSystemBuilder;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
 import com.fasterxml.jackson.dataformat.ion.IonObjectMapper;
 import com.fasterxml.jackson.dataformat.ion.ionvalue.IonValueMapper;
+import dagger.Lazy;
 import dagger.Module;
 import dagger.Provides;
+import lombok.extern.slf4j.Slf4j;
 import software.amazon.qldb.PooledQldbDriver;
+import software.amazon.qldb.doubleentry.Constants;
 import software.amazon.qldb.doubleentry.actions.tablesmanagement.LoadSampleData;
+import software.amazon.qldb.doubleentry.helpers.AimdLimiter;
+import software.amazon.qldb.doubleentry.helpers.HedgedReads;
 import software.amazon.qldb.doubleentry.helpers.IonHelper;
+import software.amazon.qldb.doubleentry.helpers.Lane;
 import software.amazon.qldb.doubleentry.helpers.SampleData;
 import software.amazon.qldb.doubleentry.helpers.TransactionsHandler;
+import software.amazon.qldb.doubleentry.journal.JournalExportReader;
+import software.amazon.qldb.doubleentry.metrics.MetricsHttpServer;
+import software.amazon.qldb.doubleentry.metrics.MetricsLogReporter;
+import software.amazon.qldb.doubleentry.metrics.MetricsRegistry;
+import software.amazon.qldb.doubleentry.models.BalanceLayout;
+import software.amazon.qldb.doubleentry.store.EmbeddedLedgerStore;
+import software.amazon.qldb.doubleentry.store.LedgerStore;
+import software.amazon.qldb.doubleentry.store.MappedJournal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
 
+@Slf4j
 @Module
 public class HelpersModule {
 
     @Provides
+    @Singleton
     @Named("transactionHandler")
     public TransactionsHandler providesTransactionHandler(
-            @Named("driverForDoubleEntryLedger") final PooledQldbDriver pooledQldbDriver) {
-        return new TransactionsHandler(pooledQldbDriver);
+            @Named("driverForTransfers") final Lazy<PooledQldbDriver> transfersDriver,
+            @Named("driverForReads") final Lazy<PooledQldbDriver> readsDriver,
+            @Named("metricsRegistry") final MetricsRegistry metricsRegistry) {
+        // A driver, and with it the session client or the emulator, is only built by the first transaction
+        final Map<Lane, Supplier<PooledQldbDriver>> drivers = new EnumMap<>(Lane.class);
+        drivers.put(Lane.TRANSFER, transfersDriver::get);
+        drivers.put(Lane.READ, readsDriver::get);
+        final Map<Lane, AimdLimiter> limiters = new EnumMap<>(Lane.class);
+        for (final Lane lane : Lane.values()) {
+            limiters.put(lane, new AimdLimiter(lane.label(), Math.min(Constants.INITIAL_CONCURRENCY_LIMIT,
+                    lane.sessions()), 1, lane.sessions(), metricsRegistry));
+        }
+        return new TransactionsHandler(drivers, limiters, metricsRegistry);
+    }
+
+    @Provides
+    @Singleton
+    @Named("balanceLayout")
+    public BalanceLayout providesBalanceLayout() {
+        return BalanceLayout.fromName(System.getProperty(Constants.BALANCE_LAYOUT_PROPERTY));
+    }
+
+    @Provides
+    @Singleton
+    @Named("balanceReadHedging")
+    public HedgedReads providesBalanceReadHedging(@Named("metricsRegistry") final MetricsRegistry metricsRegistry) {
+        final String percentile = System.getProperty(Constants.HEDGE_PERCENTILE_PROPERTY);
+        return new HedgedReads("getBalancesForAccount", Boolean.getBoolean(Constants.HEDGED_READS_PROPERTY),
+                percentile == null ? Constants.HEDGE_PERCENTILE : Double.parseDouble(percentile),
+                Constants.HEDGE_MAX_RATIO, Constants.HEDGE_MIN_SAMPLES, Constants.HEDGE_DELAY_REFRESH_MS,
+                Lane.READ.sessions(), metricsRegistry);
+    }
+
+    @Provides
+    @Singleton
+    @Named("ledgerStore")
+    public Optional<LedgerStore> providesLedgerStore(@Named("sampleData") final SampleData sampleData) {
+        if (!Constants.LEDGER_STORE_EMBEDDED.equals(System.getProperty(Constants.LEDGER_STORE_PROPERTY))) {
+            return Optional.empty();
+        }
+        final Path path = Paths.get(System.getProperty(Constants.EMBEDDED_STORE_PATH_PROPERTY,
+                Constants.EMBEDDED_STORE_DEFAULT_PATH));
+        final EmbeddedLedgerStore store;
+        try {
+            store = new EmbeddedLedgerStore(new MappedJournal(path, Constants.EMBEDDED_STORE_SEGMENT_BYTES));
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Could not open the ledger store at " + path, e);
+        }
+        // A new store starts with the sample accounts, like a new ledger after SetupTables
+        if (store.getAccountIds().isEmpty()) {
+            sampleData.getAccounts().forEach(account -> store.openAccount(account.getAccountId(),
+                    account.getBalances()));
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                store.close();
+            } catch (final IOException e) {
+                log.error("Could not close the ledger store", e);
+            }
+        }));
+        return Optional.of(store);
+    }
+
+    @Provides
+    @Singleton
+    @Named("metricsRegistry")
+    public MetricsRegistry providesMetricsRegistry() {
+        return new MetricsRegistry();
+    }
+
+    @Provides
+    @Singleton
+    @Named("metricsHttpServer")
+    public MetricsHttpServer providesMetricsHttpServer(
+            @Named("metricsRegistry") final MetricsRegistry metricsRegistry) {
+        return new MetricsHttpServer(metricsRegistry);
+    }
+
+    @Provides
+    @Singleton
+    @Named("metricsLogReporter")
+    public MetricsLogReporter providesMetricsLogReporter(
+            @Named("metricsRegistry") final MetricsRegistry metricsRegistry) {
+        return new MetricsLogReporter(metricsRegistry);
     }
 
 
+    @Provides
+    @Singleton
+    @Named("ionSystem")
+    public IonSystem providesIonSystem() {
+        return IonSystemBuilder.standard().build();
+    }
+
     @Provides
     @Singleton
     @Named("ionObjectMapper")
-    public IonObjectMapper providesIonObjectMapper() {
-        final IonObjectMapper mapper = new IonValueMapper(IonSystemBuilder.standard().build());
+    public IonObjectMapper providesIonObjectMapper(@Named("ionSystem") final IonSystem ionSystem) {
+        final IonObjectMapper mapper = new IonValueMapper(ionSystem);
         mapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
         mapper.setAnnotationIntrospector(new JacksonAnnotationIntrospector());
         return mapper;
@@ -58,8 +173,10 @@ public class HelpersModule {
     @Provides
     @Singleton
     @Named("ionHelper")
-    public IonHelper providesIonHelper(@Named("ionObjectMapper") final IonObjectMapper ionObjectMapper) {
-        final IonHelper ionHelper = new IonHelper(ionObjectMapper);
+    public IonHelper providesIonHelper(@Named("ionObjectMapper") final IonObjectMapper ionObjectMapper,
+                                       @Named("ionSystem") final IonSystem ionSystem,
+                                       @Named("metricsRegistry") final MetricsRegistry metricsRegistry) {
+        final IonHelper ionHelper = new IonHelper(ionObjectMapper, ionSystem, metricsRegistry);
         return ionHelper;
     }
 
@@ -80,4 +197,13 @@ public class HelpersModule {
             @Named("ionHelper") final IonHelper ionHelper) {
         return new LoadSampleData(transactionsHandler, sampleData, ionHelper);
     }
+
+    @Provides
+    @Singleton
+    @Named("journalExportReader")
+    public JournalExportReader providesJournalExportReader(@Named("ionSystem") final IonSystem ionSystem,
+                                                           @Named("ionHelper") final IonHelper ionHelper) {
+        return new JournalExportReader(ionSystem, ionHelper, Runtime.getRuntime().availableProcessors(),
+                Constants.JOURNAL_QUEUE_CAPACITY);
+    }
 }
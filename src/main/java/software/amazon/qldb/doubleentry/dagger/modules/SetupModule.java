@@ -20,6 +20,7 @@ package software.amazon.qldb.doubleentry.dagger.modules;
 
 
 import com.amazonaws.services.qldb.AmazonQLDB;
+import dagger.Lazy;
 import dagger.Module;
 import dagger.Provides;
 import software.amazon.qldb.doubleentry.actions.ledgermanagement.CreateLedger;
@@ -27,6 +28,9 @@ import software.amazon.qldb.doubleentry.actions.ledgermanagement.DescribeLedger;
 import software.amazon.qldb.doubleentry.actions.ledgermanagement.ListLedgers;
 import software.amazon.qldb.doubleentry.actions.tablesmanagement.CreateIndexes;
 import software.amazon.qldb.doubleentry.actions.tablesmanagement.CreateTables;
+import software.amazon.qldb.doubleentry.actions.tablesmanagement.LedgerSchema;
+import software.amazon.qldb.doubleentry.actions.tablesmanagement.MigrateBalances;
+import software.amazon.qldb.doubleentry.helpers.IonHelper;
 import software.amazon.qldb.doubleentry.helpers.TransactionsHandler;
 
 import javax.inject.Named;
@@ -38,22 +42,22 @@ public class SetupModule {
     @Provides
     @Singleton
     @Named("createLedger")
-    CreateLedger providesCreateLedger(@Named("qldbClient") AmazonQLDB client) {
-        return new CreateLedger(client);
+    CreateLedger providesCreateLedger(@Named("qldbClient") Lazy<AmazonQLDB> client) {
+        return new CreateLedger(client::get);
     }
 
     @Provides
     @Singleton
     @Named("describeLedger")
-    DescribeLedger providesDescribeLedger(@Named("qldbClient") AmazonQLDB client) {
-        return new DescribeLedger(client);
+    DescribeLedger providesDescribeLedger(@Named("qldbClient") Lazy<AmazonQLDB> client) {
+        return new DescribeLedger(client::get);
     }
 
     @Provides
     @Singleton
     @Named("listLedgers")
-    ListLedgers providesListLedgers(@Named("qldbClient") AmazonQLDB client) {
-        return new ListLedgers(client);
+    ListLedgers providesListLedgers(@Named("qldbClient") Lazy<AmazonQLDB> client) {
+        return new ListLedgers(client::get);
     }
 
     @Provides
@@ -69,4 +73,21 @@ public class SetupModule {
     CreateIndexes providesCreateIndexes(@Named("transactionHandler") final TransactionsHandler transactionsHandler) {
         return new CreateIndexes(transactionsHandler);
     }
+
+    @Provides
+    @Singleton
+    @Named("ledgerSchema")
+    LedgerSchema providesLedgerSchema(@Named("transactionHandler") final TransactionsHandler transactionsHandler,
+                                      @Named("ionHelper") final IonHelper ionHelper) {
+        return new LedgerSchema(transactionsHandler, ionHelper);
+    }
+
+    @Provides
+    @Singleton
+    @Named("migrateBalances")
+    MigrateBalances providesMigrateBalances(
+            @Named("transactionHandler") final TransactionsHandler transactionsHandler,
+            @Named("ionHelper") final IonHelper ionHelper) {
+        return new MigrateBalances(transactionsHandler, ionHelper);
+    }
 }
@@ -20,16 +20,40 @@ package software.amazon.qldb.doubleentry.dagger.modules;
 
 import dagger.Module;
 import dagger.Provides;
+import software.amazon.qldb.doubleentry.actions.BalanceSnapshotter;
 import software.amazon.qldb.doubleentry.actions.Banking;
+import software.amazon.qldb.doubleentry.actions.HistoryAudit;
+import software.amazon.qldb.doubleentry.actions.HoldsSweeper;
 import software.amazon.qldb.doubleentry.actions.ledgermanagement.CreateLedger;
 import software.amazon.qldb.doubleentry.actions.ledgermanagement.DescribeLedger;
 import software.amazon.qldb.doubleentry.actions.ledgermanagement.ListLedgers;
 import software.amazon.qldb.doubleentry.actions.tablesmanagement.CreateIndexes;
 import software.amazon.qldb.doubleentry.actions.tablesmanagement.CreateTables;
+import software.amazon.qldb.doubleentry.actions.tablesmanagement.LedgerSchema;
 import software.amazon.qldb.doubleentry.actions.tablesmanagement.LoadSampleData;
+import software.amazon.qldb.doubleentry.actions.tablesmanagement.MigrateBalances;
+import software.amazon.qldb.doubleentry.helpers.IonHelper;
+import software.amazon.qldb.doubleentry.helpers.TransactionsHandler;
+import software.amazon.qldb.doubleentry.journal.JournalExportReader;
+import software.amazon.qldb.doubleentry.metrics.MetricsHttpServer;
+import software.amazon.qldb.doubleentry.metrics.MetricsLogReporter;
+import software.amazon.qldb.doubleentry.metrics.MetricsRegistry;
+import software.amazon.qldb.doubleentry.models.BalanceLayout;
+import software.amazon.qldb.doubleentry.service.BankingHttpService;
+import software.amazon.qldb.doubleentry.tasks.AuditAccountHistory;
+import software.amazon.qldb.doubleentry.tasks.Bootstrap;
+import software.amazon.qldb.doubleentry.tasks.JournalAnalytics;
+import software.amazon.qldb.doubleentry.tasks.LoadTest;
+import software.amazon.qldb.doubleentry.tasks.MigrateToPerCurrencyBalances;
+import software.amazon.qldb.doubleentry.tasks.ServeTransfers;
 import software.amazon.qldb.doubleentry.tasks.SetupLedger;
 import software.amazon.qldb.doubleentry.tasks.SetupTables;
+import software.amazon.qldb.doubleentry.tasks.TransferBenchmark;
 import software.amazon.qldb.doubleentry.tasks.TransferMoney;
+import software.amazon.qldb.doubleentry.tasks.VerifyRevisions;
+import software.amazon.qldb.doubleentry.verification.LedgerProofs;
+import software.amazon.qldb.doubleentry.verification.ProofFiles;
+import software.amazon.qldb.doubleentry.verification.ProofVerifier;
 
 import javax.inject.Named;
 
@@ -46,15 +70,89 @@ public class TasksModule {
 
     @Provides
     @Named("setupTables")
-    public SetupTables providesSetupTables(@Named("createTables") final CreateTables createTables,
+    public SetupTables providesSetupTables(@Named("ledgerSchema") final LedgerSchema ledgerSchema,
+                                           @Named("createTables") final CreateTables createTables,
                                            @Named("createIndexes") final CreateIndexes createIndexes,
-                                           @Named("loadSampleData") final LoadSampleData loadSampleData) {
-        return new SetupTables(createTables, createIndexes,loadSampleData);
+                                           @Named("loadSampleData") final LoadSampleData loadSampleData,
+                                           @Named("migrateBalances") final MigrateBalances migrateBalances,
+                                           @Named("balanceLayout") final BalanceLayout balanceLayout) {
+        return new SetupTables(ledgerSchema, createTables, createIndexes, loadSampleData, migrateBalances,
+                balanceLayout);
+    }
+
+    @Provides
+    @Named("bootstrap")
+    public Bootstrap providesBootstrap(@Named("setupLedger") final SetupLedger setupLedger,
+                                       @Named("setupTables") final SetupTables setupTables) {
+        return new Bootstrap(setupLedger, setupTables);
+    }
+
+    @Provides
+    @Named("migrateToPerCurrencyBalances")
+    public MigrateToPerCurrencyBalances providesMigrateToPerCurrencyBalances(
+            @Named("setupTables") final SetupTables setupTables,
+            @Named("migrateBalances") final MigrateBalances migrateBalances) {
+        return new MigrateToPerCurrencyBalances(setupTables, migrateBalances);
     }
 
     @Provides
     @Named("transferMoney")
-    public TransferMoney providesTransferMoney(@Named("banking") final Banking banking) {
-        return new TransferMoney(banking);
+    public TransferMoney providesTransferMoney(
+            @Named("banking") final Banking banking,
+            @Named("holdsSweeper") final HoldsSweeper holdsSweeper,
+            @Named("balanceSnapshotter") final BalanceSnapshotter balanceSnapshotter,
+            @Named("metricsHttpServer") final MetricsHttpServer metricsHttpServer,
+            @Named("metricsLogReporter") final MetricsLogReporter metricsLogReporter) {
+        return new TransferMoney(banking, holdsSweeper, balanceSnapshotter, metricsHttpServer, metricsLogReporter);
+    }
+
+    @Provides
+    @Named("loadTest")
+    public LoadTest providesLoadTest(@Named("banking") final Banking banking,
+                                     @Named("setupTables") final SetupTables setupTables,
+                                     @Named("metricsLogReporter") final MetricsLogReporter metricsLogReporter) {
+        return new LoadTest(banking, setupTables, metricsLogReporter);
+    }
+
+    @Provides
+    @Named("transferBenchmark")
+    public TransferBenchmark providesTransferBenchmark(
+            @Named("transactionHandler") final TransactionsHandler transactionsHandler,
+            @Named("ionHelper") final IonHelper ionHelper,
+            @Named("balanceLayout") final BalanceLayout balanceLayout,
+            @Named("setupTables") final SetupTables setupTables,
+            @Named("metricsRegistry") final MetricsRegistry metricsRegistry) {
+        return new TransferBenchmark(transactionsHandler, ionHelper, balanceLayout, setupTables, metricsRegistry);
+    }
+
+    @Provides
+    @Named("verifyRevisions")
+    public VerifyRevisions providesVerifyRevisions(@Named("proofVerifier") final ProofVerifier proofVerifier,
+                                                   @Named("proofFiles") final ProofFiles proofFiles,
+                                                   @Named("ledgerProofs") final LedgerProofs ledgerProofs) {
+        return new VerifyRevisions(proofVerifier, proofFiles, ledgerProofs);
+    }
+
+    @Provides
+    @Named("journalAnalytics")
+    public JournalAnalytics providesJournalAnalytics(
+            @Named("journalExportReader") final JournalExportReader journalExportReader) {
+        return new JournalAnalytics(journalExportReader);
+    }
+
+    @Provides
+    @Named("auditAccountHistory")
+    public AuditAccountHistory providesAuditAccountHistory(@Named("historyAudit") final HistoryAudit historyAudit) {
+        return new AuditAccountHistory(historyAudit);
+    }
+
+    @Provides
+    @Named("serveTransfers")
+    public ServeTransfers providesServeTransfers(
+            @Named("bankingHttpService") final BankingHttpService bankingHttpService,
+            @Named("banking") final Banking banking,
+            @Named("setupTables") final SetupTables setupTables,
+            @Named("metricsHttpServer") final MetricsHttpServer metricsHttpServer) {
+        return new ServeTransfers(bankingHttpService, banking, setupTables, metricsHttpServer);
     }
 }
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.dagger.modules;
+
+import com.amazon.ion.IonSystem;
+import com.amazonaws.services.qldb.AmazonQLDB;
+import dagger.Lazy;
+import dagger.Module;
+import dagger.Provides;
+import software.amazon.qldb.doubleentry.Constants;
+import software.amazon.qldb.doubleentry.helpers.IonHelper;
+import software.amazon.qldb.doubleentry.helpers.TransactionsHandler;
+import software.amazon.qldb.doubleentry.verification.LedgerProofs;
+import software.amazon.qldb.doubleentry.verification.ProofFiles;
+import software.amazon.qldb.doubleentry.verification.ProofVerifier;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+@Module
+public class VerificationModule {
+
+    @Provides
+    @Singleton
+    @Named("proofVerifier")
+    public ProofVerifier providesProofVerifier() {
+        return new ProofVerifier(Constants.MERKLE_PARENTS_CACHE_SIZE);
+    }
+
+    @Provides
+    @Singleton
+    @Named("proofFiles")
+    public ProofFiles providesProofFiles(@Named("ionSystem") final IonSystem ionSystem) {
+        return new ProofFiles(ionSystem);
+    }
+
+    @Provides
+    @Singleton
+    @Named("ledgerProofs")
+    public LedgerProofs providesLedgerProofs(
+            @Named("qldbClient") final Lazy<AmazonQLDB> client,
+            @Named("transactionHandler") final TransactionsHandler transactionsHandler,
+            @Named("ionHelper") final IonHelper ionHelper,
+            @Named("ionSystem") final IonSystem ionSystem) {
+        return new LedgerProofs(client::get, transactionsHandler, ionHelper, ionSystem);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.emulator;
+
+import com.amazon.ion.IonStruct;
+import com.amazon.ion.IonValue;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A comparison of a document field with an operand, e.g. "AccountId = ?", or
+ * a test of a field against a list of operands, e.g. "AccountId IN (?, ?)".
+ * Conditions of a WHERE clause are always combined with AND.
+ */
+@Getter
+final class Condition {
+
+    enum Operator {
+        EQUAL, NOT_EQUAL, LESS, LESS_OR_EQUAL, GREATER, GREATER_OR_EQUAL, IN
+    }
+
+    private final String path;
+
+    private final Operator operator;
+
+    private final Operand operand;
+
+    private final List<Operand> operands;
+
+    Condition(final String path, final Operator operator, final Operand operand) {
+        this.path = path;
+        this.operator = operator;
+        this.operand = operand;
+        this.operands = Collections.singletonList(operand);
+    }
+
+    /**
+     * An IN condition, which holds if the field equals any of the operands
+     */
+    Condition(final String path, final List<Operand> operands) {
+        this.path = path;
+        this.operator = Operator.IN;
+        this.operand = null;
+        this.operands = Collections.unmodifiableList(new ArrayList<>(operands));
+    }
+
+    boolean isEquality() {
+        return operator == Operator.EQUAL;
+    }
+
+    boolean isIn() {
+        return operator == Operator.IN;
+    }
+
+    /**
+     * The values of the operands, a single one unless this is an IN condition
+     */
+    List<IonValue> values(final List<IonValue> parameters) {
+        final List<IonValue> values = new ArrayList<>(operands.size());
+        operands.forEach(each -> values.add(each.value(parameters)));
+        return values;
+    }
+
+    boolean matches(final IonStruct document, final List<IonValue> parameters) {
+        if (isIn()) {
+            final IonValue field = IonValues.get(document, path);
+            return values(parameters).stream().anyMatch(value -> IonValues.equal(field, value));
+        }
+        return matchesValue(document, operand.value(parameters));
+    }
+
+    /**
+     * Evaluate the condition with an operand value which was resolved before.
+     */
+    boolean matchesValue(final IonStruct document, final IonValue value) {
+        final IonValue field = IonValues.get(document, path);
+        switch (operator) {
+            case EQUAL:
+            case IN:
+                return IonValues.equal(field, value);
+            case NOT_EQUAL:
+                return IonValues.compare(field, value) != null && !IonValues.equal(field, value);
+            default:
+                final Integer comparison = IonValues.compare(field, value);
+                return comparison != null && test(comparison);
+        }
+    }
+
+    private boolean test(final int comparison) {
+        switch (operator) {
+            case LESS:
+                return comparison < 0;
+            case LESS_OR_EQUAL:
+                return comparison <= 0;
+            case GREATER:
+                return comparison > 0;
+            case GREATER_OR_EQUAL:
+                return comparison >= 0;
+            default:
+                throw new IllegalStateException("Not an ordering operator " + operator);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.emulator;
+
+import com.amazon.ion.IonStruct;
+import com.amazon.ion.IonValue;
+import lombok.AllArgsConstructor;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * CREATE TABLE name
+ */
+@AllArgsConstructor
+class CreateTableStatement implements Statement {
+
+    private final String tableName;
+
+    @Override
+    public String getKeyword() {
+        return "CREATE";
+    }
+
+    @Override
+    public List<IonValue> execute(final EmulatedTransaction transaction, final List<IonValue> parameters) {
+        if (transaction.hasTable(tableName)) {
+            throw EmulatorException.badRequest("Table %s already exists", tableName);
+        }
+        transaction.addSchemaChange(ledger -> ledger.createTable(tableName));
+
+        final IonStruct result = transaction.getIonSystem().newEmptyStruct();
+        result.put("tableId", transaction.getIonSystem().newString(Identifiers.next()));
+        return Collections.singletonList(result);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.emulator;
+
+import com.amazon.ion.IonStruct;
+import lombok.ToString;
+import lombok.Value;
+
+import java.time.Instant;
+
+/**
+ * <p>
+ * One committed revision of a document. Every revision links to the one it
+ * replaced, so the chain starting at the latest revision is the history of
+ * the document.
+ * </p>
+ *
+ * <p>
+ * The data is read-only and shared by all transactions reading the revision.
+ * </p>
+ */
+@Value
+public class DocumentRevision {
+
+    String documentId;
+
+    long version;
+
+    String transactionId;
+
+    Instant transactionTime;
+
+    /**
+     * The position of the committing transaction in the commit order of the
+     * ledger
+     */
+    long commitSequence;
+
+    IonStruct data;
+
+    @ToString.Exclude
+    DocumentRevision previous;
+
+    /**
+     * The revision a transaction which started after the given commit sequence
+     * sees, or null if the document did not exist yet.
+     */
+    DocumentRevision asOf(final long sequence) {
+        DocumentRevision revision = this;
+        while (revision != null && revision.commitSequence > sequence) {
+            revision = revision.previous;
+        }
+        return revision;
+    }
+}
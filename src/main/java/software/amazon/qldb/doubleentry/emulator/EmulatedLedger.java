@@ -0,0 +1,176 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.emulator;
+
+import com.amazon.ion.IonStruct;
+import com.amazon.ion.IonSystem;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * The state of one emulated ledger: its tables and the commit order of the
+ * transactions on it.
+ * </p>
+ *
+ * <p>
+ * Transactions run concurrently against snapshots and only serialize on
+ * commit, where they are validated against the changes committed since
+ * their snapshot and rejected with an OCC conflict if they overlap, the
+ * same way QLDB does it.
+ * </p>
+ */
+public class EmulatedLedger {
+
+    @Getter
+    private final String name;
+
+    @Getter(AccessLevel.PACKAGE)
+    private final IonSystem ionSystem;
+
+    private final ConcurrentMap<String, EmulatedTable> tables = new ConcurrentHashMap<>();
+
+    private final Map<String, EmulatedTransaction> openTransactions = new ConcurrentHashMap<>();
+
+    private final Lock commitLock = new ReentrantLock();
+
+    private volatile long committedSequence;
+
+    private final LongAdder commits = new LongAdder();
+
+    private final LongAdder occConflicts = new LongAdder();
+
+    EmulatedLedger(final String name, final IonSystem ionSystem) {
+        this.name = name;
+        this.ionSystem = ionSystem;
+    }
+
+    /**
+     * The number of transactions committed on this ledger
+     */
+    public long getCommits() {
+        return commits.sum();
+    }
+
+    /**
+     * The number of commits rejected with an OCC conflict
+     */
+    public long getOccConflicts() {
+        return occConflicts.sum();
+    }
+
+    public Collection<String> getTableNames() {
+        return new ArrayList<>(tables.keySet());
+    }
+
+    EmulatedTable getTable(final String tableName) {
+        return tables.get(tableName);
+    }
+
+    EmulatedTransaction startTransaction() {
+        // Taking the snapshot and registering the transaction under the commit
+        // lock guarantees no commit forgets changes the transaction needs
+        commitLock.lock();
+        try {
+            final EmulatedTransaction transaction = new EmulatedTransaction(this, committedSequence);
+            openTransactions.put(transaction.getTransactionId(), transaction);
+            return transaction;
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    void abort(final EmulatedTransaction transaction) {
+        openTransactions.remove(transaction.getTransactionId());
+    }
+
+    void commit(final EmulatedTransaction transaction) {
+        commitLock.lock();
+        try {
+            if (openTransactions.remove(transaction.getTransactionId()) == null) {
+                throw EmulatorException.invalidSession("Transaction %s is not open", transaction.getTransactionId());
+            }
+
+            for (final String tableName : transaction.getTouchedTables()) {
+                final EmulatedTable table = tables.get(tableName);
+                if (table == null) {
+                    continue;
+                }
+                final Collection<String> changed = table.getChangedAfter(transaction.getSnapshot());
+                if (!changed.isEmpty() && transaction.conflictsWith(table, changed)) {
+                    occConflicts.increment();
+                    throw new EmulatorException(EmulatorException.OCC_CONFLICT, String.format(
+                            "Optimistic concurrency control (OCC) failure encountered while committing "
+                                    + "transaction %s", transaction.getTransactionId()));
+                }
+            }
+
+            if (!transaction.getWrites().isEmpty() || !transaction.getSchemaChanges().isEmpty()) {
+                apply(transaction, committedSequence + 1);
+            }
+            commits.increment();
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    void createTable(final String tableName) {
+        tables.putIfAbsent(tableName, new EmulatedTable(tableName));
+    }
+
+    private void apply(final EmulatedTransaction transaction, final long sequence) {
+        transaction.getSchemaChanges().forEach(schemaChange -> schemaChange.accept(this));
+
+        final Instant transactionTime = Instant.now();
+        final Map<String, List<DocumentRevision>> revisionsByTable = new LinkedHashMap<>();
+        for (final Map.Entry<EmulatedTransaction.DocumentKey, IonStruct> write : transaction.getWrites().entrySet()) {
+            final String tableName = write.getKey().getTableName();
+            final String documentId = write.getKey().getDocumentId();
+            final DocumentRevision previous = tables.get(tableName).getLatest(documentId);
+            final IonStruct data = write.getValue();
+            data.makeReadOnly();
+            revisionsByTable.computeIfAbsent(tableName, name -> new ArrayList<>()).add(new DocumentRevision(
+                    documentId, previous == null ? 0 : previous.getVersion() + 1,
+                    transaction.getTransactionId(), transactionTime, sequence, data, previous));
+        }
+        revisionsByTable.forEach((tableName, revisions) -> tables.get(tableName).apply(revisions, sequence));
+
+        // Publishing the sequence makes the revisions visible to new transactions
+        committedSequence = sequence;
+
+        final long oldestSnapshot = openTransactions.values().stream()
+                .mapToLong(EmulatedTransaction::getSnapshot)
+                .min()
+                .orElse(sequence);
+        tables.values().forEach(table -> table.trimChanges(oldestSnapshot));
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.emulator;
+
+import com.amazon.ion.IonValue;
+import lombok.Getter;
+import lombok.Value;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * A QLDB session on an emulated ledger. It runs at most one transaction at a
+ * time, and keeps the pages of its results which were not fetched yet.
+ * </p>
+ *
+ * <p>
+ * The driver uses a session from one thread at a time, the synchronization
+ * only protects against a misbehaving client.
+ * </p>
+ */
+class EmulatedSession {
+
+    static final int PAGE_SIZE = 200;
+
+    @Getter
+    private final String sessionToken = Identifiers.next();
+
+    private final EmulatedLedger ledger;
+
+    private final StatementLatency statementLatency;
+
+    private EmulatedTransaction transaction;
+
+    private final Map<String, List<IonValue>> pendingPages = new HashMap<>();
+
+    EmulatedSession(final EmulatedLedger ledger, final StatementLatency statementLatency) {
+        this.ledger = ledger;
+        this.statementLatency = statementLatency;
+    }
+
+    synchronized String startTransaction() {
+        abort();
+        transaction = ledger.startTransaction();
+        return transaction.getTransactionId();
+    }
+
+    synchronized Page execute(final String transactionId,
+                              final Statement statement,
+                              final List<IonValue> parameters) {
+        final EmulatedTransaction current = getTransaction(transactionId);
+        statementLatency.await(statement.getKeyword());
+        return toPage(statement.execute(current, parameters));
+    }
+
+    synchronized Page fetchPage(final String transactionId, final String nextPageToken) {
+        getTransaction(transactionId);
+        final List<IonValue> values = pendingPages.remove(nextPageToken);
+        if (values == null) {
+            throw EmulatorException.badRequest("Unknown page token %s", nextPageToken);
+        }
+        return toPage(values);
+    }
+
+    synchronized void commit(final String transactionId) {
+        final EmulatedTransaction committing = getTransaction(transactionId);
+        transaction = null;
+        pendingPages.clear();
+        statementLatency.await(StatementLatency.COMMIT);
+        committing.commit();
+    }
+
+    synchronized void abort() {
+        if (transaction != null) {
+            transaction.abort();
+            transaction = null;
+        }
+        pendingPages.clear();
+    }
+
+    private EmulatedTransaction getTransaction(final String transactionId) {
+        if (transaction == null || !transaction.getTransactionId().equals(transactionId)) {
+            throw EmulatorException.invalidSession("Transaction %s is not open in this session", transactionId);
+        }
+        return transaction;
+    }
+
+    private Page toPage(final List<IonValue> values) {
+        if (values.size() <= PAGE_SIZE) {
+            return new Page(values, null);
+        }
+        final String nextPageToken = Identifiers.next();
+        pendingPages.put(nextPageToken, values.subList(PAGE_SIZE, values.size()));
+        return new Page(values.subList(0, PAGE_SIZE), nextPageToken);
+    }
+
+    @Value
+    static class Page {
+        List<IonValue> values;
+        String nextPageToken;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.emulator;
+
+import com.amazon.ion.IonStruct;
+import com.amazon.ion.IonValue;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>
+ * The documents of one table, each as the chain of its committed revisions,
+ * and the indexes on the table.
+ * </p>
+ *
+ * <p>
+ * Reads are lock free: a revision is published before the commit sequence
+ * which makes it visible, and readers skip revisions newer than their
+ * snapshot. Everything else is called by {@link EmulatedLedger} under its
+ * commit lock.
+ * </p>
+ */
+class EmulatedTable {
+
+    @Getter
+    private final String name;
+
+    @Getter
+    private final String tableId = Identifiers.next();
+
+    private final ConcurrentMap<String, DocumentRevision> latestRevisions = new ConcurrentHashMap<>();
+
+    /**
+     * Indexed field -> index key -> ids of the documents which held that value
+     * in any revision. Lookups filter the candidates by their visible revision.
+     */
+    private final ConcurrentMap<String, ConcurrentMap<String, Set<String>>> indexes = new ConcurrentHashMap<>();
+
+    /**
+     * Commit sequence -> ids of the documents written by that commit, kept
+     * for as long as an open transaction may have to be checked against it
+     */
+    private final NavigableMap<Long, List<String>> changes = new TreeMap<>();
+
+    EmulatedTable(final String name) {
+        this.name = name;
+    }
+
+    DocumentRevision getLatest(final String documentId) {
+        return latestRevisions.get(documentId);
+    }
+
+    DocumentRevision get(final String documentId, final long sequence) {
+        final DocumentRevision latest = latestRevisions.get(documentId);
+        return latest == null ? null : latest.asOf(sequence);
+    }
+
+    Collection<String> getDocumentIds() {
+        return latestRevisions.keySet();
+    }
+
+    Collection<String> getIndexedFields() {
+        return indexes.keySet();
+    }
+
+    boolean isIndexed(final String field) {
+        return indexes.containsKey(field);
+    }
+
+    Collection<String> lookup(final String field, final IonValue value) {
+        final Map<String, Set<String>> index = indexes.get(field);
+        if (index == null) {
+            return getDocumentIds();
+        }
+        final Set<String> documentIds = index.get(IonValues.indexKey(value));
+        return documentIds == null ? Collections.emptySet() : documentIds;
+    }
+
+    void createIndex(final String field) {
+        final ConcurrentMap<String, Set<String>> index = new ConcurrentHashMap<>();
+        for (final DocumentRevision latest : latestRevisions.values()) {
+            for (DocumentRevision revision = latest; revision != null; revision = revision.getPrevious()) {
+                addToIndex(index, field, revision);
+            }
+        }
+        indexes.putIfAbsent(field, index);
+    }
+
+    void apply(final List<DocumentRevision> revisions, final long sequence) {
+        final List<String> documentIds = new ArrayList<>(revisions.size());
+        for (final DocumentRevision revision : revisions) {
+            // Index first so that a reader finding the revision can also find it through the index
+            for (final Map.Entry<String, ConcurrentMap<String, Set<String>>> index : indexes.entrySet()) {
+                addToIndex(index.getValue(), index.getKey(), revision);
+            }
+            latestRevisions.put(revision.getDocumentId(), revision);
+            documentIds.add(revision.getDocumentId());
+        }
+        changes.put(sequence, documentIds);
+    }
+
+    /**
+     * The ids of the documents written by commits after the given sequence
+     */
+    Collection<String> getChangedAfter(final long sequence) {
+        final Collection<List<String>> newer = changes.tailMap(sequence, false).values();
+        if (newer.isEmpty()) {
+            return Collections.emptySet();
+        }
+        final Set<String> documentIds = new HashSet<>();
+        newer.forEach(documentIds::addAll);
+        return documentIds;
+    }
+
+    /**
+     * Forget the changes which no open transaction can conflict with anymore
+     */
+    void trimChanges(final long oldestSnapshot) {
+        changes.headMap(oldestSnapshot, true).clear();
+    }
+
+    private static void addToIndex(final ConcurrentMap<String, Set<String>> index,
+                                   final String field,
+                                   final DocumentRevision revision) {
+        final IonStruct data = revision.getData();
+        if (data == null) {
+            return;
+        }
+        index.computeIfAbsent(IonValues.indexKey(IonValues.get(data, field)), key -> ConcurrentHashMap.newKeySet())
+                .add(revision.getDocumentId());
+    }
+}
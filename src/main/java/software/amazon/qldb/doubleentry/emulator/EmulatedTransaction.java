@@ -0,0 +1,470 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.emulator;
+
+import com.amazon.ion.IonList;
+import com.amazon.ion.IonStruct;
+import com.amazon.ion.IonSystem;
+import com.amazon.ion.IonText;
+import com.amazon.ion.IonValue;
+import com.amazon.ion.Timestamp;
+import lombok.Getter;
+import lombok.Value;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * <p>
+ * A transaction on an {@link EmulatedLedger}. It reads the snapshot of the
+ * ledger as of its start, overlaid with its own writes, which are buffered
+ * until commit.
+ * </p>
+ *
+ * <p>
+ * Like QLDB, it remembers what it read so that the commit can be rejected
+ * with an OCC conflict when another transaction committed a change to any
+ * of it in the meantime:
+ * </p>
+ *
+ * <ul>
+ *     <li>documents found by their id, through an index, or written</li>
+ *     <li>equality predicates on indexed fields, so that a document which
+ *     starts matching them is a conflict too</li>
+ *     <li>whole tables, for reads which could not use an index</li>
+ * </ul>
+ *
+ * <p>
+ * Documents can also be read through the committed view of their table,
+ * e.g. _ql_committed_Accounts, and addressed by id with metadata.id in the
+ * committed view or with a BY clause. The tables of the ledger can be listed
+ * from information_schema.user_tables, and the committed revisions of the
+ * documents of a table from history(table [, start [, end]]). Neither is
+ * tracked for conflicts.
+ * </p>
+ *
+ * <p>
+ * A transaction is used by one session at a time and is not thread safe.
+ * </p>
+ */
+class EmulatedTransaction {
+
+    static final String INFORMATION_SCHEMA = "information_schema";
+
+    static final String COMMITTED_VIEW_PREFIX = "_ql_committed_";
+
+    static final String HISTORY_FUNCTION = "history";
+
+    private static final String USER_TABLES = INFORMATION_SCHEMA + ".user_tables";
+
+    @Getter
+    private final String transactionId = Identifiers.next();
+
+    private final EmulatedLedger ledger;
+
+    @Getter
+    private final long snapshot;
+
+    private final Map<DocumentKey, IonStruct> writes = new LinkedHashMap<>();
+
+    private final Set<DocumentKey> readDocuments = new HashSet<>();
+
+    private final Set<String> scannedTables = new HashSet<>();
+
+    private final List<PredicateRead> predicateReads = new ArrayList<>();
+
+    private final List<Consumer<EmulatedLedger>> schemaChanges = new ArrayList<>();
+
+    EmulatedTransaction(final EmulatedLedger ledger, final long snapshot) {
+        this.ledger = ledger;
+        this.snapshot = snapshot;
+    }
+
+    IonSystem getIonSystem() {
+        return ledger.getIonSystem();
+    }
+
+    boolean hasTable(final String tableName) {
+        return ledger.getTable(tableName) != null;
+    }
+
+    EmulatedTable getTable(final String tableName) {
+        final EmulatedTable table = ledger.getTable(tableName);
+        if (table == null) {
+            throw EmulatorException.badRequest("No such table: %s", tableName);
+        }
+        return table;
+    }
+
+    /**
+     * Find the documents of a table matching all of the conditions.
+     *
+     * @param tableName The name of a table, or of its committed view
+     * @param documentIdName The name the document id is bound to by a BY
+     *                       clause, or null
+     */
+    List<DocumentView> find(final String tableName,
+                            final String documentIdName,
+                            final List<Condition> conditions,
+                            final List<IonValue> parameters) {
+        if (USER_TABLES.equals(tableName)) {
+            return findUserTables(conditions, parameters);
+        }
+        if (tableName.startsWith(HISTORY_FUNCTION + "(")) {
+            final String[] arguments =
+                    tableName.substring(HISTORY_FUNCTION.length() + 1, tableName.length() - 1).split(",");
+            final Instant start = arguments.length > 1 ? toInstant(Timestamp.valueOf(arguments[1])) : Instant.MIN;
+            final Instant end = arguments.length > 2 ? toInstant(Timestamp.valueOf(arguments[2])) : Instant.MAX;
+            return findHistory(arguments[0], start, end, conditions, parameters);
+        }
+        final boolean committedView = tableName.startsWith(COMMITTED_VIEW_PREFIX);
+        final String baseTableName = committedView ? tableName.substring(COMMITTED_VIEW_PREFIX.length()) : tableName;
+        final EmulatedTable table = getTable(baseTableName);
+        final String documentIdPath = committedView ? "metadata.id" : documentIdName;
+        final String dataPrefix = committedView ? "data." : "";
+
+        Condition documentIdCondition = null;
+        Condition indexedCondition = null;
+        for (final Condition condition : conditions) {
+            if (!condition.isEquality() && !condition.isIn()) {
+                continue;
+            }
+            if (condition.isEquality() && condition.getPath().equals(documentIdPath)) {
+                documentIdCondition = condition;
+                break;
+            }
+            if (indexedCondition == null && condition.getPath().startsWith(dataPrefix)
+                    && table.isIndexed(condition.getPath().substring(dataPrefix.length()))) {
+                indexedCondition = condition;
+            }
+        }
+
+        final Collection<String> candidates = new LinkedHashSet<>();
+        Condition indexedField = null;
+        List<IonValue> indexedValues = null;
+        if (documentIdCondition != null) {
+            final IonValue documentId = documentIdCondition.getOperand().value(parameters);
+            if (documentId instanceof IonText && !documentId.isNullValue()) {
+                candidates.add(((IonText) documentId).stringValue());
+            }
+        } else if (indexedCondition != null) {
+            // An IN condition is looked up in the index once for every value
+            indexedValues = indexedCondition.values(parameters);
+            indexedField = new Condition(indexedCondition.getPath().substring(dataPrefix.length()),
+                    Condition.Operator.EQUAL, indexedCondition.getOperands().get(0));
+            for (final IonValue indexedValue : indexedValues) {
+                candidates.addAll(table.lookup(indexedField.getPath(), indexedValue));
+                predicateReads.add(new PredicateRead(baseTableName, indexedField, indexedValue));
+            }
+        } else {
+            candidates.addAll(table.getDocumentIds());
+            scannedTables.add(baseTableName);
+        }
+        if (documentIdCondition == null) {
+            for (final DocumentKey written : writes.keySet()) {
+                if (written.getTableName().equals(baseTableName)) {
+                    candidates.add(written.getDocumentId());
+                }
+            }
+        }
+
+        final List<DocumentView> found = new ArrayList<>();
+        for (final String documentId : candidates) {
+            final DocumentKey key = new DocumentKey(baseTableName, documentId);
+            final IonStruct data = read(table, key);
+            if (data == null) {
+                continue;
+            }
+            if (indexedField != null && !matchesAny(indexedField, data, indexedValues)) {
+                continue;
+            }
+            if (indexedField != null || documentIdCondition != null) {
+                readDocuments.add(key);
+            }
+            final IonStruct view = committedView
+                    ? committedView(table, key, data)
+                    : documentIdView(data, documentIdName, documentId);
+            if (conditions.stream().allMatch(condition -> condition.matches(view, parameters))) {
+                found.add(new DocumentView(documentId, data, view));
+            }
+        }
+        return found;
+    }
+
+    private static boolean matchesAny(final Condition condition,
+                                      final IonStruct document,
+                                      final List<IonValue> values) {
+        return values.stream().anyMatch(value -> condition.matchesValue(document, value));
+    }
+
+    /**
+     * The document as seen through the committed view of its table, with its
+     * data and metadata
+     */
+    private IonStruct committedView(final EmulatedTable table, final DocumentKey key, final IonStruct data) {
+        final DocumentRevision committed = table.get(key.getDocumentId(), snapshot);
+        final IonSystem ionSystem = getIonSystem();
+        final IonStruct metadata = ionSystem.newEmptyStruct();
+        metadata.put("id", ionSystem.newString(key.getDocumentId()));
+        if (writes.containsKey(key)) {
+            metadata.put("version", ionSystem.newInt(committed == null ? 0 : committed.getVersion() + 1));
+            metadata.put("txId", ionSystem.newString(transactionId));
+        } else {
+            metadata.put("version", ionSystem.newInt(committed.getVersion()));
+            metadata.put("txTime", ionSystem.newTimestamp(
+                    Timestamp.forMillis(committed.getTransactionTime().toEpochMilli(), 0)));
+            metadata.put("txId", ionSystem.newString(committed.getTransactionId()));
+        }
+        final IonStruct view = ionSystem.newEmptyStruct();
+        if (!writes.containsKey(key)) {
+            view.put("blockAddress", blockAddress(committed));
+        }
+        view.put("data", data.clone());
+        view.put("metadata", metadata);
+        return view;
+    }
+
+    /**
+     * The emulator has a single strand, in which the commit sequence of a
+     * revision is its sequence number
+     */
+    private IonStruct blockAddress(final DocumentRevision revision) {
+        final IonStruct blockAddress = getIonSystem().newEmptyStruct();
+        blockAddress.put("strandId", getIonSystem().newString(ledger.getName()));
+        blockAddress.put("sequenceNo", getIonSystem().newInt(revision.getCommitSequence()));
+        return blockAddress;
+    }
+
+    private static Instant toInstant(final Timestamp timestamp) {
+        return Instant.ofEpochMilli(timestamp.getMillis());
+    }
+
+    /**
+     * The document with its id bound to the given name of a BY clause
+     */
+    private IonStruct documentIdView(final IonStruct data, final String documentIdName, final String documentId) {
+        if (documentIdName == null) {
+            return data;
+        }
+        final IonStruct view = data.clone();
+        view.put(documentIdName, getIonSystem().newString(documentId));
+        return view;
+    }
+
+    /**
+     * The revisions of the documents of a table committed before our snapshot
+     * and between the given times, inclusive, oldest first for every document
+     */
+    private List<DocumentView> findHistory(final String tableName,
+                                           final Instant start,
+                                           final Instant end,
+                                           final List<Condition> conditions,
+                                           final List<IonValue> parameters) {
+        final EmulatedTable table = getTable(tableName);
+        Collection<String> candidates = table.getDocumentIds();
+        for (final Condition condition : conditions) {
+            if (condition.isEquality() && condition.getPath().equals("metadata.id")) {
+                final IonValue documentId = condition.getOperand().value(parameters);
+                candidates = documentId instanceof IonText && !documentId.isNullValue()
+                        ? Collections.singletonList(((IonText) documentId).stringValue())
+                        : Collections.emptyList();
+                break;
+            }
+        }
+
+        final IonSystem ionSystem = getIonSystem();
+        final List<DocumentView> found = new ArrayList<>();
+        for (final String documentId : candidates) {
+            final Deque<DocumentRevision> revisions = new ArrayDeque<>();
+            for (DocumentRevision revision = table.get(documentId, snapshot); revision != null;
+                 revision = revision.getPrevious()) {
+                if (!revision.getTransactionTime().isBefore(start) && !revision.getTransactionTime().isAfter(end)) {
+                    revisions.push(revision);
+                }
+            }
+            for (final DocumentRevision revision : revisions) {
+                final IonStruct metadata = ionSystem.newEmptyStruct();
+                metadata.put("id", ionSystem.newString(documentId));
+                metadata.put("version", ionSystem.newInt(revision.getVersion()));
+                metadata.put("txTime", ionSystem.newTimestamp(
+                        Timestamp.forMillis(revision.getTransactionTime().toEpochMilli(), 0)));
+                metadata.put("txId", ionSystem.newString(revision.getTransactionId()));
+                final IonStruct view = ionSystem.newEmptyStruct();
+                view.put("blockAddress", blockAddress(revision));
+                if (revision.getData() != null) {
+                    view.put("data", revision.getData().clone());
+                }
+                view.put("metadata", metadata);
+                if (conditions.stream().allMatch(condition -> condition.matches(view, parameters))) {
+                    found.add(new DocumentView(documentId, revision.getData(), view));
+                }
+            }
+        }
+        return found;
+    }
+
+    private List<DocumentView> findUserTables(final List<Condition> conditions, final List<IonValue> parameters) {
+        final List<DocumentView> found = new ArrayList<>();
+        for (final String tableName : ledger.getTableNames()) {
+            final EmulatedTable table = ledger.getTable(tableName);
+            final String tableId = table.getTableId();
+            final IonStruct data = getIonSystem().newEmptyStruct();
+            data.put("name", getIonSystem().newString(tableName));
+            data.put("tableId", getIonSystem().newString(tableId));
+            data.put("status", getIonSystem().newString("ACTIVE"));
+            final IonList indexes = getIonSystem().newEmptyList();
+            for (final String field : table.getIndexedFields()) {
+                final IonStruct index = getIonSystem().newEmptyStruct();
+                index.put("indexId", getIonSystem().newString(tableId + "/" + field));
+                index.put("expr", getIonSystem().newString("[" + field + "]"));
+                index.put("status", getIonSystem().newString("ONLINE"));
+                indexes.add(index);
+            }
+            data.put("indexes", indexes);
+            if (conditions.stream().allMatch(condition -> condition.matches(data, parameters))) {
+                found.add(new DocumentView(tableId, data, data));
+            }
+        }
+        return found;
+    }
+
+    String insert(final String tableName, final IonStruct data) {
+        getTable(tableName);
+        final String documentId = Identifiers.next();
+        writes.put(new DocumentKey(tableName, documentId), data);
+        return documentId;
+    }
+
+    void update(final String tableName, final String documentId, final IonStruct data) {
+        writes.put(new DocumentKey(tableName, documentId), data);
+    }
+
+    /**
+     * The value returned by DML statements for every document they wrote
+     */
+    IonStruct toDmlResult(final String documentId) {
+        final IonStruct result = getIonSystem().newEmptyStruct();
+        result.put("documentId", getIonSystem().newString(documentId));
+        return result;
+    }
+
+    /**
+     * Schema changes are applied to the ledger when the transaction commits.
+     */
+    void addSchemaChange(final Consumer<EmulatedLedger> schemaChange) {
+        schemaChanges.add(schemaChange);
+    }
+
+    void commit() {
+        ledger.commit(this);
+    }
+
+    void abort() {
+        ledger.abort(this);
+    }
+
+    List<Consumer<EmulatedLedger>> getSchemaChanges() {
+        return schemaChanges;
+    }
+
+    Map<DocumentKey, IonStruct> getWrites() {
+        return writes;
+    }
+
+    /**
+     * The tables this transaction read or wrote
+     */
+    Set<String> getTouchedTables() {
+        final Set<String> tables = new HashSet<>(scannedTables);
+        readDocuments.forEach(key -> tables.add(key.getTableName()));
+        writes.keySet().forEach(key -> tables.add(key.getTableName()));
+        predicateReads.forEach(read -> tables.add(read.getTableName()));
+        return tables;
+    }
+
+    /**
+     * Whether committing this transaction would lose an update, given the ids
+     * of the documents of the table committed by others since our snapshot.
+     */
+    boolean conflictsWith(final EmulatedTable table, final Collection<String> changedDocumentIds) {
+        final String tableName = table.getName();
+        if (scannedTables.contains(tableName)) {
+            return true;
+        }
+        for (final String documentId : changedDocumentIds) {
+            final DocumentKey key = new DocumentKey(tableName, documentId);
+            if (readDocuments.contains(key) || writes.containsKey(key)) {
+                return true;
+            }
+            final IonStruct committed = table.getLatest(documentId).getData();
+            for (final PredicateRead read : predicateReads) {
+                if (read.getTableName().equals(tableName) && committed != null
+                        && read.getCondition().matchesValue(committed, read.getValue())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private IonStruct read(final EmulatedTable table, final DocumentKey key) {
+        if (writes.containsKey(key)) {
+            return writes.get(key);
+        }
+        final DocumentRevision revision = table.get(key.getDocumentId(), snapshot);
+        return revision == null ? null : revision.getData();
+    }
+
+    @Value
+    static class DocumentKey {
+        String tableName;
+        String documentId;
+    }
+
+    /**
+     * A document found by a statement. The data is what an UPDATE changes,
+     * the view is what the conditions and the projection of the statement
+     * see, e.g. with the metadata of the committed view.
+     */
+    @Value
+    static class DocumentView {
+        String documentId;
+        IonStruct data;
+        IonStruct view;
+    }
+
+    @Value
+    private static class PredicateRead {
+        String tableName;
+        Condition condition;
+        IonValue value;
+    }
+}
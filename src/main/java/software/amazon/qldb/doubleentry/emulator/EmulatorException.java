@@ -0,0 +1,50 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.doubleentry.emulator;
+
+import lombok.Getter;
+
+/**
+ * An error which the emulator returns to the driver as one of the exceptions
+ * of the QLDB Session API, identified by its error code.
+ */
+@Getter
+public class EmulatorException extends RuntimeException {
+
+    public static final String BAD_REQUEST = "BadRequestException";
+    public static final String INVALID_SESSION = "InvalidSessionException";
+    public static final String OCC_CONFLICT = "OccConflictException";
+
+    private static final long serialVersionUID = 1L;
+
+    private final String errorCode;
+
+    public EmulatorException(final String errorCode, final String message) {
+        super(message);
+        this.errorCode = errorCode;
+    }
+
+    static EmulatorException badRequest(final String format, final Object... args) {
+        return new EmulatorException(BAD_REQUEST, String.format(format, args));
+    }
+
+    static EmulatorException invalidSession(final String format, final Object... args) {
+        return new EmulatorException(INVALID_SESSION, String.format(format, args));
+    }
+}
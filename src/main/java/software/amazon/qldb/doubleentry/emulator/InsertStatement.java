@@ -0,0 +1,68 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.emulator;
+
+import com.amazon.ion.IonSequence;
+import com.amazon.ion.IonStruct;
+import com.amazon.ion.IonValue;
+import lombok.AllArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * INSERT INTO table ?, or INSERT INTO table VALUE ?. The parameter is either
+ * one document or a list of documents.
+ */
+@AllArgsConstructor
+class InsertStatement implements Statement {
+
+    private final String tableName;
+
+    private final Operand value;
+
+    @Override
+    public String getKeyword() {
+        return "INSERT";
+    }
+
+    @Override
+    public List<IonValue> execute(final EmulatedTransaction transaction, final List<IonValue> parameters) {
+        final IonValue inserted = value.value(parameters);
+        final List<IonValue> documents = new ArrayList<>();
+        if (inserted instanceof IonStruct) {
+            documents.add(inserted);
+        } else if (inserted instanceof IonSequence && !inserted.isNullValue()) {
+            documents.addAll((IonSequence) inserted);
+        } else {
+            throw EmulatorException.badRequest("Cannot insert a value of type %s", inserted.getType());
+        }
+
+        final List<IonValue> result = new ArrayList<>(documents.size());
+        for (final IonValue document : documents) {
+            if (!(document instanceof IonStruct)) {
+                throw EmulatorException.badRequest("Cannot insert a value of type %s", document.getType());
+            }
+            final String documentId = transaction.insert(tableName, (IonStruct) document.clone());
+            result.add(transaction.toDmlResult(documentId));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.emulator;
+
+import com.amazon.ion.IonBool;
+import com.amazon.ion.IonDecimal;
+import com.amazon.ion.IonFloat;
+import com.amazon.ion.IonInt;
+import com.amazon.ion.IonStruct;
+import com.amazon.ion.IonText;
+import com.amazon.ion.IonTimestamp;
+import com.amazon.ion.IonValue;
+
+import java.math.BigDecimal;
+
+/**
+ * The PartiQL comparison rules the emulator needs for the values stored in
+ * the ledger: numbers compare by value whatever their Ion type, strings and
+ * symbols by their text and timestamps by the point in time they represent.
+ */
+final class IonValues {
+
+    private IonValues() { }
+
+    /**
+     * Navigate a dotted path such as "Balances" or "metadata.id" in a struct,
+     * returning null if any step of the path is missing.
+     */
+    static IonValue get(final IonStruct struct, final String path) {
+        IonValue value = struct;
+        for (final String name : path.split("\\.")) {
+            if (!(value instanceof IonStruct)) {
+                return null;
+            }
+            value = ((IonStruct) value).get(name);
+        }
+        return value;
+    }
+
+    static boolean equal(final IonValue left, final IonValue right) {
+        final Integer comparison = compare(left, right);
+        if (comparison != null) {
+            return comparison == 0;
+        }
+        return left != null && left.equals(right);
+    }
+
+    /**
+     * Compare two values, returning null when PartiQL would not consider them
+     * comparable, e.g. a string and a number or anything and null.
+     */
+    static Integer compare(final IonValue left, final IonValue right) {
+        if (left == null || right == null || left.isNullValue() || right.isNullValue()) {
+            return null;
+        }
+        if (left instanceof IonText && right instanceof IonText) {
+            return ((IonText) left).stringValue().compareTo(((IonText) right).stringValue());
+        }
+        if (left instanceof IonTimestamp && right instanceof IonTimestamp) {
+            return ((IonTimestamp) left).timestampValue().compareTo(((IonTimestamp) right).timestampValue());
+        }
+        if (left instanceof IonBool && right instanceof IonBool) {
+            return Boolean.compare(((IonBool) left).booleanValue(), ((IonBool) right).booleanValue());
+        }
+        final BigDecimal leftNumber = toBigDecimal(left);
+        final BigDecimal rightNumber = toBigDecimal(right);
+        if (leftNumber != null && rightNumber != null) {
+            return leftNumber.compareTo(rightNumber);
+        }
+        return null;
+    }
+
+    /**
+     * A key under which a value is stored in an index. Values which are
+     * {@link #equal(IonValue, IonValue)} have the same key.
+     */
+    static String indexKey(final IonValue value) {
+        if (value == null || value.isNullValue()) {
+            return "null";
+        }
+        if (value instanceof IonText) {
+            return "s:" + ((IonText) value).stringValue();
+        }
+        if (value instanceof IonTimestamp) {
+            final BigDecimal millis = ((IonTimestamp) value).timestampValue().getDecimalMillis();
+            return "t:" + millis.stripTrailingZeros().toPlainString();
+        }
+        final BigDecimal number = toBigDecimal(value);
+        if (number != null) {
+            return "n:" + number.stripTrailingZeros().toPlainString();
+        }
+        return value.toString();
+    }
+
+    private static BigDecimal toBigDecimal(final IonValue value) {
+        if (value instanceof IonDecimal) {
+            return ((IonDecimal) value).bigDecimalValue();
+        }
+        if (value instanceof IonInt) {
+            return new BigDecimal(((IonInt) value).bigIntegerValue());
+        }
+        if (value instanceof IonFloat && Double.isFinite(((IonFloat) value).doubleValue())) {
+            return BigDecimal.valueOf(((IonFloat) value).doubleValue());
+        }
+        return null;
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.emulator;
+
+import com.amazon.ion.IonSystem;
+import com.amazon.ion.IonValue;
+import com.amazon.ion.IonWriter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * An in-memory stand-in for QLDB, for running load tests and benchmarks on a
+ * laptop or in CI without a ledger.
+ * </p>
+ *
+ * <p>
+ * The emulator serves the SendCommand operation of the QLDB Session API on
+ * the loopback interface. The application talks to it through the regular
+ * {@link software.amazon.qldb.PooledQldbDriver}, pointed at the emulator's
+ * endpoint, so the driver's sessions, TransactionExecutor, Result and OCC
+ * retries all run exactly as they do against QLDB.
+ * </p>
+ *
+ * <p>
+ * Behind the API, every ledger keeps all committed revisions of its
+ * documents and validates commits optimistically like QLDB (see
+ * {@link EmulatedLedger}). It runs the statements issued by this
+ * application (see {@link StatementParser}), and can inject latency before
+ * every statement and commit (see {@link StatementLatency}).
+ * </p>
+ */
+@Slf4j
+public class LedgerEmulator {
+
+    private static final String CONTENT_TYPE = "application/x-amz-json-1.0";
+
+    private static final int MAX_CACHED_STATEMENTS = 1_000;
+
+    private final IonSystem ionSystem;
+
+    private final StatementLatency statementLatency;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ConcurrentMap<String, EmulatedLedger> ledgers = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, EmulatedSession> sessions = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Statement> statements = new ConcurrentHashMap<>();
+
+    private HttpServer server;
+
+    private ExecutorService executor;
+
+    @Getter
+    private URI endpoint;
+
+    public LedgerEmulator(@NonNull final IonSystem ionSystem,
+                          @NonNull final StatementLatency statementLatency) {
+        this.ionSystem = ionSystem;
+        this.statementLatency = statementLatency;
+    }
+
+    /**
+     * The ledger with the given name. Ledgers are created on first use.
+     */
+    public EmulatedLedger getLedger(@NonNull final String ledgerName) {
+        return ledgers.computeIfAbsent(ledgerName, name -> new EmulatedLedger(name, ionSystem));
+    }
+
+    /**
+     * Start serving on the given port of the loopback interface, or on any
+     * free port if it is 0.
+     *
+     * @return The endpoint to configure the QLDB session client with
+     */
+    public synchronized URI start(final int port) throws IOException {
+        if (server != null) {
+            return endpoint;
+        }
+        final InetAddress loopback = InetAddress.getLoopbackAddress();
+        final HttpServer httpServer = HttpServer.create(new InetSocketAddress(loopback, port), 0);
+        httpServer.createContext("/", this::handle);
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "ledger-emulator-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        httpServer.setExecutor(executor);
+
+        // The dispatcher thread of the server inherits the daemon flag of the
+        // thread starting it. The emulator must never keep the JVM of the task
+        // using it alive, so start it from a daemon thread.
+        final Thread starter = new Thread(httpServer::start, "ledger-emulator-start");
+        starter.setDaemon(true);
+        starter.start();
+        try {
+            starter.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while starting the ledger emulator", e);
+        }
+
+        server = httpServer;
+        endpoint = URI.create(String.format("http://%s:%d",
+                loopback.getHostAddress(), httpServer.getAddress().getPort()));
+        log.info("Ledger emulator listening on {}", endpoint);
+        return endpoint;
+    }
+
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            final JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+            respond(exchange, 200, sendCommand(request));
+        } catch (final EmulatorException e) {
+            log.debug("Returning {}: {}", e.getErrorCode(), e.getMessage());
+            respond(exchange, 400, error(exchange, e.getErrorCode(), e.getMessage()));
+        } catch (final RuntimeException e) {
+            log.error("Unexpected error in the ledger emulator", e);
+            respond(exchange, 500, error(exchange, "InternalFailure", String.valueOf(e.getMessage())));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private ObjectNode sendCommand(final JsonNode request) {
+        final ObjectNode response = objectMapper.createObjectNode();
+
+        if (request.hasNonNull("StartSession")) {
+            final String ledgerName = request.get("StartSession").path("LedgerName").asText();
+            final EmulatedSession session = new EmulatedSession(getLedger(ledgerName), statementLatency);
+            sessions.put(session.getSessionToken(), session);
+            response.putObject("StartSession").put("SessionToken", session.getSessionToken());
+            return response;
+        }
+
+        final String sessionToken = request.path("SessionToken").asText();
+        final EmulatedSession session = sessions.get(sessionToken);
+        if (session == null) {
+            throw EmulatorException.invalidSession("Session %s does not exist", sessionToken);
+        }
+
+        if (request.hasNonNull("StartTransaction")) {
+            response.putObject("StartTransaction").put("TransactionId", session.startTransaction());
+        } else if (request.hasNonNull("ExecuteStatement")) {
+            final JsonNode command = request.get("ExecuteStatement");
+            final List<IonValue> parameters = new ArrayList<>();
+            for (final JsonNode parameter : command.path("Parameters")) {
+                parameters.add(toIonValue(parameter));
+            }
+            final EmulatedSession.Page page = session.execute(command.path("TransactionId").asText(),
+                    getStatement(command.path("Statement").asText()), parameters);
+            writePage(response.putObject("ExecuteStatement").putObject("FirstPage"), page);
+        } else if (request.hasNonNull("FetchPage")) {
+            final JsonNode command = request.get("FetchPage");
+            final EmulatedSession.Page page = session.fetchPage(command.path("TransactionId").asText(),
+                    command.path("NextPageToken").asText());
+            writePage(response.putObject("FetchPage").putObject("Page"), page);
+        } else if (request.hasNonNull("CommitTransaction")) {
+            final JsonNode command = request.get("CommitTransaction");
+            final String transactionId = command.path("TransactionId").asText();
+            session.commit(transactionId);
+            // The driver compares the digest it computed over the statements
+            // with the one returned by QLDB. The emulator does not hash the
+            // journal, so it returns the digest of the driver.
+            final ObjectNode commit = response.putObject("CommitTransaction");
+            commit.put("TransactionId", transactionId);
+            commit.set("CommitDigest", command.get("CommitDigest"));
+        } else if (request.hasNonNull("AbortTransaction")) {
+            session.abort();
+            response.putObject("AbortTransaction");
+        } else if (request.hasNonNull("EndSession")) {
+            session.abort();
+            sessions.remove(sessionToken);
+            response.putObject("EndSession");
+        } else {
+            throw EmulatorException.badRequest("Unsupported command %s", request);
+        }
+        return response;
+    }
+
+    private Statement getStatement(final String text) {
+        Statement statement = statements.get(text);
+        if (statement == null) {
+            statement = StatementParser.parse(ionSystem, text);
+            if (statements.size() < MAX_CACHED_STATEMENTS) {
+                statements.putIfAbsent(text, statement);
+            }
+        }
+        return statement;
+    }
+
+    private IonValue toIonValue(final JsonNode valueHolder) {
+        if (valueHolder.hasNonNull("IonBinary")) {
+            return ionSystem.singleValue(Base64.getDecoder().decode(valueHolder.get("IonBinary").asText()));
+        }
+        if (valueHolder.hasNonNull("IonText")) {
+            return ionSystem.singleValue(valueHolder.get("IonText").asText());
+        }
+        throw EmulatorException.badRequest("A parameter has neither IonBinary nor IonText");
+    }
+
+    private void writePage(final ObjectNode node, final EmulatedSession.Page page) {
+        final ArrayNode values = node.putArray("Values");
+        for (final IonValue value : page.getValues()) {
+            values.addObject().put("IonBinary", Base64.getEncoder().encodeToString(toIonBinary(value)));
+        }
+        if (page.getNextPageToken() != null) {
+            node.put("NextPageToken", page.getNextPageToken());
+        }
+    }
+
+    private byte[] toIonBinary(final IonValue value) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (IonWriter writer = ionSystem.newBinaryWriter(out)) {
+            value.writeTo(writer);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private ObjectNode error(final HttpExchange exchange, final String errorCode, final String message) {
+        exchange.getResponseHeaders().set("x-amzn-ErrorType", errorCode);
+        final ObjectNode error = objectMapper.createObjectNode();
+        error.put("__type", errorCode);
+        error.put("Message", message);
+        return error;
+    }
+
+    private void respond(final HttpExchange exchange, final int status, final ObjectNode body) throws IOException {
+        final byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+        exchange.getResponseHeaders().set("x-amzn-RequestId", UUID.randomUUID().toString());
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.emulator;
+
+import com.amazon.ion.IonValue;
+
+import java.util.List;
+
+/**
+ * The right hand side of a condition or an assignment: either a "?"
+ * parameter or a literal written in the statement.
+ */
+final class Operand {
+
+    private final int parameterIndex;
+
+    private final IonValue literal;
+
+    private Operand(final int parameterIndex, final IonValue literal) {
+        this.parameterIndex = parameterIndex;
+        this.literal = literal;
+    }
+
+    static Operand parameter(final int index) {
+        return new Operand(index, null);
+    }
+
+    static Operand literal(final IonValue value) {
+        value.makeReadOnly();
+        return new Operand(-1, value);
+    }
+
+    IonValue value(final List<IonValue> parameters) {
+        if (literal != null) {
+            return literal;
+        }
+        if (parameterIndex >= parameters.size()) {
+            throw EmulatorException.badRequest("No value was provided for parameter %d", parameterIndex + 1);
+        }
+        return parameters.get(parameterIndex);
+    }
+}
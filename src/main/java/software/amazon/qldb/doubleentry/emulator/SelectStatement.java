@@ -0,0 +1,77 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.emulator;
+
+import com.amazon.ion.IonStruct;
+import com.amazon.ion.IonValue;
+import lombok.AllArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SELECT * or SELECT field, ... FROM table [BY name] [WHERE conditions]
+ */
+@AllArgsConstructor
+class SelectStatement implements Statement {
+
+    private final String tableName;
+
+    /**
+     * The name the document id is bound to by a BY clause, or null
+     */
+    private final String documentIdName;
+
+    /**
+     * The selected paths, or null for SELECT *
+     */
+    private final List<String> projection;
+
+    private final List<Condition> conditions;
+
+    @Override
+    public String getKeyword() {
+        return "SELECT";
+    }
+
+    @Override
+    public List<IonValue> execute(final EmulatedTransaction transaction, final List<IonValue> parameters) {
+        final List<IonValue> result = new ArrayList<>();
+        for (final EmulatedTransaction.DocumentView document
+                : transaction.find(tableName, documentIdName, conditions, parameters)) {
+            result.add(project(transaction, document.getView()));
+        }
+        return result;
+    }
+
+    private IonValue project(final EmulatedTransaction transaction, final IonStruct data) {
+        if (projection == null) {
+            return data;
+        }
+        final IonStruct projected = transaction.getIonSystem().newEmptyStruct();
+        for (final String path : projection) {
+            final IonValue value = IonValues.get(data, path);
+            if (value != null) {
+                projected.put(path.substring(path.lastIndexOf('.') + 1), value.clone());
+            }
+        }
+        return projected;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.emulator;
+
+import lombok.NonNull;
+import org.apache.commons.lang3.Validate;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * The latency the emulator injects before running a statement or a commit,
+ * standing in for the round trip to QLDB.
+ * </p>
+ *
+ * <p>
+ * It is configured with a comma separated list of keyword=milliseconds, e.g.
+ * "SELECT=2,UPDATE=3.5,COMMIT=5". The keyword is the first word of the
+ * statement or COMMIT, and "*" applies to everything without a latency of
+ * its own.
+ * </p>
+ */
+public class StatementLatency {
+
+    public static final String COMMIT = "COMMIT";
+
+    private static final String ANY = "*";
+
+    private final Map<String, Long> latencyNanos;
+
+    private final long defaultLatencyNanos;
+
+    private StatementLatency(final Map<String, Long> latencyNanos) {
+        this.defaultLatencyNanos = latencyNanos.getOrDefault(ANY, 0L);
+        this.latencyNanos = latencyNanos;
+    }
+
+    public static StatementLatency none() {
+        return new StatementLatency(new HashMap<>());
+    }
+
+    public static StatementLatency parse(@NonNull final String specification) {
+        final Map<String, Long> latencyNanos = new HashMap<>();
+        for (final String entry : specification.split(",")) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+            final String[] keywordAndMillis = entry.split("=");
+            Validate.isTrue(keywordAndMillis.length == 2, "Expected keyword=milliseconds but got %s", entry);
+            final double millis = Double.parseDouble(keywordAndMillis[1].trim());
+            Validate.isTrue(millis >= 0, "Latency can't be negative: %s", entry);
+            latencyNanos.put(keywordAndMillis[0].trim().toUpperCase(Locale.ROOT),
+                    (long) (millis * TimeUnit.MILLISECONDS.toNanos(1)));
+        }
+        return new StatementLatency(latencyNanos);
+    }
+
+    public long getLatencyNanos(@NonNull final String keyword) {
+        return latencyNanos.getOrDefault(keyword, defaultLatencyNanos);
+    }
+
+    void await(final String keyword) {
+        final long nanos = getLatencyNanos(keyword);
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
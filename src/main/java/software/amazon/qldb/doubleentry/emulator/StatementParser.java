@@ -0,0 +1,397 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.emulator;
+
+import com.amazon.ion.IonSystem;
+import com.amazon.ion.Timestamp;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * <p>
+ * Parses the subset of PartiQL issued by this application:
+ * </p>
+ *
+ * <ul>
+ *     <li>CREATE TABLE table</li>
+ *     <li>CREATE INDEX ON table (field)</li>
+ *     <li>INSERT INTO table [VALUE] ?</li>
+ *     <li>SELECT * | path, ... FROM table [AS alias] [BY name] [WHERE condition AND ...], where the table
+ *     may also be the committed view of a table, information_schema.user_tables or
+ *     history(table [, `start time` [, `end time`]])</li>
+ *     <li>UPDATE table [AS alias] [BY name] SET path = operand, ... [WHERE condition AND ...]</li>
+ * </ul>
+ *
+ * <p>
+ * A condition compares a path with =, &lt;&gt;, !=, &lt;, &lt;=, &gt; or &gt;=
+ * to an operand, which is a "?" parameter, a 'string' or a number, or tests
+ * it against a list of operands with IN (operand, ...).
+ * Anything else is rejected with a BadRequestException.
+ * </p>
+ */
+class StatementParser {
+
+    private final IonSystem ionSystem;
+
+    private final String statement;
+
+    private final List<String> tokens;
+
+    private int position;
+
+    private int parameterCount;
+
+    private String alias;
+
+    private String documentIdName;
+
+    private StatementParser(final IonSystem ionSystem, final String statement) {
+        this.ionSystem = ionSystem;
+        this.statement = statement;
+        this.tokens = tokenize(statement);
+    }
+
+    static Statement parse(final IonSystem ionSystem, final String statement) {
+        return new StatementParser(ionSystem, statement).parseStatement();
+    }
+
+    private Statement parseStatement() {
+        final Statement parsed;
+        if (acceptKeyword("CREATE")) {
+            parsed = parseCreate();
+        } else if (acceptKeyword("INSERT")) {
+            parsed = parseInsert();
+        } else if (acceptKeyword("SELECT")) {
+            parsed = parseSelect();
+        } else if (acceptKeyword("UPDATE")) {
+            parsed = parseUpdate();
+        } else {
+            throw unsupported();
+        }
+        if (position != tokens.size()) {
+            throw unsupported();
+        }
+        return parsed;
+    }
+
+    private Statement parseCreate() {
+        if (acceptKeyword("TABLE")) {
+            return new CreateTableStatement(identifier());
+        }
+        expectKeyword("INDEX");
+        expectKeyword("ON");
+        final String tableName = identifier();
+        expect("(");
+        final String field = path();
+        expect(")");
+        return new CreateIndexStatement(tableName, field);
+    }
+
+    private Statement parseInsert() {
+        expectKeyword("INTO");
+        final String tableName = identifier();
+        acceptKeyword("VALUE");
+        return new InsertStatement(tableName, operand());
+    }
+
+    private Statement parseSelect() {
+        final int projectionStart = position;
+        final boolean selectAll = accept("*");
+        if (!selectAll) {
+            // The alias is only known after FROM, so skip the projection and come back to it
+            while (position < tokens.size() && !isKeyword(tokens.get(position), "FROM")) {
+                position++;
+            }
+        }
+        expectKeyword("FROM");
+        final String tableName;
+        if (accept(EmulatedTransaction.INFORMATION_SCHEMA, ".")) {
+            tableName = EmulatedTransaction.INFORMATION_SCHEMA + "." + identifier();
+        } else if (accept(EmulatedTransaction.HISTORY_FUNCTION, "(")) {
+            // The time range is kept in the table name as "history(table,start,end)"
+            final StringBuilder history = new StringBuilder(EmulatedTransaction.HISTORY_FUNCTION)
+                    .append('(').append(identifier());
+            while (accept(",")) {
+                history.append(',').append(timestamp());
+            }
+            expect(")");
+            tableName = history.append(')').toString();
+        } else {
+            tableName = identifier();
+        }
+        parseAlias();
+        final int end = position;
+
+        List<String> projection = null;
+        if (!selectAll) {
+            position = projectionStart;
+            projection = new ArrayList<>();
+            do {
+                projection.add(path());
+            } while (accept(","));
+            expectKeyword("FROM");
+            position = end;
+        }
+        return new SelectStatement(tableName, documentIdName, projection, parseWhere());
+    }
+
+    private Statement parseUpdate() {
+        final String tableName = identifier();
+        if (tableName.startsWith(EmulatedTransaction.COMMITTED_VIEW_PREFIX)) {
+            throw EmulatorException.badRequest("The committed view %s can not be updated", tableName);
+        }
+        parseAlias();
+        expectKeyword("SET");
+        final List<UpdateStatement.Assignment> assignments = new ArrayList<>();
+        do {
+            final String path = path();
+            expect("=");
+            assignments.add(new UpdateStatement.Assignment(path, operand()));
+        } while (accept(","));
+        return new UpdateStatement(tableName, documentIdName, assignments, parseWhere());
+    }
+
+    private void parseAlias() {
+        if (acceptKeyword("AS")) {
+            alias = identifier();
+        } else if (position < tokens.size() && isIdentifier(tokens.get(position))
+                && !isKeyword(tokens.get(position), "WHERE") && !isKeyword(tokens.get(position), "SET")
+                && !isKeyword(tokens.get(position), "BY")) {
+            alias = identifier();
+        }
+        if (acceptKeyword("BY")) {
+            documentIdName = identifier();
+        }
+    }
+
+    private List<Condition> parseWhere() {
+        if (!acceptKeyword("WHERE")) {
+            return Collections.emptyList();
+        }
+        final List<Condition> conditions = new ArrayList<>();
+        do {
+            final String path = path();
+            if (acceptKeyword("IN")) {
+                conditions.add(new Condition(path, operandList()));
+            } else {
+                final Condition.Operator operator = operator();
+                conditions.add(new Condition(path, operator, operand()));
+            }
+        } while (acceptKeyword("AND"));
+        return conditions;
+    }
+
+    private Condition.Operator operator() {
+        final String token = next();
+        switch (token) {
+            case "=":
+                return Condition.Operator.EQUAL;
+            case "<>":
+            case "!=":
+                return Condition.Operator.NOT_EQUAL;
+            case "<":
+                return Condition.Operator.LESS;
+            case "<=":
+                return Condition.Operator.LESS_OR_EQUAL;
+            case ">":
+                return Condition.Operator.GREATER;
+            case ">=":
+                return Condition.Operator.GREATER_OR_EQUAL;
+            default:
+                throw unsupported();
+        }
+    }
+
+    private Operand operand() {
+        final String token = next();
+        if (token.equals("?")) {
+            return Operand.parameter(parameterCount++);
+        }
+        if (token.startsWith("'")) {
+            return Operand.literal(ionSystem.newString(token.substring(1, token.length() - 1).replace("''", "'")));
+        }
+        try {
+            return Operand.literal(ionSystem.newDecimal(new BigDecimal(token)));
+        } catch (final NumberFormatException e) {
+            throw unsupported();
+        }
+    }
+
+    private List<Operand> operandList() {
+        expect("(");
+        final List<Operand> operands = new ArrayList<>();
+        do {
+            operands.add(operand());
+        } while (accept(","));
+        expect(")");
+        return operands;
+    }
+
+    /**
+     * An Ion timestamp literal between backticks, returned without them
+     */
+    private String timestamp() {
+        final String token = next();
+        if (!token.startsWith("`")) {
+            throw unsupported();
+        }
+        final String timestamp = token.substring(1, token.length() - 1).trim();
+        try {
+            Timestamp.valueOf(timestamp);
+        } catch (final IllegalArgumentException e) {
+            throw unsupported();
+        }
+        return timestamp;
+    }
+
+    /**
+     * A dotted path, without the alias of the table if it starts with it
+     */
+    private String path() {
+        final StringBuilder path = new StringBuilder(identifier());
+        while (accept(".")) {
+            path.append('.').append(identifier());
+        }
+        final String prefix = alias + ".";
+        if (alias != null && path.toString().startsWith(prefix)) {
+            return path.substring(prefix.length());
+        }
+        return path.toString();
+    }
+
+    private String identifier() {
+        final String token = next();
+        if (!isIdentifier(token)) {
+            throw unsupported();
+        }
+        return token;
+    }
+
+    private String next() {
+        if (position >= tokens.size()) {
+            throw unsupported();
+        }
+        return tokens.get(position++);
+    }
+
+    private boolean accept(final String token) {
+        if (position < tokens.size() && tokens.get(position).equals(token)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean accept(final String first, final String second) {
+        if (position + 1 < tokens.size() && tokens.get(position).equalsIgnoreCase(first)
+                && tokens.get(position + 1).equals(second)) {
+            position += 2;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(final String token) {
+        if (!accept(token)) {
+            throw unsupported();
+        }
+    }
+
+    private boolean acceptKeyword(final String keyword) {
+        if (position < tokens.size() && isKeyword(tokens.get(position), keyword)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expectKeyword(final String keyword) {
+        if (!acceptKeyword(keyword)) {
+            throw unsupported();
+        }
+    }
+
+    private EmulatorException unsupported() {
+        return EmulatorException.badRequest("Statement not supported by the emulator: %s", statement);
+    }
+
+    private static boolean isKeyword(final String token, final String keyword) {
+        return token.toUpperCase(Locale.ROOT).equals(keyword);
+    }
+
+    private static boolean isIdentifier(final String token) {
+        return Character.isLetter(token.charAt(0)) || token.charAt(0) == '_';
+    }
+
+    private List<String> tokenize(final String statement) {
+        final List<String> tokens = new ArrayList<>();
+        final int length = statement.length();
+        int i = 0;
+        while (i < length) {
+            final char c = statement.charAt(i);
+            final int start = i;
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            } else if (Character.isLetter(c) || c == '_') {
+                while (i < length && (Character.isLetterOrDigit(statement.charAt(i)) || statement.charAt(i) == '_')) {
+                    i++;
+                }
+            } else if (Character.isDigit(c)
+                    || (c == '-' && i + 1 < length && Character.isDigit(statement.charAt(i + 1)))) {
+                i++;
+                while (i < length && (Character.isDigit(statement.charAt(i)) || statement.charAt(i) == '.')) {
+                    i++;
+                }
+            } else if (c == '\'') {
+                // Quotes inside a string literal are escaped by doubling them
+                i++;
+                while (i < length && (statement.charAt(i) != '\''
+                        || (i + 1 < length && statement.charAt(i + 1) == '\''))) {
+                    i += statement.charAt(i) == '\'' ? 2 : 1;
+                }
+                if (i >= length) {
+                    throw unsupported();
+                }
+                i++;
+            } else if (c == '`') {
+                i = statement.indexOf('`', i + 1);
+                if (i < 0) {
+                    throw unsupported();
+                }
+                i++;
+            } else if (i + 1 < length && isTwoCharacterOperator(statement.substring(i, i + 2))) {
+                i += 2;
+            } else {
+                i++;
+            }
+            tokens.add(statement.substring(start, i));
+        }
+        return tokens;
+    }
+
+    private static boolean isTwoCharacterOperator(final String token) {
+        return token.equals("<=") || token.equals(">=") || token.equals("<>") || token.equals("!=");
+    }
+}
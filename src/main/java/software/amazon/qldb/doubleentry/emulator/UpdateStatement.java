@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.emulator;
+
+import com.amazon.ion.IonStruct;
+import com.amazon.ion.IonValue;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * UPDATE table [BY name] SET field = operand, ... [WHERE conditions]
+ */
+@AllArgsConstructor
+class UpdateStatement implements Statement {
+
+    private final String tableName;
+
+    /**
+     * The name the document id is bound to by a BY clause, or null
+     */
+    private final String documentIdName;
+
+    private final List<Assignment> assignments;
+
+    private final List<Condition> conditions;
+
+    @Override
+    public String getKeyword() {
+        return "UPDATE";
+    }
+
+    @Override
+    public List<IonValue> execute(final EmulatedTransaction transaction, final List<IonValue> parameters) {
+        final List<IonValue> result = new ArrayList<>();
+        for (final EmulatedTransaction.DocumentView document
+                : transaction.find(tableName, documentIdName, conditions, parameters)) {
+            final IonStruct updated = document.getData().clone();
+            for (final Assignment assignment : assignments) {
+                set(transaction, updated, assignment.getPath(), assignment.getOperand().value(parameters));
+            }
+            transaction.update(tableName, document.getDocumentId(), updated);
+            result.add(transaction.toDmlResult(document.getDocumentId()));
+        }
+        return result;
+    }
+
+    private static void set(final EmulatedTransaction transaction,
+                            final IonStruct document,
+                            final String path,
+                            final IonValue value) {
+        final String[] names = path.split("\\.");
+        IonStruct parent = document;
+        for (int i = 0; i < names.length - 1; i++) {
+            final IonValue child = parent.get(names[i]);
+            if (child instanceof IonStruct) {
+                parent = (IonStruct) child;
+            } else {
+                final IonStruct created = transaction.getIonSystem().newEmptyStruct();
+                parent.put(names[i], created);
+                parent = created;
+            }
+        }
+        parent.put(names[names.length - 1], value.clone());
+    }
+
+    @Value
+    static class Assignment {
+        String path;
+        Operand operand;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.helpers;
+
+import lombok.NonNull;
+import org.apache.commons.lang3.Validate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>
+ * A dictionary of AccountIds, which gives every AccountId a dense int index
+ * in the order they are first seen. In-memory structures which hold many
+ * accounts, like the {@link BalanceTable}, work on the indexes, and only the
+ * edges of the application deal with AccountId strings.
+ * </p>
+ *
+ * <p>
+ * Lookups never lock. Adding an AccountId takes a lock, so that the indexes
+ * stay dense; it is only stored for lookups once its index is assigned, so
+ * a lookup which finds an index can always map it back.
+ * </p>
+ *
+ * <p>
+ * The dictionary is saved as the AccountIds in the order of their indexes,
+ * each as its length and UTF-8 bytes, so that loading it back gives every
+ * AccountId the same index.
+ * </p>
+ */
+public class AccountDictionary {
+
+    private static final int MAGIC = 0x4144_4931;
+
+    private static final int PAGE_SHIFT = 16;
+
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+    private final int maxAccounts;
+
+    private final ConcurrentMap<String, Integer> indexes = new ConcurrentHashMap<>();
+
+    private final AtomicReferenceArray<String[]> accountIds;
+
+    private volatile int size;
+
+    public AccountDictionary(final int maxAccounts) {
+        Validate.isTrue(maxAccounts > 0);
+        this.maxAccounts = maxAccounts;
+        this.accountIds = new AtomicReferenceArray<>((maxAccounts + PAGE_SIZE - 1) >>> PAGE_SHIFT);
+    }
+
+    /**
+     * @return The index of the AccountId, or -1 if it is not in the dictionary
+     */
+    public int lookup(@NonNull final String accountId) {
+        final Integer index = indexes.get(accountId);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @return The index of the AccountId, which is added to the dictionary if it is not in it yet
+     */
+    public int indexOf(@NonNull final String accountId) {
+        final Integer index = indexes.get(accountId);
+        return index == null ? add(accountId) : index;
+    }
+
+    /**
+     * @return The AccountId with the given index
+     */
+    public String accountId(final int index) {
+        Validate.isTrue(index >= 0 && index < size, "Unknown account index %s", index);
+        return accountIds.get(index >>> PAGE_SHIFT)[index & (PAGE_SIZE - 1)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Save the dictionary to the given file. The file is replaced only once
+     * it is complete.
+     */
+    public void save(@NonNull final Path path) throws IOException {
+        final Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        final int count = size;
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temporary)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(count);
+            for (int index = 0; index < count; index++) {
+                output.writeUTF(accountId(index));
+            }
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Load a dictionary saved by {@link #save(Path)}, with the same indexes
+     */
+    public static AccountDictionary load(@NonNull final Path path, final int maxAccounts) throws IOException {
+        final AccountDictionary dictionary = new AccountDictionary(maxAccounts);
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (input.readInt() != MAGIC) {
+                throw new IOException(path + " is not an account dictionary");
+            }
+            final int count = input.readInt();
+            for (int index = 0; index < count; index++) {
+                if (dictionary.add(input.readUTF()) != index) {
+                    throw new IOException(path + " has the same AccountId more than once");
+                }
+            }
+        }
+        return dictionary;
+    }
+
+    private synchronized int add(final String accountId) {
+        final Integer existing = indexes.get(accountId);
+        if (existing != null) {
+            return existing;
+        }
+        final int index = size;
+        Validate.validState(index < maxAccounts, "The dictionary is full");
+        String[] page = accountIds.get(index >>> PAGE_SHIFT);
+        if (page == null) {
+            page = new String[PAGE_SIZE];
+            accountIds.set(index >>> PAGE_SHIFT, page);
+        }
+        page[index & (PAGE_SIZE - 1)] = accountId;
+        size = index + 1;
+        indexes.put(accountId, index);
+        return index;
+    }
+}
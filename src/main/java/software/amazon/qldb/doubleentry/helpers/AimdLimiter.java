@@ -0,0 +1,229 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.helpers;
+
+import com.amazonaws.AmazonServiceException;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.Validate;
+import software.amazon.qldb.doubleentry.metrics.Counter;
+import software.amazon.qldb.doubleentry.metrics.MetricNames;
+import software.amazon.qldb.doubleentry.metrics.MetricsRegistry;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * <p>
+ * An adaptive limit on the number of transactions in flight, in the manner of
+ * TCP congestion control: additive increase, multiplicative decrease. While
+ * transactions commit without OCC retries and their latency stays level, the
+ * limit grows by about one for every limit's worth of transactions which
+ * found it full. It is cut when QLDB throttles, when the share of transactions
+ * with OCC retries gets too high, or when the recent latency rises well above
+ * the long-term latency.
+ * </p>
+ *
+ * <p>
+ * The limit is cut at most once per recent transaction latency, so that the
+ * transactions which were already in flight when the trouble started do not
+ * cut it again. Callers beyond the limit wait in {@link #acquire()}.
+ * </p>
+ *
+ * <p>
+ * The limit and the signals behind it are exported to the
+ * {@link MetricsRegistry}, labelled with the name of the limiter.
+ * </p>
+ */
+@Slf4j
+public class AimdLimiter {
+
+    private static final String REASON_THROTTLED = "throttled";
+    private static final String REASON_OCC_CONFLICTS = "occ_conflicts";
+    private static final String REASON_LATENCY = "latency";
+
+    private static final double THROTTLED_BACKOFF = 0.5;
+    private static final double BACKOFF = 0.9;
+    private static final double CONFLICT_RATE_THRESHOLD = 0.2;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double CONFLICT_RATE_ALPHA = 0.05;
+    private static final double SHORT_LATENCY_ALPHA = 0.2;
+    private static final double LONG_LATENCY_ALPHA = 0.01;
+
+    private static final Set<String> THROTTLING_ERROR_CODES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "RateExceededException", "LimitExceededException", "ThrottlingException", "TooManyRequestsException")));
+
+    private final String name;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private double limit;
+
+    private int inFlight;
+
+    private double conflictRate;
+
+    private double shortLatencyNanos;
+
+    private double longLatencyNanos;
+
+    private long lastDecreaseNanos;
+
+    private final Counter throttledDecreases;
+
+    private final Counter conflictDecreases;
+
+    private final Counter latencyDecreases;
+
+    public AimdLimiter(@NonNull final String name,
+                       final int initialLimit,
+                       final int minLimit,
+                       final int maxLimit,
+                       @NonNull final MetricsRegistry metricsRegistry) {
+        Validate.isTrue(0 < minLimit && minLimit <= initialLimit && initialLimit <= maxLimit,
+                "The limits must satisfy 0 < min <= initial <= max");
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+        this.lastDecreaseNanos = System.nanoTime();
+
+        metricsRegistry.gauge(MetricNames.CONCURRENCY_LIMIT, "Transactions allowed in flight by the limiter",
+                this::getLimit, MetricNames.LIMITER_LABEL, name);
+        metricsRegistry.gauge(MetricNames.CONCURRENCY_IN_FLIGHT, "Transactions in flight under the limiter",
+                this::getInFlight, MetricNames.LIMITER_LABEL, name);
+        metricsRegistry.gauge(MetricNames.CONCURRENCY_CONFLICT_RATE,
+                "Moving share of transactions with OCC retries, in thousandths",
+                () -> Math.round(getConflictRate() * 1_000), MetricNames.LIMITER_LABEL, name);
+        final String latencyHelp = "Moving average of the transaction latency seen by the limiter, in seconds";
+        metricsRegistry.durationGauge(MetricNames.CONCURRENCY_LATENCY, latencyHelp, this::getShortLatencyNanos,
+                MetricNames.LIMITER_LABEL, name, MetricNames.WINDOW_LABEL, "short");
+        metricsRegistry.durationGauge(MetricNames.CONCURRENCY_LATENCY, latencyHelp, this::getLongLatencyNanos,
+                MetricNames.LIMITER_LABEL, name, MetricNames.WINDOW_LABEL, "long");
+        final String decreasesHelp = "Cuts of the concurrency limit, by reason";
+        this.throttledDecreases = metricsRegistry.counter(MetricNames.CONCURRENCY_LIMIT_DECREASES, decreasesHelp,
+                MetricNames.LIMITER_LABEL, name, MetricNames.REASON_LABEL, REASON_THROTTLED);
+        this.conflictDecreases = metricsRegistry.counter(MetricNames.CONCURRENCY_LIMIT_DECREASES, decreasesHelp,
+                MetricNames.LIMITER_LABEL, name, MetricNames.REASON_LABEL, REASON_OCC_CONFLICTS);
+        this.latencyDecreases = metricsRegistry.counter(MetricNames.CONCURRENCY_LIMIT_DECREASES, decreasesHelp,
+                MetricNames.LIMITER_LABEL, name, MetricNames.REASON_LABEL, REASON_LATENCY);
+    }
+
+    /**
+     * Wait until fewer transactions than the limit are in flight, and count
+     * the caller in. Every call has to be followed by one call to
+     * {@link #release(long, int, boolean)}.
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (inFlight >= (int) limit) {
+            wait();
+        }
+        inFlight++;
+    }
+
+    /**
+     * Count a transaction out, and adjust the limit to how it went.
+     *
+     * @param latencyNanos The time the transaction took, retries included
+     * @param occRetries The number of times the transaction was retried
+     * @param throttled Whether the transaction failed because QLDB throttled it
+     */
+    public synchronized void release(final long latencyNanos, final int occRetries, final boolean throttled) {
+        final boolean limitWasReached = inFlight >= (int) limit;
+        inFlight--;
+        conflictRate += CONFLICT_RATE_ALPHA * ((occRetries > 0 ? 1 : 0) - conflictRate);
+        if (!throttled) {
+            shortLatencyNanos = average(shortLatencyNanos, latencyNanos, SHORT_LATENCY_ALPHA);
+            longLatencyNanos = average(longLatencyNanos, latencyNanos, LONG_LATENCY_ALPHA);
+        }
+
+        if (throttled) {
+            decrease(THROTTLED_BACKOFF, throttledDecreases, REASON_THROTTLED);
+        } else if (conflictRate > CONFLICT_RATE_THRESHOLD) {
+            decrease(BACKOFF, conflictDecreases, REASON_OCC_CONFLICTS);
+        } else if (shortLatencyNanos > longLatencyNanos * LATENCY_TOLERANCE) {
+            decrease(BACKOFF, latencyDecreases, REASON_LATENCY);
+        } else if (occRetries == 0 && limitWasReached) {
+            // Only grow a limit which is actually holding callers back
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+        notifyAll();
+    }
+
+    private void decrease(final double backoff, final Counter decreases, final String reason) {
+        final long now = System.nanoTime();
+        if (now - lastDecreaseNanos < shortLatencyNanos) {
+            return;
+        }
+        lastDecreaseNanos = now;
+        final double previous = limit;
+        limit = Math.max(minLimit, limit * backoff);
+        decreases.increment();
+        log.debug("Concurrency limit {} cut from {} to {} ({})", name, (int) previous, (int) limit, reason);
+    }
+
+    private static double average(final double average, final long sample, final double alpha) {
+        return average == 0 ? sample : average + alpha * (sample - average);
+    }
+
+    public synchronized long getLimit() {
+        return (long) limit;
+    }
+
+    public synchronized long getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * The moving share of transactions which had OCC retries, between 0 and 1
+     */
+    public synchronized double getConflictRate() {
+        return conflictRate;
+    }
+
+    public synchronized long getShortLatencyNanos() {
+        return (long) shortLatencyNanos;
+    }
+
+    public synchronized long getLongLatencyNanos() {
+        return (long) longLatencyNanos;
+    }
+
+    /**
+     * Whether the given exception, or one of its causes, is QLDB or the AWS
+     * SDK throttling the caller
+     */
+    public static boolean isThrottling(final Throwable exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof AmazonServiceException) {
+                final AmazonServiceException serviceException = (AmazonServiceException) cause;
+                if (serviceException.getStatusCode() == 429
+                        || THROTTLING_ERROR_CODES.contains(serviceException.getErrorCode())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
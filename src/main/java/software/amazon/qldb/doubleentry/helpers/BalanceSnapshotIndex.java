@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.helpers;
+
+import lombok.NonNull;
+import software.amazon.qldb.doubleentry.models.BalanceSnapshot;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * <p>
+ * A local index of {@link BalanceSnapshot}s, by account and by the time
+ * they were taken at. Point in time balance queries start from the latest
+ * snapshot taken at or before the time they ask for, so that only the
+ * transfers committed since that snapshot have to be replayed.
+ * </p>
+ *
+ * <p>
+ * Only the given number of snapshots are kept per account; the oldest ones
+ * are dropped first.
+ * </p>
+ */
+public class BalanceSnapshotIndex {
+
+    private final ConcurrentMap<String, ConcurrentNavigableMap<Instant, BalanceSnapshot>> snapshots =
+            new ConcurrentHashMap<>();
+
+    private final int snapshotsPerAccount;
+
+    public BalanceSnapshotIndex(final int snapshotsPerAccount) {
+        if (snapshotsPerAccount < 1) {
+            throw new IllegalArgumentException("At least one snapshot per account has to be kept");
+        }
+        this.snapshotsPerAccount = snapshotsPerAccount;
+    }
+
+    public void add(@NonNull final BalanceSnapshot snapshot) {
+        final ConcurrentNavigableMap<Instant, BalanceSnapshot> accountSnapshots =
+                snapshots.computeIfAbsent(snapshot.getAccountId(), id -> new ConcurrentSkipListMap<>());
+        // Of two snapshots taken at the same time, keep the one further in the journal
+        accountSnapshots.merge(snapshot.getTakenAt(), snapshot,
+                (kept, added) -> added.getSequenceNo() > kept.getSequenceNo() ? added : kept);
+        while (accountSnapshots.size() > snapshotsPerAccount) {
+            accountSnapshots.pollFirstEntry();
+        }
+    }
+
+    /**
+     * The latest snapshot of the account taken at or before the given time
+     */
+    public Optional<BalanceSnapshot> floor(@NonNull final String accountId, @NonNull final Instant instant) {
+        final ConcurrentNavigableMap<Instant, BalanceSnapshot> accountSnapshots = snapshots.get(accountId);
+        if (accountSnapshots == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(accountSnapshots.floorEntry(instant)).map(Map.Entry::getValue);
+    }
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.helpers;
+
+import lombok.NonNull;
+import org.apache.commons.lang3.Validate;
+import software.amazon.qldb.doubleentry.Constants;
+import software.amazon.qldb.doubleentry.journal.JournalEvent;
+import software.amazon.qldb.doubleentry.journal.JournalEventListener;
+import software.amazon.qldb.doubleentry.models.Account;
+import software.amazon.qldb.doubleentry.models.AccountBalance;
+import software.amazon.qldb.doubleentry.models.Balance;
+import software.amazon.qldb.doubleentry.models.Transaction;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntPredicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * <p>
+ * The balances of many accounts, held off-heap as fixed-point longs, for
+ * in-process views of the ledger such as caches, read models and
+ * simulations. A balance is addressed by a dense account index and the
+ * ordinal of its currency in {@link Constants#SUPPORTED_CURRENCIES}, and
+ * takes 8 bytes, where a {@link Balance} with its Decimal and currency
+ * string takes hundreds of bytes of heap.
+ * </p>
+ *
+ * <p>
+ * Balances are kept with {@link #SCALE} decimal places. The slots are
+ * allocated in pages of direct memory as accounts are written, and every
+ * slot is read and updated on its own with volatile reads and compare and
+ * set, without locks. Updates to two slots, like the two sides of a
+ * transfer, are not atomic together.
+ * </p>
+ *
+ * <p>
+ * An account which has no balance in a currency is told apart from one
+ * with a zero balance, since only accounts with a balance in a currency
+ * accept transfers in it.
+ * </p>
+ */
+public class BalanceTable {
+
+    public static final int SCALE = 4;
+
+    private static final int CURRENCIES = Constants.SUPPORTED_CURRENCIES.size();
+
+    private static final int PAGE_SHIFT = 20;
+
+    private static final int PAGE_SLOTS = 1 << PAGE_SHIFT;
+
+    /**
+     * Held by slots which have no balance
+     */
+    private static final long ABSENT = Long.MIN_VALUE;
+
+    private static final VarHandle SLOTS = MethodHandles.byteBufferViewVarHandle(long[].class,
+            ByteOrder.nativeOrder());
+
+    private final int maxAccounts;
+
+    private final AtomicReferenceArray<ByteBuffer> pages;
+
+    private final AtomicInteger accounts = new AtomicInteger();
+
+    public BalanceTable(final int maxAccounts) {
+        Validate.isTrue(maxAccounts > 0);
+        this.maxAccounts = maxAccounts;
+        this.pages = new AtomicReferenceArray<>((int) ((((long) maxAccounts * CURRENCIES) >>> PAGE_SHIFT) + 1));
+    }
+
+    /**
+     * @return The ordinal of the currency, or -1 if it is not supported
+     */
+    public static int currencyOrdinal(@NonNull final String currency) {
+        return Constants.SUPPORTED_CURRENCIES.indexOf(currency);
+    }
+
+    /**
+     * @throws ArithmeticException if the amount has more than {@link #SCALE}
+     * decimal places, or does not fit in a long in fixed point
+     */
+    public static long toFixedPoint(@NonNull final BigDecimal amount) {
+        return amount.setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal toDecimal(final long fixedPoint) {
+        return BigDecimal.valueOf(fixedPoint, SCALE);
+    }
+
+    /**
+     * One more than the highest account index written so far
+     */
+    public int getAccounts() {
+        return accounts.get();
+    }
+
+    public boolean hasBalance(final int account, final int currency) {
+        return get(account, currency) != ABSENT;
+    }
+
+    /**
+     * @return The balance, in fixed point, or {@link Long#MIN_VALUE} if the
+     * account has no balance in the currency
+     */
+    public long get(final int account, final int currency) {
+        final long slot = slot(account, currency);
+        final ByteBuffer page = pages.get((int) (slot >>> PAGE_SHIFT));
+        return page == null ? ABSENT : (long) SLOTS.getVolatile(page, offset(slot));
+    }
+
+    public void set(final int account, final int currency, final long balance) {
+        Validate.isTrue(balance != ABSENT, "The balance is out of range");
+        final long slot = slot(account, currency);
+        SLOTS.setVolatile(page(slot), offset(slot), balance);
+        markWritten(account);
+    }
+
+    /**
+     * Remove the balance of the account in the currency
+     */
+    public void clear(final int account, final int currency) {
+        final long slot = slot(account, currency);
+        final ByteBuffer page = pages.get((int) (slot >>> PAGE_SHIFT));
+        if (page != null) {
+            SLOTS.setVolatile(page, offset(slot), ABSENT);
+        }
+    }
+
+    /**
+     * Set the balance to the given value if it still has the expected one
+     */
+    public boolean compareAndSet(final int account, final int currency, final long expected, final long balance) {
+        Validate.isTrue(balance != ABSENT, "The balance is out of range");
+        final long slot = slot(account, currency);
+        if (!SLOTS.compareAndSet(page(slot), offset(slot), expected, balance)) {
+            return false;
+        }
+        markWritten(account);
+        return true;
+    }
+
+    /**
+     * Add the delta to the balance, unless the account has no balance in the
+     * currency or the result would be below the floor.
+     *
+     * @return false if the balance was left as it is
+     */
+    public boolean tryAdd(final int account, final int currency, final long delta, final long floor) {
+        final long slot = slot(account, currency);
+        final ByteBuffer page = pages.get((int) (slot >>> PAGE_SHIFT));
+        if (page == null) {
+            return false;
+        }
+        final int offset = offset(slot);
+        while (true) {
+            final long balance = (long) SLOTS.getVolatile(page, offset);
+            if (balance == ABSENT) {
+                return false;
+            }
+            final long updated = Math.addExact(balance, delta);
+            if (updated < floor) {
+                return false;
+            }
+            if (SLOTS.compareAndSet(page, offset, balance, updated)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Replace every balance of the account with the given ones. Balances in
+     * currencies which are not supported are left out.
+     */
+    public void setAll(final int account, @NonNull final List<Balance> balances) {
+        setAll(account, balances, currency -> true);
+    }
+
+    /**
+     * Replace the balances of the account in the currencies accepted by the
+     * filter with the given ones, and leave the others as they are
+     */
+    private void setAll(final int account, final List<Balance> balances, final IntPredicate replaced) {
+        for (int currency = 0; currency < CURRENCIES; currency++) {
+            if (replaced.test(currency)) {
+                clear(account, currency);
+            }
+        }
+        for (final Balance balance : balances) {
+            final int currency = balance.getCurrency() == null ? -1 : currencyOrdinal(balance.getCurrency());
+            if (currency >= 0 && replaced.test(currency) && balance.getCurrencyBalance() != null) {
+                set(account, currency, toFixedPoint(balance.getCurrencyBalance()));
+            }
+        }
+    }
+
+    /**
+     * The sum of the balances of every account in the currency, in fixed point
+     */
+    public long sum(final int currency) {
+        long sum = 0;
+        final int accountCount = accounts.get();
+        for (int account = 0; account < accountCount; account++) {
+            final long balance = get(account, currency);
+            if (balance != ABSENT) {
+                sum = Math.addExact(sum, balance);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * A listener which loads the balances of a journal export, read by the
+     * {@link software.amazon.qldb.doubleentry.journal.JournalExportReader},
+     * in either balance layout. The revision with the highest version of
+     * every document is the one left in the table, whatever the order of the
+     * files of the export.
+     *
+     * <p>
+     * A balance which has an AccountBalances document is taken from that
+     * document only. The Balances of the Accounts document of the account
+     * are kept after it moves to the per currency layout, but are no longer
+     * updated.
+     * </p>
+     *
+     * @param accountIndex Gives the index of an AccountId in the table
+     */
+    public JournalEventListener exportLoader(@NonNull final ToIntFunction<String> accountIndex) {
+        return new ExportLoader(accountIndex);
+    }
+
+    /**
+     * Raise the high-water mark of the accounts written, which only takes a
+     * compare and set the first time an account is written
+     */
+    private void markWritten(final int account) {
+        if (accounts.get() <= account) {
+            accounts.accumulateAndGet(account + 1, Math::max);
+        }
+    }
+
+    private long slot(final int account, final int currency) {
+        Validate.isTrue(account >= 0 && account < maxAccounts, "Account index out of range: %s", account);
+        Validate.isTrue(currency >= 0 && currency < CURRENCIES, "Currency ordinal out of range: %s", currency);
+        return (long) account * CURRENCIES + currency;
+    }
+
+    private static int offset(final long slot) {
+        return (int) (slot & (PAGE_SLOTS - 1)) * Long.BYTES;
+    }
+
+    /**
+     * The page of the slot, allocated and filled with absent balances on first use
+     */
+    private ByteBuffer page(final long slot) {
+        final int index = (int) (slot >>> PAGE_SHIFT);
+        final ByteBuffer page = pages.get(index);
+        if (page != null) {
+            return page;
+        }
+        final ByteBuffer allocated = ByteBuffer.allocateDirect(PAGE_SLOTS * Long.BYTES).order(ByteOrder.nativeOrder());
+        for (int offset = 0; offset < PAGE_SLOTS * Long.BYTES; offset += Long.BYTES) {
+            allocated.putLong(offset, ABSENT);
+        }
+        return pages.compareAndSet(index, null, allocated) ? allocated : pages.get(index);
+    }
+
+    /**
+     * Loads the balances of the documents of a journal export, called from
+     * one thread at a time
+     */
+    private final class ExportLoader implements JournalEventListener {
+
+        private final ToIntFunction<String> accountIndex;
+
+        /**
+         * The latest revision loaded, by DocumentId
+         */
+        private final Map<String, LoadedRevision> revisions = new HashMap<>();
+
+        /**
+         * The slots which have an AccountBalances document
+         */
+        private final Set<Long> perCurrencySlots = new HashSet<>();
+
+        private ExportLoader(final ToIntFunction<String> accountIndex) {
+            this.accountIndex = accountIndex;
+        }
+
+        @Override
+        public void onAccount(final JournalEvent<Account> event) {
+            final LoadedRevision revision = latest(event);
+            if (revision == null) {
+                return;
+            }
+            if (event.isDeleted()) {
+                if (revision.account >= 0) {
+                    setAll(revision.account, Collections.emptyList(), embedded(revision.account));
+                }
+                return;
+            }
+            final Account account = event.getDocument();
+            if (account.getAccountId() == null) {
+                return;
+            }
+            revision.account = accountIndex.applyAsInt(account.getAccountId());
+            if (account.getBalances() != null) {
+                setAll(revision.account, account.getBalances(), embedded(revision.account));
+            }
+        }
+
+        @Override
+        public void onAccountBalance(final JournalEvent<AccountBalance> event) {
+            final LoadedRevision revision = latest(event);
+            if (revision == null) {
+                return;
+            }
+            if (event.isDeleted()) {
+                if (revision.account >= 0) {
+                    clear(revision.account, revision.currency);
+                }
+                return;
+            }
+            final AccountBalance balance = event.getDocument();
+            final int currency = balance.getCurrency() == null ? -1 : currencyOrdinal(balance.getCurrency());
+            if (balance.getAccountId() == null || currency < 0) {
+                return;
+            }
+            revision.account = accountIndex.applyAsInt(balance.getAccountId());
+            revision.currency = currency;
+            perCurrencySlots.add(slot(revision.account, currency));
+            if (balance.getCurrencyBalance() == null) {
+                clear(revision.account, currency);
+            } else {
+                set(revision.account, currency, toFixedPoint(balance.getCurrencyBalance()));
+            }
+        }
+
+        @Override
+        public void onTransaction(final JournalEvent<Transaction> event) {
+            // The balances are all in the Accounts and AccountBalances documents
+        }
+
+        /**
+         * @return The revision loaded for the document of the event, or null
+         * if a revision with the same or a higher version was loaded already
+         */
+        private LoadedRevision latest(final JournalEvent<?> event) {
+            final LoadedRevision revision = revisions.computeIfAbsent(event.getDocumentId(),
+                    documentId -> new LoadedRevision());
+            if (event.getVersion() <= revision.version) {
+                return null;
+            }
+            revision.version = event.getVersion();
+            return revision;
+        }
+
+        /**
+         * The currencies of the account whose balances come from its Accounts document
+         */
+        private IntPredicate embedded(final int account) {
+            return currency -> !perCurrencySlots.contains(slot(account, currency));
+        }
+    }
+
+    private static final class LoadedRevision {
+
+        private long version = -1;
+
+        private int account = -1;
+
+        private int currency = -1;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.helpers;
+
+import lombok.NonNull;
+import software.amazon.qldb.doubleentry.metrics.Counter;
+import software.amazon.qldb.doubleentry.metrics.MetricNames;
+import software.amazon.qldb.doubleentry.metrics.MetricsRegistry;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * <p>
+ * A bounded cache of the QLDB document ids of documents which are looked up
+ * by a unique key, e.g. the Accounts document of an AccountId. Once the id is
+ * known, the document can be read and updated by its id instead of through
+ * the index of the key.
+ * </p>
+ *
+ * <p>
+ * The id of a document never changes, but the document may have been
+ * deleted and created again under a new id. Callers have to check that the
+ * document they read by id still has the key, and {@link #invalidate} the
+ * entry if it does not. The least recently used entries are evicted once the
+ * cache is full.
+ * </p>
+ */
+public class DocumentIdCache {
+
+    private static final String RESULT_HIT = "hit";
+    private static final String RESULT_MISS = "miss";
+    private static final String RESULT_STALE = "stale";
+
+    private final Map<String, String> documentIds;
+
+    private final Counter hits;
+
+    private final Counter misses;
+
+    private final Counter staleEntries;
+
+    public DocumentIdCache(final int capacity, @NonNull final MetricsRegistry metricsRegistry) {
+        this.documentIds = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, String> eldest) {
+                return size() > capacity;
+            }
+        };
+        final String help = "Lookups of document ids by key, by result";
+        this.hits = metricsRegistry.counter(MetricNames.DOCUMENT_ID_CACHE_LOOKUPS, help,
+                MetricNames.RESULT_LABEL, RESULT_HIT);
+        this.misses = metricsRegistry.counter(MetricNames.DOCUMENT_ID_CACHE_LOOKUPS, help,
+                MetricNames.RESULT_LABEL, RESULT_MISS);
+        this.staleEntries = metricsRegistry.counter(MetricNames.DOCUMENT_ID_CACHE_LOOKUPS, help,
+                MetricNames.RESULT_LABEL, RESULT_STALE);
+    }
+
+    /**
+     * The cached id of the document of the given table with the given key
+     */
+    public Optional<String> get(@NonNull final String tableName, @NonNull final String key) {
+        final String documentId;
+        synchronized (documentIds) {
+            documentId = documentIds.get(cacheKey(tableName, key));
+        }
+        (documentId == null ? misses : hits).increment();
+        return Optional.ofNullable(documentId);
+    }
+
+    public void put(@NonNull final String tableName, @NonNull final String key, @NonNull final String documentId) {
+        synchronized (documentIds) {
+            documentIds.put(cacheKey(tableName, key), documentId);
+        }
+    }
+
+    /**
+     * Forget an id which no longer addresses the document with the given key
+     */
+    public void invalidate(@NonNull final String tableName, @NonNull final String key) {
+        synchronized (documentIds) {
+            documentIds.remove(cacheKey(tableName, key));
+        }
+        staleEntries.increment();
+    }
+
+    private static String cacheKey(final String tableName, final String key) {
+        return tableName + "/" + key;
+    }
+}
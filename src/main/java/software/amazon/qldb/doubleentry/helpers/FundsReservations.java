@@ -0,0 +1,347 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.doubleentry.helpers;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.qldb.doubleentry.models.Balance;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * An in-process admission layer for transfers. For every account we remember
+ * the last balance we saw in QLDB and the amounts held by transfers that are
+ * still in flight from this process. A transfer whose amount is not covered by
+ * (last known balance - held amount) is rejected before a QLDB session is
+ * opened.
+ * </p>
+ *
+ * <p>
+ * QLDB stays the final authority: a transfer that is admitted here is still
+ * checked against the balances read inside the QLDB transaction. Balances that
+ * we have never seen, or that are older than the staleness window, are treated
+ * as unknown and never cause a rejection.
+ * </p>
+ *
+ * <p>
+ * A balance read while transfers are in flight may or may not include their
+ * debits already, and subtracting their holds from it could count them twice.
+ * So a balance read from QLDB is reconciled with the holds: the ones placed
+ * before the stamp of the read may be in it already, and are not subtracted
+ * from it, while the ones placed after it are. The balance committed by a
+ * transfer is followed by none of the other holds, which are all subtracted
+ * from it. Accounts without holds and without a fresh balance are evicted, at
+ * most once per staleness window.
+ * </p>
+ */
+@Slf4j
+public class FundsReservations {
+
+    private final ConcurrentMap<String, AccountFunds> accounts = new ConcurrentHashMap<>();
+
+    private final long staleAfterNanos;
+
+    private final AtomicLong nextEvictionAt;
+
+    public FundsReservations(final long staleAfterMillis) {
+        this.staleAfterNanos = TimeUnit.MILLISECONDS.toNanos(staleAfterMillis);
+        this.nextEvictionAt = new AtomicLong(System.nanoTime() + staleAfterNanos);
+    }
+
+    /**
+     * Returns a stamp which has to be taken before reading balances from QLDB
+     * and handed to {@link #observe(String, List, long)} afterwards. It lets
+     * us ignore reads that were overtaken by a newer observation.
+     */
+    public long stamp() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Try to hold the given amount on the account. If the last known available
+     * balance cannot cover the amount, nothing is held and an empty Optional
+     * is returned.
+     */
+    public Optional<Reservation> tryReserve(@NonNull final String accountId,
+                                            @NonNull final String currency,
+                                            final double amount) {
+        evictIdleIfDue();
+        final BigDecimal requested = BigDecimal.valueOf(amount);
+        return Optional.ofNullable(withFunds(accountId, funds -> {
+            final CurrencyFunds currencyFunds = funds.forCurrency(currency);
+            if (currencyFunds.isKnown(staleAfterNanos)) {
+                final BigDecimal available = currencyFunds.knownBalance.subtract(currencyFunds.unreflectedHeld());
+                // Mirrors the strict check done by Banking inside the QLDB transaction
+                if (available.compareTo(requested) <= 0) {
+                    log.debug("Rejecting reservation of {} {} on account {}. Available balance is {}",
+                            requested, currency, accountId, available);
+                    return null;
+                }
+            }
+            final Reservation reservation = new Reservation(accountId, currency, requested, stamp());
+            currencyFunds.hold(reservation);
+            return reservation;
+        }));
+    }
+
+    /**
+     * Record the balances read from QLDB for the given account.
+     *
+     * @param stamp The value of {@link #stamp()} taken before the balances were read
+     */
+    public void observe(@NonNull final String accountId,
+                        @NonNull final List<Balance> balances,
+                        final long stamp) {
+        evictIdleIfDue();
+        withFunds(accountId, funds -> {
+            funds.observe(balances, stamp, true);
+            return null;
+        });
+    }
+
+    /**
+     * The amount currently held for in-flight transfers on the given account.
+     */
+    public BigDecimal getHeldAmount(@NonNull final String accountId, @NonNull final String currency) {
+        final AccountFunds funds = accounts.get(accountId);
+        if (funds == null) {
+            return BigDecimal.ZERO;
+        }
+        synchronized (funds) {
+            return funds.forCurrency(currency).held;
+        }
+    }
+
+    /**
+     * The number of accounts we currently keep funds for
+     */
+    public int size() {
+        return accounts.size();
+    }
+
+    /**
+     * Drop the accounts which have no hold and no balance fresh enough to be
+     * used.
+     *
+     * @return The number of accounts dropped
+     */
+    public int evictIdle() {
+        int evicted = 0;
+        for (final Map.Entry<String, AccountFunds> entry : accounts.entrySet()) {
+            final AccountFunds funds = entry.getValue();
+            synchronized (funds) {
+                if (funds.isIdle(staleAfterNanos)) {
+                    funds.evicted = true;
+                    accounts.remove(entry.getKey(), funds);
+                    evicted++;
+                }
+            }
+        }
+        return evicted;
+    }
+
+    private void evictIdleIfDue() {
+        final long now = System.nanoTime();
+        final long due = nextEvictionAt.get();
+        if (now - due >= 0 && nextEvictionAt.compareAndSet(due, now + staleAfterNanos)) {
+            final int evicted = evictIdle();
+            log.debug("Evicted the funds of {} idle accounts", evicted);
+        }
+    }
+
+    /**
+     * Run the action under the lock of the funds of the account, which are
+     * created if needed. Funds which were evicted in the meantime are left
+     * alone and created again.
+     */
+    private <T> T withFunds(final String accountId, final Function<AccountFunds, T> action) {
+        while (true) {
+            final AccountFunds funds = accounts.computeIfAbsent(accountId, id -> new AccountFunds());
+            synchronized (funds) {
+                if (!funds.evicted) {
+                    return action.apply(funds);
+                }
+            }
+        }
+    }
+
+    private void release(final Reservation reservation, final List<Balance> committedBalances) {
+        // The funds of an account with a hold are never evicted
+        final AccountFunds funds = accounts.get(reservation.accountId);
+        if (funds == null) {
+            return;
+        }
+        // Recording the committed balance and dropping the hold under the same
+        // lock means no other reservation sees the amount subtracted twice
+        synchronized (funds) {
+            funds.forCurrency(reservation.currency).drop(reservation);
+            if (committedBalances != null) {
+                funds.observe(committedBalances, stamp(), false);
+            }
+        }
+    }
+
+    /**
+     * A hold placed by {@link #tryReserve(String, String, double)}. It has to
+     * be either committed or released exactly once; further calls are ignored.
+     */
+    public final class Reservation {
+
+        private final String accountId;
+
+        private final String currency;
+
+        private final BigDecimal amount;
+
+        private final long placedAt;
+
+        private final AtomicBoolean done = new AtomicBoolean(false);
+
+        private Reservation(final String accountId,
+                            final String currency,
+                            final BigDecimal amount,
+                            final long placedAt) {
+            this.accountId = accountId;
+            this.currency = currency;
+            this.amount = amount;
+            this.placedAt = placedAt;
+        }
+
+        /**
+         * Drop the hold after the transfer was committed, recording the
+         * balances written by the transfer as the new known balances.
+         */
+        public void commit(@NonNull final List<Balance> committedBalances) {
+            if (done.compareAndSet(false, true)) {
+                FundsReservations.this.release(this, committedBalances);
+            }
+        }
+
+        /**
+         * Drop the hold after the transfer was aborted or rejected by QLDB.
+         */
+        public void release() {
+            if (done.compareAndSet(false, true)) {
+                FundsReservations.this.release(this, null);
+            }
+        }
+    }
+
+    private static final class AccountFunds {
+
+        private final Map<String, CurrencyFunds> currencies = new HashMap<>();
+
+        private boolean evicted;
+
+        private CurrencyFunds forCurrency(final String currency) {
+            return currencies.computeIfAbsent(currency, c -> new CurrencyFunds());
+        }
+
+        /**
+         * @param read Whether the balances were read, rather than committed
+         *             by a transfer of this process
+         */
+        private void observe(final List<Balance> balances, final long stamp, final boolean read) {
+            for (final Balance balance : balances) {
+                if (balance.getCurrency() == null || balance.getCurrencyBalance() == null) {
+                    continue;
+                }
+                forCurrency(balance.getCurrency()).observe(balance.getCurrencyBalance(), stamp, read);
+            }
+        }
+
+        private boolean isIdle(final long staleAfterNanos) {
+            return currencies.values().stream().allMatch(currencyFunds -> currencyFunds.isIdle(staleAfterNanos));
+        }
+    }
+
+    private static final class CurrencyFunds {
+
+        private BigDecimal knownBalance;
+
+        private long observedAt;
+
+        /**
+         * Whether the known balance was read from QLDB, and may include the
+         * debits of the holds placed before it was read
+         */
+        private boolean read;
+
+        private final Set<Reservation> holds = new HashSet<>();
+
+        private BigDecimal held = BigDecimal.ZERO;
+
+        private void hold(final Reservation reservation) {
+            holds.add(reservation);
+            held = held.add(reservation.amount);
+        }
+
+        private void drop(final Reservation reservation) {
+            if (holds.remove(reservation)) {
+                held = held.subtract(reservation.amount);
+            }
+        }
+
+        private void observe(final BigDecimal balance, final long stamp, final boolean read) {
+            if (knownBalance == null || stamp - observedAt >= 0) {
+                knownBalance = balance;
+                observedAt = stamp;
+                this.read = read;
+            }
+        }
+
+        /**
+         * The amount held which the known balance cannot include yet
+         */
+        private BigDecimal unreflectedHeld() {
+            if (!read) {
+                return held;
+            }
+            BigDecimal unreflected = BigDecimal.ZERO;
+            for (final Reservation reservation : holds) {
+                // A hold placed at the very stamp of the read counts as placed after it
+                if (reservation.placedAt - observedAt >= 0) {
+                    unreflected = unreflected.add(reservation.amount);
+                }
+            }
+            return unreflected;
+        }
+
+        private boolean isKnown(final long staleAfterNanos) {
+            return knownBalance != null && System.nanoTime() - observedAt < staleAfterNanos;
+        }
+
+        private boolean isIdle(final long staleAfterNanos) {
+            return holds.isEmpty() && !isKnown(staleAfterNanos);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.helpers;
+
+import lombok.NonNull;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.commons.lang3.Validate;
+import software.amazon.qldb.doubleentry.Constants;
+import software.amazon.qldb.doubleentry.metrics.Counter;
+import software.amazon.qldb.doubleentry.metrics.MetricNames;
+import software.amazon.qldb.doubleentry.metrics.MetricsRegistry;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * Hedging of a read-only operation: if the first attempt has not answered
+ * after the given percentile of the recent latencies of the operation, a
+ * second attempt is started, and whichever answers first wins. Each attempt
+ * runs its own transaction, so the second one goes out on another session of
+ * the pool. The loser is left to finish, which is harmless since it only
+ * reads.
+ * </p>
+ *
+ * <p>
+ * Hedges are paid for from a budget which every call adds a fraction of a
+ * hedge to, so that they never add more than that fraction of extra reads,
+ * even when the whole ledger is slow. No hedges are sent before enough
+ * latencies have been seen to know the percentile.
+ * </p>
+ *
+ * <p>
+ * The attempts run on a pool of at most maxAttempts threads, usually the
+ * number of sessions of the READ lane, since more attempts would only wait
+ * for a session. When every thread is taken, a call runs on the calling
+ * thread without a hedge, and a hedge is not sent.
+ * </p>
+ *
+ * <p>
+ * When hedging is disabled, the operation is run on the calling thread as
+ * it is.
+ * </p>
+ */
+public class HedgedReads {
+
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private static final String RESULT_SENT = "sent";
+    private static final String RESULT_WON = "won";
+
+    private final boolean enabled;
+
+    private final double percentile;
+
+    private final double maxHedgeRatio;
+
+    private final int minSamples;
+
+    private final long delayRefreshNanos;
+
+    private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+
+    private final Histogram window = new Histogram(SIGNIFICANT_DIGITS);
+
+    private volatile long hedgeDelayNanos = -1;
+
+    private volatile long nextRefreshNanos = System.nanoTime();
+
+    private double budget;
+
+    private final ExecutorService attempts;
+
+    private final Semaphore attemptThreads;
+
+    private final Counter hedgesSent;
+
+    private final Counter hedgesWon;
+
+    /**
+     * @param operation The name under which the hedges are counted
+     * @param enabled Whether reads are hedged at all
+     * @param percentile The percentile of the recent latencies after which a hedge is sent
+     * @param maxHedgeRatio The largest share of calls which may be hedged
+     * @param minSamples The number of latencies the percentile is taken over
+     * @param delayRefreshMillis How often the hedge delay is taken again, at most
+     * @param maxAttempts The largest number of attempts running at the same time
+     */
+    public HedgedReads(@NonNull final String operation,
+                       final boolean enabled,
+                       final double percentile,
+                       final double maxHedgeRatio,
+                       final int minSamples,
+                       final long delayRefreshMillis,
+                       final int maxAttempts,
+                       @NonNull final MetricsRegistry metricsRegistry) {
+        Validate.isTrue(percentile > 0 && percentile < 100, "The percentile must be between 0 and 100");
+        Validate.isTrue(maxHedgeRatio >= 0 && maxHedgeRatio <= 1, "The hedge ratio must be between 0 and 1");
+        Validate.isTrue(maxAttempts > 0, "At least one attempt has to be able to run");
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.maxHedgeRatio = maxHedgeRatio;
+        this.minSamples = minSamples;
+        this.delayRefreshNanos = TimeUnit.MILLISECONDS.toNanos(delayRefreshMillis);
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.attemptThreads = new Semaphore(maxAttempts);
+        this.attempts = Executors.newFixedThreadPool(maxAttempts, runnable -> {
+            final Thread thread = new Thread(runnable, "hedged-read-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        final String help = "Hedged reads, sent after the hedge delay and won by answering first";
+        this.hedgesSent = metricsRegistry.counter(MetricNames.HEDGED_READS, help,
+                MetricNames.OPERATION_LABEL, operation, MetricNames.RESULT_LABEL, RESULT_SENT);
+        this.hedgesWon = metricsRegistry.counter(MetricNames.HEDGED_READS, help,
+                MetricNames.OPERATION_LABEL, operation, MetricNames.RESULT_LABEL, RESULT_WON);
+        metricsRegistry.durationGauge(MetricNames.HEDGE_DELAY, "Time after which a read is hedged, in seconds",
+                () -> Math.max(0, hedgeDelayNanos), MetricNames.OPERATION_LABEL, operation);
+    }
+
+    /**
+     * Reads which are never hedged
+     */
+    public static HedgedReads disabled() {
+        return new HedgedReads("disabled", false, Constants.HEDGE_PERCENTILE, Constants.HEDGE_MAX_RATIO,
+                Constants.HEDGE_MIN_SAMPLES, Constants.HEDGE_DELAY_REFRESH_MS, 1, new MetricsRegistry());
+    }
+
+    public <T> T execute(@NonNull final Supplier<T> read) {
+        if (!enabled) {
+            return read.get();
+        }
+        addToBudget();
+        refreshDelay();
+        if (!attemptThreads.tryAcquire()) {
+            return read.get();
+        }
+        final CompletableFuture<T> winner = new CompletableFuture<>();
+        final AtomicInteger running = new AtomicInteger(1);
+        attempt(read, winner, running, false);
+
+        final long delay = hedgeDelayNanos;
+        if (delay < 0) {
+            return await(winner);
+        }
+        try {
+            return winner.get(delay, TimeUnit.NANOSECONDS);
+        } catch (final TimeoutException e) {
+            // The thread is taken first, so that the budget is only spent on hedges which are sent
+            if (attemptThreads.tryAcquire()) {
+                if (takeFromBudget()) {
+                    hedgesSent.increment();
+                    running.incrementAndGet();
+                    attempt(read, winner, running, true);
+                } else {
+                    attemptThreads.release();
+                }
+            }
+            return await(winner);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a read", e);
+        } catch (final ExecutionException e) {
+            return await(winner);
+        }
+    }
+
+    /**
+     * Run one attempt, completing the winner with its answer unless the other
+     * attempt answered first. The winner fails only once every attempt has
+     * failed. The caller has taken one of the attemptThreads, which the
+     * attempt gives back.
+     */
+    private <T> void attempt(final Supplier<T> read,
+                             final CompletableFuture<T> winner,
+                             final AtomicInteger running,
+                             final boolean hedge) {
+        attempts.execute(() -> {
+            final long start = System.nanoTime();
+            try {
+                final T value = read.get();
+                recorder.recordValue(System.nanoTime() - start);
+                if (winner.complete(value) && hedge) {
+                    hedgesWon.increment();
+                }
+            } catch (final RuntimeException | Error e) {
+                if (running.decrementAndGet() == 0) {
+                    winner.completeExceptionally(e);
+                }
+            } finally {
+                attemptThreads.release();
+            }
+        });
+    }
+
+    private static <T> T await(final CompletableFuture<T> winner) {
+        try {
+            return winner.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a read", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Take the percentile over the latencies recorded since it was last
+     * taken, once there are enough of them
+     */
+    private void refreshDelay() {
+        final long now = System.nanoTime();
+        if (now - nextRefreshNanos < 0) {
+            return;
+        }
+        synchronized (window) {
+            if (now - nextRefreshNanos < 0) {
+                return;
+            }
+            nextRefreshNanos = now + delayRefreshNanos;
+            window.add(recorder.getIntervalHistogram());
+            if (window.getTotalCount() >= minSamples) {
+                hedgeDelayNanos = window.getValueAtPercentile(percentile);
+                window.reset();
+            }
+        }
+    }
+
+    private synchronized void addToBudget() {
+        // At most one hedge can be saved up for every 1 / maxHedgeRatio calls, over the last minSamples calls
+        budget = Math.min(budget + maxHedgeRatio, Math.max(1, minSamples * maxHedgeRatio));
+    }
+
+    private synchronized boolean takeFromBudget() {
+        if (budget < 1) {
+            return false;
+        }
+        budget -= 1;
+        return true;
+    }
+}
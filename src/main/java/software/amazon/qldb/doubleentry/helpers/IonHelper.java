@@ -20,14 +20,23 @@ package software.amazon.qldb.doubleentry.helpers;
 
 import com.amazon.ion.Decimal;
 import com.amazon.ion.IonStruct;
+import com.amazon.ion.IonSystem;
+import com.amazon.ion.IonTimestamp;
 import com.amazon.ion.IonValue;
+import com.amazon.ion.Timestamp;
+import com.amazon.ion.system.IonSystemBuilder;
 import com.fasterxml.jackson.dataformat.ion.IonObjectMapper;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import software.amazon.qldb.Result;
+import software.amazon.qldb.doubleentry.jfr.IonMappingEvent;
+import software.amazon.qldb.doubleentry.metrics.LatencyHistogram;
+import software.amazon.qldb.doubleentry.metrics.MetricNames;
+import software.amazon.qldb.doubleentry.metrics.MetricsRegistry;
 import software.amazon.qldb.doubleentry.models.qldb.DmlResultDocument;
 
 import java.io.IOException;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
@@ -41,8 +50,25 @@ public class IonHelper {
 
     private IonObjectMapper ionObjectMapper;
 
+    private IonSystem ionSystem;
+
+    private LatencyHistogram toIonLatency;
+
+    private LatencyHistogram fromIonLatency;
+
     public IonHelper(@NonNull final IonObjectMapper ionObjectMapper) {
+        this(ionObjectMapper, IonSystemBuilder.standard().build(), new MetricsRegistry());
+    }
+
+    public IonHelper(@NonNull final IonObjectMapper ionObjectMapper,
+                     @NonNull final IonSystem ionSystem,
+                     @NonNull final MetricsRegistry metricsRegistry) {
         this.ionObjectMapper = ionObjectMapper;
+        this.ionSystem = ionSystem;
+        this.toIonLatency = metricsRegistry.histogram(MetricNames.ION_MAPPING_LATENCY,
+                "Time taken to map values between Java and Ion", MetricNames.DIRECTION_LABEL, "to_ion");
+        this.fromIonLatency = metricsRegistry.histogram(MetricNames.ION_MAPPING_LATENCY,
+                "Time taken to map values between Java and Ion", MetricNames.DIRECTION_LABEL, "from_ion");
     }
 
     /**
@@ -50,11 +76,17 @@ public class IonHelper {
      * map any Java value to an IonValue.
      */
     public IonValue toIonValue(final Object value) {
+        final IonMappingEvent event = new IonMappingEvent();
+        event.begin();
+        final long start = System.nanoTime();
         try {
             return ionObjectMapper.writeValueAsIonValue(value);
         } catch (final IOException e) {
             log.error("Error converting value {} to IonValue", value, e);
             throw new RuntimeException(e);
+        } finally {
+            toIonLatency.recordSince(start);
+            commitMappingEvent(event, IonMappingEvent.TO_ION, value == null ? null : value.getClass());
         }
     }
 
@@ -62,11 +94,28 @@ public class IonHelper {
      * Convenience method for converting Ion value into given value type.
      */
     public <T> T readIonValue(final IonValue value, final Class<T> valueType) {
+        final IonMappingEvent event = new IonMappingEvent();
+        event.begin();
+        final long start = System.nanoTime();
         try {
             return ionObjectMapper.readValue(value, valueType);
         } catch (final IOException e) {
             log.error("Error converting IonValue {} to type {}", value, valueType, e);
             throw new RuntimeException(e);
+        } finally {
+            fromIonLatency.recordSince(start);
+            commitMappingEvent(event, IonMappingEvent.FROM_ION, valueType);
+        }
+    }
+
+    private static void commitMappingEvent(final IonMappingEvent event,
+                                           final String direction,
+                                           final Class<?> valueType) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.direction = direction;
+            event.valueType = valueType == null ? null : valueType.getSimpleName();
+            event.commit();
         }
     }
 
@@ -87,6 +136,14 @@ public class IonHelper {
         return LocalDate.parse(date, DATE_TIME_FORMAT);
     }
 
+    /**
+     * Convert an Instant into an Ion timestamp in UTC, which can be used as
+     * a parameter for comparisons with timestamp fields in PartiQL queries.
+     */
+    public IonTimestamp toIonTimestamp(@NonNull final Instant instant) {
+        return ionSystem.newTimestamp(Timestamp.forMillis(instant.toEpochMilli(), 0));
+    }
+
     /**
      * Convenience method for extracting the document Ids from a Result object
      */
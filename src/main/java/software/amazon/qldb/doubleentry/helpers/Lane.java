@@ -0,0 +1,80 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.helpers;
+
+import software.amazon.qldb.doubleentry.Constants;
+
+import java.util.Locale;
+
+/**
+ * <p>
+ * The lanes of the {@link TransactionsHandler}, each with its own pool of
+ * QLDB sessions, so that a large reporting job cannot take the sessions that
+ * transfers need.
+ * </p>
+ */
+public enum Lane {
+
+    /**
+     * Transfers and holds, and everything else that writes to the ledger
+     */
+    TRANSFER(Constants.TRANSFER_LANE_SESSIONS_PROPERTY, Constants.TRANSFER_LANE_SESSIONS,
+            Constants.TRANSFER_LANE_SESSION_TIMEOUT_MS),
+
+    /**
+     * Balance reads, reports and audits, which only read from the ledger
+     */
+    READ(Constants.READ_LANE_SESSIONS_PROPERTY, Constants.READ_LANE_SESSIONS,
+            Constants.READ_LANE_SESSION_TIMEOUT_MS);
+
+    private final String sessionsProperty;
+
+    private final int defaultSessions;
+
+    private final int sessionTimeoutMillis;
+
+    Lane(final String sessionsProperty, final int defaultSessions, final int sessionTimeoutMillis) {
+        this.sessionsProperty = sessionsProperty;
+        this.defaultSessions = defaultSessions;
+        this.sessionTimeoutMillis = sessionTimeoutMillis;
+    }
+
+    /**
+     * The size of the session pool of the lane, which can be set with a
+     * system property
+     */
+    public int sessions() {
+        return Integer.getInteger(sessionsProperty, defaultSessions);
+    }
+
+    /**
+     * How long a transaction of the lane waits for a session of the pool
+     */
+    public int sessionTimeoutMillis() {
+        return sessionTimeoutMillis;
+    }
+
+    /**
+     * The value of the lane label of the metrics
+     */
+    public String label() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
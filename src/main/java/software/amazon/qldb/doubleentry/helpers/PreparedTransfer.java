@@ -0,0 +1,90 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.helpers;
+
+import com.amazon.ion.Decimal;
+import com.amazon.ion.IonValue;
+import lombok.Getter;
+import lombok.NonNull;
+import software.amazon.qldb.doubleentry.models.Transaction;
+import software.amazon.qldb.doubleentry.models.TransactionEntry;
+import software.amazon.qldb.doubleentry.models.TransactionType;
+import software.amazon.qldb.doubleentry.models.TransferRequest;
+
+import java.time.LocalDate;
+
+/**
+ * <p>
+ * Everything the QLDB transaction of a transfer needs which does not depend
+ * on the balances it reads: the Transactions document and the AccountId
+ * parameters, already encoded to Ion, and the amount as a Decimal.
+ * </p>
+ *
+ * <p>
+ * It is built once per transfer, before the transaction starts, so that OCC
+ * retries only redo the work which depends on the balances read by the
+ * attempt. The Ion values are read-only, which makes it safe to send them
+ * again on every attempt.
+ * </p>
+ */
+@Getter
+public class PreparedTransfer {
+
+    private final TransferRequest transferRequest;
+
+    private final Decimal amount;
+
+    private final IonValue senderAccountIdParameter;
+
+    private final IonValue receiverAccountIdParameter;
+
+    private final IonValue transactionDocument;
+
+    public PreparedTransfer(@NonNull final TransferRequest transferRequest,
+                            @NonNull final IonHelper ionHelper) {
+        this.transferRequest = transferRequest;
+        this.amount = Decimal.valueOf(transferRequest.getAmount());
+        this.senderAccountIdParameter = readOnly(ionHelper.toIonValue(transferRequest.getSenderAccountId()));
+        this.receiverAccountIdParameter = readOnly(ionHelper.toIonValue(transferRequest.getReceiverAccountId()));
+
+        final Transaction transaction = Transaction.builder()
+                .transactionTime(LocalDate.now())
+                .senderAccountEntry(transactionEntry(transferRequest.getSenderAccountId(), TransactionType.DEBIT))
+                .receiverAccountEntry(transactionEntry(transferRequest.getReceiverAccountId(), TransactionType.CREDIT))
+                .idempotencyKey(transferRequest.getIdempotencyKey())
+                .build();
+        this.transactionDocument = readOnly(ionHelper.toIonValue(transaction));
+    }
+
+    private TransactionEntry transactionEntry(final String accountId, final TransactionType transactionType) {
+        return TransactionEntry.builder()
+                .accountId(accountId)
+                .transactionType(transactionType.name())
+                .notes(transferRequest.getNotes())
+                .amount(amount)
+                .currency(transferRequest.getCurrency())
+                .build();
+    }
+
+    private static IonValue readOnly(final IonValue value) {
+        value.makeReadOnly();
+        return value;
+    }
+}
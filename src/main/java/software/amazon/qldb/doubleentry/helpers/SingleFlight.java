@@ -0,0 +1,109 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.helpers;
+
+import lombok.NonNull;
+import software.amazon.qldb.doubleentry.metrics.Counter;
+import software.amazon.qldb.doubleentry.metrics.MetricNames;
+import software.amazon.qldb.doubleentry.metrics.MetricsRegistry;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * Coalesces concurrent calls for the same key: while a call for a key is in
+ * flight, other callers for that key wait for its result instead of making
+ * the call again. A caller never gets the result of a call which had already
+ * finished when it arrived, so the result is at most as old as the duration
+ * of one call.
+ * </p>
+ *
+ * <p>
+ * If the call fails, every caller waiting for it gets the same exception.
+ * The result is shared between the callers, so it should not be modified.
+ * </p>
+ */
+public class SingleFlight<K, V> {
+
+    private static final String RESULT_EXECUTED = "executed";
+    private static final String RESULT_SHARED = "shared";
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter executed;
+
+    private final Counter shared;
+
+    /**
+     * @param operation The name under which the calls are counted
+     */
+    public SingleFlight(@NonNull final String operation, @NonNull final MetricsRegistry metricsRegistry) {
+        final String help = "Calls coalesced by key, by operation and by whether the caller made the call "
+                + "or shared the result of a call in flight";
+        this.executed = metricsRegistry.counter(MetricNames.SINGLE_FLIGHT_CALLS, help,
+                MetricNames.OPERATION_LABEL, operation, MetricNames.RESULT_LABEL, RESULT_EXECUTED);
+        this.shared = metricsRegistry.counter(MetricNames.SINGLE_FLIGHT_CALLS, help,
+                MetricNames.OPERATION_LABEL, operation, MetricNames.RESULT_LABEL, RESULT_SHARED);
+    }
+
+    /**
+     * Make the call for the given key, or wait for the call for that key
+     * which is already in flight.
+     */
+    public V execute(@NonNull final K key, @NonNull final Supplier<V> call) {
+        final CompletableFuture<V> mine = new CompletableFuture<>();
+        final CompletableFuture<V> theirs = inFlight.putIfAbsent(key, mine);
+        if (theirs != null) {
+            shared.increment();
+            return await(theirs);
+        }
+        executed.increment();
+        try {
+            final V value = call.get();
+            // Removed before it completes, so that nobody joins a call which is over
+            inFlight.remove(key, mine);
+            mine.complete(value);
+            return value;
+        } catch (final RuntimeException | Error e) {
+            inFlight.remove(key, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private static <V> V await(final CompletableFuture<V> call) {
+        try {
+            return call.join();
+        } catch (final CompletionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
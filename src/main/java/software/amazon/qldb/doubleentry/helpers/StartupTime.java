@@ -0,0 +1,64 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.helpers;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
+import java.util.Optional;
+
+/**
+ * <p>
+ * Reports how long a task took to start: the time from the launch of the JVM
+ * until the task has its dependency graph built and is about to do its work.
+ * Every task calls {@link #ready(Class)} once, right before it starts running.
+ * </p>
+ *
+ * <p>
+ * The report also tells whether the JVM runs with the AppCDS archive built by
+ * the cdsArchive Gradle task, which is how the startup time with and without
+ * it can be compared. The JVM reports class data sharing for its own default
+ * archive too, so the AppCDS archive counts as used only when it was passed
+ * with -XX:SharedArchiveFile and sharing is on. With -Xshare:auto a JVM that
+ * cannot use the given archive runs without sharing.
+ * </p>
+ */
+@Slf4j
+public final class StartupTime {
+
+    private static final String SHARED_ARCHIVE_FILE = "-XX:SharedArchiveFile=";
+
+    private StartupTime() {
+    }
+
+    public static void ready(@NonNull final Class<?> task) {
+        final RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+        final boolean sharing = System.getProperty("java.vm.info", "").contains("sharing");
+        final Optional<String> archive = runtime.getInputArguments().stream()
+                .filter(argument -> argument.startsWith(SHARED_ARCHIVE_FILE))
+                .map(argument -> argument.substring(SHARED_ARCHIVE_FILE.length()))
+                .reduce((first, last) -> last);
+        log.info("Task {} started in {} ms (class data sharing {}, AppCDS archive {})", task.getSimpleName(),
+                runtime.getUptime(), sharing ? "on" : "off",
+                archive.filter(path -> sharing).orElse("not used"));
+    }
+}
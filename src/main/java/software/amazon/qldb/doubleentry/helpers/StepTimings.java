@@ -0,0 +1,64 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.helpers;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Records how long the named steps of a multi step job took, including
+ * steps which run in parallel, and logs them in the order they finished.
+ */
+@Slf4j
+public class StepTimings {
+
+    private final ConcurrentLinkedQueue<Map.Entry<String, Long>> steps = new ConcurrentLinkedQueue<>();
+
+    public <T> T time(@NonNull final String step, @NonNull final Supplier<T> work) {
+        final long start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            record(step, System.nanoTime() - start);
+        }
+    }
+
+    public void time(@NonNull final String step, @NonNull final Runnable work) {
+        time(step, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    public void record(@NonNull final String step, final long nanos) {
+        steps.add(new AbstractMap.SimpleImmutableEntry<>(step, nanos));
+    }
+
+    public void report(@NonNull final String job) {
+        steps.forEach(step -> log.info("{}: {} took {} ms", job, step.getKey(),
+                TimeUnit.NANOSECONDS.toMillis(step.getValue())));
+    }
+}
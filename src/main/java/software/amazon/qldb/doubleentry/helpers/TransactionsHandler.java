@@ -20,11 +20,26 @@ package software.amazon.qldb.doubleentry.helpers;
 
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.Validate;
 import software.amazon.qldb.Executor;
 import software.amazon.qldb.ExecutorNoReturn;
 import software.amazon.qldb.PooledQldbDriver;
 import software.amazon.qldb.QldbSession;
 import software.amazon.qldb.RetryIndicator;
+import software.amazon.qldb.doubleentry.jfr.TransactionTrace;
+import software.amazon.qldb.doubleentry.metrics.Counter;
+import software.amazon.qldb.doubleentry.metrics.LatencyHistogram;
+import software.amazon.qldb.doubleentry.metrics.MetricNames;
+import software.amazon.qldb.doubleentry.metrics.MetricsRegistry;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 /**
  * <p>
@@ -47,16 +62,101 @@ import software.amazon.qldb.RetryIndicator;
  *     driver, since it resides only in TransactionHandler</li>
  * </ul>
  *
+ * <p>
+ * Every transaction is traced with JDK Flight Recorder events for each
+ * attempt and each commit (see {@link TransactionTrace}), and counted in the
+ * {@link MetricsRegistry} together with its OCC retries and the sessions in
+ * use.
+ * </p>
+ *
+ * <p>
+ * The driver can be handed over as a {@link Supplier}, in which case it is
+ * only built when the first transaction is executed. Tasks which never talk
+ * to QLDB do not pay for the driver and its session client.
+ * </p>
+ *
+ * <p>
+ * Transactions run in one of the {@link Lane}s, each of which can have its
+ * own driver, and with it its own pool of sessions. Transactions which do
+ * not name a lane run in the transfer lane.
+ * </p>
+ *
+ * <p>
+ * A lane can have an {@link AimdLimiter}, which adapts the number of its
+ * transactions in flight to the OCC conflicts, the throttling and the latency
+ * it sees. Transactions beyond the limit wait before taking a session.
+ * </p>
+ *
  * Note: This is just one of the patterns that can be used in production.
  */
 
 @Slf4j
 public class TransactionsHandler {
 
-    private PooledQldbDriver pooledQldbDriver;
+    private static final String UNNAMED_OPERATION = "unnamed";
+
+    private MetricsRegistry metricsRegistry;
+
+    private final Map<Lane, LaneSessions> lanes = new EnumMap<>(Lane.class);
+
+    private final ConcurrentMap<String, OperationMetrics> operationMetrics = new ConcurrentHashMap<>();
 
     public TransactionsHandler(@NonNull final PooledQldbDriver pooledQldbDriver) {
-        this.pooledQldbDriver = pooledQldbDriver;
+        this(pooledQldbDriver, new MetricsRegistry());
+    }
+
+    public TransactionsHandler(@NonNull final PooledQldbDriver pooledQldbDriver,
+                               @NonNull final MetricsRegistry metricsRegistry) {
+        this(() -> pooledQldbDriver, metricsRegistry);
+    }
+
+    /**
+     * @param pooledQldbDriver Called on every transaction to get the driver,
+     *                         it is expected to build the driver once and then
+     *                         keep returning the same instance
+     */
+    public TransactionsHandler(@NonNull final Supplier<PooledQldbDriver> pooledQldbDriver,
+                               @NonNull final MetricsRegistry metricsRegistry) {
+        this(sameDriverForAllLanes(pooledQldbDriver), metricsRegistry);
+    }
+
+    /**
+     * @param pooledQldbDrivers The driver of every lane, with the same
+     *                          expectations as the single driver above
+     */
+    public TransactionsHandler(@NonNull final Map<Lane, Supplier<PooledQldbDriver>> pooledQldbDrivers,
+                               @NonNull final MetricsRegistry metricsRegistry) {
+        this(pooledQldbDrivers, Collections.emptyMap(), metricsRegistry);
+    }
+
+    /**
+     * @param limiters The concurrency limiter of every lane which has one.
+     *                 Lanes without a limiter are only bounded by their pool.
+     */
+    public TransactionsHandler(@NonNull final Map<Lane, Supplier<PooledQldbDriver>> pooledQldbDrivers,
+                               @NonNull final Map<Lane, AimdLimiter> limiters,
+                               @NonNull final MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+        for (final Lane lane : Lane.values()) {
+            Validate.isTrue(pooledQldbDrivers.containsKey(lane), "No driver was given for the %s lane", lane);
+            lanes.put(lane, new LaneSessions(lane, pooledQldbDrivers.get(lane), limiters.get(lane)));
+        }
+    }
+
+    /**
+     * The concurrency limiter of the given lane, to look at its current limit
+     */
+    public Optional<AimdLimiter> getLimiter(@NonNull final Lane lane) {
+        return Optional.ofNullable(lanes.get(lane).limiter);
+    }
+
+    private static Map<Lane, Supplier<PooledQldbDriver>> sameDriverForAllLanes(
+            final Supplier<PooledQldbDriver> pooledQldbDriver) {
+        final Map<Lane, Supplier<PooledQldbDriver>> drivers = new EnumMap<>(Lane.class);
+        for (final Lane lane : Lane.values()) {
+            drivers.put(lane, pooledQldbDriver);
+        }
+        return drivers;
     }
 
     /**
@@ -67,9 +167,20 @@ public class TransactionsHandler {
      * @param retryIndicator  The function to be executed on retry
      */
     public void executeTransactionWithNoReturn(final ExecutorNoReturn executorNoReturn, RetryIndicator retryIndicator) {
-        try (final QldbSession qldbSession = pooledQldbDriver.getSession()) {
-            qldbSession.execute(executorNoReturn, retryIndicator);
-        }
+        executeTransactionWithNoReturn(UNNAMED_OPERATION, executorNoReturn, retryIndicator);
+    }
+
+    /**
+     * Same as {@link #executeTransactionWithNoReturn(ExecutorNoReturn, RetryIndicator)}
+     * @param operation The name under which the transaction is traced
+     */
+    public void executeTransactionWithNoReturn(@NonNull final String operation,
+                                               final ExecutorNoReturn executorNoReturn,
+                                               RetryIndicator retryIndicator) {
+        executeTransaction(operation, txn -> {
+            executorNoReturn.execute(txn);
+            return null;
+        }, retryIndicator);
     }
 
 
@@ -81,8 +192,135 @@ public class TransactionsHandler {
      * @param retryIndicator  The function to be executed on retry
      */
     public <T> T executeTransaction(Executor<T> executor, RetryIndicator retryIndicator) {
-        try (final QldbSession qldbSession = pooledQldbDriver.getSession()) {
-            return qldbSession.execute(executor, retryIndicator);
+        return executeTransaction(UNNAMED_OPERATION, executor, retryIndicator);
+    }
+
+    /**
+     * Same as {@link #executeTransaction(Executor, RetryIndicator)}
+     * @param operation The name under which the transaction is traced
+     */
+    public <T> T executeTransaction(@NonNull final String operation,
+                                    Executor<T> executor,
+                                    RetryIndicator retryIndicator) {
+        return executeTransaction(Lane.TRANSFER, operation, executor, retryIndicator);
+    }
+
+    /**
+     * Same as {@link #executeTransaction(String, Executor, RetryIndicator)}
+     * @param lane The lane whose sessions the transaction runs on
+     */
+    public <T> T executeTransaction(@NonNull final Lane lane,
+                                    @NonNull final String operation,
+                                    Executor<T> executor,
+                                    RetryIndicator retryIndicator) {
+        final TransactionTrace trace = new TransactionTrace(operation);
+        final OperationMetrics metrics = operationMetrics.computeIfAbsent(operation, OperationMetrics::new);
+        final LaneSessions sessions = lanes.get(lane);
+        final long start = System.nanoTime();
+        sessions.admit(operation);
+        final long admitted = System.nanoTime();
+        final AtomicInteger occRetries = new AtomicInteger();
+        boolean throttled = false;
+        try (final QldbSession qldbSession = sessions.pooledQldbDriver.get().getSession()) {
+            sessions.acquireLatency.recordSince(admitted);
+            sessions.inUse.incrementAndGet();
+            try {
+                final T result = qldbSession.execute(txn -> {
+                    trace.attemptStarted();
+                    final T value = executor.execute(txn);
+                    trace.bodyFinished();
+                    return value;
+                }, retry -> {
+                    trace.retried();
+                    metrics.occRetries.increment();
+                    occRetries.incrementAndGet();
+                    retryIndicator.onRetry(retry);
+                });
+                trace.committed();
+                return result;
+            } finally {
+                sessions.inUse.decrementAndGet();
+            }
+        } catch (final RuntimeException e) {
+            trace.failed();
+            metrics.failures.increment();
+            throttled = AimdLimiter.isThrottling(e);
+            throw e;
+        } finally {
+            if (sessions.limiter != null) {
+                sessions.limiter.release(System.nanoTime() - admitted, occRetries.get(), throttled);
+            }
+            metrics.transactions.increment();
+            metrics.latency.recordSince(start);
+        }
+    }
+
+    /**
+     * The driver of a lane and the usage of its sessions
+     */
+    private final class LaneSessions {
+
+        private final Supplier<PooledQldbDriver> pooledQldbDriver;
+
+        private final AtomicInteger inUse = new AtomicInteger();
+
+        private final LatencyHistogram acquireLatency;
+
+        private final AimdLimiter limiter;
+
+        private LaneSessions(final Lane lane,
+                             final Supplier<PooledQldbDriver> pooledQldbDriver,
+                             final AimdLimiter limiter) {
+            this.pooledQldbDriver = pooledQldbDriver;
+            this.limiter = limiter;
+            this.acquireLatency = metricsRegistry.histogram(MetricNames.SESSION_ACQUIRE_LATENCY,
+                    "Time taken to get a session from the driver pool", MetricNames.LANE_LABEL, lane.label());
+            metricsRegistry.gauge(MetricNames.SESSIONS_IN_USE,
+                    "Sessions taken from the driver pool and not yet returned", inUse::get,
+                    MetricNames.LANE_LABEL, lane.label());
+        }
+
+        /**
+         * Wait until the limiter of the lane, if any, lets one more
+         * transaction in
+         */
+        private void admit(final String operation) {
+            if (limiter == null) {
+                return;
+            }
+            try {
+                limiter.acquire();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting to run " + operation, e);
+            }
+        }
+    }
+
+    /**
+     * The metrics kept for every operation name
+     */
+    private final class OperationMetrics {
+
+        private final Counter transactions;
+
+        private final Counter failures;
+
+        private final Counter occRetries;
+
+        private final LatencyHistogram latency;
+
+        private OperationMetrics(final String operation) {
+            transactions = metricsRegistry.counter(MetricNames.TRANSACTIONS,
+                    "QLDB transactions executed", MetricNames.OPERATION_LABEL, operation);
+            failures = metricsRegistry.counter(MetricNames.TRANSACTION_FAILURES,
+                    "QLDB transactions which failed after all retries", MetricNames.OPERATION_LABEL, operation);
+            occRetries = metricsRegistry.counter(MetricNames.OCC_RETRIES,
+                    "Retries of QLDB transactions, mostly due to OCC conflicts",
+                    MetricNames.OPERATION_LABEL, operation);
+            latency = metricsRegistry.histogram(MetricNames.TRANSACTION_LATENCY,
+                    "Latency of QLDB transactions including session acquisition and retries",
+                    MetricNames.OPERATION_LABEL, operation);
         }
     }
 }
@@ -0,0 +1,492 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.intake;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.Validate;
+import software.amazon.qldb.doubleentry.actions.Banking;
+import software.amazon.qldb.doubleentry.metrics.Counter;
+import software.amazon.qldb.doubleentry.metrics.MetricNames;
+import software.amazon.qldb.doubleentry.metrics.MetricsRegistry;
+import software.amazon.qldb.doubleentry.models.TransferRequest;
+import software.amazon.qldb.doubleentry.models.TransferResponse;
+import software.amazon.qldb.doubleentry.store.MappedJournal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * <p>
+ * A durable queue in front of {@link Banking#transfer(TransferRequest)}, so
+ * that callers are not exposed to QLDB throttling or outages. A transfer
+ * submitted to the intake is appended to a local {@link MappedJournal}, with
+ * a sequence number and a CRC32C checksum of the sequence number and the
+ * transfer, and accepted as soon as it is there. That takes microseconds,
+ * however QLDB is doing.
+ * </p>
+ *
+ * <p>
+ * The log is a series of files of one segment each, named after the
+ * sequence number of their first transfer. A new file is started when a
+ * transfer does not fit in the current one, and a file is deleted once all
+ * its transfers were acknowledged, so the log only holds the transfers
+ * which are still to be made, and the last file.
+ * </p>
+ *
+ * <p>
+ * A single drainer thread makes the accepted transfers in QLDB, in the order
+ * of their sequence numbers. A transfer which fails is retried with a
+ * growing backoff, and the transfers after it wait for it. Once a transfer
+ * has committed, or was refused by the balance checks, its sequence number
+ * is acknowledged in a cursor file next to the log.
+ * </p>
+ *
+ * <p>
+ * Every transfer is made with an idempotency key: the one given by the
+ * caller, which is kept in the log with the transfer, or else one built
+ * from the id of the log and the sequence number. When the process is
+ * restarted, the transfers after the acknowledged one are made again, and
+ * the ones which had committed before the restart are recognised by their
+ * key and skipped. The log and the cursor file belong together: the id of
+ * the log is kept in the cursor file, so the intake refuses to start on a
+ * log whose cursor file is missing, rather than make its transfers again
+ * under new keys.
+ * </p>
+ */
+@Slf4j
+public class TransferIntake implements Closeable {
+
+    private static final String LOG_FILE = "intake-%020d.log";
+
+    private static final Pattern LOG_FILE_NAME = Pattern.compile("intake-(\\d{20})\\.log");
+
+    private static final String CURSOR_FILE = "intake.cursor";
+
+    private static final int HEADER_BYTES = Long.BYTES + Integer.BYTES;
+
+    /**
+     * The acknowledged sequence number, followed by the id of the log
+     */
+    private static final int CURSOR_BYTES = 3 * Long.BYTES;
+
+    private final Banking banking;
+
+    private final Path directory;
+
+    private final int segmentBytes;
+
+    /**
+     * The files of the log, oldest first. The last one is appended to.
+     */
+    private final Deque<LogFile> logFiles = new ArrayDeque<>();
+
+    private final FileChannel cursorChannel;
+
+    private final MappedByteBuffer cursor;
+
+    private final String logId;
+
+    private final long retryInitialMillis;
+
+    private final long retryMaxMillis;
+
+    private final BlockingQueue<Entry> pending = new LinkedBlockingQueue<>();
+
+    private long nextSequence;
+
+    private long replayedSequence;
+
+    private volatile long acknowledged;
+
+    private final Thread drainer;
+
+    private final Counter accepted;
+
+    private final Counter committed;
+
+    private final Counter refused;
+
+    private final Counter retried;
+
+    public TransferIntake(@NonNull final Banking banking,
+                          @NonNull final Path directory,
+                          final int segmentBytes,
+                          final long retryInitialMillis,
+                          final long retryMaxMillis,
+                          @NonNull final MetricsRegistry metricsRegistry) throws IOException {
+        this.banking = banking;
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.retryInitialMillis = retryInitialMillis;
+        this.retryMaxMillis = retryMaxMillis;
+        Files.createDirectories(directory);
+
+        final Path cursorPath = directory.resolve(CURSOR_FILE);
+        final boolean newCursor = !Files.exists(cursorPath);
+        final List<Long> firstSequences = listLogFiles(directory);
+        if (newCursor && !firstSequences.isEmpty()) {
+            throw new IOException("The intake log in " + directory + " has no " + CURSOR_FILE
+                    + " file. Restore it, or move the log away to start a new one");
+        }
+        this.cursorChannel = FileChannel.open(cursorPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.cursor = cursorChannel.map(FileChannel.MapMode.READ_WRITE, 0, CURSOR_BYTES);
+        if (newCursor) {
+            final UUID id = UUID.randomUUID();
+            cursor.putLong(0, 0).putLong(Long.BYTES, id.getMostSignificantBits())
+                    .putLong(2 * Long.BYTES, id.getLeastSignificantBits());
+            cursor.force();
+        }
+        this.acknowledged = cursor.getLong(0);
+        this.logId = new UUID(cursor.getLong(Long.BYTES), cursor.getLong(2 * Long.BYTES)).toString();
+
+        for (final long firstSequence : firstSequences) {
+            final LogFile logFile = new LogFile(firstSequence);
+            replayedSequence = firstSequence - 1;
+            logFile.journal.replay(this::replay);
+            logFiles.add(logFile);
+        }
+        this.nextSequence = Math.max(acknowledged, replayedSequence) + 1;
+        if (logFiles.isEmpty()) {
+            logFiles.add(openLogFile(nextSequence));
+        }
+        trim();
+        log.info("Transfer intake {} has {} transfers to make, after sequence number {}",
+                directory, pending.size(), acknowledged);
+
+        final String help = "Transfers accepted by the intake, and how the drainer made them";
+        this.accepted = metricsRegistry.counter(MetricNames.INTAKE_TRANSFERS, help,
+                MetricNames.RESULT_LABEL, "accepted");
+        this.committed = metricsRegistry.counter(MetricNames.INTAKE_TRANSFERS, help,
+                MetricNames.RESULT_LABEL, "committed");
+        this.refused = metricsRegistry.counter(MetricNames.INTAKE_TRANSFERS, help,
+                MetricNames.RESULT_LABEL, "refused");
+        this.retried = metricsRegistry.counter(MetricNames.INTAKE_TRANSFERS, help,
+                MetricNames.RESULT_LABEL, "retried");
+        metricsRegistry.gauge(MetricNames.INTAKE_PENDING, "Transfers accepted by the intake and not made yet",
+                pending::size);
+
+        this.drainer = new Thread(this::drain, "transfer-intake-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * Accept a transfer, to be made later by the drainer.
+     *
+     * @return The sequence number of the transfer
+     * @throws IllegalArgumentException if the transfer request is not well formed
+     */
+    public long submit(@NonNull final TransferRequest transferRequest) {
+        banking.validateParameters(transferRequest);
+        final byte[] payload = encode(transferRequest);
+        final long sequence;
+        synchronized (this) {
+            final int length = HEADER_BYTES + payload.length;
+            if (!logFiles.getLast().journal.fits(length) && logFiles.getLast().journal.getRecords() > 0) {
+                logFiles.add(openLogFile(nextSequence));
+            }
+            sequence = nextSequence;
+            final int checksum = checksum(sequence, ByteBuffer.wrap(payload));
+            logFiles.getLast().journal.append(length, buffer -> {
+                buffer.putLong(sequence);
+                buffer.putInt(checksum);
+                buffer.put(payload);
+            });
+            // Only once the transfer is in the log, so that the records of a file have consecutive sequence numbers
+            nextSequence++;
+            pending.add(new Entry(sequence, transferRequest));
+        }
+        accepted.increment();
+        return sequence;
+    }
+
+    /**
+     * The sequence number of the last transfer which was made
+     */
+    public long getAcknowledged() {
+        return acknowledged;
+    }
+
+    public int getPending() {
+        return pending.size();
+    }
+
+    /**
+     * Stop the drainer and close the files. The transfers which were not
+     * made yet are made after the next start.
+     */
+    @Override
+    public void close() throws IOException {
+        drainer.interrupt();
+        try {
+            drainer.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            for (final LogFile logFile : logFiles) {
+                logFile.journal.close();
+            }
+        }
+        cursor.force();
+        cursorChannel.close();
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                final Entry entry = pending.take();
+                make(entry);
+                cursor.putLong(0, entry.sequence);
+                acknowledged = entry.sequence;
+                trim();
+            }
+        } catch (final InterruptedException e) {
+            log.info("Stopped the transfer intake drainer after sequence number {}", acknowledged);
+        } catch (final IOException e) {
+            log.error("Stopped the transfer intake drainer, which could not delete an acknowledged log file", e);
+        }
+    }
+
+    /**
+     * Delete the files of the log whose transfers were all acknowledged,
+     * keeping the last one, which is appended to
+     */
+    private synchronized void trim() throws IOException {
+        final List<LogFile> acknowledgedFiles = new ArrayList<>();
+        LogFile previous = null;
+        for (final LogFile logFile : logFiles) {
+            // The last transfer of a file is the one before the first of the next file
+            if (previous != null) {
+                if (logFile.firstSequence - 1 > acknowledged) {
+                    break;
+                }
+                acknowledgedFiles.add(previous);
+            }
+            previous = logFile;
+        }
+        if (acknowledgedFiles.isEmpty()) {
+            return;
+        }
+        // The transfers of the files have to stay acknowledged after a crash of the OS
+        cursor.force();
+        for (final LogFile logFile : acknowledgedFiles) {
+            logFiles.remove(logFile);
+            logFile.journal.close();
+            Files.delete(logFile.path);
+            log.info("Deleted the intake log file {}, all its transfers were made", logFile.path);
+        }
+    }
+
+    private LogFile openLogFile(final long firstSequence) {
+        try {
+            final LogFile logFile = new LogFile(firstSequence);
+            logFile.journal.replay(record -> { });
+            return logFile;
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Could not start a new intake log file", e);
+        }
+    }
+
+    private static List<Long> listLogFiles(final Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> LOG_FILE_NAME.matcher(file.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .map(matcher -> Long.parseLong(matcher.group(1)))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Make the transfer of the entry, retrying until it has either committed
+     * or been refused
+     */
+    private void make(final Entry entry) throws InterruptedException {
+        final TransferRequest request = entry.transferRequest;
+        final TransferRequest idempotent = TransferRequest.builder()
+                .senderAccountId(request.getSenderAccountId())
+                .receiverAccountId(request.getReceiverAccountId())
+                .currency(request.getCurrency())
+                .amount(request.getAmount())
+                .notes(request.getNotes())
+                .idempotencyKey(request.getIdempotencyKey() != null ? request.getIdempotencyKey()
+                        : logId + ":" + entry.sequence)
+                .build();
+        long backoffMillis = retryInitialMillis;
+        while (true) {
+            try {
+                final TransferResponse response = banking.transfer(idempotent);
+                if (response.getTransferSuccessful()) {
+                    committed.increment();
+                } else {
+                    refused.increment();
+                    log.info("The transfer with sequence number {} was refused", entry.sequence);
+                }
+                return;
+            } catch (final IllegalArgumentException e) {
+                refused.increment();
+                log.error("Dropping the transfer with sequence number {}, which is not valid", entry.sequence, e);
+                return;
+            } catch (final RuntimeException e) {
+                retried.increment();
+                log.warn("The transfer with sequence number {} failed. Retrying in {} ms",
+                        entry.sequence, backoffMillis, e);
+                Thread.sleep(backoffMillis);
+                backoffMillis = Math.min(backoffMillis * 2, retryMaxMillis);
+            }
+        }
+    }
+
+    /**
+     * Queue the transfers of the log which were not acknowledged yet
+     */
+    private void replay(final ByteBuffer record) {
+        // The sequence number may be the corrupt part, but the records of a file have consecutive ones
+        final long sequence = replayedSequence + 1;
+        final long recorded = record.getLong();
+        final int checksum = record.getInt();
+        replayedSequence = sequence;
+        if (checksum(recorded, record.duplicate()) != checksum) {
+            log.error("The transfer with sequence number {} in the intake log, or its sequence number, "
+                    + "is corrupt. Skipping it", sequence);
+            return;
+        }
+        if (sequence > acknowledged) {
+            pending.add(new Entry(sequence, decode(record)));
+        }
+    }
+
+    /**
+     * The checksum of a record, which covers its sequence number and the transfer
+     */
+    private static int checksum(final long sequence, final ByteBuffer payload) {
+        final CRC32C crc = new CRC32C();
+        crc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, sequence));
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] encode(final TransferRequest transferRequest) {
+        final byte[] sender = utf8(transferRequest.getSenderAccountId());
+        final byte[] receiver = utf8(transferRequest.getReceiverAccountId());
+        final byte[] currency = utf8(transferRequest.getCurrency());
+        final byte[] notes = utf8(transferRequest.getNotes());
+        final byte[] idempotencyKey = utf8(transferRequest.getIdempotencyKey());
+        final ByteBuffer buffer = ByteBuffer.allocate(5 * Short.BYTES + sender.length + receiver.length
+                + currency.length + notes.length + idempotencyKey.length + Double.BYTES + 2);
+        putBytes(buffer, sender);
+        putBytes(buffer, receiver);
+        putBytes(buffer, currency);
+        buffer.putDouble(transferRequest.getAmount());
+        buffer.put((byte) (transferRequest.getNotes() == null ? 0 : 1));
+        putBytes(buffer, notes);
+        buffer.put((byte) (transferRequest.getIdempotencyKey() == null ? 0 : 1));
+        putBytes(buffer, idempotencyKey);
+        return buffer.array();
+    }
+
+    private static TransferRequest decode(final ByteBuffer buffer) {
+        final String sender = getString(buffer);
+        final String receiver = getString(buffer);
+        final String currency = getString(buffer);
+        final double amount = buffer.getDouble();
+        final boolean hasNotes = buffer.get() != 0;
+        final String notes = getString(buffer);
+        final boolean hasIdempotencyKey = buffer.get() != 0;
+        final String idempotencyKey = getString(buffer);
+        return TransferRequest.builder()
+                .senderAccountId(sender)
+                .receiverAccountId(receiver)
+                .currency(currency)
+                .amount(amount)
+                .notes(hasNotes ? notes : null)
+                .idempotencyKey(hasIdempotencyKey ? idempotencyKey : null)
+                .build();
+    }
+
+    private static byte[] utf8(final String value) {
+        return value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putBytes(final ByteBuffer buffer, final byte[] bytes) {
+        Validate.isTrue(bytes.length <= 0xffff, "The fields of a transfer can be at most 65535 bytes long");
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getShort() & 0xffff];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * One file of the log
+     */
+    private final class LogFile {
+
+        private final long firstSequence;
+
+        private final Path path;
+
+        private final MappedJournal journal;
+
+        private LogFile(final long firstSequence) throws IOException {
+            this.firstSequence = firstSequence;
+            this.path = directory.resolve(String.format(LOG_FILE, firstSequence));
+            this.journal = new MappedJournal(path, segmentBytes);
+        }
+    }
+
+    private static final class Entry {
+
+        private final long sequence;
+
+        private final TransferRequest transferRequest;
+
+        private Entry(final long sequence, final TransferRequest transferRequest) {
+            this.sequence = sequence;
+            this.transferRequest = transferRequest;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.doubleentry.intake;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.Validate;
+import software.amazon.qldb.doubleentry.actions.Banking;
+import software.amazon.qldb.doubleentry.metrics.Counter;
+import software.amazon.qldb.doubleentry.metrics.MetricNames;
+import software.amazon.qldb.doubleentry.metrics.MetricsRegistry;
+import software.amazon.qldb.doubleentry.models.TransferRequest;
+import software.amazon.qldb.doubleentry.models.TransferResponse;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>
+ * Group commit for transfers. Callers publish their transfers into a ring of
+ * pre-allocated slots, and a single committer thread takes whatever has
+ * built up in the ring and makes it with {@link Banking#transferAll(List)},
+ * so that the transfers share one QLDB Transaction, and one commit, instead
+ * of paying for one each. Every caller is answered with the response of its
+ * own transfer.
+ * </p>
+ *
+ * <p>
+ * The size of the batches follows the load. The committer starts with
+ * batches of one transfer, and commits a transfer as soon as it is there.
+ * When it fills its batch and more transfers are already waiting after the
+ * commit, it doubles the batch limit, up to maxBatchSize, and waits up to
+ * maxDelay for the next batch to fill. When the
+ * batches are less than half full, it halves the limit again, down to one.
+ * </p>
+ *
+ * <p>
+ * A transfer which is refused by the balance checks does not affect the
+ * others of its batch. If the commit of the batch fails, every transfer of
+ * the batch fails with the same exception, and none of them was made.
+ * </p>
+ */
+@Slf4j
+public class TransferPipeline implements Closeable {
+
+    /**
+     * How long a caller waits before looking again for a free slot, when the
+     * ring is full
+     */
+    private static final long FULL_RING_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    /**
+     * How long the committer sleeps when the ring is empty, unless a caller
+     * wakes it up earlier
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * Set in claimed once the pipeline is closed, so that no slot can be
+     * claimed after the committer has seen the last one
+     */
+    private static final long CLOSED = Long.MIN_VALUE;
+
+    private final Banking banking;
+
+    private final Slot[] ring;
+
+    private final int mask;
+
+    private final int maxBatchSize;
+
+    private final long maxDelayNanos;
+
+    /**
+     * The sequence number of the next slot to be claimed by a caller, with
+     * the CLOSED bit once the pipeline is closed
+     */
+    private final AtomicLong claimed = new AtomicLong();
+
+    /**
+     * The sequence number of the next slot to be taken by the committer.
+     * The slots before it are free again.
+     */
+    private volatile long consumed;
+
+    private volatile int batchLimit = 1;
+
+    private volatile boolean committerIdle;
+
+    private final Thread committer;
+
+    private final Counter batches;
+
+    private final Counter transfers;
+
+    /**
+     * @param ringSize The number of slots of the ring, a power of two
+     * @param maxBatchSize The most transfers committed together
+     * @param maxDelayMicros The longest the committer waits for a batch to fill
+     */
+    public TransferPipeline(@NonNull final Banking banking,
+                            final int ringSize,
+                            final int maxBatchSize,
+                            final long maxDelayMicros,
+                            @NonNull final MetricsRegistry metricsRegistry) {
+        Validate.isTrue(ringSize > 0 && Integer.bitCount(ringSize) == 1, "The ring size has to be a power of two");
+        Validate.isTrue(maxBatchSize > 0 && maxBatchSize <= ringSize,
+                "The batch size has to be between 1 and the ring size");
+        this.banking = banking;
+        this.ring = new Slot[ringSize];
+        for (int i = 0; i < ringSize; i++) {
+            ring[i] = new Slot();
+        }
+        this.mask = ringSize - 1;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+
+        this.batches = metricsRegistry.counter(MetricNames.GROUP_COMMIT_BATCHES,
+                "Batches of transfers committed together");
+        this.transfers = metricsRegistry.counter(MetricNames.GROUP_COMMIT_TRANSFERS,
+                "Transfers committed in batches");
+        metricsRegistry.gauge(MetricNames.GROUP_COMMIT_BATCH_LIMIT,
+                "The most transfers the committer takes in its next batch", () -> batchLimit);
+
+        this.committer = new Thread(this::commit, "transfer-pipeline-committer");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    /**
+     * Publish a transfer, to be made with the next batch.
+     *
+     * @return The response of the transfer, once its batch has committed
+     * @throws IllegalArgumentException if the transfer request is not well formed
+     */
+    public CompletableFuture<TransferResponse> submit(@NonNull final TransferRequest transferRequest) {
+        banking.validateParameters(transferRequest);
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if ((sequence & CLOSED) != 0) {
+                throw new IllegalStateException("The transfer pipeline is closed");
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        while (sequence - consumed >= ring.length) {
+            LockSupport.parkNanos(this, FULL_RING_PARK_NANOS);
+        }
+
+        final Slot slot = ring[(int) (sequence & mask)];
+        final CompletableFuture<TransferResponse> response = new CompletableFuture<>();
+        slot.transferRequest = transferRequest;
+        slot.response = response;
+        slot.published = sequence;
+        if (committerIdle) {
+            LockSupport.unpark(committer);
+        }
+        return response;
+    }
+
+    /**
+     * Same as {@link Banking#transfer(TransferRequest)}, with the transfer
+     * made in the next batch
+     */
+    public TransferResponse transfer(@NonNull final TransferRequest transferRequest) {
+        try {
+            return submit(transferRequest).join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public int getBatchLimit() {
+        return batchLimit;
+    }
+
+    /**
+     * Stop taking transfers, and wait for the committer to make the ones
+     * which were already published
+     */
+    @Override
+    public void close() {
+        claimed.getAndUpdate(sequence -> sequence | CLOSED);
+        LockSupport.unpark(committer);
+        try {
+            committer.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void commit() {
+        final List<TransferRequest> transferRequests = new ArrayList<>(maxBatchSize);
+        final List<CompletableFuture<TransferResponse>> responses = new ArrayList<>(maxBatchSize);
+        long next = 0;
+        while (!drained(next)) {
+            final int limit = batchLimit;
+            int count = published(next, limit);
+            if (count == 0) {
+                idle(next);
+                continue;
+            }
+            if (count < limit) {
+                count = linger(next, limit, count);
+            }
+
+            for (long sequence = next; sequence < next + count; sequence++) {
+                final Slot slot = ring[(int) (sequence & mask)];
+                transferRequests.add(slot.transferRequest);
+                responses.add(slot.response);
+                slot.transferRequest = null;
+                slot.response = null;
+            }
+            next += count;
+            consumed = next;
+
+            commitBatch(transferRequests, responses);
+            transferRequests.clear();
+            responses.clear();
+
+            // A full batch alone is no sign of load when the limit is one
+            if (count == limit && published(next, 1) == 1) {
+                batchLimit = Math.min(limit * 2, maxBatchSize);
+            } else if (count <= limit / 2) {
+                batchLimit = Math.max(limit / 2, 1);
+            }
+        }
+        log.info("Stopped the transfer pipeline committer after {} transfers", next);
+    }
+
+    /**
+     * Whether the pipeline is closed and the committer has taken every
+     * slot which was claimed before
+     */
+    private boolean drained(final long next) {
+        final long sequence = claimed.get();
+        return (sequence & CLOSED) != 0 && next >= (sequence & ~CLOSED);
+    }
+
+    private void commitBatch(final List<TransferRequest> transferRequests,
+                             final List<CompletableFuture<TransferResponse>> responses) {
+        batches.increment();
+        transfers.add(transferRequests.size());
+        try {
+            final List<TransferResponse> transferResponses = banking.transferAll(transferRequests);
+            for (int i = 0; i < responses.size(); i++) {
+                responses.get(i).complete(transferResponses.get(i));
+            }
+        } catch (final Throwable e) {
+            // Errors too, so that no caller waits for a batch the committer gave up on
+            log.error("A batch of {} transfers failed", transferRequests.size(), e);
+            responses.forEach(response -> response.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * @return How many slots from the given one on are published, up to the limit
+     */
+    private int published(final long from, final int limit) {
+        int count = 0;
+        while (count < limit && ring[(int) ((from + count) & mask)].published == from + count) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Wait for more transfers, up to the max delay, while the batch is not
+     * full. Under load the batch fills in much less than the max delay.
+     */
+    private int linger(final long from, final int limit, final int count) {
+        final long deadline = System.nanoTime() + maxDelayNanos;
+        int lingered = count;
+        while (lingered < limit && System.nanoTime() - deadline < 0) {
+            Thread.yield();
+            lingered = published(from, limit);
+        }
+        return lingered;
+    }
+
+    private void idle(final long next) {
+        committerIdle = true;
+        // A caller which published after this check sees the flag and wakes us up
+        if (ring[(int) (next & mask)].published != next && (claimed.get() & CLOSED) == 0) {
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+        committerIdle = false;
+    }
+
+    private static final class Slot {
+
+        private volatile long published = -1;
+
+        private TransferRequest transferRequest;
+
+        private CompletableFuture<TransferResponse> response;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.doubleentry.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for a single PartiQL statement executed inside a
+ * QLDB Transaction.
+ */
+@Name("software.amazon.qldb.doubleentry.Statement")
+@Label("QLDB Statement")
+@Category({"QLDB Double Entry", "Statements"})
+@Description("A PartiQL statement executed inside a QLDB transaction")
+@StackTrace(false)
+public class StatementEvent extends jdk.jfr.Event {
+
+    @Label("Statement")
+    @Description("What the statement does, e.g. ReadSenderBalances or UpdateReceiverBalances")
+    public String statement;
+
+    @Label("Account Id")
+    public String accountId;
+
+    @Label("Parameters")
+    public int parameterCount;
+
+    @Label("Parameters Size")
+    @Description("Size of the statement parameters in Ion text")
+    @DataAmount
+    public long parameterSize;
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.doubleentry.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for one attempt of a QLDB Transaction, from the
+ * start of the transaction body until the commit either succeeded or was
+ * retried by the driver.
+ */
+@Name("software.amazon.qldb.doubleentry.TransactionAttempt")
+@Label("QLDB Transaction Attempt")
+@Category({"QLDB Double Entry", "Transactions"})
+@Description("One attempt of a QLDB transaction, including its commit")
+@StackTrace(false)
+public class TransactionAttemptEvent extends jdk.jfr.Event {
+
+    public static final String COMMITTED = "COMMITTED";
+    public static final String RETRIED = "RETRIED";
+    public static final String FAILED = "FAILED";
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Attempt")
+    @Description("Attempt number, starting at 1")
+    public int attempt;
+
+    @Label("Outcome")
+    public String outcome;
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.doubleentry.jfr;
+
+import lombok.NonNull;
+
+/**
+ * <p>
+ * Keeps track of the Flight Recorder events of a single call to
+ * TransactionsHandler, across all the attempts made by the driver.
+ * </p>
+ *
+ * <p>
+ * The driver calls the transaction body once per attempt, and calls the
+ * retry indicator between two attempts. An attempt therefore ends either when
+ * the retry indicator is called or when the driver returns. The commit of an
+ * attempt spans from the end of the body until the same point.
+ * </p>
+ *
+ * <p>
+ * When recording is off, the events are never committed and creating them
+ * costs next to nothing.
+ * </p>
+ */
+public class TransactionTrace {
+
+    private final String operation;
+
+    private int attempt;
+
+    private TransactionAttemptEvent attemptEvent;
+
+    private TransactionCommitEvent commitEvent;
+
+    public TransactionTrace(@NonNull final String operation) {
+        this.operation = operation;
+    }
+
+    /**
+     * Called by the transaction body before it runs any statement.
+     */
+    public void attemptStarted() {
+        attempt++;
+        attemptEvent = new TransactionAttemptEvent();
+        attemptEvent.begin();
+        commitEvent = null;
+    }
+
+    /**
+     * Called by the transaction body after it ran all its statements.
+     */
+    public void bodyFinished() {
+        commitEvent = new TransactionCommitEvent();
+        commitEvent.begin();
+    }
+
+    /**
+     * Called by the retry indicator, before the driver starts the next attempt.
+     */
+    public void retried() {
+        finish(TransactionAttemptEvent.RETRIED, false);
+    }
+
+    /**
+     * Called once the driver returned successfully.
+     */
+    public void committed() {
+        finish(TransactionAttemptEvent.COMMITTED, true);
+    }
+
+    /**
+     * Called if the driver gave up on the transaction.
+     */
+    public void failed() {
+        finish(TransactionAttemptEvent.FAILED, false);
+    }
+
+    public int getAttempts() {
+        return attempt;
+    }
+
+    private void finish(final String outcome, final boolean committed) {
+        if (commitEvent != null) {
+            commitEvent.end();
+            if (commitEvent.shouldCommit()) {
+                commitEvent.operation = operation;
+                commitEvent.attempt = attempt;
+                commitEvent.committed = committed;
+                commitEvent.commit();
+            }
+            commitEvent = null;
+        }
+        if (attemptEvent != null) {
+            attemptEvent.end();
+            if (attemptEvent.shouldCommit()) {
+                attemptEvent.operation = operation;
+                attemptEvent.attempt = attempt;
+                attemptEvent.outcome = outcome;
+                attemptEvent.commit();
+            }
+            attemptEvent = null;
+        }
+    }
+}
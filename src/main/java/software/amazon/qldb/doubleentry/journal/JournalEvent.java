@@ -0,0 +1,59 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.journal;
+
+import lombok.Value;
+
+import java.time.Instant;
+
+/**
+ * <p>
+ * A revision of a document of the given type, read from an exported journal
+ * block. The document is null if the revision deleted it.
+ * </p>
+ *
+ * <p>
+ * The strand id and sequence number of the block, together with the version
+ * of the document, order the events of a document.
+ * </p>
+ */
+@Value
+public class JournalEvent<T> {
+
+    String strandId;
+
+    long sequenceNo;
+
+    Instant blockTimestamp;
+
+    String transactionId;
+
+    String tableName;
+
+    String documentId;
+
+    long version;
+
+    T document;
+
+    public boolean isDeleted() {
+        return document == null;
+    }
+}
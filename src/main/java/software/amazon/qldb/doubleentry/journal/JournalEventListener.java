@@ -0,0 +1,43 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.journal;
+
+import software.amazon.qldb.doubleentry.models.Account;
+import software.amazon.qldb.doubleentry.models.AccountBalance;
+import software.amazon.qldb.doubleentry.models.Transaction;
+
+/**
+ * Receives the revisions read from a journal export by
+ * {@link JournalExportReader}. All methods are called from the thread which
+ * called {@link JournalExportReader#read}, one at a time.
+ */
+public interface JournalEventListener {
+
+    void onAccount(JournalEvent<Account> event);
+
+    /**
+     * Only ledgers in the per currency balance layout have AccountBalances
+     * documents, so listeners which do not need them can leave this out.
+     */
+    default void onAccountBalance(JournalEvent<AccountBalance> event) {
+    }
+
+    void onTransaction(JournalEvent<Transaction> event);
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.journal;
+
+import com.amazon.ion.IonInt;
+import com.amazon.ion.IonReader;
+import com.amazon.ion.IonSequence;
+import com.amazon.ion.IonString;
+import com.amazon.ion.IonStruct;
+import com.amazon.ion.IonSystem;
+import com.amazon.ion.IonTimestamp;
+import com.amazon.ion.IonValue;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.qldb.doubleentry.Constants;
+import software.amazon.qldb.doubleentry.helpers.IonHelper;
+import software.amazon.qldb.doubleentry.models.Account;
+import software.amazon.qldb.doubleentry.models.AccountBalance;
+import software.amazon.qldb.doubleentry.models.Transaction;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * <p>
+ * Reads a journal export of the ledger from a local directory, for example
+ * one synced from the S3 bucket of an ExportJournalToS3 job, and hands the
+ * revisions of the Accounts, AccountBalances and Transactions tables to a
+ * {@link JournalEventListener} as typed events.
+ * </p>
+ *
+ * <p>
+ * Each data file is memory mapped and parsed by one of a fixed number of
+ * parser threads; Ion text and Ion binary files are both detected by the Ion
+ * reader. Parsed blocks go through a bounded queue per file, so parsers never
+ * run more than the queue capacity ahead of the listener, and the listener
+ * sees the events in the order of the files and of the blocks inside them.
+ * The files are ordered by the sequence numbers in their names, so this is
+ * the order of the journal.
+ * </p>
+ */
+@Slf4j
+public class JournalExportReader {
+
+    private static final String DATA_FILE_SUFFIX = ".ion";
+
+    private static final Pattern DATA_FILE_NAME = Pattern.compile("([^.]+)\\.(\\d+)-\\d+\\.ion");
+
+    private static final Object END_OF_FILE = new Object();
+
+    private final IonSystem ionSystem;
+
+    private final IonHelper ionHelper;
+
+    private final int parallelism;
+
+    private final int queueCapacity;
+
+    public JournalExportReader(@NonNull final IonSystem ionSystem,
+                               @NonNull final IonHelper ionHelper,
+                               final int parallelism,
+                               final int queueCapacity) {
+        if (parallelism < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Parallelism and queue capacity have to be positive");
+        }
+        this.ionSystem = ionSystem;
+        this.ionHelper = ionHelper;
+        this.parallelism = parallelism;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Read all data files found under the given directory.
+     *
+     * @return The number of events handed to the listener
+     */
+    public long read(@NonNull final Path directory, @NonNull final JournalEventListener listener)
+            throws IOException {
+        final List<Path> files = findDataFiles(directory);
+        log.info("Reading {} journal files from {} with {} parser threads", files.size(), directory, parallelism);
+
+        final List<BlockingQueue<Object>> queues = new ArrayList<>(files.size());
+        final ExecutorService parsers = Executors.newFixedThreadPool(parallelism);
+        try {
+            // The pool runs the files in the order they were submitted, so the
+            // file the listener waits for is always being parsed or done
+            for (final Path file : files) {
+                final BlockingQueue<Object> queue = new LinkedBlockingQueue<>(queueCapacity);
+                queues.add(queue);
+                parsers.execute(() -> parse(file, queue));
+            }
+            long events = 0;
+            for (int i = 0; i < files.size(); i++) {
+                events += drain(files.get(i), queues.get(i), listener);
+            }
+            return events;
+        } finally {
+            parsers.shutdownNow();
+        }
+    }
+
+    /**
+     * The data files under the directory, in journal order. The files of an
+     * export are named &lt;strandId&gt;.&lt;firstSequenceNo&gt;-&lt;lastSequenceNo&gt;.ion,
+     * and are ordered by strand and first sequence number, compared as
+     * numbers. Files named otherwise come last, by path.
+     */
+    static List<Path> findDataFiles(final Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(path -> path.getFileName().toString().endsWith(DATA_FILE_SUFFIX))
+                    .map(DataFile::new)
+                    .sorted()
+                    .map(dataFile -> dataFile.path)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static long drain(final Path file,
+                              final BlockingQueue<Object> queue,
+                              final JournalEventListener listener) throws IOException {
+        long events = 0;
+        try {
+            for (Object item = queue.take(); item != END_OF_FILE; item = queue.take()) {
+                if (item instanceof ParseFailure) {
+                    throw new IOException("Failed to parse journal file " + file, ((ParseFailure) item).cause);
+                }
+                for (final JournalEvent<?> event : (List<JournalEvent<?>>) item) {
+                    if (Constants.ACCOUNTS_TABLE_NAME.equals(event.getTableName())) {
+                        listener.onAccount((JournalEvent<Account>) event);
+                    } else if (Constants.ACCOUNT_BALANCES_TABLE_NAME.equals(event.getTableName())) {
+                        listener.onAccountBalance((JournalEvent<AccountBalance>) event);
+                    } else {
+                        listener.onTransaction((JournalEvent<Transaction>) event);
+                    }
+                    events++;
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading " + file);
+        }
+        return events;
+    }
+
+    private void parse(final Path file, final BlockingQueue<Object> queue) {
+        try {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+                 InputStream input = open(channel);
+                 IonReader reader = ionSystem.newReader(input)) {
+                final Iterator<IonValue> blocks = ionSystem.iterate(reader);
+                while (blocks.hasNext()) {
+                    final List<JournalEvent<?>> events = toEvents((IonStruct) blocks.next());
+                    if (!events.isEmpty()) {
+                        queue.put(events);
+                    }
+                }
+            } catch (final IOException | RuntimeException e) {
+                queue.put(new ParseFailure(e));
+                return;
+            }
+            queue.put(END_OF_FILE);
+        } catch (final InterruptedException e) {
+            // The reader gave up, nobody is waiting for this file any more
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static InputStream open(final FileChannel channel) throws IOException {
+        if (channel.size() > Integer.MAX_VALUE) {
+            return Channels.newInputStream(channel);
+        }
+        final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        return new ByteBufferInputStream(buffer);
+    }
+
+    private List<JournalEvent<?>> toEvents(final IonStruct block) {
+        final IonStruct blockAddress = (IonStruct) block.get("blockAddress");
+        final String strandId = stringValue(blockAddress.get("strandId"));
+        final long sequenceNo = ((IonInt) blockAddress.get("sequenceNo")).longValue();
+        final String transactionId = stringValue(block.get("transactionId"));
+        final Instant blockTimestamp = Instant.ofEpochMilli(
+                ((IonTimestamp) block.get("blockTimestamp")).getMillis());
+
+        final IonStruct transactionInfo = (IonStruct) block.get("transactionInfo");
+        final IonStruct documents = transactionInfo == null ? null : (IonStruct) transactionInfo.get("documents");
+        final IonSequence revisions = (IonSequence) block.get("revisions");
+        final List<JournalEvent<?>> events = new ArrayList<>();
+        if (documents == null || revisions == null || revisions.isNullValue()) {
+            return events;
+        }
+        for (final IonValue value : revisions) {
+            final IonStruct revision = (IonStruct) value;
+            final IonStruct metadata = (IonStruct) revision.get("metadata");
+            if (metadata == null) {
+                // Revisions of other transactions are only present as hashes
+                continue;
+            }
+            final String documentId = stringValue(metadata.get("id"));
+            final IonStruct document = (IonStruct) documents.get(documentId);
+            final String tableName = document == null ? null : stringValue(document.get("tableName"));
+            final Class<?> type = documentType(tableName);
+            if (type == null) {
+                continue;
+            }
+            final IonValue data = revision.get("data");
+            final Object mapped = data == null || data.isNullValue() ? null : ionHelper.readIonValue(data, type);
+            events.add(new JournalEvent<>(strandId, sequenceNo, blockTimestamp, transactionId, tableName,
+                    documentId, ((IonInt) metadata.get("version")).longValue(), mapped));
+        }
+        return events;
+    }
+
+    private static Class<?> documentType(final String tableName) {
+        if (Constants.ACCOUNTS_TABLE_NAME.equals(tableName)) {
+            return Account.class;
+        }
+        if (Constants.ACCOUNT_BALANCES_TABLE_NAME.equals(tableName)) {
+            return AccountBalance.class;
+        }
+        if (Constants.TRANSACTIONS_TABLE_NAME.equals(tableName)) {
+            return Transaction.class;
+        }
+        return null;
+    }
+
+    private static String stringValue(final IonValue value) {
+        return value == null || value.isNullValue() ? null : ((IonString) value).stringValue();
+    }
+
+    private static final class ParseFailure {
+
+        private final Exception cause;
+
+        private ParseFailure(final Exception cause) {
+            this.cause = cause;
+        }
+    }
+
+    /**
+     * Reads a memory mapped file without copying it into a heap buffer first.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            final int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    /**
+     * A data file, with the strand and first sequence number in its name
+     */
+    private static final class DataFile implements Comparable<DataFile> {
+
+        private final Path path;
+
+        private final String strandId;
+
+        private final long firstSequenceNo;
+
+        private DataFile(final Path path) {
+            this.path = path;
+            final Matcher matcher = DATA_FILE_NAME.matcher(path.getFileName().toString());
+            this.strandId = matcher.matches() ? matcher.group(1) : null;
+            this.firstSequenceNo = matcher.matches() ? Long.parseLong(matcher.group(2)) : -1;
+        }
+
+        @Override
+        public int compareTo(final DataFile other) {
+            if (strandId == null || other.strandId == null) {
+                if (strandId != null || other.strandId != null) {
+                    return strandId == null ? 1 : -1;
+                }
+                return path.compareTo(other.path);
+            }
+            final int strands = strandId.compareTo(other.strandId);
+            if (strands != 0) {
+                return strands;
+            }
+            final int sequences = Long.compare(firstSequenceNo, other.firstSequenceNo);
+            return sequences != 0 ? sequences : path.compareTo(other.path);
+        }
+    }
+}
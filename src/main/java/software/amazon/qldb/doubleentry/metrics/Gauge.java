@@ -0,0 +1,50 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.doubleentry.metrics;
+
+import lombok.NonNull;
+
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * A value that can go up and down, read from its owner whenever the metrics
+ * are exported. It is either a whole number or, for durations in seconds,
+ * a fractional one.
+ */
+public class Gauge {
+
+    private final LongSupplier value;
+
+    private final DoubleSupplier fractionalValue;
+
+    public Gauge(@NonNull final LongSupplier value) {
+        this.value = value;
+        this.fractionalValue = null;
+    }
+
+    public Gauge(@NonNull final DoubleSupplier fractionalValue) {
+        this.value = null;
+        this.fractionalValue = fractionalValue;
+    }
+
+    public Number get() {
+        return value != null ? (Number) value.getAsLong() : (Number) fractionalValue.getAsDouble();
+    }
+}
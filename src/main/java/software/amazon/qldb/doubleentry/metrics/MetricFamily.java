@@ -0,0 +1,63 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.doubleentry.metrics;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * All the metrics sharing a name, one per distinct set of labels.
+ *
+ * @param <T> Counter, Gauge or LatencyHistogram
+ */
+@Getter
+public class MetricFamily<T> {
+
+    public enum Type {
+        COUNTER,
+        GAUGE,
+        SUMMARY
+    }
+
+    private final String name;
+
+    private final String help;
+
+    private final Type type;
+
+    /**
+     * Keyed by the labels rendered as Prometheus label pairs, e.g.
+     * operation="transfer"
+     */
+    private final ConcurrentMap<String, T> metrics = new ConcurrentHashMap<>();
+
+    MetricFamily(@NonNull final String name, @NonNull final String help, @NonNull final Type type) {
+        this.name = name;
+        this.help = help;
+        this.type = type;
+    }
+
+    T getOrCreate(final String labels, final Supplier<T> factory) {
+        return metrics.computeIfAbsent(labels, l -> factory.get());
+    }
+}
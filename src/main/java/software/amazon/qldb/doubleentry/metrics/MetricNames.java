@@ -0,0 +1,70 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.doubleentry.metrics;
+
+/**
+ * Names of the metrics exported by the application.
+ */
+public final class MetricNames {
+
+    public static final String TRANSFERS = "doubleentry_transfers_total";
+    public static final String TRANSFER_LATENCY = "doubleentry_transfer_latency_seconds";
+    public static final String BALANCE_READ_LATENCY = "doubleentry_balance_read_latency_seconds";
+
+    public static final String TRANSACTIONS = "doubleentry_qldb_transactions_total";
+    public static final String TRANSACTION_FAILURES = "doubleentry_qldb_transaction_failures_total";
+    public static final String OCC_RETRIES = "doubleentry_qldb_occ_retries_total";
+    public static final String TRANSACTION_LATENCY = "doubleentry_qldb_transaction_latency_seconds";
+
+    public static final String SESSIONS_IN_USE = "doubleentry_qldb_sessions_in_use";
+    public static final String SESSION_ACQUIRE_LATENCY = "doubleentry_qldb_session_acquire_latency_seconds";
+
+    public static final String ION_MAPPING_LATENCY = "doubleentry_ion_mapping_latency_seconds";
+
+    public static final String DOCUMENT_ID_CACHE_LOOKUPS = "doubleentry_document_id_cache_lookups_total";
+
+    public static final String SINGLE_FLIGHT_CALLS = "doubleentry_single_flight_calls_total";
+
+    public static final String HEDGED_READS = "doubleentry_hedged_reads_total";
+    public static final String HEDGE_DELAY = "doubleentry_hedge_delay_seconds";
+
+    public static final String INTAKE_TRANSFERS = "doubleentry_intake_transfers_total";
+    public static final String INTAKE_PENDING = "doubleentry_intake_pending";
+
+    public static final String GROUP_COMMIT_BATCHES = "doubleentry_group_commit_batches_total";
+    public static final String GROUP_COMMIT_TRANSFERS = "doubleentry_group_commit_transfers_total";
+    public static final String GROUP_COMMIT_BATCH_LIMIT = "doubleentry_group_commit_batch_limit";
+
+    public static final String CONCURRENCY_LIMIT = "doubleentry_concurrency_limit";
+    public static final String CONCURRENCY_IN_FLIGHT = "doubleentry_concurrency_in_flight";
+    public static final String CONCURRENCY_CONFLICT_RATE = "doubleentry_concurrency_occ_conflict_rate_permille";
+    public static final String CONCURRENCY_LATENCY = "doubleentry_concurrency_latency_seconds";
+    public static final String CONCURRENCY_LIMIT_DECREASES = "doubleentry_concurrency_limit_decreases_total";
+
+    public static final String OUTCOME_LABEL = "outcome";
+    public static final String OPERATION_LABEL = "operation";
+    public static final String DIRECTION_LABEL = "direction";
+    public static final String RESULT_LABEL = "result";
+    public static final String LANE_LABEL = "lane";
+    public static final String LIMITER_LABEL = "limiter";
+    public static final String WINDOW_LABEL = "window";
+    public static final String REASON_LABEL = "reason";
+
+    private MetricNames() { }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.doubleentry.metrics;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically logs a summary of all the metrics. Useful for tasks which do
+ * not live long enough to be scraped.
+ */
+@Slf4j
+public class MetricsLogReporter {
+
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private MetricsRegistry metricsRegistry;
+
+    private ScheduledExecutorService scheduler;
+
+    public MetricsLogReporter(@NonNull final MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    public synchronized void start(final long periodMs) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "metrics-log-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::report, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop reporting, logging the metrics one last time.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+            report();
+        }
+    }
+
+    public void report() {
+        for (final MetricFamily<?> family : metricsRegistry.getFamilies()) {
+            for (final Map.Entry<String, ?> metric : family.getMetrics().entrySet()) {
+                final String name = family.getName() + "{" + metric.getKey() + "}";
+                final Object value = metric.getValue();
+                if (value instanceof Counter) {
+                    log.info("{} {}", name, ((Counter) value).get());
+                } else if (value instanceof Gauge) {
+                    log.info("{} {}", name, ((Gauge) value).get());
+                } else if (value instanceof LatencyHistogram) {
+                    final Histogram histogram = ((LatencyHistogram) value).snapshot();
+                    log.info("{} count={} p50={}ms p90={}ms p99={}ms max={}ms", name,
+                            histogram.getTotalCount(),
+                            histogram.getValueAtPercentile(50) / NANOS_PER_MILLI,
+                            histogram.getValueAtPercentile(90) / NANOS_PER_MILLI,
+                            histogram.getValueAtPercentile(99) / NANOS_PER_MILLI,
+                            histogram.getMaxValue() / NANOS_PER_MILLI);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.doubleentry.metrics;
+
+import lombok.NonNull;
+import org.apache.commons.lang3.Validate;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * <p>
+ * A single place holding all the metrics of the application. Metrics are
+ * created on first use and live as long as the registry.
+ * </p>
+ *
+ * <p>
+ * Looking a metric up costs a map lookup, so classes on hot paths look their
+ * metrics up once and keep them in fields. Recording into a metric never
+ * takes a lock.
+ * </p>
+ */
+public class MetricsRegistry {
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final ConcurrentMap<String, MetricFamily<?>> families = new ConcurrentSkipListMap<>();
+
+    /**
+     * @param labels Label names and values, alternating
+     */
+    public Counter counter(@NonNull final String name, @NonNull final String help, final String... labels) {
+        final MetricFamily<Counter> family = family(name, help, MetricFamily.Type.COUNTER);
+        return family.getOrCreate(renderLabels(labels), Counter::new);
+    }
+
+    /**
+     * @param labels Label names and values, alternating
+     */
+    public LatencyHistogram histogram(@NonNull final String name, @NonNull final String help, final String... labels) {
+        final MetricFamily<LatencyHistogram> family = family(name, help, MetricFamily.Type.SUMMARY);
+        return family.getOrCreate(renderLabels(labels), LatencyHistogram::new);
+    }
+
+    /**
+     * Register a gauge. If a gauge with the same name and labels exists
+     * already, it is kept and the given supplier is ignored.
+     *
+     * @param labels Label names and values, alternating
+     */
+    public Gauge gauge(@NonNull final String name, @NonNull final String help,
+                       @NonNull final LongSupplier value, final String... labels) {
+        final MetricFamily<Gauge> family = family(name, help, MetricFamily.Type.GAUGE);
+        return family.getOrCreate(renderLabels(labels), () -> new Gauge(value));
+    }
+
+    /**
+     * Register a gauge of a duration, which is supplied in nanoseconds and
+     * exported in seconds, like the latency histograms. If a gauge with the
+     * same name and labels exists already, it is kept and the given supplier
+     * is ignored.
+     *
+     * @param labels Label names and values, alternating
+     */
+    public Gauge durationGauge(@NonNull final String name, @NonNull final String help,
+                               @NonNull final LongSupplier nanos, final String... labels) {
+        final MetricFamily<Gauge> family = family(name, help, MetricFamily.Type.GAUGE);
+        return family.getOrCreate(renderLabels(labels),
+                () -> new Gauge(() -> nanos.getAsLong() / NANOS_PER_SECOND));
+    }
+
+    /**
+     * All the metric families, sorted by name.
+     */
+    public Collection<MetricFamily<?>> getFamilies() {
+        return Collections.unmodifiableCollection(families.values());
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> MetricFamily<T> family(final String name, final String help, final MetricFamily.Type type) {
+        final MetricFamily<?> family = families.computeIfAbsent(name, n -> new MetricFamily<>(n, help, type));
+        Validate.isTrue(family.getType() == type,
+                "Metric %s is already registered as a %s", name, family.getType());
+        return (MetricFamily<T>) family;
+    }
+
+    private static String renderLabels(final String... labels) {
+        Validate.isTrue(labels.length % 2 == 0, "Labels must be given as name and value pairs");
+        final StringBuilder rendered = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                rendered.append(',');
+            }
+            rendered.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+        return rendered.toString();
+    }
+
+    private static String escape(final String value) {
+        return String.valueOf(value)
+                .replace("\\", "\\\\")
+                .replace("\"", "\\\"")
+                .replace("\n", "\\n");
+    }
+}
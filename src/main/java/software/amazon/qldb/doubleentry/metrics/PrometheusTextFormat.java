@@ -0,0 +1,99 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.doubleentry.metrics;
+
+import lombok.NonNull;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the metrics of a {@link MetricsRegistry} in the Prometheus text
+ * exposition format. Latency histograms are exported as summaries, in
+ * seconds.
+ */
+public final class PrometheusTextFormat {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private PrometheusTextFormat() { }
+
+    public static String toString(@NonNull final MetricsRegistry registry) {
+        final StringWriter writer = new StringWriter();
+        write(registry, writer);
+        return writer.toString();
+    }
+
+    public static void write(@NonNull final MetricsRegistry registry, @NonNull final Writer writer) {
+        try {
+            for (final MetricFamily<?> family : registry.getFamilies()) {
+                writer.write("# HELP " + family.getName() + " " + family.getHelp() + "\n");
+                writer.write("# TYPE " + family.getName() + " " + family.getType().name().toLowerCase() + "\n");
+                for (final Map.Entry<String, ?> metric : family.getMetrics().entrySet()) {
+                    writeMetric(writer, family.getName(), metric.getKey(), metric.getValue());
+                }
+            }
+            writer.flush();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeMetric(final Writer writer,
+                                    final String name,
+                                    final String labels,
+                                    final Object metric) throws IOException {
+        if (metric instanceof Counter) {
+            writeSample(writer, name, labels, ((Counter) metric).get());
+        } else if (metric instanceof Gauge) {
+            writeSample(writer, name, labels, ((Gauge) metric).get());
+        } else if (metric instanceof LatencyHistogram) {
+            final LatencyHistogram latencyHistogram = (LatencyHistogram) metric;
+            final Histogram histogram = latencyHistogram.snapshot();
+            for (final double quantile : QUANTILES) {
+                final String quantileLabels = (labels.isEmpty() ? "" : labels + ",")
+                        + "quantile=\"" + quantile + "\"";
+                writeSample(writer, name, quantileLabels,
+                        histogram.getValueAtPercentile(quantile * 100) / NANOS_PER_SECOND);
+            }
+            writeSample(writer, name + "_sum", labels, latencyHistogram.getSumSeconds());
+            writeSample(writer, name + "_count", labels, histogram.getTotalCount());
+        }
+    }
+
+    private static void writeSample(final Writer writer,
+                                    final String name,
+                                    final String labels,
+                                    final Number value) throws IOException {
+        writer.write(name);
+        if (!labels.isEmpty()) {
+            writer.write("{" + labels + "}");
+        }
+        writer.write(" " + value + "\n");
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.models;
+
+import com.amazon.ion.Decimal;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+
+/**
+ * A document in the AccountBalances table, holding the balance of one
+ * account in one currency. It is used instead of the Balances of the
+ * Accounts document in the {@link BalanceLayout#PER_CURRENCY} layout.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AccountBalance {
+
+    @JsonProperty("BalanceId")
+    private String balanceId;
+
+    @JsonProperty("AccountId")
+    private String accountId;
+
+    @JsonProperty("Currency")
+    private String currency;
+
+    @JsonProperty("CurrencyBalance")
+    private Decimal currencyBalance;
+
+    /**
+     * The indexed key of the balance of the given account in the given
+     * currency. QLDB indexes single fields only, so the pair is stored as
+     * one field in order to look the document up through an index.
+     */
+    public static String balanceId(@NonNull final String accountId, @NonNull final String currency) {
+        return accountId + "/" + currency;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.models;
+
+import java.util.Locale;
+
+/**
+ * <p>
+ * Where the balances of an account are stored.
+ * </p>
+ *
+ * <ul>
+ *     <li>EMBEDDED: in the Balances array of the Accounts document. A
+ *     transfer in one currency conflicts with transfers in every other
+ *     currency on the same account, because they all update that one
+ *     document.</li>
+ *     <li>PER_CURRENCY: one {@link AccountBalance} document per account and
+ *     currency. Transfers in different currencies touch different documents
+ *     and do not conflict.</li>
+ * </ul>
+ */
+public enum BalanceLayout {
+
+    EMBEDDED,
+    PER_CURRENCY;
+
+    /**
+     * Parse the layout from its name, in any case. EMBEDDED if no name is given.
+     */
+    public static BalanceLayout fromName(final String name) {
+        if (name == null || name.trim().isEmpty()) {
+            return EMBEDDED;
+        }
+        return valueOf(name.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+    }
+
+    public boolean isPerCurrency() {
+        return this == PER_CURRENCY;
+    }
+}
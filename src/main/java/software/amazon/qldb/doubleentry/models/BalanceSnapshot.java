@@ -0,0 +1,54 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.models;
+
+import lombok.NonNull;
+import lombok.Value;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * <p>
+ * The balances of an account as of a point in the journal. The sequence
+ * number is the one of the block of the latest balance revision it was
+ * built from, and the time is the commit time of that revision.
+ * </p>
+ *
+ * <p>
+ * The balances stay valid until the next revision of the balances, which
+ * always comes with a document in the Transactions table committed in a
+ * later block.
+ * </p>
+ */
+@Value
+public class BalanceSnapshot {
+
+    @NonNull
+    String accountId;
+
+    long sequenceNo;
+
+    @NonNull
+    Instant takenAt;
+
+    @NonNull
+    List<Balance> balances;
+}
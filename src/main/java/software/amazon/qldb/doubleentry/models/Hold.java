@@ -0,0 +1,70 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.doubleentry.models;
+
+import com.amazon.ion.Decimal;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import software.amazon.qldb.doubleentry.helpers.IonInstantDeserializer;
+import software.amazon.qldb.doubleentry.helpers.IonInstantSerializer;
+
+import java.time.Instant;
+
+/**
+ * A document in the Holds table. An authorized hold carries the amount which
+ * was taken out of the sender account until the hold is captured into the
+ * receiver account, voided or expires.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class Hold {
+
+    @JsonProperty("HoldId")
+    private String holdId;
+
+    @JsonProperty("AccountId")
+    private String accountId;
+
+    @JsonProperty("ReceiverAccountId")
+    private String receiverAccountId;
+
+    @JsonProperty("Currency")
+    private String currency;
+
+    @JsonProperty("Amount")
+    private Decimal amount;
+
+    @JsonProperty("Status")
+    private String status;
+
+    @JsonProperty("Notes")
+    private String notes;
+
+    @JsonProperty("ExpiresAt")
+    @JsonSerialize(using = IonInstantSerializer.class)
+    @JsonDeserialize(using = IonInstantDeserializer.class)
+    private Instant expiresAt;
+}
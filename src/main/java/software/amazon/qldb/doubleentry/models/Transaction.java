@@ -18,12 +18,15 @@
 
 package software.amazon.qldb.doubleentry.models;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
+import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
 import software.amazon.qldb.doubleentry.helpers.IonLocalDateDeserializer;
@@ -37,6 +40,8 @@ import java.util.List;
 @Getter
 @Setter
 @Builder
+@NoArgsConstructor
+@AllArgsConstructor
 public class Transaction {
 
     @JsonProperty("SenderAccountEntry")
@@ -49,4 +54,8 @@ public class Transaction {
     @JsonSerialize(using = IonLocalDateSerializer.class)
     @JsonDeserialize(using = IonLocalDateDeserializer.class)
     private LocalDate transactionTime;
+
+    @JsonProperty("IdempotencyKey")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String idempotencyKey;
 }
@@ -20,11 +20,15 @@ package software.amazon.qldb.doubleentry.models;
 
 import com.amazon.ion.Decimal;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 @Data
 @Builder
+@NoArgsConstructor
+@AllArgsConstructor
 public class TransactionEntry {
 
     @JsonProperty("AccountId")
@@ -35,4 +35,10 @@ public class TransferRequest {
 
     private String notes;
 
+    /**
+     * Optional. A transfer with the key of a transfer which was already
+     * committed is not made again.
+     */
+    private String idempotencyKey;
+
 }
@@ -0,0 +1,427 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.service;
+
+import com.amazon.ion.IonDecimal;
+import com.amazon.ion.IonFloat;
+import com.amazon.ion.IonInt;
+import com.amazon.ion.IonList;
+import com.amazon.ion.IonSequence;
+import com.amazon.ion.IonStruct;
+import com.amazon.ion.IonSystem;
+import com.amazon.ion.IonText;
+import com.amazon.ion.IonValue;
+import com.amazon.ion.IonWriter;
+import com.amazon.ion.system.IonTextWriterBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.qldb.doubleentry.actions.Banking;
+import software.amazon.qldb.doubleentry.helpers.IonHelper;
+import software.amazon.qldb.doubleentry.intake.TransferIntake;
+import software.amazon.qldb.doubleentry.intake.TransferPipeline;
+import software.amazon.qldb.doubleentry.models.TransferRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * Serves {@link Banking} over HTTP, using the HTTP server bundled with the
+ * JDK, so that one long-running process with one warm driver can take
+ * transfers instead of starting a JVM per job. Requests are read as Ion,
+ * which JSON is a subset of, and responses are written as JSON.
+ * </p>
+ * <ul>
+ *     <li> POST /transfers with {senderAccountId, receiverAccountId, currency,
+ *     amount, notes, idempotencyKey}. With a {@link TransferPipeline}, the
+ *     transfer is committed together with the ones of concurrent requests </li>
+ *     <li> POST /transfers/intake with the same body, which hands the transfer
+ *     to the {@link TransferIntake} and answers with its sequence number as
+ *     soon as it is accepted </li>
+ *     <li> POST /transfers/batch with a list of transfers, which are made one
+ *     after the other </li>
+ *     <li> GET /accounts/&lt;AccountId&gt;/balances </li>
+ *     <li> POST /balances/batch with a list of AccountIds </li>
+ * </ul>
+ *
+ * <p>
+ * The server's dispatcher thread never waits for QLDB. It hands every request
+ * to a fixed pool of workers, and only while fewer than maxConcurrentRequests
+ * requests are in flight. Beyond that, requests are answered with 503 right
+ * away instead of being queued. A body longer than maxBodyBytes is answered
+ * with 413 without being read to its end.
+ * </p>
+ *
+ * <p>
+ * {@link #stop(Duration)} first answers new requests with 503, then waits for
+ * the requests in flight to finish, so that no transfer is cut off between its
+ * commit and its response.
+ * </p>
+ */
+@Slf4j
+public class BankingHttpService {
+
+    private static final String CONTENT_TYPE = "application/json";
+
+    private Banking banking;
+
+    private Supplier<TransferIntake> transferIntake;
+
+    private Optional<TransferPipeline> transferPipeline;
+
+    private IonSystem ionSystem;
+
+    private IonHelper ionHelper;
+
+    private final int maxConcurrentRequests;
+
+    private final int maxBatchSize;
+
+    private final int maxBodyBytes;
+
+    private final Semaphore inFlight;
+
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+
+    private HttpServer server;
+
+    private ExecutorService workers;
+
+    public BankingHttpService(@NonNull final Banking banking,
+                              @NonNull final Supplier<TransferIntake> transferIntake,
+                              @NonNull final Optional<TransferPipeline> transferPipeline,
+                              @NonNull final IonSystem ionSystem,
+                              @NonNull final IonHelper ionHelper,
+                              final int maxConcurrentRequests,
+                              final int maxBatchSize,
+                              final int maxBodyBytes) {
+        this.banking = banking;
+        this.transferIntake = transferIntake;
+        this.transferPipeline = transferPipeline;
+        this.ionSystem = ionSystem;
+        this.ionHelper = ionHelper;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBodyBytes = maxBodyBytes;
+        this.inFlight = new Semaphore(maxConcurrentRequests);
+    }
+
+    public synchronized void start(final int port) throws IOException {
+        if (server != null) {
+            return;
+        }
+        final AtomicInteger workerCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(maxConcurrentRequests, runnable -> {
+            final Thread thread = new Thread(runnable, "banking-http-" + workerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        draining.set(false);
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/transfers", bounded(this::transfer));
+        server.createContext("/transfers/batch", bounded(this::transferBatch));
+        server.createContext("/transfers/intake", bounded(this::transferIntake));
+        server.createContext("/accounts/", bounded(this::balances));
+        server.createContext("/balances/batch", bounded(this::balancesBatch));
+        server.start();
+        log.info("Serving transfers on port {} with up to {} requests in flight", port, maxConcurrentRequests);
+    }
+
+    /**
+     * Stop taking requests and wait for the ones in flight to finish.
+     *
+     * @return false if some requests were still in flight when the timeout
+     * expired
+     */
+    public synchronized boolean stop(@NonNull final Duration drainTimeout) throws InterruptedException {
+        if (server == null) {
+            return true;
+        }
+        draining.set(true);
+        log.info("Draining {} requests in flight", maxConcurrentRequests - inFlight.availablePermits());
+        final boolean drained = inFlight.tryAcquire(maxConcurrentRequests, drainTimeout.toMillis(),
+                TimeUnit.MILLISECONDS);
+        if (drained) {
+            inFlight.release(maxConcurrentRequests);
+        } else {
+            log.warn("{} requests were still in flight after {}",
+                    maxConcurrentRequests - inFlight.availablePermits(), drainTimeout);
+        }
+        server.stop(0);
+        workers.shutdownNow();
+        server = null;
+        workers = null;
+        return drained;
+    }
+
+    private HttpHandler bounded(final Endpoint endpoint) {
+        return exchange -> {
+            if (draining.get() || !inFlight.tryAcquire()) {
+                respond(exchange, 503, error("The service is busy or shutting down"));
+                return;
+            }
+            try {
+                workers.execute(() -> {
+                    try {
+                        serve(exchange, endpoint);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            } catch (final RejectedExecutionException e) {
+                inFlight.release();
+                respond(exchange, 503, error("The service is shutting down"));
+            }
+        };
+    }
+
+    private void serve(final HttpExchange exchange, final Endpoint endpoint) {
+        try {
+            final IonValue body;
+            try {
+                body = endpoint.handle(exchange);
+            } catch (final BodyTooLargeException e) {
+                respond(exchange, 413, error(e.getMessage()));
+                return;
+            } catch (final IllegalArgumentException | NullPointerException e) {
+                respond(exchange, 400, error(String.valueOf(e.getMessage())));
+                return;
+            } catch (final UnsupportedOperationException e) {
+                respond(exchange, 405, error(e.getMessage()));
+                return;
+            } catch (final RuntimeException e) {
+                log.error("Request {} {} failed", exchange.getRequestMethod(), exchange.getRequestURI(), e);
+                respond(exchange, 500, error("Internal error"));
+                return;
+            }
+            if (body == null) {
+                respond(exchange, 404, error("Not found"));
+            } else {
+                respond(exchange, 200, body);
+            }
+        } catch (final IOException e) {
+            log.warn("Could not answer {} {}", exchange.getRequestMethod(), exchange.getRequestURI(), e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private IonValue transfer(final HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestURI().getPath().equals("/transfers")) {
+            return null;
+        }
+        final IonStruct request = (IonStruct) readBody(exchange, "POST", IonStruct.class);
+        final TransferRequest transferRequest = toTransferRequest(request);
+        return ionHelper.toIonValue(transferPipeline.isPresent()
+                ? transferPipeline.get().transfer(transferRequest)
+                : banking.transfer(transferRequest));
+    }
+
+    private IonValue transferIntake(final HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestURI().getPath().equals("/transfers/intake")) {
+            return null;
+        }
+        final IonStruct request = (IonStruct) readBody(exchange, "POST", IonStruct.class);
+        final long sequence = transferIntake.get().submit(toTransferRequest(request));
+        final IonStruct response = ionSystem.newEmptyStruct();
+        response.put("sequence").newInt(sequence);
+        return response;
+    }
+
+    private IonValue transferBatch(final HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestURI().getPath().equals("/transfers/batch")) {
+            return null;
+        }
+        final IonSequence requests = (IonSequence) readBody(exchange, "POST", IonSequence.class);
+        checkBatchSize(requests);
+        final IonList responses = ionSystem.newEmptyList();
+        for (final IonValue request : requests) {
+            if (!(request instanceof IonStruct)) {
+                throw new IllegalArgumentException("Every transfer of the batch has to be a struct");
+            }
+        }
+        for (final IonValue request : requests) {
+            IonValue response;
+            try {
+                response = ionHelper.toIonValue(banking.transfer(toTransferRequest((IonStruct) request)));
+            } catch (final IllegalArgumentException | NullPointerException e) {
+                response = error(String.valueOf(e.getMessage()));
+            }
+            responses.add(response);
+        }
+        return responses;
+    }
+
+    private IonValue balances(final HttpExchange exchange) {
+        final String[] path = exchange.getRequestURI().getPath().split("/");
+        // "", "accounts", <AccountId>, "balances"
+        if (path.length != 4 || !path[3].equals("balances") || path[2].isEmpty()) {
+            return null;
+        }
+        if (!exchange.getRequestMethod().equals("GET")) {
+            throw new UnsupportedOperationException("Use GET");
+        }
+        return ionHelper.toIonValue(banking.getBalancesForAccount(path[2]));
+    }
+
+    private IonValue balancesBatch(final HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestURI().getPath().equals("/balances/batch")) {
+            return null;
+        }
+        final IonSequence accountIds = (IonSequence) readBody(exchange, "POST", IonSequence.class);
+        checkBatchSize(accountIds);
+        final List<String> ids = new ArrayList<>(accountIds.size());
+        accountIds.forEach(accountId -> ids.add(textOf(accountId, "account id")));
+        final IonStruct balances = ionSystem.newEmptyStruct();
+        banking.getBalancesForAccounts(ids).forEach((id, accountBalances) ->
+                balances.put(id, ionHelper.toIonValue(accountBalances)));
+        return balances;
+    }
+
+    private IonValue readBody(final HttpExchange exchange,
+                              final String method,
+                              final Class<? extends IonValue> type) throws IOException {
+        if (!exchange.getRequestMethod().equals(method)) {
+            throw new UnsupportedOperationException("Use " + method);
+        }
+        final String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (contentLength != null && Long.parseLong(contentLength) > maxBodyBytes) {
+            throw new BodyTooLargeException(maxBodyBytes);
+        }
+        final byte[] bytes;
+        try (final InputStream requestBody = exchange.getRequestBody()) {
+            // A chunked body has no Content-Length, so read one byte more than allowed to tell
+            bytes = requestBody.readNBytes(maxBodyBytes + 1);
+        }
+        if (bytes.length > maxBodyBytes) {
+            throw new BodyTooLargeException(maxBodyBytes);
+        }
+        final IonValue body;
+        try {
+            body = ionSystem.singleValue(bytes);
+        } catch (final RuntimeException e) {
+            throw new IllegalArgumentException("The body is not a single Ion or JSON value", e);
+        }
+        if (!type.isInstance(body) || body.isNullValue()) {
+            throw new IllegalArgumentException("Unexpected body " + body);
+        }
+        return body;
+    }
+
+    private void checkBatchSize(final IonSequence batch) {
+        if (batch.size() > maxBatchSize) {
+            throw new IllegalArgumentException("A batch can have at most " + maxBatchSize + " entries");
+        }
+    }
+
+    private TransferRequest toTransferRequest(final IonStruct request) {
+        final IonValue amount = request.get("amount");
+        final double value;
+        if (amount instanceof IonInt && !amount.isNullValue()) {
+            value = ((IonInt) amount).bigIntegerValue().doubleValue();
+        } else if (amount instanceof IonDecimal && !amount.isNullValue()) {
+            value = ((IonDecimal) amount).doubleValue();
+        } else if (amount instanceof IonFloat && !amount.isNullValue()) {
+            value = ((IonFloat) amount).doubleValue();
+        } else {
+            throw new IllegalArgumentException("amount has to be a number");
+        }
+        final IonValue notes = request.get("notes");
+        final IonValue idempotencyKey = request.get("idempotencyKey");
+        return TransferRequest.builder()
+                .senderAccountId(textOf(request.get("senderAccountId"), "senderAccountId"))
+                .receiverAccountId(textOf(request.get("receiverAccountId"), "receiverAccountId"))
+                .currency(textOf(request.get("currency"), "currency"))
+                .amount(value)
+                .notes(notes == null || notes.isNullValue() ? null : textOf(notes, "notes"))
+                .idempotencyKey(idempotencyKey == null || idempotencyKey.isNullValue() ? null
+                        : textOf(idempotencyKey, "idempotencyKey"))
+                .build();
+    }
+
+    private static String textOf(final IonValue value, final String name) {
+        if (!(value instanceof IonText) || value.isNullValue()) {
+            throw new IllegalArgumentException(name + " has to be a string");
+        }
+        return ((IonText) value).stringValue();
+    }
+
+    private IonStruct error(final String message) {
+        final IonStruct error = ionSystem.newEmptyStruct();
+        error.put("error").newString(message);
+        return error;
+    }
+
+    private void respond(final HttpExchange exchange, final int status, final IonValue body) throws IOException {
+        final ByteArrayOutputStream json = new ByteArrayOutputStream();
+        try (final IonWriter writer = IonTextWriterBuilder.json().build(json)) {
+            body.writeTo(writer);
+        }
+        json.write('\n');
+        final byte[] bytes = json.toByteArray();
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (final OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(bytes);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Endpoint {
+
+        /**
+         * @return the body of the response, or null if there is nothing at
+         * the requested path
+         */
+        IonValue handle(HttpExchange exchange) throws IOException;
+    }
+
+    /**
+     * The body of a request is longer than the service reads
+     */
+    private static final class BodyTooLargeException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private BodyTooLargeException(final int maxBodyBytes) {
+            super("The body can have at most " + maxBodyBytes + " bytes");
+        }
+    }
+}
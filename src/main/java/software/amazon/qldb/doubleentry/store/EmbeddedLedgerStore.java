@@ -0,0 +1,385 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.store;
+
+import com.amazon.ion.Decimal;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.qldb.doubleentry.models.Balance;
+import software.amazon.qldb.doubleentry.models.TransferRequest;
+import software.amazon.qldb.doubleentry.models.TransferResponse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>
+ * A {@link LedgerStore} which runs in the process, for edge and simulation
+ * deployments without QLDB. Every account opened and every transfer posted
+ * is appended to a {@link MappedJournal}, and the current balances are kept
+ * in memory, indexed by AccountId. Opening the store replays the journal to
+ * rebuild the balances.
+ * </p>
+ *
+ * <p>
+ * A transfer locks its two accounts, always in the order of their
+ * AccountIds so that two transfers cannot wait for each other. With both
+ * locks held it reads the balances, runs the check, appends the posting to
+ * the journal and updates the balances. Transfers between other accounts
+ * run at the same time, and only wait for each other for the short append to
+ * the journal. A posting is appended before the balances change, so the
+ * journal never misses a change which a reader saw.
+ * </p>
+ *
+ * <p>
+ * Unlike QLDB, the store does not keep the history of the balances, and it
+ * has no holds. It keeps no Transactions documents either: the journal
+ * itself is the record of the transfers.
+ * </p>
+ */
+@Slf4j
+public class EmbeddedLedgerStore implements LedgerStore, Closeable {
+
+    private static final byte OPEN_ACCOUNT = 1;
+
+    private static final byte POSTING = 2;
+
+    /**
+     * A posting followed by its idempotency key. Postings without a key are
+     * still written as {@link #POSTING}, the only kind of posting in
+     * journals written before the keys were kept.
+     */
+    private static final byte KEYED_POSTING = 3;
+
+    private final MappedJournal journal;
+
+    private final ConcurrentMap<String, AccountEntry> accounts = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, byte[]> encodedCurrencies = new ConcurrentHashMap<>();
+
+    /**
+     * The idempotency keys of the transfers posted, and of the transfers
+     * being posted. A transfer reserves its key before the check, since a
+     * transfer with the same key may hold the locks of other accounts, and
+     * gives it back if it is declined.
+     */
+    private final Set<String> idempotencyKeys = ConcurrentHashMap.newKeySet();
+
+    public EmbeddedLedgerStore(@NonNull final MappedJournal journal) {
+        this.journal = journal;
+        final long records = journal.replay(this::replay);
+        log.info("Replayed {} journal records into {} accounts", records, accounts.size());
+    }
+
+    /**
+     * Open an account with the given balances.
+     *
+     * @return false if the account is already open, in which case it is left as it is
+     */
+    public boolean openAccount(@NonNull final String accountId, @NonNull final List<Balance> balances) {
+        final AccountEntry entry = new AccountEntry(accountId);
+        // Nobody can post to the account before it is journaled, since posting takes the same lock
+        synchronized (entry) {
+            if (accounts.putIfAbsent(accountId, entry) != null) {
+                return false;
+            }
+            int length = Byte.BYTES + encodedLength(entry.encodedId) + Integer.BYTES;
+            for (final Balance balance : balances) {
+                length += encodedLength(encodeCurrency(balance.getCurrency()))
+                        + encodedLength(balance.getCurrencyBalance());
+            }
+            journal.append(length, buffer -> {
+                buffer.put(OPEN_ACCOUNT);
+                putBytes(buffer, entry.encodedId);
+                buffer.putInt(balances.size());
+                for (final Balance balance : balances) {
+                    putBytes(buffer, encodeCurrency(balance.getCurrency()));
+                    putDecimal(buffer, balance.getCurrencyBalance());
+                }
+            });
+            balances.forEach(balance -> entry.balances.put(balance.getCurrency(),
+                    Decimal.valueOf(balance.getCurrencyBalance())));
+        }
+        return true;
+    }
+
+    @Override
+    public List<Balance> getBalances(@NonNull final String accountId) {
+        final AccountEntry entry = accounts.get(accountId);
+        if (entry == null) {
+            return new ArrayList<>();
+        }
+        synchronized (entry) {
+            return entry.balancesIn(null);
+        }
+    }
+
+    @Override
+    public Map<String, List<Balance>> getBalances(@NonNull final Collection<String> accountIds) {
+        final Map<String, List<Balance>> balances = new LinkedHashMap<>();
+        for (final String accountId : accountIds) {
+            final AccountEntry entry = accounts.get(accountId);
+            if (entry != null) {
+                synchronized (entry) {
+                    balances.put(accountId, entry.balancesIn(null));
+                }
+            }
+        }
+        return balances;
+    }
+
+    @Override
+    public List<String> getAccountIds() {
+        final List<String> accountIds = new ArrayList<>(accounts.keySet());
+        Collections.sort(accountIds);
+        return accountIds;
+    }
+
+    @Override
+    public TransferResponse transfer(@NonNull final TransferRequest transferRequest,
+                                     @NonNull final TransferCheck check) {
+        final AccountEntry sender = accounts.get(transferRequest.getSenderAccountId());
+        final AccountEntry receiver = accounts.get(transferRequest.getReceiverAccountId());
+        if (sender == null || receiver == null) {
+            // Let the check see the missing account, so that the caller can tell why the transfer was refused
+            check.accepts(balancesIn(sender, transferRequest.getCurrency()),
+                    balancesIn(receiver, transferRequest.getCurrency()));
+            return declined();
+        }
+        final boolean senderFirst = sender.accountId.compareTo(receiver.accountId) < 0;
+        synchronized (senderFirst ? sender : receiver) {
+            synchronized (senderFirst ? receiver : sender) {
+                return post(transferRequest, sender, receiver, check);
+            }
+        }
+    }
+
+    /**
+     * Write the journal to disk and close it
+     */
+    @Override
+    public void close() throws IOException {
+        journal.close();
+    }
+
+    private TransferResponse post(final TransferRequest transferRequest,
+                                  final AccountEntry sender,
+                                  final AccountEntry receiver,
+                                  final TransferCheck check) {
+        final String idempotencyKey = transferRequest.getIdempotencyKey();
+        if (idempotencyKey == null) {
+            return postChecked(transferRequest, sender, receiver, check);
+        }
+        if (!idempotencyKeys.add(idempotencyKey)) {
+            return TransferResponse.builder()
+                    .transferSuccessful(true)
+                    .updatedSenderBalances(new ArrayList<>())
+                    .updatedReceiverBalances(new ArrayList<>())
+                    .build();
+        }
+        boolean posted = false;
+        try {
+            final TransferResponse response = postChecked(transferRequest, sender, receiver, check);
+            posted = response.getTransferSuccessful();
+            return response;
+        } finally {
+            if (!posted) {
+                idempotencyKeys.remove(idempotencyKey);
+            }
+        }
+    }
+
+    private TransferResponse postChecked(final TransferRequest transferRequest,
+                                         final AccountEntry sender,
+                                         final AccountEntry receiver,
+                                         final TransferCheck check) {
+        final String currency = transferRequest.getCurrency();
+        final String idempotencyKey = transferRequest.getIdempotencyKey();
+        final List<Balance> senderBalances = sender.balancesIn(currency);
+        final List<Balance> receiverBalances = receiver.balancesIn(currency);
+        if (!check.accepts(senderBalances, receiverBalances)
+                || senderBalances.isEmpty() || receiverBalances.isEmpty()) {
+            return declined();
+        }
+
+        final Decimal amount = Decimal.valueOf(transferRequest.getAmount());
+        final byte[] encodedCurrency = encodeCurrency(currency);
+        final byte[] encodedNotes = transferRequest.getNotes() == null ? new byte[0]
+                : transferRequest.getNotes().getBytes(StandardCharsets.UTF_8);
+        final byte[] encodedKey = idempotencyKey == null ? null : idempotencyKey.getBytes(StandardCharsets.UTF_8);
+        final int length = Byte.BYTES + Long.BYTES + encodedLength(sender.encodedId)
+                + encodedLength(receiver.encodedId) + encodedLength(encodedCurrency) + encodedLength(amount)
+                + encodedLength(encodedNotes) + (encodedKey == null ? 0 : encodedLength(encodedKey));
+        final long postedAt = Instant.now().toEpochMilli();
+        journal.append(length, buffer -> {
+            buffer.put(encodedKey == null ? POSTING : KEYED_POSTING);
+            buffer.putLong(postedAt);
+            putBytes(buffer, sender.encodedId);
+            putBytes(buffer, receiver.encodedId);
+            putBytes(buffer, encodedCurrency);
+            putDecimal(buffer, amount);
+            putBytes(buffer, encodedNotes);
+            if (encodedKey != null) {
+                putBytes(buffer, encodedKey);
+            }
+        });
+        sender.add(currency, amount.negate());
+        receiver.add(currency, amount);
+
+        return TransferResponse.builder()
+                .transferSuccessful(true)
+                .updatedSenderBalances(sender.balancesIn(currency))
+                .updatedReceiverBalances(receiver.balancesIn(currency))
+                .build();
+    }
+
+    private static TransferResponse declined() {
+        return TransferResponse.builder()
+                .transferSuccessful(false)
+                .build();
+    }
+
+    private static List<Balance> balancesIn(final AccountEntry entry, final String currency) {
+        if (entry == null) {
+            return new ArrayList<>();
+        }
+        synchronized (entry) {
+            return entry.balancesIn(currency);
+        }
+    }
+
+    /**
+     * Apply a record read back from the journal. Postings are applied
+     * without a check, since they were checked when they were appended.
+     */
+    private void replay(final ByteBuffer record) {
+        final byte type = record.get();
+        if (type == OPEN_ACCOUNT) {
+            final AccountEntry entry = new AccountEntry(getString(record));
+            final int count = record.getInt();
+            for (int i = 0; i < count; i++) {
+                entry.balances.put(getString(record), getDecimal(record));
+            }
+            accounts.put(entry.accountId, entry);
+        } else if (type == POSTING || type == KEYED_POSTING) {
+            record.getLong();
+            final AccountEntry sender = accounts.get(getString(record));
+            final AccountEntry receiver = accounts.get(getString(record));
+            final String currency = getString(record);
+            final Decimal amount = getDecimal(record);
+            getBytes(record);
+            if (sender == null || receiver == null) {
+                throw new IllegalStateException("The journal has a posting for an account which was never opened");
+            }
+            sender.add(currency, amount.negate());
+            receiver.add(currency, amount);
+            if (type == KEYED_POSTING) {
+                idempotencyKeys.add(getString(record));
+            }
+        } else {
+            throw new IllegalStateException("Unknown journal record type " + type);
+        }
+    }
+
+    private byte[] encodeCurrency(final String currency) {
+        return encodedCurrencies.computeIfAbsent(currency, c -> c.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static int encodedLength(final byte[] bytes) {
+        return Short.BYTES + bytes.length;
+    }
+
+    private static int encodedLength(final BigDecimal decimal) {
+        return Integer.BYTES + encodedLength(decimal.unscaledValue().toByteArray());
+    }
+
+    private static void putBytes(final ByteBuffer buffer, final byte[] bytes) {
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static void putDecimal(final ByteBuffer buffer, final BigDecimal decimal) {
+        buffer.putInt(decimal.scale());
+        putBytes(buffer, decimal.unscaledValue().toByteArray());
+    }
+
+    private static byte[] getBytes(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static String getString(final ByteBuffer buffer) {
+        return new String(getBytes(buffer), StandardCharsets.UTF_8);
+    }
+
+    private static Decimal getDecimal(final ByteBuffer buffer) {
+        final int scale = buffer.getInt();
+        return Decimal.valueOf(new BigDecimal(new BigInteger(getBytes(buffer)), scale));
+    }
+
+    /**
+     * The current balances of an account, guarded by the lock of the entry
+     */
+    private static final class AccountEntry {
+
+        private final String accountId;
+
+        private final byte[] encodedId;
+
+        private final Map<String, Decimal> balances = new LinkedHashMap<>();
+
+        private AccountEntry(final String accountId) {
+            this.accountId = accountId;
+            this.encodedId = accountId.getBytes(StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @param currency The only currency to return, or null for all of them
+         */
+        private List<Balance> balancesIn(final String currency) {
+            final List<Balance> result = new ArrayList<>();
+            balances.forEach((balanceCurrency, balance) -> {
+                if (currency == null || currency.equals(balanceCurrency)) {
+                    result.add(Balance.builder().currency(balanceCurrency).currencyBalance(balance).build());
+                }
+            });
+            return result;
+        }
+
+        private void add(final String currency, final BigDecimal amount) {
+            balances.put(currency, Decimal.valueOf(balances.get(currency).add(amount)));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.store;
+
+import lombok.NonNull;
+import org.apache.commons.lang3.Validate;
+import software.amazon.qldb.doubleentry.models.Balance;
+import software.amazon.qldb.doubleentry.models.TransferRequest;
+import software.amazon.qldb.doubleentry.models.TransferResponse;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * Where Banking keeps the balances of the accounts and records transfers.
+ * The default store is QLDB, reached through the TransactionsHandler. The
+ * {@link EmbeddedLedgerStore} keeps the ledger in a local file instead, for
+ * deployments without QLDB.
+ * </p>
+ *
+ * <p>
+ * The business rules of a transfer stay with the caller: a store reads the
+ * balances of both accounts, asks the {@link TransferCheck} whether the
+ * transfer may go ahead, and writes the new balances, all atomically. A store
+ * may ask more than once for the same transfer, like QLDB does when it
+ * retries a transaction after an OCC conflict.
+ * </p>
+ */
+public interface LedgerStore {
+
+    /**
+     * @return The balances of the account, or an empty list if it does not exist
+     */
+    List<Balance> getBalances(@NonNull String accountId);
+
+    /**
+     * @return The balances by AccountId. Accounts which do not exist are left out.
+     */
+    Map<String, List<Balance>> getBalances(@NonNull Collection<String> accountIds);
+
+    List<String> getAccountIds();
+
+    /**
+     * Move the amount of the request from the sender to the receiver account,
+     * if the check accepts the balances the two accounts have in the currency
+     * of the request.
+     *
+     * <p>
+     * If the request has an idempotency key, and a transfer with the same
+     * key was already made, nothing is moved and the check is not asked.
+     * The response is successful, with empty balances.
+     * </p>
+     *
+     * @return A successful response with the updated balances, or an
+     * unsuccessful one if the check refused the transfer
+     */
+    TransferResponse transfer(@NonNull TransferRequest transferRequest, @NonNull TransferCheck check);
+
+    /**
+     * Make the transfers one after the other, each with its own check, as
+     * {@link #transfer(TransferRequest, TransferCheck)} does. A check sees
+     * the balances left by the transfers before it. A store may commit all
+     * of them at once, in which case they all fail if the commit fails.
+     *
+     * @return The responses, in the order of the requests
+     */
+    default List<TransferResponse> transferAll(@NonNull final List<TransferRequest> transferRequests,
+                                               @NonNull final List<TransferCheck> checks) {
+        Validate.isTrue(transferRequests.size() == checks.size(), "Every transfer needs its own check");
+        final List<TransferResponse> responses = new ArrayList<>(transferRequests.size());
+        for (int i = 0; i < transferRequests.size(); i++) {
+            responses.add(transfer(transferRequests.get(i), checks.get(i)));
+        }
+        return responses;
+    }
+
+    @FunctionalInterface
+    interface TransferCheck {
+
+        /**
+         * @param senderBalances The balance of the sender in the currency of the transfer, if it has one
+         * @param receiverBalances The balance of the receiver in the currency of the transfer, if it has one
+         */
+        boolean accepts(List<Balance> senderBalances, List<Balance> receiverBalances);
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.store;
+
+import lombok.NonNull;
+import org.apache.commons.lang3.Validate;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * <p>
+ * An append-only file of records, written through memory-mapped segments of
+ * a fixed size. Every record is its length followed by its bytes, and never
+ * spans two segments: a record which does not fit in what is left of a
+ * segment goes to the start of the next one.
+ * </p>
+ *
+ * <p>
+ * The bytes of a record are written before its length, so a record whose
+ * length can be read was written completely. A record is in the page cache
+ * of the OS as soon as {@link #append(int, Consumer)} returns, and survives
+ * a crash of the process. It is only on disk after {@link #force()}.
+ * </p>
+ */
+public class MappedJournal implements Closeable {
+
+    private static final int MAGIC = 0x4445_4a31;
+
+    private static final int FILE_HEADER_BYTES = 2 * Integer.BYTES;
+
+    private static final int LENGTH_BYTES = Integer.BYTES;
+
+    /**
+     * Written where a segment ends early, because the next record did not fit
+     */
+    private static final int END_OF_SEGMENT = -1;
+
+    private final FileChannel channel;
+
+    private final int segmentBytes;
+
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+    private MappedByteBuffer current;
+
+    private long records;
+
+    private boolean replayed;
+
+    /**
+     * Open the journal at the given path, creating it if it does not exist.
+     * An existing journal keeps the segment size it was created with.
+     */
+    public MappedJournal(@NonNull final Path path, final int segmentBytes) throws IOException {
+        Validate.isTrue(segmentBytes > FILE_HEADER_BYTES + LENGTH_BYTES);
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        if (channel.size() == 0) {
+            this.segmentBytes = segmentBytes;
+            this.current = map(0);
+            current.putInt(MAGIC).putInt(segmentBytes);
+        } else {
+            final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < FILE_HEADER_BYTES || header.getInt() != MAGIC) {
+                channel.close();
+                throw new IOException(path + " is not a journal");
+            }
+            this.segmentBytes = header.getInt();
+            final long existing = (channel.size() + this.segmentBytes - 1) / this.segmentBytes;
+            for (int i = 0; i < existing; i++) {
+                this.current = map(i);
+            }
+            segments.get(0).position(FILE_HEADER_BYTES);
+        }
+    }
+
+    /**
+     * Hand every record in the journal, in the order it was appended, to the
+     * reader. The reader gets a read-only view of the bytes of the record.
+     * Appending continues after the last record.
+     *
+     * <p>
+     * This has to be called once, before the first append.
+     * </p>
+     *
+     * @return The number of records read
+     */
+    public synchronized long replay(@NonNull final Consumer<ByteBuffer> reader) {
+        Validate.validState(!replayed, "The journal was already replayed");
+        replayed = true;
+        for (int i = 0; i < segments.size(); i++) {
+            final MappedByteBuffer segment = segments.get(i);
+            while (segment.remaining() >= LENGTH_BYTES) {
+                final int length = segment.getInt(segment.position());
+                if (length == 0) {
+                    current = segment;
+                    return records;
+                }
+                if (length == END_OF_SEGMENT) {
+                    break;
+                }
+                Validate.validState(length > 0 && length <= segment.remaining() - LENGTH_BYTES,
+                        "Corrupt record in segment %s at %s", i, segment.position());
+                final ByteBuffer record = segment.duplicate();
+                record.position(segment.position() + LENGTH_BYTES).limit(segment.position() + LENGTH_BYTES + length);
+                reader.accept(record.slice().asReadOnlyBuffer());
+                segment.position(segment.position() + LENGTH_BYTES + length);
+                records++;
+            }
+            segment.position(segment.limit());
+        }
+        return records;
+    }
+
+    /**
+     * Append a record of the given length. The writer puts exactly that many
+     * bytes into the buffer it is handed, starting at its position. If the
+     * writer fails, or puts another number of bytes, nothing is appended and
+     * the next record goes where this one would have.
+     */
+    public synchronized void append(final int length, @NonNull final Consumer<ByteBuffer> writer) {
+        Validate.validState(replayed, "The journal has to be replayed before appending to it");
+        Validate.isTrue(length > 0 && length <= segmentBytes - FILE_HEADER_BYTES - LENGTH_BYTES,
+                "Records must fit in a segment");
+        if (current.remaining() < LENGTH_BYTES + length) {
+            if (current.remaining() >= LENGTH_BYTES) {
+                current.putInt(current.position(), END_OF_SEGMENT);
+            }
+            try {
+                current = map(segments.size());
+            } catch (final IOException e) {
+                throw new UncheckedIOException("Could not grow the journal", e);
+            }
+        }
+        final int start = current.position();
+        current.position(start + LENGTH_BYTES);
+        try {
+            writer.accept(current);
+            Validate.validState(current.position() == start + LENGTH_BYTES + length,
+                    "Wrote %s bytes for a record of %s", current.position() - start - LENGTH_BYTES, length);
+        } catch (final RuntimeException | Error e) {
+            discard(start);
+            throw e;
+        }
+        current.putInt(start, length);
+        records++;
+    }
+
+    /**
+     * Zero whatever a failed writer put into the current segment from the
+     * given position on, and append from there again
+     */
+    private void discard(final int start) {
+        final int end = Math.max(start, Math.min(current.position(), current.capacity()));
+        current.limit(current.capacity());
+        for (int i = start; i < end; i++) {
+            current.put(i, (byte) 0);
+        }
+        current.position(start);
+    }
+
+    /**
+     * Whether a record of the given length goes into the current segment,
+     * rather than starting a new one
+     */
+    public synchronized boolean fits(final int length) {
+        return current.remaining() >= LENGTH_BYTES + length;
+    }
+
+    public synchronized long getRecords() {
+        return records;
+    }
+
+    /**
+     * Write the records appended so far to disk
+     */
+    public synchronized void force() {
+        segments.forEach(MappedByteBuffer::force);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private MappedByteBuffer map(final int segment) throws IOException {
+        final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE,
+                (long) segment * segmentBytes, segmentBytes);
+        segments.add(buffer);
+        return buffer;
+    }
+}
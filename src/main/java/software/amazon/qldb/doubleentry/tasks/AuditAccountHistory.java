@@ -0,0 +1,67 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.tasks;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.qldb.doubleentry.Constants;
+import software.amazon.qldb.doubleentry.actions.HistoryAudit;
+import software.amazon.qldb.doubleentry.dagger.components.BankingComponent;
+import software.amazon.qldb.doubleentry.dagger.components.DaggerBankingComponent;
+import software.amazon.qldb.doubleentry.helpers.StartupTime;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>
+ * Write the full revision history of the given Accounts documents for
+ * auditors, using {@link HistoryAudit}. Takes the output directory followed
+ * by the document ids of the accounts. Running it again with the same
+ * directory resumes from the last page written.
+ * </p>
+ */
+@Slf4j
+public class AuditAccountHistory {
+
+    private HistoryAudit historyAudit;
+
+    public AuditAccountHistory(@NonNull final HistoryAudit historyAudit) {
+        this.historyAudit = historyAudit;
+    }
+
+    public void run(final String... args) throws IOException {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Usage: <output directory> <document id> [<document id> ...]");
+        }
+        final List<String> documentIds = Arrays.asList(args).subList(1, args.length);
+        final long revisions = historyAudit.audit(Constants.ACCOUNTS_TABLE_NAME, documentIds, Paths.get(args[0]));
+        log.info("Wrote {} revisions of {} accounts to {}", revisions, documentIds.size(), args[0]);
+    }
+
+    public static void main(String... args) throws IOException {
+        final BankingComponent bankingComponent = DaggerBankingComponent.builder().build();
+        final AuditAccountHistory auditAccountHistory = bankingComponent.providesAuditAccountHistory();
+        StartupTime.ready(AuditAccountHistory.class);
+        auditAccountHistory.run(args);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.tasks;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.qldb.doubleentry.Constants;
+import software.amazon.qldb.doubleentry.dagger.components.DaggerSetupComponent;
+import software.amazon.qldb.doubleentry.dagger.components.SetupComponent;
+import software.amazon.qldb.doubleentry.helpers.StartupTime;
+import software.amazon.qldb.doubleentry.helpers.StepTimings;
+
+/**
+ * <p>
+ * Bring a ledger from nothing, or from any partial setup, to the state the
+ * other tasks expect: {@link SetupLedger} creates the ledger if it does not
+ * exist and waits for it to be active, then {@link SetupTables} creates the
+ * missing tables and indexes and loads the missing sample data, with all
+ * tables set up in parallel.
+ * </p>
+ *
+ * <p>
+ * Running it again is safe and only checks that everything is there. The
+ * time taken by every phase and step is logged at the end. With
+ * -Dledger=emulator there is no ledger to create, and only the tables are
+ * set up.
+ * </p>
+ */
+@Slf4j
+public class Bootstrap {
+
+    private SetupLedger setupLedger;
+
+    private SetupTables setupTables;
+
+    public Bootstrap(@NonNull final SetupLedger setupLedger,
+                     @NonNull final SetupTables setupTables) {
+        this.setupLedger = setupLedger;
+        this.setupTables = setupTables;
+    }
+
+    public boolean run() {
+        final long start = System.nanoTime();
+        final StepTimings phases = new StepTimings();
+        if (!Constants.LEDGER_EMULATOR.equals(System.getProperty(Constants.LEDGER_PROPERTY))) {
+            if (!phases.time("ledger", () -> setupLedger.createLedgerAndWaitForActivation(Constants.LEDGER_NAME))) {
+                log.error("Ledger {} is not active, the tables can not be set up", Constants.LEDGER_NAME);
+                return false;
+            }
+        }
+        final boolean tablesReady = phases.time("tables", () -> setupTables.run(new StepTimings()));
+        phases.record("total", System.nanoTime() - start);
+        phases.report("Bootstrap");
+        return tablesReady;
+    }
+
+    public static void main(String... args) {
+        final SetupComponent setupComponent = DaggerSetupComponent.builder().build();
+        final Bootstrap bootstrap = setupComponent.providesBootstrap();
+        StartupTime.ready(Bootstrap.class);
+        if (!bootstrap.run()) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.tasks;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.qldb.doubleentry.Constants;
+import software.amazon.qldb.doubleentry.dagger.components.BankingComponent;
+import software.amazon.qldb.doubleentry.dagger.components.DaggerBankingComponent;
+import software.amazon.qldb.doubleentry.helpers.AccountDictionary;
+import software.amazon.qldb.doubleentry.helpers.BalanceTable;
+import software.amazon.qldb.doubleentry.helpers.StartupTime;
+import software.amazon.qldb.doubleentry.journal.JournalEvent;
+import software.amazon.qldb.doubleentry.journal.JournalEventListener;
+import software.amazon.qldb.doubleentry.journal.JournalExportReader;
+import software.amazon.qldb.doubleentry.models.Account;
+import software.amazon.qldb.doubleentry.models.AccountBalance;
+import software.amazon.qldb.doubleentry.models.Transaction;
+import software.amazon.qldb.doubleentry.models.TransactionEntry;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Offline analytics over a journal export of the ledger, read with the
+ * {@link JournalExportReader}. Takes the directory the export was copied to,
+ * and reports the number of account revisions and the number and volume of
+ * transfers per currency and per day.
+ * </p>
+ *
+ * <p>
+ * The latest balances of the accounts are loaded into a {@link BalanceTable},
+ * and the total balance per currency is reported as well. The accounts are
+ * indexed by an {@link AccountDictionary}, which is loaded from and saved to
+ * the file given after the directory, if there is one.
+ * </p>
+ */
+@Slf4j
+public class JournalAnalytics implements JournalEventListener {
+
+    private JournalExportReader journalExportReader;
+
+    private long accountsCreated;
+
+    private long accountRevisions;
+
+    private final Map<String, BigDecimal> volumePerCurrency = new TreeMap<>();
+
+    private final Map<String, Long> transfersPerCurrency = new TreeMap<>();
+
+    private final Map<LocalDate, Long> transfersPerDay = new TreeMap<>();
+
+    private AccountDictionary accountDictionary;
+
+    private final BalanceTable balances = new BalanceTable(Constants.BALANCE_TABLE_MAX_ACCOUNTS);
+
+    private JournalEventListener balancesLoader;
+
+    public JournalAnalytics(@NonNull final JournalExportReader journalExportReader) {
+        this.journalExportReader = journalExportReader;
+    }
+
+    public void run(final String... args) throws IOException {
+        if (args.length < 1) {
+            throw new IllegalArgumentException("Usage: <journal export directory> [account dictionary file]");
+        }
+        final Path dictionaryFile = args.length > 1 ? Paths.get(args[1]) : null;
+        accountDictionary = dictionaryFile != null && Files.exists(dictionaryFile)
+                ? AccountDictionary.load(dictionaryFile, Constants.BALANCE_TABLE_MAX_ACCOUNTS)
+                : new AccountDictionary(Constants.BALANCE_TABLE_MAX_ACCOUNTS);
+        balancesLoader = balances.exportLoader(accountDictionary::indexOf);
+
+        final long start = System.nanoTime();
+        final long events = journalExportReader.read(Paths.get(args[0]), this);
+        log.info("Read {} revisions in {} ms", events, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        report();
+        if (dictionaryFile != null) {
+            accountDictionary.save(dictionaryFile);
+        }
+    }
+
+    @Override
+    public void onAccount(final JournalEvent<Account> event) {
+        accountRevisions++;
+        if (event.getVersion() == 0) {
+            accountsCreated++;
+        }
+        balancesLoader.onAccount(event);
+    }
+
+    @Override
+    public void onAccountBalance(final JournalEvent<AccountBalance> event) {
+        balancesLoader.onAccountBalance(event);
+    }
+
+    @Override
+    public void onTransaction(final JournalEvent<Transaction> event) {
+        final Transaction transaction = event.getDocument();
+        // Transactions are only ever inserted, so any later revision is not a transfer
+        if (event.getVersion() != 0 || transaction == null || transaction.getSenderAccountEntry() == null) {
+            return;
+        }
+        final TransactionEntry entry = transaction.getSenderAccountEntry();
+        volumePerCurrency.merge(entry.getCurrency(), entry.getAmount(), BigDecimal::add);
+        transfersPerCurrency.merge(entry.getCurrency(), 1L, Long::sum);
+        if (transaction.getTransactionTime() != null) {
+            transfersPerDay.merge(transaction.getTransactionTime(), 1L, Long::sum);
+        }
+    }
+
+    private void report() {
+        log.info("{} accounts created, {} account revisions", accountsCreated, accountRevisions);
+        volumePerCurrency.forEach((currency, volume) -> log.info("{}: {} transfers, volume {}",
+                currency, transfersPerCurrency.get(currency), volume));
+        transfersPerDay.forEach((day, transfers) -> log.info("{}: {} transfers", day, transfers));
+        for (final String currency : Constants.SUPPORTED_CURRENCIES) {
+            final long total = balances.sum(BalanceTable.currencyOrdinal(currency));
+            log.info("{}: total balance {} over {} accounts", currency, BalanceTable.toDecimal(total),
+                    accountDictionary.size());
+        }
+    }
+
+    public static void main(String... args) throws IOException {
+        final BankingComponent bankingComponent = DaggerBankingComponent.builder().build();
+        final JournalAnalytics journalAnalytics = bankingComponent.providesJournalAnalytics();
+        StartupTime.ready(JournalAnalytics.class);
+        journalAnalytics.run(args);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.tasks;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.qldb.doubleentry.Constants;
+import software.amazon.qldb.doubleentry.actions.Banking;
+import software.amazon.qldb.doubleentry.dagger.components.BankingComponent;
+import software.amazon.qldb.doubleentry.dagger.components.DaggerBankingComponent;
+import software.amazon.qldb.doubleentry.helpers.StartupTime;
+import software.amazon.qldb.doubleentry.metrics.MetricsLogReporter;
+import software.amazon.qldb.doubleentry.models.Balance;
+import software.amazon.qldb.doubleentry.models.TransferRequest;
+import software.amazon.qldb.doubleentry.models.TransferResponse;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * A load test which keeps a number of threads transferring small USD amounts
+ * between random pairs of the sample accounts for a while. With only four
+ * accounts, most transfers contend with each other, so this measures how
+ * throughput and latency hold up under OCC conflicts.
+ * </p>
+ *
+ * <p>
+ * When started with -Dledger=emulator, it runs against the in-memory ledger
+ * emulator and sets up the tables and sample data itself, so it needs
+ * neither a ledger nor the network. At the end, it checks that the total
+ * USD balance of the accounts did not change and logs the metrics.
+ * </p>
+ *
+ * <p>
+ * Arguments: [threads] [seconds], 8 threads for 30 seconds by default.
+ * </p>
+ */
+@Slf4j
+public class LoadTest {
+
+    private static final List<String> ACCOUNT_IDS = Arrays.asList("A001", "A002", "A003", "A004");
+
+    private static final String CURRENCY = "USD";
+
+    private Banking banking;
+
+    private SetupTables setupTables;
+
+    private MetricsLogReporter metricsLogReporter;
+
+    public LoadTest(@NonNull final Banking banking,
+                    @NonNull final SetupTables setupTables,
+                    @NonNull final MetricsLogReporter metricsLogReporter) {
+        this.banking = banking;
+        this.setupTables = setupTables;
+        this.metricsLogReporter = metricsLogReporter;
+    }
+
+    public void run(final int threads, final Duration duration) throws InterruptedException {
+        if (Constants.LEDGER_EMULATOR.equals(System.getProperty(Constants.LEDGER_PROPERTY))) {
+            setupTables.run();
+        }
+        final BigDecimal totalBefore = getTotalBalance();
+
+        final LongAdder succeeded = new LongAdder();
+        final LongAdder declined = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final long start = System.nanoTime();
+        final long deadline = start + duration.toNanos();
+
+        final ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            executorService.submit(() -> {
+                while (System.nanoTime() < deadline) {
+                    try {
+                        final TransferResponse response = banking.transfer(randomTransfer());
+                        (response.getTransferSuccessful() ? succeeded : declined).increment();
+                    } catch (final RuntimeException e) {
+                        log.debug("Transfer failed", e);
+                        failed.increment();
+                    }
+                }
+            });
+        }
+        executorService.shutdown();
+        executorService.awaitTermination(duration.toMillis() + TimeUnit.MINUTES.toMillis(1), TimeUnit.MILLISECONDS);
+
+        final double seconds = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+        final long transfers = succeeded.sum() + declined.sum() + failed.sum();
+        log.info("{} transfers by {} threads in {} seconds ({} per second): {} succeeded, {} declined, {} failed",
+                transfers, threads, String.format("%.1f", seconds), String.format("%.1f", transfers / seconds),
+                succeeded.sum(), declined.sum(), failed.sum());
+
+        final BigDecimal totalAfter = getTotalBalance();
+        if (totalBefore.compareTo(totalAfter) == 0) {
+            log.info("The total {} balance of the accounts is unchanged at {}", CURRENCY, totalAfter);
+        } else {
+            log.error("The total {} balance of the accounts changed from {} to {}", CURRENCY, totalBefore, totalAfter);
+        }
+        metricsLogReporter.report();
+    }
+
+    private TransferRequest randomTransfer() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final int sender = random.nextInt(ACCOUNT_IDS.size());
+        final int receiver = (sender + 1 + random.nextInt(ACCOUNT_IDS.size() - 1)) % ACCOUNT_IDS.size();
+        return TransferRequest.builder()
+                .senderAccountId(ACCOUNT_IDS.get(sender))
+                .receiverAccountId(ACCOUNT_IDS.get(receiver))
+                .currency(CURRENCY)
+                .amount(1 + random.nextInt(10))
+                .notes("Load test")
+                .build();
+    }
+
+    private BigDecimal getTotalBalance() {
+        BigDecimal total = BigDecimal.ZERO;
+        for (final String accountId : ACCOUNT_IDS) {
+            for (final Balance balance : banking.getBalancesForAccount(accountId)) {
+                if (CURRENCY.equals(balance.getCurrency())) {
+                    total = total.add(balance.getCurrencyBalance());
+                }
+            }
+        }
+        return total;
+    }
+
+    public static void main(String... args) {
+        final BankingComponent bankingComponent = DaggerBankingComponent.builder().build();
+        final int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        final Duration duration = Duration.ofSeconds(args.length > 1 ? Long.parseLong(args[1]) : 30);
+        final LoadTest loadTest = bankingComponent.providesLoadTest();
+        StartupTime.ready(LoadTest.class);
+        try {
+            loadTest.run(threads, duration);
+        } catch (final InterruptedException e) {
+            log.info("Interrupted while running the load test", e);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.tasks;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.qldb.doubleentry.Constants;
+import software.amazon.qldb.doubleentry.actions.tablesmanagement.MigrateBalances;
+import software.amazon.qldb.doubleentry.dagger.components.DaggerSetupComponent;
+import software.amazon.qldb.doubleentry.dagger.components.SetupComponent;
+import software.amazon.qldb.doubleentry.helpers.StartupTime;
+
+/**
+ * <p>
+ * Migrate an existing ledger from balances embedded in the Accounts
+ * documents to one AccountBalances document per account and currency, using
+ * {@link MigrateBalances}. Stop the transfers before running it, and start
+ * the application with -Dbalance.layout=per_currency afterwards.
+ * </p>
+ *
+ * <p>
+ * The emulator starts empty, so with -Dledger=emulator the tables are set
+ * up first.
+ * </p>
+ */
+@Slf4j
+public class MigrateToPerCurrencyBalances {
+
+    private SetupTables setupTables;
+
+    private MigrateBalances migrateBalances;
+
+    public MigrateToPerCurrencyBalances(@NonNull final SetupTables setupTables,
+                                        @NonNull final MigrateBalances migrateBalances) {
+        this.setupTables = setupTables;
+        this.migrateBalances = migrateBalances;
+    }
+
+    public void run() {
+        if (Constants.LEDGER_EMULATOR.equals(System.getProperty(Constants.LEDGER_PROPERTY))) {
+            setupTables.run();
+        }
+        try {
+            migrateBalances.migrateAllAccounts();
+            log.info("Migration complete. Run the application with -D{}=per_currency",
+                    Constants.BALANCE_LAYOUT_PROPERTY);
+        } catch (final Exception e) {
+            log.error("Error while migrating the balances. It is safe to run the migration again", e);
+        }
+    }
+
+    public static void main(String... args) {
+        final SetupComponent setupComponent = DaggerSetupComponent.builder().build();
+        final MigrateToPerCurrencyBalances migrate = setupComponent.providesMigrateToPerCurrencyBalances();
+        StartupTime.ready(MigrateToPerCurrencyBalances.class);
+        migrate.run();
+    }
+}
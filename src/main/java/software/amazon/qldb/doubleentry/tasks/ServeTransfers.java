@@ -0,0 +1,105 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.tasks;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.qldb.doubleentry.Constants;
+import software.amazon.qldb.doubleentry.actions.Banking;
+import software.amazon.qldb.doubleentry.dagger.components.BankingComponent;
+import software.amazon.qldb.doubleentry.dagger.components.DaggerBankingComponent;
+import software.amazon.qldb.doubleentry.helpers.StartupTime;
+import software.amazon.qldb.doubleentry.metrics.MetricsHttpServer;
+import software.amazon.qldb.doubleentry.service.BankingHttpService;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * <p>
+ * Run the banking operations as a long-running HTTP service, see
+ * {@link BankingHttpService}. The process keeps the one driver of the
+ * application for its whole life, and warms it up with a first read before
+ * it takes requests. On shutdown, for example on Ctrl-C, the requests in
+ * flight are drained before the process exits.
+ * </p>
+ *
+ * <p>
+ * The port is set with -Dservice.port, 8080 by default. With
+ * -Dledger=emulator the service runs locally against the ledger emulator,
+ * and sets up the tables and the sample data first. Metrics are served as
+ * well when -Dmetrics.port is set.
+ * </p>
+ */
+@Slf4j
+public class ServeTransfers {
+
+    private BankingHttpService bankingHttpService;
+
+    private Banking banking;
+
+    private SetupTables setupTables;
+
+    private MetricsHttpServer metricsHttpServer;
+
+    public ServeTransfers(@NonNull final BankingHttpService bankingHttpService,
+                          @NonNull final Banking banking,
+                          @NonNull final SetupTables setupTables,
+                          @NonNull final MetricsHttpServer metricsHttpServer) {
+        this.bankingHttpService = bankingHttpService;
+        this.banking = banking;
+        this.setupTables = setupTables;
+        this.metricsHttpServer = metricsHttpServer;
+    }
+
+    public void run() throws IOException {
+        if (Constants.LEDGER_EMULATOR.equals(System.getProperty(Constants.LEDGER_PROPERTY))) {
+            setupTables.run();
+        }
+        // Builds the driver and opens its first session before any request comes in
+        log.info("Serving {} accounts", banking.getAccountIds().size());
+
+        final Integer metricsPort = Integer.getInteger(Constants.METRICS_PORT_PROPERTY);
+        if (metricsPort != null) {
+            metricsHttpServer.start(metricsPort);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "banking-http-shutdown"));
+        bankingHttpService.start(Integer.getInteger(Constants.SERVICE_PORT_PROPERTY, Constants.SERVICE_DEFAULT_PORT));
+    }
+
+    private void shutdown() {
+        try {
+            if (bankingHttpService.stop(Duration.ofMillis(Constants.SERVICE_DRAIN_TIMEOUT_MS))) {
+                log.info("All requests in flight were answered");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            metricsHttpServer.stop();
+        }
+    }
+
+    public static void main(String... args) throws IOException {
+        final BankingComponent bankingComponent = DaggerBankingComponent.builder().build();
+        final ServeTransfers serveTransfers = bankingComponent.providesServeTransfers();
+        StartupTime.ready(ServeTransfers.class);
+        serveTransfers.run();
+    }
+}
@@ -21,6 +21,7 @@ package software.amazon.qldb.doubleentry.tasks;
 import com.amazonaws.services.qldb.model.DescribeLedgerResult;
 import com.amazonaws.services.qldb.model.LedgerState;
 import com.amazonaws.services.qldb.model.LedgerSummary;
+import com.amazonaws.services.qldb.model.ResourceNotFoundException;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import software.amazon.qldb.doubleentry.Constants;
@@ -29,9 +30,11 @@ import software.amazon.qldb.doubleentry.actions.ledgermanagement.DescribeLedger;
 import software.amazon.qldb.doubleentry.actions.ledgermanagement.ListLedgers;
 import software.amazon.qldb.doubleentry.dagger.components.DaggerSetupComponent;
 import software.amazon.qldb.doubleentry.dagger.components.SetupComponent;
+import software.amazon.qldb.doubleentry.helpers.StartupTime;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * The purpose of this class is to show how a ledger can be setup using the QLDB java driver.
@@ -44,17 +47,16 @@ import java.util.List;
  * We first issue a CreateLedger query to QLDB, which starts the ledger creation process. At this point of time,
  * the status of the ledger will be  "CREATING" as QLDB takes short amount of time to create the ledger.
  *
- * In Order to confirm if the ledger creation is complete, we poll QLDB via DescribeLedger Query at a fixed interval
- * and check if the Status has changed to Active. Once the status has changed to ACTIVE, we are sure that the ledger
- * creation has succeeded.
+ * In Order to confirm if the ledger creation is complete, we poll QLDB via DescribeLedger Query and check if the
+ * Status has changed to Active. The first polls are made quickly, and the interval doubles up to a few seconds, so a
+ * ledger which becomes active fast is noticed fast. Once the status has changed to ACTIVE, we are sure that the
+ * ledger creation has succeeded. If the ledger exists already, it is not created again.
  *
  * Finally, We use the ListLedgers query to log all the ledgers we have created up until now.
  */
 @Slf4j
 public class SetupLedger {
 
-    public static final Long LEDGER_CREATION_POLL_PERIOD_MS = 10_000L;
-
     private CreateLedger createLedger;
 
     private DescribeLedger describeLedger;
@@ -69,35 +71,66 @@ public class SetupLedger {
         this.listLedgers = listLedgers;
     }
 
-    private void createLedgerAndWaitForActivation(final String ledgerName) {
+    /**
+     * Create the ledger unless it exists already, and wait for it to be
+     * active.
+     *
+     * @return Whether the ledger is active
+     */
+    public boolean createLedgerAndWaitForActivation(final String ledgerName) {
         try {
-            log.info("Creating the ledger with name {}", ledgerName);
-            createLedger.create(ledgerName);
+            final Optional<DescribeLedgerResult> existing = describe(ledgerName);
+            if (existing.isPresent() && existing.get().getState().equals(LedgerState.ACTIVE.name())) {
+                log.info("Ledger {} exists already and is active", ledgerName);
+                return true;
+            }
+            if (!existing.isPresent()) {
+                log.info("Creating the ledger with name {}", ledgerName);
+                createLedger.create(ledgerName);
+            }
             log.info("We wait for ledger to become active");
-            waitForActive(ledgerName);
+            return waitForActive(ledgerName);
         } catch (final Exception ex) {
             log.error("Oops, Ledger Creation (ledger name =  {}) failed", ledgerName, ex);
+            return false;
+        }
+    }
+
+    private Optional<DescribeLedgerResult> describe(final String ledgerName) {
+        try {
+            return Optional.of(describeLedger.describe(ledgerName));
+        } catch (final ResourceNotFoundException e) {
+            return Optional.empty();
         }
     }
 
     /**
-     * Wait for a newly created ledger to become active.
-     *
+     * Wait for a newly created ledger to become active, polling with an
+     * exponential backoff.
      */
-    private void waitForActive(final String ledgerName) {
+    private boolean waitForActive(final String ledgerName) {
+        long pollPeriodMs = Constants.LEDGER_POLL_INITIAL_PERIOD_MS;
         try {
             while (true) {
                 final DescribeLedgerResult result = describeLedger.describe(ledgerName);
                 if (result.getState().equals(LedgerState.ACTIVE.name())) {
                     log.info("Success. Ledger is active and ready to use.{}", result);
-                    return;
+                    return true;
+                }
+                if (!result.getState().equals(LedgerState.CREATING.name())) {
+                    log.error("Ledger {} is {} and will not become active", ledgerName, result.getState());
+                    return false;
                 }
-                log.info("The ledger is still creating. Please wait.... Current state: {}", result);
-                Thread.sleep(LEDGER_CREATION_POLL_PERIOD_MS);
+                log.info("The ledger is still creating. Checking again in {} ms. Current state: {}",
+                        pollPeriodMs, result);
+                Thread.sleep(pollPeriodMs);
+                pollPeriodMs = Math.min(pollPeriodMs * 2, Constants.LEDGER_POLL_MAX_PERIOD_MS);
             }
         } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
             log.warn("Interrupted while waiting for Ledger to be active. Check AWS console to see the " +
                     "activation status of ledger {}", ledgerName);
+            return false;
         }
     }
 
@@ -120,7 +153,9 @@ public class SetupLedger {
 
     public static void main(String[] args) {
         final SetupComponent setupComponent = DaggerSetupComponent.builder().build();
-        setupComponent.providesSetupLedger().run();
+        final SetupLedger setupLedger = setupComponent.providesSetupLedger();
+        StartupTime.ready(SetupLedger.class);
+        setupLedger.run();
     }
 
 }
@@ -20,66 +20,160 @@ package software.amazon.qldb.doubleentry.tasks;
 
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
+import software.amazon.qldb.doubleentry.Constants;
 import software.amazon.qldb.doubleentry.actions.tablesmanagement.CreateIndexes;
 import software.amazon.qldb.doubleentry.actions.tablesmanagement.CreateTables;
+import software.amazon.qldb.doubleentry.actions.tablesmanagement.LedgerSchema;
 import software.amazon.qldb.doubleentry.actions.tablesmanagement.LoadSampleData;
+import software.amazon.qldb.doubleentry.actions.tablesmanagement.MigrateBalances;
 import software.amazon.qldb.doubleentry.dagger.components.DaggerSetupComponent;
 import software.amazon.qldb.doubleentry.dagger.components.SetupComponent;
+import software.amazon.qldb.doubleentry.helpers.StartupTime;
+import software.amazon.qldb.doubleentry.helpers.StepTimings;
+import software.amazon.qldb.doubleentry.models.BalanceLayout;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.inject.Named;
 
 /**
  * The purpose of this class is to show tables and indexes can be created using
  * QLDB java driver and how to load the sample data.
- * We use three actions do that:
+ * We use these actions to do that:
  *
  * <ol>
+ *     <li>LedgerSchema</li>
  *     <li>CreateTables</li>
  *     <li>CreateIndexes</li>
  *     <li>LoadSampleData</li>
  * </ol>
  *
- * We start by  creating the tables using "CREATE TABLES" query of QLDB.
- * Once all the tables are created, we create the indexes on them using
- * "CREATE INDEX" query of QLDB.
+ * We start by reading the tables which already exist, and the fields they
+ * are indexed on, from information_schema.user_tables. Every table is then
+ * set up independently of the others, and all tables in parallel: the table
+ * is created with "CREATE TABLE" if it is missing, its missing indexes are
+ * created with "CREATE INDEX", and the sample documents which are not in it
+ * yet are loaded. Anything which already exists is skipped, so the setup can
+ * be run again on a ledger which was set up before, or partially.
  *
- * After the above two steps are completed, we load the sample data into the
- * tables
+ * When the application runs with the per currency balance layout, the
+ * balances of the sample accounts are then moved to the AccountBalances
+ * table by {@link MigrateBalances}. The time taken by every step is logged
+ * at the end.
  */
 @Slf4j
 public class SetupTables {
 
+    private LedgerSchema ledgerSchema;
+
     private CreateTables createTables;
 
     private CreateIndexes createIndexes;
 
     private LoadSampleData loadSampleData;
 
-    public SetupTables(@Named("createTables") @NonNull final CreateTables createTables,
+    private MigrateBalances migrateBalances;
+
+    private BalanceLayout balanceLayout;
+
+    public SetupTables(@Named("ledgerSchema") @NonNull final LedgerSchema ledgerSchema,
+                       @Named("createTables") @NonNull final CreateTables createTables,
                        @Named("createIndexes") @NonNull final CreateIndexes createIndexes,
-                       @Named("loadSampleData") @NonNull final LoadSampleData loadSampleData) {
+                       @Named("loadSampleData") @NonNull final LoadSampleData loadSampleData,
+                       @Named("migrateBalances") @NonNull final MigrateBalances migrateBalances,
+                       @Named("balanceLayout") @NonNull final BalanceLayout balanceLayout) {
+        this.ledgerSchema = ledgerSchema;
         this.createTables = createTables;
         this.createIndexes = createIndexes;
         this.loadSampleData = loadSampleData;
+        this.migrateBalances = migrateBalances;
+        this.balanceLayout = balanceLayout;
     }
 
-    public void run() {
+    /**
+     * @return Whether all the steps succeeded
+     */
+    public boolean run() {
+        return run(new StepTimings());
+    }
+
+    /**
+     * Set up the tables, recording the time of every step in the given
+     * timings
+     *
+     * @return Whether all the steps succeeded
+     */
+    public boolean run(@NonNull final StepTimings timings) {
+        final ExecutorService executor = Executors.newFixedThreadPool(CreateTables.ALL_TABLES.size());
         try {
-            log.info("Creating tables");
-            createTables.createAllTables();
-            log.info("Creating Indexes on table");
-            createIndexes.createAllIndexes();
-            log.info("Load sample data for businesses");
-            loadSampleData.loadSampleDataForBusinesses();
-            log.info("Load sample data for Accounts");
-            loadSampleData.loadSampleDataForAccounts();
+            final Map<String, Set<String>> existingTables = timings.time("read schema", ledgerSchema::describeTables);
+
+            final List<CompletableFuture<Void>> tables = new ArrayList<>();
+            for (final String tableName : CreateTables.ALL_TABLES) {
+                tables.add(CompletableFuture.runAsync(
+                        () -> setupTable(tableName, existingTables.get(tableName), timings), executor));
+            }
+            CompletableFuture.allOf(tables.toArray(new CompletableFuture<?>[0])).join();
+
+            if (balanceLayout.isPerCurrency()) {
+                log.info("Migrate the balances of Accounts to the per currency layout");
+                timings.time("migrate balances", migrateBalances::migrateAllAccounts);
+            }
+            return true;
         } catch (final Exception e) {
             log.error("Error while running setup tables", e);
+            return false;
+        } finally {
+            executor.shutdownNow();
+            timings.report("SetupTables");
+        }
+    }
+
+    /**
+     * Create the table and its indexes, and load its sample data, skipping
+     * whatever exists already
+     *
+     * @param indexedFields The fields the table is indexed on, or null if it
+     *                      does not exist
+     */
+    private void setupTable(final String tableName, final Set<String> indexedFields, final StepTimings timings) {
+        if (indexedFields == null) {
+            timings.time(tableName + ": create table", () -> createTables.createTable(tableName));
+        } else {
+            log.info("Table {} exists already", tableName);
+        }
+
+        final Set<String> missingIndexes = new LinkedHashSet<>(
+                CreateIndexes.INDEXED_FIELDS.getOrDefault(tableName, Collections.emptyList()));
+        if (indexedFields != null) {
+            missingIndexes.removeAll(indexedFields);
+        }
+        if (!missingIndexes.isEmpty()) {
+            timings.time(tableName + ": create indexes " + missingIndexes,
+                    () -> createIndexes.createIndexes(tableName, missingIndexes));
+        }
+
+        if (Constants.BUSINESSES_TABLE_NAME.equals(tableName)) {
+            timings.time(tableName + ": load sample data", loadSampleData::loadMissingBusinesses);
+        } else if (Constants.ACCOUNTS_TABLE_NAME.equals(tableName)) {
+            timings.time(tableName + ": load sample data", loadSampleData::loadMissingAccounts);
         }
     }
 
     public static void main(String... args) {
         final SetupComponent setupComponent = DaggerSetupComponent.builder().build();
-        setupComponent.providesSetupTables().run();
+        final SetupTables setupTables = setupComponent.providesSetupTables();
+        StartupTime.ready(SetupTables.class);
+        if (!setupTables.run()) {
+            System.exit(1);
+        }
     }
 }
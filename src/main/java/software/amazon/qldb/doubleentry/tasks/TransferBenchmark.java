@@ -0,0 +1,306 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.tasks;
+
+import com.amazon.ion.Decimal;
+import com.amazon.ion.IonStruct;
+import com.amazon.ion.IonValue;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.qldb.TransactionExecutor;
+import software.amazon.qldb.doubleentry.Constants;
+import software.amazon.qldb.doubleentry.dagger.components.BankingComponent;
+import software.amazon.qldb.doubleentry.dagger.components.DaggerBankingComponent;
+import software.amazon.qldb.doubleentry.helpers.IonHelper;
+import software.amazon.qldb.doubleentry.helpers.PreparedTransfer;
+import software.amazon.qldb.doubleentry.helpers.StartupTime;
+import software.amazon.qldb.doubleentry.helpers.TransactionsHandler;
+import software.amazon.qldb.doubleentry.metrics.MetricNames;
+import software.amazon.qldb.doubleentry.metrics.MetricsRegistry;
+import software.amazon.qldb.doubleentry.models.AccountBalance;
+import software.amazon.qldb.doubleentry.models.Balance;
+import software.amazon.qldb.doubleentry.models.BalanceLayout;
+import software.amazon.qldb.doubleentry.models.TransferRequest;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * A benchmark of transfers at a high conflict rate: every thread moves money
+ * back and forth between the same two accounts, so most attempts end in an
+ * OCC conflict and are retried.
+ * </p>
+ *
+ * <p>
+ * It compares the two ways of building the payload of a transfer: once per
+ * transfer with {@link PreparedTransfer}, and again on every attempt, as
+ * transfers used to. Both run under the same load, in alternating rounds
+ * after a warm up, and for each the benchmark reports the attempts per
+ * transfer and the CPU time the transferring threads spend per transfer.
+ * The difference between the two is the CPU time saved per transfer.
+ * </p>
+ *
+ * <p>
+ * The benchmark runs its own transfer Transaction, which reads the balances
+ * of both accounts, inserts the Transactions document and writes the new
+ * balances, with the statements of the configured balance layout. It makes
+ * no balance checks, so only the payload differs between the two ways.
+ * </p>
+ *
+ * <p>
+ * Unless -Dledger is set, it runs against the ledger emulator.
+ * Arguments: [threads] [transfers per thread], 16 and 200 by default.
+ * </p>
+ */
+@Slf4j
+public class TransferBenchmark {
+
+    private static final int ROUNDS = 3;
+
+    private static final String OPERATION = "transferBenchmark";
+
+    private static final String READ_ACCOUNT = "SELECT Balances FROM Accounts WHERE AccountId = ?";
+    private static final String UPDATE_ACCOUNT = "UPDATE Accounts SET Balances = ? WHERE AccountId = ?";
+    private static final String READ_BALANCE = "SELECT CurrencyBalance FROM AccountBalances WHERE BalanceId = ?";
+    private static final String UPDATE_BALANCE = "UPDATE AccountBalances SET CurrencyBalance = ? WHERE BalanceId = ?";
+    private static final String INSERT_TRANSACTION = "INSERT INTO Transactions VALUE ?";
+
+    private TransactionsHandler transactionsHandler;
+
+    private IonHelper ionHelper;
+
+    private BalanceLayout balanceLayout;
+
+    private SetupTables setupTables;
+
+    private MetricsRegistry metricsRegistry;
+
+    public TransferBenchmark(@NonNull final TransactionsHandler transactionsHandler,
+                             @NonNull final IonHelper ionHelper,
+                             @NonNull final BalanceLayout balanceLayout,
+                             @NonNull final SetupTables setupTables,
+                             @NonNull final MetricsRegistry metricsRegistry) {
+        this.transactionsHandler = transactionsHandler;
+        this.ionHelper = ionHelper;
+        this.balanceLayout = balanceLayout;
+        this.setupTables = setupTables;
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    public void run(final int threads, final int transfersPerThread) throws InterruptedException {
+        if (Constants.LEDGER_EMULATOR.equals(System.getProperty(Constants.LEDGER_PROPERTY))) {
+            setupTables.run();
+        }
+
+        runPhase(false, threads, transfersPerThread);
+        final Phase everyAttempt = new Phase();
+        final Phase once = new Phase();
+        for (int round = 0; round < ROUNDS; round++) {
+            // Alternating the order keeps a drift of the load from favouring either way
+            final boolean everyAttemptFirst = round % 2 == 0;
+            final Phase first = runPhase(everyAttemptFirst, threads, transfersPerThread);
+            final Phase second = runPhase(!everyAttemptFirst, threads, transfersPerThread);
+            (everyAttemptFirst ? everyAttempt : once).add(first);
+            (everyAttemptFirst ? once : everyAttempt).add(second);
+        }
+
+        log.info("Payload built on every attempt: {} transfers by {} threads, {} attempts per transfer, "
+                + "{} us CPU time per transfer", everyAttempt.transfers, threads,
+                format(everyAttempt.attemptsPerTransfer()), format(everyAttempt.cpuMicrosPerTransfer()));
+        log.info("Payload built once per transfer: {} transfers by {} threads, {} attempts per transfer, "
+                + "{} us CPU time per transfer", once.transfers, threads,
+                format(once.attemptsPerTransfer()), format(once.cpuMicrosPerTransfer()));
+        final double savedMicros = everyAttempt.cpuMicrosPerTransfer() - once.cpuMicrosPerTransfer();
+        log.info("Building the payload once saves {} us CPU time per transfer ({}%)",
+                format(savedMicros), format(100 * savedMicros / everyAttempt.cpuMicrosPerTransfer()));
+    }
+
+    /**
+     * Run the transfers of all threads, building the payload on every attempt
+     * or once per transfer
+     */
+    private Phase runPhase(final boolean preparingEveryAttempt,
+                           final int threads,
+                           final int transfersPerThread) throws InterruptedException {
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        final long retriesBefore = retries();
+
+        final LongAdder transfers = new LongAdder();
+        final LongAdder cpuNanos = new LongAdder();
+        final ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            final TransferRequest transferRequest = transferRequest(i % 2 == 0);
+            executorService.submit(() -> {
+                final long cpuStart = threadMXBean.getCurrentThreadCpuTime();
+                for (int j = 0; j < transfersPerThread; j++) {
+                    try {
+                        transfer(transferRequest, preparingEveryAttempt);
+                        transfers.increment();
+                    } catch (final RuntimeException e) {
+                        log.debug("Transfer failed", e);
+                    }
+                }
+                cpuNanos.add(threadMXBean.getCurrentThreadCpuTime() - cpuStart);
+            });
+        }
+        executorService.shutdown();
+        executorService.awaitTermination(1, TimeUnit.HOURS);
+
+        final Phase phase = new Phase();
+        phase.transfers = transfers.sum();
+        phase.retries = retries() - retriesBefore;
+        phase.cpuNanos = cpuNanos.sum();
+        return phase;
+    }
+
+    /**
+     * Make one transfer, building its payload before the Transaction, or
+     * again on every attempt of it, as transfers used to
+     */
+    private void transfer(final TransferRequest transferRequest, final boolean preparingEveryAttempt) {
+        final PreparedTransfer prepared = preparingEveryAttempt ? null
+                : new PreparedTransfer(transferRequest, ionHelper);
+
+        transactionsHandler.executeTransactionWithNoReturn(OPERATION, txn -> {
+            final PreparedTransfer preparedTransfer = preparingEveryAttempt
+                    ? new PreparedTransfer(transferRequest, ionHelper) : prepared;
+            final String currency = transferRequest.getCurrency();
+            final Decimal amount = preparedTransfer.getAmount();
+
+            if (balanceLayout.isPerCurrency()) {
+                final IonValue senderBalanceId = ionHelper.toIonValue(
+                        AccountBalance.balanceId(transferRequest.getSenderAccountId(), currency));
+                final IonValue receiverBalanceId = ionHelper.toIonValue(
+                        AccountBalance.balanceId(transferRequest.getReceiverAccountId(), currency));
+                final Decimal senderBalance = readBalance(txn, senderBalanceId);
+                final Decimal receiverBalance = readBalance(txn, receiverBalanceId);
+                txn.execute(INSERT_TRANSACTION, Collections.singletonList(preparedTransfer.getTransactionDocument()));
+                txn.execute(UPDATE_BALANCE, Arrays.asList(
+                        ionHelper.toIonValue(Decimal.valueOf(senderBalance.subtract(amount))), senderBalanceId));
+                txn.execute(UPDATE_BALANCE, Arrays.asList(
+                        ionHelper.toIonValue(Decimal.valueOf(receiverBalance.add(amount))), receiverBalanceId));
+            } else {
+                final List<Balance> senderBalances = readBalances(txn, preparedTransfer.getSenderAccountIdParameter());
+                final List<Balance> receiverBalances =
+                        readBalances(txn, preparedTransfer.getReceiverAccountIdParameter());
+                txn.execute(INSERT_TRANSACTION, Collections.singletonList(preparedTransfer.getTransactionDocument()));
+                updateBalances(txn, preparedTransfer.getSenderAccountIdParameter(), senderBalances, currency,
+                        amount.negate());
+                updateBalances(txn, preparedTransfer.getReceiverAccountIdParameter(), receiverBalances, currency,
+                        amount);
+            }
+        }, retry -> { });
+    }
+
+    private Decimal readBalance(final TransactionExecutor txn, final IonValue balanceId) {
+        final List<IonStruct> documents = ionHelper.toIonStructs(
+                txn.execute(READ_BALANCE, Collections.singletonList(balanceId)));
+        return ionHelper.readIonValue(documents.get(0).get("CurrencyBalance"), Decimal.class);
+    }
+
+    private List<Balance> readBalances(final TransactionExecutor txn, final IonValue accountId) {
+        final List<IonStruct> documents = ionHelper.toIonStructs(
+                txn.execute(READ_ACCOUNT, Collections.singletonList(accountId)));
+        return Arrays.asList(ionHelper.readIonValue(documents.get(0).get("Balances"), Balance[].class));
+    }
+
+    private void updateBalances(final TransactionExecutor txn,
+                                final IonValue accountId,
+                                final List<Balance> balances,
+                                final String currency,
+                                final BigDecimal change) {
+        balances.stream()
+                .filter(balance -> currency.equals(balance.getCurrency()))
+                .forEach(balance -> balance.setCurrencyBalance(
+                        Decimal.valueOf(balance.getCurrencyBalance().add(change))));
+        txn.execute(UPDATE_ACCOUNT, Arrays.asList(ionHelper.toIonValue(balances), accountId));
+    }
+
+    private long retries() {
+        return metricsRegistry.counter(MetricNames.OCC_RETRIES,
+                "Retries of QLDB transactions, mostly due to OCC conflicts",
+                MetricNames.OPERATION_LABEL, OPERATION).get();
+    }
+
+    private static TransferRequest transferRequest(final boolean fromA001) {
+        return TransferRequest.builder()
+                .senderAccountId(fromA001 ? "A001" : "A002")
+                .receiverAccountId(fromA001 ? "A002" : "A001")
+                .currency("USD")
+                .amount(1)
+                .notes("Benchmark")
+                .build();
+    }
+
+    private static String format(final double value) {
+        return String.format("%.2f", value);
+    }
+
+    /**
+     * The transfers, retries and CPU time of one or more runs
+     */
+    private static final class Phase {
+
+        private long transfers;
+
+        private long retries;
+
+        private long cpuNanos;
+
+        private void add(final Phase phase) {
+            transfers += phase.transfers;
+            retries += phase.retries;
+            cpuNanos += phase.cpuNanos;
+        }
+
+        private double attemptsPerTransfer() {
+            return 1 + retries / (double) Math.max(1, transfers);
+        }
+
+        private double cpuMicrosPerTransfer() {
+            return cpuNanos / 1_000.0 / Math.max(1, transfers);
+        }
+    }
+
+    public static void main(String... args) {
+        if (System.getProperty(Constants.LEDGER_PROPERTY) == null) {
+            System.setProperty(Constants.LEDGER_PROPERTY, Constants.LEDGER_EMULATOR);
+        }
+        final BankingComponent bankingComponent = DaggerBankingComponent.builder().build();
+        final int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        final int transfersPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        final TransferBenchmark transferBenchmark = bankingComponent.providesTransferBenchmark();
+        StartupTime.ready(TransferBenchmark.class);
+        try {
+            transferBenchmark.run(threads, transfersPerThread);
+        } catch (final InterruptedException e) {
+            log.info("Interrupted while running the benchmark", e);
+        }
+    }
+}
@@ -21,13 +21,24 @@ package software.amazon.qldb.doubleentry.tasks;
 
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
+import software.amazon.qldb.doubleentry.Constants;
+import software.amazon.qldb.doubleentry.actions.BalanceSnapshotter;
 import software.amazon.qldb.doubleentry.actions.Banking;
+import software.amazon.qldb.doubleentry.actions.HoldsSweeper;
 import software.amazon.qldb.doubleentry.dagger.components.BankingComponent;
 import software.amazon.qldb.doubleentry.dagger.components.DaggerBankingComponent;
+import software.amazon.qldb.doubleentry.helpers.StartupTime;
+import software.amazon.qldb.doubleentry.metrics.MetricsHttpServer;
+import software.amazon.qldb.doubleentry.metrics.MetricsLogReporter;
+import software.amazon.qldb.doubleentry.models.AuthorizationRequest;
 import software.amazon.qldb.doubleentry.models.Balance;
+import software.amazon.qldb.doubleentry.models.HoldResponse;
 import software.amazon.qldb.doubleentry.models.TransferRequest;
 import software.amazon.qldb.doubleentry.models.TransferResponse;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -43,6 +54,8 @@ import java.util.concurrent.Executors;
  * <ul>
  *     <li> Only one transfer of money happening at a time </li>
  *     <li> Multiple transfers between same accounts happening in parallel </li>
+ *     <li> A two-phase payment which is first authorized and captured later </li>
+ *     <li> Balances of an account at a point in time </li>
  * </ul>
  *
  * <p>
@@ -66,15 +79,66 @@ import java.util.concurrent.Executors;
  * attempts or it times out). With this, the application  does not have to worry
  * about doing the retries manually.
  * </p>
+ *
+ * <p>
+ * Metrics are served in Prometheus text format on
+ * http://localhost:&lt;port&gt;/metrics when the task is started with
+ * -Dmetrics.port=&lt;port&gt;, and logged periodically with -Dmetrics.log=true.
+ * </p>
  */
 @Slf4j
 public class TransferMoney {
 
     private Banking banking;
 
+    private HoldsSweeper holdsSweeper;
+
+    private BalanceSnapshotter balanceSnapshotter;
+
+    private MetricsHttpServer metricsHttpServer;
 
-    public TransferMoney(@NonNull final Banking banking) {
+    private MetricsLogReporter metricsLogReporter;
+
+    public TransferMoney(@NonNull final Banking banking,
+                         @NonNull final HoldsSweeper holdsSweeper,
+                         @NonNull final BalanceSnapshotter balanceSnapshotter,
+                         @NonNull final MetricsHttpServer metricsHttpServer,
+                         @NonNull final MetricsLogReporter metricsLogReporter) {
         this.banking = banking;
+        this.holdsSweeper = holdsSweeper;
+        this.balanceSnapshotter = balanceSnapshotter;
+        this.metricsHttpServer = metricsHttpServer;
+        this.metricsLogReporter = metricsLogReporter;
+    }
+
+    /**
+     * Start exporting metrics as requested by the system properties
+     * metrics.port and metrics.log
+     */
+    public void startMetrics() {
+        final Integer port = Integer.getInteger(Constants.METRICS_PORT_PROPERTY);
+        if (port != null) {
+            try {
+                metricsHttpServer.start(port);
+            } catch (final IOException e) {
+                log.error("Could not start the metrics endpoint on port {}", port, e);
+            }
+        }
+        if (Boolean.getBoolean(Constants.METRICS_LOG_PROPERTY)) {
+            metricsLogReporter.start(Constants.METRICS_LOG_PERIOD_MS);
+        }
+    }
+
+    /**
+     * Stop exporting metrics, logging them one last time if periodic logging
+     * was requested
+     */
+    public void stopMetrics() {
+        metricsHttpServer.stop();
+        metricsLogReporter.stop();
+        if (Boolean.getBoolean(Constants.METRICS_LOG_PROPERTY)) {
+            metricsLogReporter.report();
+        }
     }
 
     /**
@@ -217,18 +281,151 @@ public class TransferMoney {
         log.info("Balances for Account A004 after Transfer {}", balancesForA004AfterTransfer);
     }
 
+    /**
+     * <p>
+     * This shows a card-style payment of 250 USD from Account A001 to
+     * Account A003, done in two phases.
+     * </p>
+     *
+     * <p>
+     * First the payment is authorized, which moves the amount from A001 into
+     * a hold without touching A003. Then the hold is captured, which moves the
+     * amount from the hold into A003 without touching A001. We also authorize
+     * a second payment and void it, which returns the amount to A001.
+     * </p>
+     */
+    public void runAuthorizeAndCapture() {
+        final List<Balance> balancesForA001BeforeTransfer = banking.getBalancesForAccount("A001");
+        log.info("Balances for Account A001 before Authorization {}", balancesForA001BeforeTransfer);
+
+        final List<Balance> balancesForA003BeforeTransfer = banking.getBalancesForAccount("A003");
+        log.info("Balances for Account A003 before Authorization {}", balancesForA003BeforeTransfer);
+
+        final HoldResponse authorization = banking.authorize(
+                AuthorizationRequest.builder()
+                        .senderAccountId("A001")
+                        .receiverAccountId("A003")
+                        .currency("USD")
+                        .amount(250)
+                        .notes("Card payment")
+                        .holdDuration(Duration.ofHours(1))
+                        .build()
+        );
+        log.info("Authorization response {}", authorization);
+
+        if (authorization.getSuccessful()) {
+            final HoldResponse capture = banking.capture(authorization.getHoldId());
+            log.info("Capture response {}", capture);
+        }
+
+        final HoldResponse secondAuthorization = banking.authorize(
+                AuthorizationRequest.builder()
+                        .senderAccountId("A001")
+                        .receiverAccountId("A003")
+                        .currency("USD")
+                        .amount(100)
+                        .notes("Cancelled card payment")
+                        .build()
+        );
+        log.info("Second authorization response {}", secondAuthorization);
+
+        if (secondAuthorization.getSuccessful()) {
+            final HoldResponse voided = banking.voidHold(secondAuthorization.getHoldId());
+            log.info("Void response {}", voided);
+        }
+
+        final List<Balance> balancesForA001AfterTransfer = banking.getBalancesForAccount("A001");
+        log.info("Balances for Account A001 after Capture {}", balancesForA001AfterTransfer);
+
+        final List<Balance> balancesForA003AfterTransfer = banking.getBalancesForAccount("A003");
+        log.info("Balances for Account A003 after Capture {}", balancesForA003AfterTransfer);
+    }
+
+    /**
+     * This shows the balances of Account A001 at points in time. A snapshot of
+     * its balances is taken first, then 100 USD are transferred to Account
+     * A003. The balances before the transfer come from the snapshot alone, and
+     * the balances after it from the snapshot plus a replay of the transfer.
+     */
+    public void runBalancesAsOf() {
+        banking.takeBalanceSnapshot("A001");
+        final Instant beforeTransfer = Instant.now();
+
+        final TransferResponse transferResponse = banking.transfer(
+                TransferRequest.builder()
+                .senderAccountId("A001")
+                .receiverAccountId("A003")
+                .currency("USD")
+                .amount(100)
+                .notes("Point in time")
+                .build()
+        );
+        log.info("Transfer response {}", transferResponse);
+        final Instant afterTransfer = Instant.now();
+
+        log.info("Balances for Account A001 at {} {}", beforeTransfer,
+                banking.getBalancesAsOf("A001", beforeTransfer));
+        log.info("Balances for Account A001 at {} {}", afterTransfer,
+                banking.getBalancesAsOf("A001", afterTransfer));
+        log.info("Current balances for Account A001 {}", banking.getBalancesForAccount("A001"));
+    }
+
+    /**
+     * Keep taking snapshots of the balances of all accounts in the background
+     * until the process is stopped.
+     */
+    public void runBalanceSnapshotter() throws InterruptedException {
+        balanceSnapshotter.start(Constants.BALANCE_SNAPSHOT_PERIOD_MS);
+        Thread.currentThread().join();
+    }
+
+    /**
+     * Keep releasing expired holds in the background until the process is
+     * stopped.
+     */
+    public void runHoldsSweeper() throws InterruptedException {
+        holdsSweeper.start(Constants.HOLDS_SWEEP_PERIOD_MS);
+        Thread.currentThread().join();
+    }
+
     public static void main(String... args) {
         final BankingComponent bankingComponent = DaggerBankingComponent.builder().build();
         final TransferMoney transferMoney = bankingComponent.providesTransferMoney();
+        transferMoney.startMetrics();
+        StartupTime.ready(TransferMoney.class);
 
+        try {
+            transferMoney.run(args);
+        } finally {
+            transferMoney.stopMetrics();
+        }
+    }
+
+    private void run(final String... args) {
         if (args.length == 0 || args[0].equals("singleTransfer")) {
-            transferMoney.runSingleTransfer();
+            runSingleTransfer();
         } else if (args[0].equals("parallelTransfers")) {
             try {
-                transferMoney.runParallelTransfers();
+                runParallelTransfers();
             } catch (final InterruptedException e) {
                 log.info("Interrupted while running the parallel Transfers", e);
             }
+        } else if (args[0].equals("authorizeAndCapture")) {
+            runAuthorizeAndCapture();
+        } else if (args[0].equals("sweepExpiredHolds")) {
+            try {
+                runHoldsSweeper();
+            } catch (final InterruptedException e) {
+                log.info("Interrupted while sweeping expired holds", e);
+            }
+        } else if (args[0].equals("balancesAsOf")) {
+            runBalancesAsOf();
+        } else if (args[0].equals("snapshotBalances")) {
+            try {
+                runBalanceSnapshotter();
+            } catch (final InterruptedException e) {
+                log.info("Interrupted while taking balance snapshots", e);
+            }
         } else {
             log.error("Unknown arguments {}",(Object[]) args);
         }
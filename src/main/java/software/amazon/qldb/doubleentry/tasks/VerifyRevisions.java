@@ -0,0 +1,123 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.tasks;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.qldb.doubleentry.Constants;
+import software.amazon.qldb.doubleentry.dagger.components.BankingComponent;
+import software.amazon.qldb.doubleentry.dagger.components.DaggerBankingComponent;
+import software.amazon.qldb.doubleentry.helpers.StartupTime;
+import software.amazon.qldb.doubleentry.verification.LedgerProofs;
+import software.amazon.qldb.doubleentry.verification.ProofFiles;
+import software.amazon.qldb.doubleentry.verification.ProofSet;
+import software.amazon.qldb.doubleentry.verification.ProofVerifier;
+import software.amazon.qldb.doubleentry.verification.SyntheticProofs;
+import software.amazon.qldb.doubleentry.verification.VerificationReport;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Verify document revisions against a digest of the ledger with the
+ * {@link ProofVerifier}. The revisions and their proofs come from one of:
+ * </p>
+ *
+ * <ul>
+ *     <li><b>synthetic [revisions]</b>: a Merkle tree built over random
+ *     hashes, to try the verifier without a ledger</li>
+ *     <li><b>files &lt;digest file&gt; &lt;revisions file&gt;</b>: Ion files
+ *     written by the ledger mode, or by any other tool in the same format</li>
+ *     <li><b>ledger &lt;table&gt; [directory]</b>: the current revisions of
+ *     all documents of a table, fetched with GetDigest and GetRevision, and
+ *     optionally saved to the directory for later offline verification</li>
+ * </ul>
+ */
+@Slf4j
+public class VerifyRevisions {
+
+    private static final String DIGEST_FILE = "digest.ion";
+    private static final String REVISIONS_FILE = "revisions.ion";
+
+    private ProofVerifier proofVerifier;
+
+    private ProofFiles proofFiles;
+
+    private LedgerProofs ledgerProofs;
+
+    public VerifyRevisions(@NonNull final ProofVerifier proofVerifier,
+                           @NonNull final ProofFiles proofFiles,
+                           @NonNull final LedgerProofs ledgerProofs) {
+        this.proofVerifier = proofVerifier;
+        this.proofFiles = proofFiles;
+        this.ledgerProofs = ledgerProofs;
+    }
+
+    public boolean run(final String... args) throws IOException {
+        final String mode = args.length > 0 ? args[0] : "synthetic";
+        final ProofSet proofSet;
+        switch (mode) {
+            case "synthetic":
+                final int revisions = args.length > 1 ? Integer.parseInt(args[1]) : Constants.SYNTHETIC_REVISIONS;
+                proofSet = SyntheticProofs.generate(revisions, System.nanoTime());
+                break;
+            case "files":
+                if (args.length < 3) {
+                    throw new IllegalArgumentException("Usage: files <digest file> <revisions file>");
+                }
+                proofSet = proofFiles.read(Paths.get(args[1]), Paths.get(args[2]));
+                break;
+            case "ledger":
+                if (args.length < 2) {
+                    throw new IllegalArgumentException("Usage: ledger <table> [directory]");
+                }
+                proofSet = ledgerProofs.fetchCommittedRevisions(args[1]);
+                if (args.length > 2) {
+                    final Path directory = Paths.get(args[2]);
+                    proofFiles.write(proofSet, directory.resolve(DIGEST_FILE), directory.resolve(REVISIONS_FILE));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown mode " + mode);
+        }
+        final VerificationReport report = proofVerifier.verifyRevisionHashes(proofSet);
+        report(report);
+        return report.isSuccessful();
+    }
+
+    private void report(final VerificationReport report) {
+        final long millis = TimeUnit.NANOSECONDS.toMillis(report.getElapsedNanos());
+        log.info("Verified {} revisions in {} ms, {} nodes taken from the cache. {} failed",
+                report.getVerified(), millis, report.getCacheHits(), report.getFailed().size());
+        report.getFailed().forEach(revision -> log.error("Revision {} could not be verified", revision));
+    }
+
+    public static void main(String... args) throws IOException {
+        final BankingComponent bankingComponent = DaggerBankingComponent.builder().build();
+        final VerifyRevisions verifyRevisions = bankingComponent.providesVerifyRevisions();
+        StartupTime.ready(VerifyRevisions.class);
+        if (!verifyRevisions.run(args)) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.verification;
+
+import com.amazon.ion.IonSequence;
+import com.amazon.ion.IonStruct;
+import com.amazon.ion.IonSystem;
+import com.amazon.ion.IonValue;
+import com.amazonaws.services.qldb.AmazonQLDB;
+import com.amazonaws.services.qldb.model.GetDigestRequest;
+import com.amazonaws.services.qldb.model.GetDigestResult;
+import com.amazonaws.services.qldb.model.GetRevisionRequest;
+import com.amazonaws.services.qldb.model.GetRevisionResult;
+import com.amazonaws.services.qldb.model.ValueHolder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.qldb.doubleentry.Constants;
+import software.amazon.qldb.doubleentry.helpers.IonHelper;
+import software.amazon.qldb.doubleentry.helpers.Lane;
+import software.amazon.qldb.doubleentry.helpers.TransactionsHandler;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Fetch the digest of the ledger with GetDigest, and the proofs of the
+ * revisions of a table with GetRevision.
+ *
+ * This code expects that you have AWS credentials setup per:
+ * http://docs.aws.amazon.com/java-sdk/latest/developer-guide/setup-credentials.html
+ */
+@Slf4j
+public class LedgerProofs {
+
+    private final Supplier<AmazonQLDB> client;
+
+    private TransactionsHandler transactionsHandler;
+
+    private IonHelper ionHelper;
+
+    private IonSystem ionSystem;
+
+    public LedgerProofs(@NonNull final Supplier<AmazonQLDB> client,
+                        @NonNull final TransactionsHandler transactionsHandler,
+                        @NonNull final IonHelper ionHelper,
+                        @NonNull final IonSystem ionSystem) {
+        this.client = client;
+        this.transactionsHandler = transactionsHandler;
+        this.ionHelper = ionHelper;
+        this.ionSystem = ionSystem;
+    }
+
+    public LedgerDigest getDigest() {
+        final GetDigestResult result = client.get().getDigest(new GetDigestRequest().withName(Constants.LEDGER_NAME));
+        final ByteBuffer digest = result.getDigest();
+        final byte[] bytes = new byte[digest.remaining()];
+        digest.duplicate().get(bytes);
+        return new LedgerDigest(bytes, result.getDigestTipAddress().getIonText());
+    }
+
+    /**
+     * Fetch the proofs of the current revisions of all documents of the given
+     * table, against a digest taken after they were read
+     */
+    public ProofSet fetchCommittedRevisions(@NonNull final String tableName) {
+        final String query = String.format("SELECT r.blockAddress, r.metadata.id FROM _ql_committed_%s AS r",
+                tableName);
+        final List<IonStruct> revisions = transactionsHandler.executeTransaction(Lane.READ, "listRevisions",
+                txn -> ionHelper.toIonStructs(txn.execute(query)),
+                (retry) -> log.info("There was an error while listing revisions. Retrying "));
+
+        final LedgerDigest digest = getDigest();
+        final List<RevisionProof> proofs = new ArrayList<>(revisions.size());
+        for (final IonStruct revision : revisions) {
+            final String documentId = ionHelper.readIonValue(revision.get("id"), String.class);
+            proofs.add(getRevision(documentId, revision.get("blockAddress"), digest));
+        }
+        log.info("Fetched the proofs of {} revisions of the {} table", proofs.size(), tableName);
+        return new ProofSet(digest, proofs);
+    }
+
+    public RevisionProof getRevision(@NonNull final String documentId,
+                                     @NonNull final IonValue blockAddress,
+                                     @NonNull final LedgerDigest digest) {
+        final GetRevisionResult result = client.get().getRevision(new GetRevisionRequest()
+                .withName(Constants.LEDGER_NAME)
+                .withDocumentId(documentId)
+                .withBlockAddress(new ValueHolder().withIonText(blockAddress.toString()))
+                .withDigestTipAddress(new ValueHolder().withIonText(digest.getDigestTipAddress())));
+        return RevisionProof.fromIon((IonStruct) ionSystem.singleValue(result.getRevision().getIonText()),
+                (IonSequence) ionSystem.singleValue(result.getProof().getIonText()));
+    }
+}
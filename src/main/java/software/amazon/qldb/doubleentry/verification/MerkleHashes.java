@@ -0,0 +1,89 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.verification;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * <p>
+ * The hash functions of the QLDB journal. Every node of the Merkle tree of
+ * the journal is the SHA-256 hash of its two children. The children are
+ * concatenated in the order of their bytes compared from the last byte to
+ * the first, so that a proof does not have to say on which side a sibling
+ * is.
+ * </p>
+ *
+ * <p>
+ * See https://docs.aws.amazon.com/qldb/latest/developerguide/verification.html
+ * </p>
+ */
+public final class MerkleHashes {
+
+    public static final int HASH_LENGTH = 32;
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
+
+    private MerkleHashes() { }
+
+    public static byte[] sha256(final byte[] data) {
+        return SHA_256.get().digest(data);
+    }
+
+    /**
+     * The hash of the parent of two nodes of the Merkle tree. If one of them
+     * is empty, the other one is the parent.
+     */
+    public static byte[] join(final byte[] left, final byte[] right) {
+        if (left.length == 0) {
+            return right;
+        }
+        if (right.length == 0) {
+            return left;
+        }
+        final byte[] concatenated = new byte[left.length + right.length];
+        final boolean leftFirst = compare(left, right) < 0;
+        System.arraycopy(leftFirst ? left : right, 0, concatenated, 0, HASH_LENGTH);
+        System.arraycopy(leftFirst ? right : left, 0, concatenated, HASH_LENGTH, HASH_LENGTH);
+        return sha256(concatenated);
+    }
+
+    /**
+     * Compare two hashes as signed bytes, from the last byte to the first
+     */
+    static int compare(final byte[] first, final byte[] second) {
+        if (first.length != HASH_LENGTH || second.length != HASH_LENGTH) {
+            throw new IllegalArgumentException("Invalid hash length " + first.length + " or " + second.length);
+        }
+        for (int i = HASH_LENGTH - 1; i >= 0; i--) {
+            final int comparison = Byte.compare(first[i], second[i]);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.verification;
+
+import com.amazon.ion.IonBlob;
+import com.amazon.ion.IonList;
+import com.amazon.ion.IonReader;
+import com.amazon.ion.IonSequence;
+import com.amazon.ion.IonStruct;
+import com.amazon.ion.IonSystem;
+import com.amazon.ion.IonValue;
+import com.amazon.ion.IonWriter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * <p>
+ * Reads and writes digests and revision proofs as local Ion files, so that
+ * they can be verified offline:
+ * </p>
+ *
+ * <ul>
+ *     <li>the digest file holds one struct with the digest and the
+ *     digestTipAddress, as returned by GetDigest</li>
+ *     <li>the revisions file holds one struct per revision, with the
+ *     revision and its proof as returned by GetRevision</li>
+ * </ul>
+ */
+@Slf4j
+public class ProofFiles {
+
+    private IonSystem ionSystem;
+
+    public ProofFiles(@NonNull final IonSystem ionSystem) {
+        this.ionSystem = ionSystem;
+    }
+
+    public ProofSet read(@NonNull final Path digestFile, @NonNull final Path revisionsFile) throws IOException {
+        final LedgerDigest digest;
+        try (InputStream in = Files.newInputStream(digestFile);
+             IonReader reader = ionSystem.newReader(in)) {
+            final Iterator<IonValue> values = ionSystem.iterate(reader);
+            if (!values.hasNext()) {
+                throw new IllegalArgumentException("No digest in " + digestFile);
+            }
+            final IonStruct struct = (IonStruct) values.next();
+            digest = new LedgerDigest(((IonBlob) struct.get("digest")).getBytes(),
+                    String.valueOf(struct.get("digestTipAddress")));
+        }
+
+        final List<RevisionProof> proofs = new ArrayList<>();
+        try (InputStream in = Files.newInputStream(revisionsFile);
+             IonReader reader = ionSystem.newReader(in)) {
+            final Iterator<IonValue> values = ionSystem.iterate(reader);
+            while (values.hasNext()) {
+                final IonStruct struct = (IonStruct) values.next();
+                proofs.add(RevisionProof.fromIon((IonStruct) struct.get("revision"),
+                        (IonSequence) struct.get("proof")));
+            }
+        }
+        log.info("Read {} revision proofs from {}", proofs.size(), revisionsFile);
+        return new ProofSet(digest, proofs);
+    }
+
+    public void write(@NonNull final ProofSet proofSet,
+                      @NonNull final Path digestFile,
+                      @NonNull final Path revisionsFile) throws IOException {
+        final IonStruct digest = ionSystem.newEmptyStruct();
+        digest.put("digest", ionSystem.newBlob(proofSet.getDigest().getDigest()));
+        digest.put("digestTipAddress", ionSystem.singleValue(proofSet.getDigest().getDigestTipAddress()));
+        try (OutputStream out = Files.newOutputStream(digestFile);
+             IonWriter writer = ionSystem.newTextWriter(out)) {
+            digest.writeTo(writer);
+        }
+
+        try (OutputStream out = Files.newOutputStream(revisionsFile);
+             IonWriter writer = ionSystem.newTextWriter(out)) {
+            for (final RevisionProof proof : proofSet.getProofs()) {
+                toIon(proof).writeTo(writer);
+            }
+        }
+        log.info("Wrote {} revision proofs to {}", proofSet.getProofs().size(), revisionsFile);
+    }
+
+    private IonStruct toIon(final RevisionProof proof) {
+        final IonStruct metadata = ionSystem.newEmptyStruct();
+        metadata.put("id", ionSystem.newString(proof.getDocumentId()));
+
+        final IonStruct revision = ionSystem.newEmptyStruct();
+        revision.put("blockAddress", ionSystem.singleValue(proof.getBlockAddress()));
+        revision.put("hash", ionSystem.newBlob(proof.getRevisionHash()));
+        revision.put("metadata", metadata);
+
+        final IonList proofHashes = ionSystem.newEmptyList();
+        for (final byte[] hash : proof.getProofHashes()) {
+            proofHashes.add(ionSystem.newBlob(hash));
+        }
+
+        final IonStruct struct = ionSystem.newEmptyStruct();
+        struct.put("revision", revision);
+        struct.put("proof", proofHashes);
+        return struct;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.verification;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ * Verifies revision hashes against a ledger digest by rebuilding the Merkle
+ * path from the hash of each revision with the hashes of its proof, all the
+ * way up, and checking that it ends at the digest.
+ * </p>
+ *
+ * <p>
+ * Revisions committed close to each other share most of their path to the
+ * root, so most of the nodes of a path were already computed for another
+ * revision. The parent of every pair of nodes is remembered, up to the given
+ * number of pairs, and taken from there instead of being hashed again. A
+ * parent only depends on its two children, so every path is still followed
+ * up to the digest.
+ * </p>
+ *
+ * <p>
+ * Only the path from the revision hash to the digest is verified. The
+ * revision hash itself is taken from the revision as it is, and is not
+ * computed from the data and metadata of the revision, which requires the
+ * Ion hash of both. A successful verification proves that a revision with
+ * this hash is in the ledger.
+ * </p>
+ */
+@Slf4j
+public class ProofVerifier {
+
+    private final int maxCachedParents;
+
+    private final ConcurrentMap<ByteBuffer, byte[]> parents = new ConcurrentHashMap<>();
+
+    private final LongAdder cacheHits = new LongAdder();
+
+    public ProofVerifier(final int maxCachedParents) {
+        this.maxCachedParents = maxCachedParents;
+    }
+
+    /**
+     * Verify the revision hashes of all the proofs of the given set in
+     * parallel, on all cores
+     */
+    public VerificationReport verifyRevisionHashes(@NonNull final ProofSet proofSet) {
+        return verifyRevisionHashes(proofSet.getProofs(), proofSet.getDigest());
+    }
+
+    public VerificationReport verifyRevisionHashes(@NonNull final Collection<RevisionProof> proofs,
+                                                   @NonNull final LedgerDigest digest) {
+        final long start = System.nanoTime();
+        final long hitsBefore = cacheHits.sum();
+        final List<String> failed = proofs.parallelStream()
+                .filter(proof -> !verifyRevisionHash(proof, digest))
+                .map(proof -> proof.getDocumentId() + "@" + proof.getBlockAddress())
+                .collect(Collectors.toList());
+        return new VerificationReport(proofs.size() - failed.size(), failed,
+                cacheHits.sum() - hitsBefore, System.nanoTime() - start);
+    }
+
+    /**
+     * Whether the proof leads from the revision hash of the proof to the
+     * digest. The revision hash is not checked against the revision.
+     */
+    public boolean verifyRevisionHash(@NonNull final RevisionProof proof, @NonNull final LedgerDigest digest) {
+        byte[] candidate = proof.getRevisionHash();
+        for (final byte[] proofHash : proof.getProofHashes()) {
+            candidate = parent(candidate, proofHash);
+        }
+
+        if (!Arrays.equals(candidate, digest.getDigest())) {
+            log.debug("Revision {} of document {} does not lead to the digest",
+                    proof.getBlockAddress(), proof.getDocumentId());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Forget the remembered parents
+     */
+    public void clear() {
+        parents.clear();
+    }
+
+    private byte[] parent(final byte[] node, final byte[] sibling) {
+        if (node.length == 0 || sibling.length == 0) {
+            return MerkleHashes.join(node, sibling);
+        }
+        final ByteBuffer pair = ByteBuffer.allocate(node.length + sibling.length).put(node).put(sibling);
+        pair.flip();
+        final byte[] known = parents.get(pair);
+        if (known != null) {
+            cacheHits.increment();
+            return known;
+        }
+        final byte[] parent = MerkleHashes.join(node, sibling);
+        if (parents.size() < maxCachedParents) {
+            parents.put(pair, parent);
+        }
+        return parent;
+    }
+}
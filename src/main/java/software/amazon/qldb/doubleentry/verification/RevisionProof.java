@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.verification;
+
+import com.amazon.ion.IonBlob;
+import com.amazon.ion.IonSequence;
+import com.amazon.ion.IonStruct;
+import com.amazon.ion.IonText;
+import com.amazon.ion.IonValue;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The hash of a document revision and the proof which leads from it to a
+ * {@link LedgerDigest}: the hashes of the siblings of every node on the path
+ * from the revision to the root of the Merkle tree.
+ */
+@Value
+public class RevisionProof {
+
+    String documentId;
+
+    /**
+     * The block address of the revision, as Ion text
+     */
+    String blockAddress;
+
+    byte[] revisionHash;
+
+    List<byte[]> proofHashes;
+
+    /**
+     * Read a revision and its proof in the format returned by GetRevision:
+     * the revision as a struct with its blockAddress, hash and metadata, and
+     * the proof as a list of hashes.
+     */
+    public static RevisionProof fromIon(final IonStruct revision, final IonSequence proof) {
+        final IonValue documentId = revision.get("metadata") instanceof IonStruct
+                ? ((IonStruct) revision.get("metadata")).get("id")
+                : null;
+        if (!(documentId instanceof IonText) || !(revision.get("hash") instanceof IonBlob)
+                || revision.get("blockAddress") == null) {
+            throw new IllegalArgumentException("Not a revision with a block address, hash and id: " + revision);
+        }
+        final List<byte[]> proofHashes = new ArrayList<>(proof.size());
+        for (final IonValue hash : proof) {
+            if (!(hash instanceof IonBlob)) {
+                throw new IllegalArgumentException("Not a proof hash: " + hash);
+            }
+            proofHashes.add(((IonBlob) hash).getBytes());
+        }
+        return new RevisionProof(((IonText) documentId).stringValue(), revision.get("blockAddress").toString(),
+                ((IonBlob) revision.get("hash")).getBytes(), Collections.unmodifiableList(proofHashes));
+    }
+}
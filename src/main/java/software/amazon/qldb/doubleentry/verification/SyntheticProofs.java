@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.doubleentry.verification;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * <p>
+ * Builds a Merkle tree over random revision hashes, the same way the QLDB
+ * journal combines hashes, and produces the proof of every revision. It lets
+ * the verifier be exercised without a ledger.
+ * </p>
+ *
+ * <p>
+ * A node without a sibling on its level is carried up to the next level
+ * unchanged, so its proof has no hash for that level.
+ * </p>
+ */
+public final class SyntheticProofs {
+
+    private SyntheticProofs() { }
+
+    public static ProofSet generate(final int revisions, final long seed) {
+        if (revisions <= 0) {
+            throw new IllegalArgumentException("At least one revision is needed, got " + revisions);
+        }
+        final Random random = new Random(seed);
+
+        final List<List<byte[]>> levels = new ArrayList<>();
+        final List<byte[]> leaves = new ArrayList<>(revisions);
+        for (int i = 0; i < revisions; i++) {
+            final byte[] data = new byte[MerkleHashes.HASH_LENGTH];
+            random.nextBytes(data);
+            leaves.add(MerkleHashes.sha256(data));
+        }
+        levels.add(leaves);
+        while (levels.get(levels.size() - 1).size() > 1) {
+            final List<byte[]> level = levels.get(levels.size() - 1);
+            final List<byte[]> parents = new ArrayList<>((level.size() + 1) / 2);
+            for (int i = 0; i < level.size(); i += 2) {
+                parents.add(i + 1 < level.size() ? MerkleHashes.join(level.get(i), level.get(i + 1)) : level.get(i));
+            }
+            levels.add(parents);
+        }
+
+        final LedgerDigest digest = new LedgerDigest(levels.get(levels.size() - 1).get(0),
+                "{strandId:\"synthetic\",sequenceNo:" + revisions + "}");
+        final List<RevisionProof> proofs = new ArrayList<>(revisions);
+        for (int i = 0; i < revisions; i++) {
+            final List<byte[]> proofHashes = new ArrayList<>();
+            int index = i;
+            for (final List<byte[]> level : levels.subList(0, levels.size() - 1)) {
+                final int sibling = index ^ 1;
+                if (sibling < level.size()) {
+                    proofHashes.add(level.get(sibling));
+                }
+                index /= 2;
+            }
+            proofs.add(new RevisionProof("synthetic-" + i, "{strandId:\"synthetic\",sequenceNo:" + i + "}",
+                    leaves.get(i), Collections.unmodifiableList(proofHashes)));
+        }
+        return new ProofSet(digest, proofs);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.doubleentry.helpers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class AccountDictionaryTest {
+
+    @Test
+    public void givesDenseIndexesInTheOrderFirstSeen() {
+        final AccountDictionary dictionary = new AccountDictionary(10);
+        Assert.assertEquals(-1, dictionary.lookup("A001"));
+        Assert.assertEquals(0, dictionary.indexOf("A001"));
+        Assert.assertEquals(1, dictionary.indexOf("A002"));
+        Assert.assertEquals(0, dictionary.indexOf("A001"));
+        Assert.assertEquals(1, dictionary.lookup("A002"));
+        Assert.assertEquals("A002", dictionary.accountId(1));
+        Assert.assertEquals(2, dictionary.size());
+    }
+
+    @Test
+    public void holdsExactlyTheMaximumNumberOfAccounts() {
+        final AccountDictionary dictionary = new AccountDictionary(3);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(i, dictionary.indexOf("A00" + i));
+        }
+        try {
+            dictionary.indexOf("A003");
+            Assert.fail("The dictionary should be full");
+        } catch (final IllegalStateException e) {
+            Assert.assertEquals(3, dictionary.size());
+            Assert.assertEquals(-1, dictionary.lookup("A003"));
+        }
+        Assert.assertEquals(2, dictionary.indexOf("A002"));
+    }
+
+    @Test
+    public void loadsTheSameIndexesItSaved() throws IOException {
+        final Path file = Files.createTempFile("accounts", ".dict");
+        try {
+            final AccountDictionary dictionary = new AccountDictionary(10);
+            dictionary.indexOf("A002");
+            dictionary.indexOf("A001");
+            dictionary.save(file);
+
+            final AccountDictionary loaded = AccountDictionary.load(file, 10);
+            Assert.assertEquals(2, loaded.size());
+            Assert.assertEquals(0, loaded.lookup("A002"));
+            Assert.assertEquals(1, loaded.lookup("A001"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
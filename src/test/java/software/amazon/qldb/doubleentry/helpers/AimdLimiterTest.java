@@ -0,0 +1,153 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.doubleentry.helpers;
+
+import org.junit.Assert;
+import org.junit.Test;
+import software.amazon.qldb.doubleentry.metrics.MetricNames;
+import software.amazon.qldb.doubleentry.metrics.MetricsRegistry;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class AimdLimiterTest {
+
+    private static final String NAME = "test";
+
+    private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+
+    @Test
+    public void growsOnlyWhileTheLimitIsReached() throws InterruptedException {
+        final AimdLimiter limiter = new AimdLimiter(NAME, 2, 1, 10, metricsRegistry);
+
+        limiter.acquire();
+        limiter.release(1_000, 0, false);
+        Assert.assertEquals(2, limiter.getLimit());
+
+        // 2 + 1/2 + 1/2.5 + 1/2.9 > 3
+        for (int i = 0; i < 3; i++) {
+            limiter.acquire();
+            limiter.acquire();
+            limiter.release(1_000, 0, false);
+            limiter.release(1_000, 0, false);
+        }
+        Assert.assertEquals(3, limiter.getLimit());
+        Assert.assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void neverGrowsAboveTheMaximum() throws InterruptedException {
+        final AimdLimiter limiter = new AimdLimiter(NAME, 2, 1, 2, metricsRegistry);
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire();
+            limiter.acquire();
+            limiter.release(1_000, 0, false);
+            limiter.release(1_000, 0, false);
+        }
+        Assert.assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    public void throttlingHalvesTheLimitDownToTheMinimum() throws InterruptedException {
+        final AimdLimiter limiter = new AimdLimiter(NAME, 10, 2, 10, metricsRegistry);
+
+        limiter.acquire();
+        limiter.release(0, 0, true);
+        Assert.assertEquals(5, limiter.getLimit());
+
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire();
+            limiter.release(0, 0, true);
+        }
+        Assert.assertEquals(2, limiter.getLimit());
+        Assert.assertEquals(6, decreases("throttled"));
+    }
+
+    @Test
+    public void cutsAtMostOncePerRecentLatency() throws InterruptedException {
+        final AimdLimiter limiter = new AimdLimiter(NAME, 10, 1, 10, metricsRegistry);
+
+        limiter.acquire();
+        limiter.release(TimeUnit.HOURS.toNanos(1), 0, false);
+        limiter.acquire();
+        limiter.release(0, 0, true);
+
+        Assert.assertEquals(10, limiter.getLimit());
+        Assert.assertEquals(0, decreases("throttled"));
+    }
+
+    @Test
+    public void occConflictsCutTheLimit() throws InterruptedException {
+        final AimdLimiter limiter = new AimdLimiter(NAME, 10, 1, 10, metricsRegistry);
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire();
+            limiter.release(0, 1, false);
+        }
+
+        Assert.assertTrue(limiter.getConflictRate() > 0.2);
+        Assert.assertEquals(9, limiter.getLimit());
+        Assert.assertEquals(1, decreases("occ_conflicts"));
+    }
+
+    @Test
+    public void risingLatencyCutsTheLimit() throws InterruptedException {
+        final AimdLimiter limiter = new AimdLimiter(NAME, 10, 1, 10, metricsRegistry);
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire();
+            limiter.release(1_000, 0, false);
+        }
+        Assert.assertEquals(0, decreases("latency"));
+
+        // Let more than one recent latency pass since the limiter was built
+        Thread.sleep(5);
+        limiter.acquire();
+        limiter.release(100_000, 0, false);
+
+        Assert.assertEquals(9, limiter.getLimit());
+        Assert.assertEquals(1, decreases("latency"));
+    }
+
+    @Test
+    public void acquireWaitsWhileTheLimitIsReached() throws InterruptedException {
+        final AimdLimiter limiter = new AimdLimiter(NAME, 1, 1, 1, metricsRegistry);
+        limiter.acquire();
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        final Thread waiter = new Thread(() -> {
+            try {
+                limiter.acquire();
+                acquired.countDown();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        Assert.assertFalse(acquired.await(50, TimeUnit.MILLISECONDS));
+
+        limiter.release(1_000, 0, false);
+        Assert.assertTrue(acquired.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, limiter.getInFlight());
+        waiter.join();
+    }
+
+    private long decreases(final String reason) {
+        return metricsRegistry.counter(MetricNames.CONCURRENCY_LIMIT_DECREASES, "",
+                MetricNames.LIMITER_LABEL, NAME, MetricNames.REASON_LABEL, reason).get();
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.doubleentry.helpers;
+
+import com.amazon.ion.Decimal;
+import org.junit.Assert;
+import org.junit.Test;
+import software.amazon.qldb.doubleentry.Constants;
+import software.amazon.qldb.doubleentry.journal.JournalEvent;
+import software.amazon.qldb.doubleentry.journal.JournalEventListener;
+import software.amazon.qldb.doubleentry.models.Account;
+import software.amazon.qldb.doubleentry.models.AccountBalance;
+import software.amazon.qldb.doubleentry.models.Balance;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class BalanceTableTest {
+
+    private static final int USD = BalanceTable.currencyOrdinal("USD");
+
+    private static final int JPY = BalanceTable.currencyOrdinal("JPY");
+
+    private final BalanceTable table = new BalanceTable(1_000);
+
+    @Test
+    public void tellsAbsentBalancesFromZero() {
+        Assert.assertFalse(table.hasBalance(3, USD));
+        table.set(3, USD, 0);
+        Assert.assertTrue(table.hasBalance(3, USD));
+        Assert.assertFalse(table.hasBalance(3, JPY));
+        table.clear(3, USD);
+        Assert.assertFalse(table.hasBalance(3, USD));
+    }
+
+    @Test
+    public void compareAndSetOnlyReplacesTheExpectedBalance() {
+        table.set(0, USD, 100);
+        Assert.assertFalse(table.compareAndSet(0, USD, 99, 50));
+        Assert.assertEquals(100, table.get(0, USD));
+        Assert.assertTrue(table.compareAndSet(0, USD, 100, 50));
+        Assert.assertEquals(50, table.get(0, USD));
+    }
+
+    @Test
+    public void tracksTheHighestAccountWritten() {
+        Assert.assertEquals(0, table.getAccounts());
+        table.set(9, USD, 1);
+        Assert.assertEquals(10, table.getAccounts());
+        table.set(4, USD, 1);
+        Assert.assertTrue(table.compareAndSet(4, USD, 1, 2));
+        Assert.assertEquals(10, table.getAccounts());
+        Assert.assertTrue(table.compareAndSet(20, USD, Long.MIN_VALUE, 1));
+        Assert.assertEquals(21, table.getAccounts());
+    }
+
+    @Test
+    public void tryAddKeepsTheFloorAndSkipsAbsentBalances() {
+        Assert.assertFalse(table.tryAdd(0, USD, 10, 0));
+        table.set(0, USD, 100);
+        Assert.assertTrue(table.tryAdd(0, USD, -60, 0));
+        Assert.assertFalse(table.tryAdd(0, USD, -60, 0));
+        Assert.assertEquals(40, table.get(0, USD));
+    }
+
+    @Test
+    public void concurrentAddsAreNotLost() throws Exception {
+        table.set(0, USD, 0);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 10_000; j++) {
+                        Assert.assertTrue(table.tryAdd(0, USD, 1, 0));
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(40_000, table.get(0, USD));
+    }
+
+    @Test
+    public void sumsTheBalancesInACurrency() {
+        table.set(0, USD, BalanceTable.toFixedPoint(new BigDecimal("10.5")));
+        table.set(2, USD, BalanceTable.toFixedPoint(new BigDecimal("0.25")));
+        table.set(1, JPY, 7);
+        Assert.assertEquals(0, new BigDecimal("10.75").compareTo(BalanceTable.toDecimal(table.sum(USD))));
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void rejectsAmountsWithMoreDecimalPlacesThanTheScale() {
+        BalanceTable.toFixedPoint(new BigDecimal("1.00005"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAccountsBeyondTheMaximum() {
+        table.set(1_000, USD, 1);
+    }
+
+    @Test
+    public void exportLoaderKeepsTheHighestVersion() {
+        final JournalEventListener loader = table.exportLoader(accountId -> 0);
+        loader.onAccount(accountEvent("doc-1", 2, "30"));
+        loader.onAccount(accountEvent("doc-1", 1, "20"));
+        Assert.assertEquals(0, new BigDecimal("30").compareTo(BalanceTable.toDecimal(table.get(0, USD))));
+
+        loader.onAccount(accountEvent("doc-1", 3, "40"));
+        Assert.assertEquals(0, new BigDecimal("40").compareTo(BalanceTable.toDecimal(table.get(0, USD))));
+    }
+
+    @Test
+    public void exportLoaderPrefersTheAccountBalancesDocuments() {
+        final JournalEventListener loader = table.exportLoader(accountId -> 0);
+        loader.onAccountBalance(balanceEvent("balance-usd", 0, "75"));
+        // The Balances of the Accounts document are no longer updated in the per currency layout
+        loader.onAccount(accountEvent("doc-1", 5, "30"));
+
+        Assert.assertEquals(0, new BigDecimal("75").compareTo(BalanceTable.toDecimal(table.get(0, USD))));
+        Assert.assertEquals(0, new BigDecimal("30").compareTo(BalanceTable.toDecimal(table.get(0, JPY))));
+
+        loader.onAccountBalance(balanceEvent("balance-usd", 1, "80"));
+        Assert.assertEquals(0, new BigDecimal("80").compareTo(BalanceTable.toDecimal(table.get(0, USD))));
+    }
+
+    private static JournalEvent<Account> accountEvent(final String documentId, final long version,
+                                                      final String balance) {
+        final Account account = Account.builder()
+                .accountId("A001")
+                .balances(Arrays.asList(balance("USD", balance), balance("JPY", balance)))
+                .build();
+        return new JournalEvent<>("strand", version, Instant.EPOCH, "txn", Constants.ACCOUNTS_TABLE_NAME,
+                documentId, version, account);
+    }
+
+    private static JournalEvent<AccountBalance> balanceEvent(final String documentId, final long version,
+                                                             final String balance) {
+        final AccountBalance accountBalance = AccountBalance.builder()
+                .balanceId(AccountBalance.balanceId("A001", "USD"))
+                .accountId("A001")
+                .currency("USD")
+                .currencyBalance(Decimal.valueOf(balance))
+                .build();
+        return new JournalEvent<>("strand", version, Instant.EPOCH, "txn",
+                Constants.ACCOUNT_BALANCES_TABLE_NAME, documentId, version, accountBalance);
+    }
+
+    private static Balance balance(final String currency, final String amount) {
+        return Balance.builder()
+                .currency(currency)
+                .currencyBalance(Decimal.valueOf(amount))
+                .build();
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.doubleentry.helpers;
+
+import com.amazon.ion.Decimal;
+import org.junit.Assert;
+import org.junit.Test;
+import software.amazon.qldb.doubleentry.models.Balance;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+public class FundsReservationsTest {
+
+    private static final String ACCOUNT = "A001";
+
+    private static final String USD = "USD";
+
+    private final FundsReservations reservations = new FundsReservations(60_000L);
+
+    @Test
+    public void unknownBalanceNeverRejects() {
+        Assert.assertTrue(reservations.tryReserve(ACCOUNT, USD, 1_000_000).isPresent());
+    }
+
+    @Test
+    public void rejectsTransferNotCoveredByAvailableBalance() {
+        reservations.observe(ACCOUNT, usd(100), reservations.stamp());
+
+        Assert.assertFalse(reservations.tryReserve(ACCOUNT, USD, 100).isPresent());
+        Assert.assertTrue(reservations.tryReserve(ACCOUNT, USD, 60).isPresent());
+        Assert.assertFalse(reservations.tryReserve(ACCOUNT, USD, 50).isPresent());
+        Assert.assertEquals(0, BigDecimal.valueOf(60).compareTo(reservations.getHeldAmount(ACCOUNT, USD)));
+    }
+
+    @Test
+    public void releaseDropsTheHold() {
+        reservations.observe(ACCOUNT, usd(100), reservations.stamp());
+        final Optional<FundsReservations.Reservation> reservation = reservations.tryReserve(ACCOUNT, USD, 60);
+        reservation.get().release();
+        reservation.get().release();
+
+        Assert.assertEquals(0, BigDecimal.ZERO.compareTo(reservations.getHeldAmount(ACCOUNT, USD)));
+        Assert.assertTrue(reservations.tryReserve(ACCOUNT, USD, 90).isPresent());
+    }
+
+    @Test
+    public void balanceReadBeforeTheHoldIsReleasedIsNotSubtractedTwice() {
+        reservations.observe(ACCOUNT, usd(100), reservations.stamp());
+        final Optional<FundsReservations.Reservation> reservation = reservations.tryReserve(ACCOUNT, USD, 60);
+
+        // A read which already sees the committed debit, while the hold is still in place
+        reservations.observe(ACCOUNT, usd(40), reservations.stamp());
+        Assert.assertTrue(reservations.tryReserve(ACCOUNT, USD, 30).isPresent());
+    }
+
+    @Test
+    public void balanceReadWhileHoldsStayInFlightIsUsed() {
+        reservations.observe(ACCOUNT, usd(100), reservations.stamp());
+        reservations.tryReserve(ACCOUNT, USD, 10);
+
+        // The hold placed before the read may be in it, the one placed after cannot be
+        reservations.observe(ACCOUNT, usd(50), reservations.stamp());
+        Assert.assertTrue(reservations.tryReserve(ACCOUNT, USD, 20).isPresent());
+        Assert.assertFalse(reservations.tryReserve(ACCOUNT, USD, 30).isPresent());
+        Assert.assertTrue(reservations.tryReserve(ACCOUNT, USD, 29).isPresent());
+    }
+
+    @Test
+    public void committedBalanceIsReducedByTheOtherHolds() {
+        reservations.observe(ACCOUNT, usd(100), reservations.stamp());
+        final Optional<FundsReservations.Reservation> committed = reservations.tryReserve(ACCOUNT, USD, 60);
+        Assert.assertTrue(reservations.tryReserve(ACCOUNT, USD, 20).isPresent());
+        committed.get().commit(usd(40));
+
+        Assert.assertFalse(reservations.tryReserve(ACCOUNT, USD, 20).isPresent());
+        Assert.assertTrue(reservations.tryReserve(ACCOUNT, USD, 19).isPresent());
+    }
+
+    @Test
+    public void committedBalanceReplacesTheHold() {
+        reservations.observe(ACCOUNT, usd(100), reservations.stamp());
+        final Optional<FundsReservations.Reservation> reservation = reservations.tryReserve(ACCOUNT, USD, 60);
+        reservation.get().commit(usd(40));
+
+        Assert.assertEquals(0, BigDecimal.ZERO.compareTo(reservations.getHeldAmount(ACCOUNT, USD)));
+        Assert.assertFalse(reservations.tryReserve(ACCOUNT, USD, 40).isPresent());
+        Assert.assertTrue(reservations.tryReserve(ACCOUNT, USD, 39).isPresent());
+    }
+
+    @Test
+    public void evictsOnlyAccountsWithoutHoldsOrFreshBalances() {
+        reservations.tryReserve("A002", USD, 10).get().release();
+        reservations.observe("A003", usd(100), reservations.stamp());
+        final Optional<FundsReservations.Reservation> reservation = reservations.tryReserve(ACCOUNT, USD, 10);
+        Assert.assertEquals(3, reservations.size());
+
+        Assert.assertEquals(1, reservations.evictIdle());
+        Assert.assertEquals(2, reservations.size());
+
+        reservation.get().release();
+        Assert.assertEquals(1, reservations.evictIdle());
+        Assert.assertEquals(1, reservations.size());
+        Assert.assertTrue(reservations.tryReserve(ACCOUNT, USD, 10).isPresent());
+    }
+
+    @Test
+    public void staleBalancesAreEvicted() {
+        final FundsReservations stale = new FundsReservations(0L);
+        stale.observe(ACCOUNT, usd(100), stale.stamp());
+
+        Assert.assertEquals(1, stale.evictIdle());
+        Assert.assertEquals(0, stale.size());
+    }
+
+    private static List<Balance> usd(final long amount) {
+        return Collections.singletonList(Balance.builder()
+                .currency(USD)
+                .currencyBalance(Decimal.valueOf(amount))
+                .build());
+    }
+}
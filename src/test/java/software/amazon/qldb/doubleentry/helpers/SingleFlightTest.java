@@ -0,0 +1,148 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.doubleentry.helpers;
+
+import org.junit.Assert;
+import org.junit.Test;
+import software.amazon.qldb.doubleentry.metrics.Counter;
+import software.amazon.qldb.doubleentry.metrics.MetricNames;
+import software.amazon.qldb.doubleentry.metrics.MetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SingleFlightTest {
+
+    private static final String OPERATION = "test";
+
+    private static final int WAITERS = 4;
+
+    private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+
+    private final SingleFlight<String, Integer> singleFlight = new SingleFlight<>(OPERATION, metricsRegistry);
+
+    @Test
+    public void concurrentCallersShareOneCall() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch finish = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(WAITERS + 1);
+        try {
+            final Future<Integer> leader = executor.submit(() -> singleFlight.execute("A001", () -> {
+                started.countDown();
+                await(finish);
+                return calls.incrementAndGet();
+            }));
+            Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            final List<Future<Integer>> waiters = new ArrayList<>();
+            for (int i = 0; i < WAITERS; i++) {
+                waiters.add(executor.submit(() -> singleFlight.execute("A001", calls::incrementAndGet)));
+            }
+            waitFor(counter("shared"), WAITERS);
+            finish.countDown();
+
+            Assert.assertEquals(Integer.valueOf(1), leader.get(10, TimeUnit.SECONDS));
+            for (final Future<Integer> waiter : waiters) {
+                Assert.assertEquals(Integer.valueOf(1), waiter.get(10, TimeUnit.SECONDS));
+            }
+            Assert.assertEquals(1, calls.get());
+            Assert.assertEquals(1, counter("executed").get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void waitersGetTheFailureOfTheCall() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch finish = new CountDownLatch(1);
+        final IllegalStateException failure = new IllegalStateException("read failed");
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<Integer> leader = executor.submit(() -> singleFlight.execute("A001", () -> {
+                started.countDown();
+                await(finish);
+                throw failure;
+            }));
+            Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+            final Future<Integer> waiter = executor.submit(() -> singleFlight.execute("A001", () -> 2));
+            waitFor(counter("shared"), 1);
+            finish.countDown();
+
+            Assert.assertSame(failure, causeOf(leader));
+            Assert.assertSame(failure, causeOf(waiter));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void finishedCallIsNotShared() {
+        Assert.assertEquals(Integer.valueOf(1), singleFlight.execute("A001", () -> 1));
+        Assert.assertEquals(Integer.valueOf(2), singleFlight.execute("A001", () -> 2));
+        Assert.assertEquals(2, counter("executed").get());
+        Assert.assertEquals(0, counter("shared").get());
+    }
+
+    @Test
+    public void callsForDifferentKeysAreNotShared() {
+        Assert.assertEquals(Integer.valueOf(1), singleFlight.execute("A001", () ->
+                singleFlight.execute("A002", () -> 1)));
+        Assert.assertEquals(2, counter("executed").get());
+    }
+
+    private Counter counter(final String result) {
+        return metricsRegistry.counter(MetricNames.SINGLE_FLIGHT_CALLS, "",
+                MetricNames.OPERATION_LABEL, OPERATION, MetricNames.RESULT_LABEL, result);
+    }
+
+    private static void waitFor(final Counter counter, final long count) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (counter.get() < count) {
+            Assert.assertTrue("Timed out waiting for the callers", System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Throwable causeOf(final Future<?> future) throws Exception {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+        } catch (final ExecutionException e) {
+            return e.getCause();
+        }
+        throw new AssertionError("The call should have failed");
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.doubleentry.intake;
+
+import com.amazon.ion.Decimal;
+import com.amazon.ion.system.IonSystemBuilder;
+import com.fasterxml.jackson.dataformat.ion.ionvalue.IonValueMapper;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import software.amazon.qldb.doubleentry.actions.Banking;
+import software.amazon.qldb.doubleentry.helpers.FundsReservations;
+import software.amazon.qldb.doubleentry.helpers.HedgedReads;
+import software.amazon.qldb.doubleentry.helpers.IonHelper;
+import software.amazon.qldb.doubleentry.helpers.TransactionsHandler;
+import software.amazon.qldb.doubleentry.metrics.MetricsRegistry;
+import software.amazon.qldb.doubleentry.models.Balance;
+import software.amazon.qldb.doubleentry.models.BalanceLayout;
+import software.amazon.qldb.doubleentry.models.TransferRequest;
+import software.amazon.qldb.doubleentry.store.EmbeddedLedgerStore;
+import software.amazon.qldb.doubleentry.store.MappedJournal;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class TransferIntakeTest {
+
+    private static final String USD = "USD";
+
+    private static final int SEGMENT_BYTES = 1 << 16;
+
+    private Path directory;
+
+    private Path intakeDirectory;
+
+    private EmbeddedLedgerStore store;
+
+    private Banking banking;
+
+    @Before
+    public void openStore() throws IOException {
+        directory = Files.createTempDirectory("transfer-intake");
+        intakeDirectory = directory.resolve("intake");
+        store = openStore("store");
+        banking = banking(store);
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        store.close();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (final Path file : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void makesTheSubmittedTransfersInOrder() throws Exception {
+        try (TransferIntake intake = openIntake(banking)) {
+            Assert.assertEquals(1, intake.submit(transfer(30, null)));
+            Assert.assertEquals(2, intake.submit(transfer(20, null)));
+            awaitAcknowledged(intake, 2);
+        }
+        assertBalance(store, "A001", 50);
+        assertBalance(store, "A002", 150);
+    }
+
+    @Test
+    public void remakesTheUnacknowledgedTransfersAfterARestart() throws Exception {
+        try (TransferIntake intake = openIntake(banking)) {
+            intake.submit(transfer(30, "caller-key"));
+            intake.submit(transfer(20, null));
+            awaitAcknowledged(intake, 2);
+        }
+        // As if the process had stopped before the transfers were acknowledged
+        setAcknowledged(0);
+
+        final EmbeddedLedgerStore otherStore = openStore("other");
+        try (TransferIntake intake = openIntake(banking(otherStore))) {
+            awaitAcknowledged(intake, 2);
+            Assert.assertEquals(3, intake.submit(transfer(10, null)));
+            awaitAcknowledged(intake, 3);
+        } finally {
+            otherStore.close();
+        }
+        assertBalance(otherStore, "A001", 40);
+    }
+
+    @Test
+    public void doesNotRemakeCommittedTransfersAfterARestart() throws Exception {
+        try (TransferIntake intake = openIntake(banking)) {
+            intake.submit(transfer(30, "caller-key"));
+            intake.submit(transfer(20, null));
+            awaitAcknowledged(intake, 2);
+        }
+        setAcknowledged(0);
+
+        try (TransferIntake intake = openIntake(banking)) {
+            awaitAcknowledged(intake, 2);
+        }
+        assertBalance(store, "A001", 50);
+    }
+
+    @Test
+    public void usesTheIdempotencyKeyOfTheCaller() throws Exception {
+        Assert.assertTrue(banking.transfer(transfer(30, "caller-key")).getTransferSuccessful());
+        try (TransferIntake intake = openIntake(banking)) {
+            intake.submit(transfer(30, "caller-key"));
+            awaitAcknowledged(intake, 1);
+        }
+        assertBalance(store, "A001", 70);
+    }
+
+    @Test
+    public void skipsARecordWhoseSequenceNumberIsCorrupt() throws Exception {
+        try (TransferIntake intake = openIntake(banking)) {
+            intake.submit(transfer(30, null));
+            awaitAcknowledged(intake, 1);
+        }
+        setAcknowledged(0);
+        // The journal header, then the length of the first record, then the high byte of its sequence number
+        try (FileChannel channel = FileChannel.open(intakeDirectory.resolve("intake-00000000000000000001.log"),
+                StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {1}), 2 * Integer.BYTES + Integer.BYTES);
+        }
+
+        final EmbeddedLedgerStore otherStore = openStore("other");
+        try (TransferIntake intake = openIntake(banking(otherStore))) {
+            Assert.assertEquals(0, intake.getPending());
+            Assert.assertEquals(2, intake.submit(transfer(10, null)));
+            awaitAcknowledged(intake, 2);
+        } finally {
+            otherStore.close();
+        }
+        assertBalance(otherStore, "A001", 90);
+    }
+
+    @Test
+    public void deletesTheLogFilesOnceTheirTransfersWereMade() throws Exception {
+        // Segments of about four transfers each
+        try (TransferIntake intake = openIntake(banking, 256)) {
+            for (int i = 1; i <= 20; i++) {
+                Assert.assertEquals(i, intake.submit(transfer(1, null)));
+            }
+            awaitAcknowledged(intake, 20);
+            Assert.assertEquals(1, logFiles().size());
+            Assert.assertEquals(21, intake.submit(transfer(1, null)));
+            awaitAcknowledged(intake, 21);
+        }
+        assertBalance(store, "A001", 79);
+
+        try (TransferIntake intake = openIntake(banking, 256)) {
+            Assert.assertEquals(0, intake.getPending());
+            Assert.assertEquals(22, intake.submit(transfer(1, null)));
+            awaitAcknowledged(intake, 22);
+        }
+        assertBalance(store, "A001", 78);
+    }
+
+    @Test(expected = IOException.class)
+    public void refusesALogWithoutItsCursor() throws Exception {
+        try (TransferIntake intake = openIntake(banking)) {
+            intake.submit(transfer(30, null));
+            awaitAcknowledged(intake, 1);
+        }
+        Files.delete(intakeDirectory.resolve("intake.cursor"));
+        openIntake(banking).close();
+    }
+
+    private TransferIntake openIntake(final Banking banking) throws IOException {
+        return openIntake(banking, SEGMENT_BYTES);
+    }
+
+    private TransferIntake openIntake(final Banking banking, final int segmentBytes) throws IOException {
+        return new TransferIntake(banking, intakeDirectory, segmentBytes, 1, 10, new MetricsRegistry());
+    }
+
+    private List<Path> logFiles() throws IOException {
+        try (Stream<Path> files = Files.list(intakeDirectory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".log")).collect(Collectors.toList());
+        }
+    }
+
+    private EmbeddedLedgerStore openStore(final String name) throws IOException {
+        final EmbeddedLedgerStore ledgerStore = new EmbeddedLedgerStore(
+                new MappedJournal(directory.resolve(name), SEGMENT_BYTES));
+        ledgerStore.openAccount("A001", usd(100));
+        ledgerStore.openAccount("A002", usd(100));
+        return ledgerStore;
+    }
+
+    private static Banking banking(final EmbeddedLedgerStore ledgerStore) {
+        final MetricsRegistry metricsRegistry = new MetricsRegistry();
+        final TransactionsHandler transactionsHandler = new TransactionsHandler(() -> {
+            throw new IllegalStateException("The embedded store does not use QLDB");
+        }, metricsRegistry);
+        final IonHelper ionHelper = new IonHelper(new IonValueMapper(IonSystemBuilder.standard().build()));
+        return new Banking(transactionsHandler, ionHelper, new FundsReservations(60_000L), metricsRegistry,
+                BalanceLayout.EMBEDDED, HedgedReads.disabled(), Optional.of(ledgerStore));
+    }
+
+    /**
+     * Overwrite the sequence number acknowledged in the cursor file
+     */
+    private void setAcknowledged(final long sequence) throws IOException {
+        try (FileChannel channel = FileChannel.open(intakeDirectory.resolve("intake.cursor"),
+                StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, sequence), 0);
+        }
+    }
+
+    private static void awaitAcknowledged(final TransferIntake intake, final long sequence)
+            throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (intake.getAcknowledged() < sequence) {
+            Assert.assertTrue("Timed out waiting for the drainer", System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private static void assertBalance(final EmbeddedLedgerStore ledgerStore, final String accountId,
+                                      final long expected) {
+        final List<Balance> balances = ledgerStore.getBalances(accountId);
+        Assert.assertEquals(1, balances.size());
+        Assert.assertEquals(0, BigDecimal.valueOf(expected).compareTo(balances.get(0).getCurrencyBalance()));
+    }
+
+    private static TransferRequest transfer(final double amount, final String idempotencyKey) {
+        return TransferRequest.builder()
+                .senderAccountId("A001")
+                .receiverAccountId("A002")
+                .currency(USD)
+                .amount(amount)
+                .idempotencyKey(idempotencyKey)
+                .build();
+    }
+
+    private static List<Balance> usd(final long amount) {
+        return Collections.singletonList(Balance.builder()
+                .currency(USD)
+                .currencyBalance(Decimal.valueOf(amount))
+                .build());
+    }
+}
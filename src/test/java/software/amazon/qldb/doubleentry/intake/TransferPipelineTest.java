@@ -0,0 +1,204 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.doubleentry.intake;
+
+import com.amazon.ion.Decimal;
+import com.amazon.ion.system.IonSystemBuilder;
+import com.fasterxml.jackson.dataformat.ion.ionvalue.IonValueMapper;
+import lombok.NonNull;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import software.amazon.qldb.doubleentry.actions.Banking;
+import software.amazon.qldb.doubleentry.helpers.FundsReservations;
+import software.amazon.qldb.doubleentry.helpers.HedgedReads;
+import software.amazon.qldb.doubleentry.helpers.IonHelper;
+import software.amazon.qldb.doubleentry.helpers.TransactionsHandler;
+import software.amazon.qldb.doubleentry.metrics.MetricsRegistry;
+import software.amazon.qldb.doubleentry.models.Balance;
+import software.amazon.qldb.doubleentry.models.BalanceLayout;
+import software.amazon.qldb.doubleentry.models.TransferRequest;
+import software.amazon.qldb.doubleentry.models.TransferResponse;
+import software.amazon.qldb.doubleentry.store.EmbeddedLedgerStore;
+import software.amazon.qldb.doubleentry.store.LedgerStore;
+import software.amazon.qldb.doubleentry.store.MappedJournal;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class TransferPipelineTest {
+
+    private static final String USD = "USD";
+
+    private Path journalPath;
+
+    private EmbeddedLedgerStore store;
+
+    private final AtomicBoolean failing = new AtomicBoolean();
+
+    private TransferPipeline pipeline;
+
+    @Before
+    public void openPipeline() throws IOException {
+        journalPath = Files.createTempFile("transfer-pipeline", ".journal");
+        Files.delete(journalPath);
+        store = new EmbeddedLedgerStore(new MappedJournal(journalPath, 1 << 16));
+        store.openAccount("A001", usd(100));
+        store.openAccount("A002", usd(100));
+        pipeline = new TransferPipeline(banking(new FailingStore()), 16, 8, 100, new MetricsRegistry());
+    }
+
+    @After
+    public void closePipeline() throws IOException {
+        pipeline.close();
+        store.close();
+        Files.deleteIfExists(journalPath);
+    }
+
+    @Test
+    public void answersEveryCallerWithTheResponseOfItsTransfer() throws Exception {
+        final List<CompletableFuture<TransferResponse>> responses = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            responses.add(pipeline.submit(transfer(10)));
+        }
+
+        int successful = 0;
+        for (final CompletableFuture<TransferResponse> response : responses) {
+            if (response.get(10, TimeUnit.SECONDS).getTransferSuccessful()) {
+                successful++;
+            }
+        }
+        // A sender has to keep more than the amount it sends, so the tenth transfer is refused
+        Assert.assertEquals(9, successful);
+        Assert.assertEquals(0, BigDecimal.TEN.compareTo(store.getBalances("A001").get(0).getCurrencyBalance()));
+        Assert.assertEquals(0, new BigDecimal("190").compareTo(store.getBalances("A002").get(0).getCurrencyBalance()));
+    }
+
+    @Test
+    public void failsTheCallersOfABatchWhichThrewAnError() throws Exception {
+        failing.set(true);
+        try {
+            pipeline.submit(transfer(10)).get(10, TimeUnit.SECONDS);
+            Assert.fail("The transfer should have failed");
+        } catch (final ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof AssertionError);
+        }
+
+        // The committer is still there for the next batch
+        failing.set(false);
+        Assert.assertTrue(pipeline.transfer(transfer(10)).getTransferSuccessful());
+    }
+
+    @Test
+    public void answersEveryTransferSubmittedWhileClosing() throws Exception {
+        final List<CompletableFuture<TransferResponse>> responses = Collections.synchronizedList(new ArrayList<>());
+        final List<Thread> callers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final Thread caller = new Thread(() -> {
+                try {
+                    while (true) {
+                        responses.add(pipeline.submit(transfer(0.01)));
+                    }
+                } catch (final IllegalStateException e) {
+                    // The pipeline is closed
+                }
+            });
+            caller.start();
+            callers.add(caller);
+        }
+        Thread.sleep(20);
+        pipeline.close();
+        for (final Thread caller : callers) {
+            caller.join(TimeUnit.SECONDS.toMillis(10));
+            Assert.assertFalse("A caller is still submitting after the close", caller.isAlive());
+        }
+        for (final CompletableFuture<TransferResponse> response : responses) {
+            Assert.assertTrue(response.isDone());
+        }
+    }
+
+    private Banking banking(final LedgerStore ledgerStore) {
+        final MetricsRegistry metricsRegistry = new MetricsRegistry();
+        final TransactionsHandler transactionsHandler = new TransactionsHandler(() -> {
+            throw new IllegalStateException("The embedded store does not use QLDB");
+        }, metricsRegistry);
+        final IonHelper ionHelper = new IonHelper(new IonValueMapper(IonSystemBuilder.standard().build()));
+        return new Banking(transactionsHandler, ionHelper, new FundsReservations(60_000L), metricsRegistry,
+                BalanceLayout.EMBEDDED, HedgedReads.disabled(), Optional.of(ledgerStore));
+    }
+
+    private static TransferRequest transfer(final double amount) {
+        return TransferRequest.builder()
+                .senderAccountId("A001")
+                .receiverAccountId("A002")
+                .currency(USD)
+                .amount(amount)
+                .build();
+    }
+
+    private static List<Balance> usd(final long amount) {
+        return Collections.singletonList(Balance.builder()
+                .currency(USD)
+                .currencyBalance(Decimal.valueOf(amount))
+                .build());
+    }
+
+    /**
+     * The embedded store, which throws an Error from its transfers while failing is set
+     */
+    private final class FailingStore implements LedgerStore {
+
+        @Override
+        public List<Balance> getBalances(@NonNull final String accountId) {
+            return store.getBalances(accountId);
+        }
+
+        @Override
+        public Map<String, List<Balance>> getBalances(@NonNull final Collection<String> accountIds) {
+            return store.getBalances(accountIds);
+        }
+
+        @Override
+        public List<String> getAccountIds() {
+            return store.getAccountIds();
+        }
+
+        @Override
+        public TransferResponse transfer(@NonNull final TransferRequest transferRequest,
+                                         @NonNull final TransferCheck check) {
+            if (failing.get()) {
+                throw new AssertionError("The store failed");
+            }
+            return store.transfer(transferRequest, check);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.doubleentry.store;
+
+import com.amazon.ion.Decimal;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import software.amazon.qldb.doubleentry.models.Balance;
+import software.amazon.qldb.doubleentry.models.TransferRequest;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class EmbeddedLedgerStoreTest {
+
+    private static final String USD = "USD";
+
+    private static final int SEGMENT_BYTES = 1 << 16;
+
+    private static final LedgerStore.TransferCheck ACCEPT = (senderBalances, receiverBalances) -> true;
+
+    private Path directory;
+
+    private EmbeddedLedgerStore store;
+
+    @Before
+    public void openStore() throws IOException {
+        directory = Files.createTempDirectory("embedded-ledger");
+        store = open();
+        for (final String accountId : new String[] {"A001", "A002", "A003", "A004"}) {
+            Assert.assertTrue(store.openAccount(accountId, usd(100)));
+        }
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        store.close();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (final Path file : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void replaysAccountsAndPostingsAfterReopening() throws IOException {
+        Assert.assertFalse(store.openAccount("A001", usd(5)));
+        Assert.assertTrue(store.transfer(transfer("A001", "A002", 30, null), ACCEPT).getTransferSuccessful());
+        Assert.assertTrue(store.transfer(transfer("A002", "A003", 10, null), ACCEPT).getTransferSuccessful());
+        store.close();
+
+        store = open();
+        Assert.assertEquals(4, store.getAccountIds().size());
+        assertBalance("A001", 70);
+        assertBalance("A002", 120);
+        assertBalance("A003", 110);
+        assertBalance("A004", 100);
+    }
+
+    @Test
+    public void declinedTransferChangesNothing() {
+        Assert.assertFalse(store.transfer(transfer("A001", "A002", 30, null),
+                (senderBalances, receiverBalances) -> false).getTransferSuccessful());
+        Assert.assertFalse(store.transfer(transfer("A001", "A999", 30, null), ACCEPT).getTransferSuccessful());
+        assertBalance("A001", 100);
+        assertBalance("A002", 100);
+    }
+
+    @Test
+    public void transferWithAUsedKeyIsNotPostedAgain() {
+        Assert.assertTrue(store.transfer(transfer("A001", "A002", 30, "key-1"), ACCEPT).getTransferSuccessful());
+        Assert.assertTrue(store.transfer(transfer("A001", "A002", 30, "key-1"), ACCEPT).getTransferSuccessful());
+        Assert.assertTrue(store.transfer(transfer("A003", "A004", 30, "key-1"), ACCEPT).getTransferSuccessful());
+
+        assertBalance("A001", 70);
+        assertBalance("A002", 130);
+        assertBalance("A003", 100);
+        assertBalance("A004", 100);
+    }
+
+    @Test
+    public void declinedTransferGivesBackItsKey() {
+        Assert.assertFalse(store.transfer(transfer("A001", "A002", 30, "key-1"),
+                (senderBalances, receiverBalances) -> false).getTransferSuccessful());
+        Assert.assertTrue(store.transfer(transfer("A001", "A002", 30, "key-1"), ACCEPT).getTransferSuccessful());
+
+        assertBalance("A001", 70);
+        assertBalance("A002", 130);
+    }
+
+    @Test
+    public void keysArePostedOnceAcrossRestarts() throws IOException {
+        Assert.assertTrue(store.transfer(transfer("A001", "A002", 30, "key-1"), ACCEPT).getTransferSuccessful());
+        store.close();
+
+        store = open();
+        Assert.assertTrue(store.transfer(transfer("A001", "A002", 30, "key-1"), ACCEPT).getTransferSuccessful());
+        Assert.assertTrue(store.transfer(transfer("A001", "A002", 5, null), ACCEPT).getTransferSuccessful());
+        assertBalance("A001", 65);
+    }
+
+    @Test
+    public void replaysPostingsWrittenWithoutKeys() throws IOException {
+        store.close();
+        final Path path = directory.resolve("unkeyed");
+        try (MappedJournal journal = new MappedJournal(path, SEGMENT_BYTES)) {
+            journal.replay(record -> { });
+            for (final String accountId : new String[] {"A001", "A002"}) {
+                final byte[] record = unkeyedRecord(1, accountId, "USD", BigDecimal.valueOf(100));
+                journal.append(record.length, buffer -> buffer.put(record));
+            }
+            final byte[] posting = unkeyedRecord(2, 0L, "A001", "A002", "USD", new BigDecimal("12.5"), "notes");
+            journal.append(posting.length, buffer -> buffer.put(posting));
+        }
+
+        store = new EmbeddedLedgerStore(new MappedJournal(path, SEGMENT_BYTES));
+        Assert.assertEquals(0, new BigDecimal("87.5").compareTo(balance("A001")));
+        Assert.assertEquals(0, new BigDecimal("112.5").compareTo(balance("A002")));
+        Assert.assertTrue(store.transfer(transfer("A001", "A002", 5, "key-1"), ACCEPT).getTransferSuccessful());
+        store.close();
+
+        store = new EmbeddedLedgerStore(new MappedJournal(path, SEGMENT_BYTES));
+        Assert.assertTrue(store.transfer(transfer("A001", "A002", 5, "key-1"), ACCEPT).getTransferSuccessful());
+        Assert.assertEquals(0, new BigDecimal("82.5").compareTo(balance("A001")));
+    }
+
+    @Test
+    public void concurrentTransfersWithTheSameKeyArePostedOnce() throws Exception {
+        final int rounds = 50;
+        final CyclicBarrier barrier = new CyclicBarrier(2);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            futures.add(executor.submit(() -> transferEveryRound("A001", "A002", rounds, barrier)));
+            futures.add(executor.submit(() -> transferEveryRound("A003", "A004", rounds, barrier)));
+            for (final Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Every round one of the two transfers was posted, and the other was skipped
+        final BigDecimal sent = balance("A001").add(balance("A003"));
+        Assert.assertEquals(0, BigDecimal.valueOf(200 - rounds).compareTo(sent));
+        final BigDecimal received = balance("A002").add(balance("A004"));
+        Assert.assertEquals(0, BigDecimal.valueOf(200 + rounds).compareTo(received));
+    }
+
+    private Void transferEveryRound(final String sender, final String receiver, final int rounds,
+                                    final CyclicBarrier barrier) throws Exception {
+        for (int i = 0; i < rounds; i++) {
+            barrier.await(10, TimeUnit.SECONDS);
+            // A slow check leaves the other transfer time to get past the key
+            Assert.assertTrue(store.transfer(transfer(sender, receiver, 1, "round-" + i),
+                    (senderBalances, receiverBalances) -> pause()).getTransferSuccessful());
+        }
+        return null;
+    }
+
+    private static boolean pause() {
+        try {
+            Thread.sleep(2);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return true;
+    }
+
+    private EmbeddedLedgerStore open() throws IOException {
+        return new EmbeddedLedgerStore(new MappedJournal(directory.resolve("journal"), SEGMENT_BYTES));
+    }
+
+    private void assertBalance(final String accountId, final long expected) {
+        Assert.assertEquals(0, BigDecimal.valueOf(expected).compareTo(balance(accountId)));
+    }
+
+    private BigDecimal balance(final String accountId) {
+        final List<Balance> balances = store.getBalances(accountId);
+        Assert.assertEquals(1, balances.size());
+        return balances.get(0).getCurrencyBalance();
+    }
+
+    /**
+     * A record as the store wrote it before postings had idempotency keys:
+     * an account opened with one balance, or a posting
+     */
+    private static byte[] unkeyedRecord(final int type, final String accountId, final String currency,
+                                        final BigDecimal balance) {
+        final ByteBuffer buffer = ByteBuffer.allocate(256);
+        buffer.put((byte) type);
+        putString(buffer, accountId);
+        buffer.putInt(1);
+        putString(buffer, currency);
+        putDecimal(buffer, balance);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private static byte[] unkeyedRecord(final int type, final long postedAt, final String sender,
+                                        final String receiver, final String currency, final BigDecimal amount,
+                                        final String notes) {
+        final ByteBuffer buffer = ByteBuffer.allocate(256);
+        buffer.put((byte) type);
+        buffer.putLong(postedAt);
+        putString(buffer, sender);
+        putString(buffer, receiver);
+        putString(buffer, currency);
+        putDecimal(buffer, amount);
+        putString(buffer, notes);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private static void putString(final ByteBuffer buffer, final String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static void putDecimal(final ByteBuffer buffer, final BigDecimal value) {
+        final byte[] unscaled = value.unscaledValue().toByteArray();
+        buffer.putInt(value.scale());
+        buffer.putShort((short) unscaled.length);
+        buffer.put(unscaled);
+    }
+
+    private static TransferRequest transfer(final String sender, final String receiver, final double amount,
+                                            final String idempotencyKey) {
+        return TransferRequest.builder()
+                .senderAccountId(sender)
+                .receiverAccountId(receiver)
+                .currency(USD)
+                .amount(amount)
+                .idempotencyKey(idempotencyKey)
+                .build();
+    }
+
+    private static List<Balance> usd(final long amount) {
+        return Collections.singletonList(Balance.builder()
+                .currency(USD)
+                .currencyBalance(Decimal.valueOf(amount))
+                .build());
+    }
+}
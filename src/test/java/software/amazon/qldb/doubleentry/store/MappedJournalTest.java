@@ -0,0 +1,179 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.doubleentry.store;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class MappedJournalTest {
+
+    private static final int SEGMENT_BYTES = 64;
+
+    private Path directory;
+
+    private Path path;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("mapped-journal");
+        path = directory.resolve("journal");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (final Path file : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void replaysRecordsAcrossSegmentsInOrder() throws IOException {
+        try (MappedJournal journal = new MappedJournal(path, SEGMENT_BYTES)) {
+            Assert.assertEquals(0, journal.replay(record -> Assert.fail("A new journal has no records")));
+            // Records of 4 + 20 bytes, so the first segment ends early and the others hold two each
+            for (int i = 0; i < 7; i++) {
+                append(journal, i, 20);
+            }
+        }
+        Assert.assertEquals(4 * SEGMENT_BYTES, Files.size(path));
+
+        try (MappedJournal journal = new MappedJournal(path, SEGMENT_BYTES)) {
+            final List<Integer> read = new ArrayList<>();
+            Assert.assertEquals(7, journal.replay(record -> read.add(check(record, 20))));
+            Assert.assertEquals(7, read.size());
+            for (int i = 0; i < read.size(); i++) {
+                Assert.assertEquals(Integer.valueOf(i), read.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void appendsAfterTheReplayedRecords() throws IOException {
+        try (MappedJournal journal = new MappedJournal(path, SEGMENT_BYTES)) {
+            journal.replay(record -> { });
+            append(journal, 0, 8);
+        }
+        try (MappedJournal journal = new MappedJournal(path, SEGMENT_BYTES)) {
+            journal.replay(record -> { });
+            append(journal, 1, 8);
+            Assert.assertEquals(2, journal.getRecords());
+        }
+
+        try (MappedJournal journal = new MappedJournal(path, SEGMENT_BYTES)) {
+            final List<Integer> read = new ArrayList<>();
+            journal.replay(record -> read.add(check(record, 8)));
+            Assert.assertEquals(2, read.size());
+            Assert.assertEquals(Integer.valueOf(0), read.get(0));
+            Assert.assertEquals(Integer.valueOf(1), read.get(1));
+        }
+    }
+
+    @Test
+    public void keepsTheSegmentSizeItWasCreatedWith() throws IOException {
+        try (MappedJournal journal = new MappedJournal(path, SEGMENT_BYTES)) {
+            journal.replay(record -> { });
+            append(journal, 0, 20);
+            append(journal, 1, 20);
+        }
+        try (MappedJournal journal = new MappedJournal(path, 2 * SEGMENT_BYTES)) {
+            Assert.assertEquals(2, journal.replay(record -> check(record, 20)));
+        }
+    }
+
+    @Test
+    public void discardsARecordWhoseWriterFails() throws IOException {
+        try (MappedJournal journal = new MappedJournal(path, SEGMENT_BYTES)) {
+            journal.replay(record -> { });
+            append(journal, 0, 8);
+            try {
+                journal.append(8, buffer -> {
+                    buffer.putInt(-2);
+                    throw new IllegalArgumentException("Cannot encode the record");
+                });
+                Assert.fail("The failure of the writer has to reach the caller");
+            } catch (final IllegalArgumentException e) {
+                Assert.assertEquals("Cannot encode the record", e.getMessage());
+            }
+            try {
+                journal.append(8, buffer -> buffer.put(new byte[12]));
+                Assert.fail("A record of the wrong length cannot be appended");
+            } catch (final IllegalStateException e) {
+                // Expected
+            }
+            append(journal, 1, 8);
+            Assert.assertEquals(2, journal.getRecords());
+        }
+
+        try (MappedJournal journal = new MappedJournal(path, SEGMENT_BYTES)) {
+            final List<Integer> read = new ArrayList<>();
+            Assert.assertEquals(2, journal.replay(record -> read.add(check(record, 8))));
+            Assert.assertEquals(Integer.valueOf(0), read.get(0));
+            Assert.assertEquals(Integer.valueOf(1), read.get(1));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void refusesToAppendBeforeTheReplay() throws IOException {
+        try (MappedJournal journal = new MappedJournal(path, SEGMENT_BYTES)) {
+            append(journal, 0, 8);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void refusesAFileWhichIsNotAJournal() throws IOException {
+        Files.write(path, new byte[SEGMENT_BYTES]);
+        new MappedJournal(path, SEGMENT_BYTES).close();
+    }
+
+    /**
+     * Append a record of the given length which starts with its number and
+     * is filled with its low byte
+     */
+    private static void append(final MappedJournal journal, final int number, final int length) {
+        journal.append(length, buffer -> {
+            buffer.putInt(number);
+            for (int i = Integer.BYTES; i < length; i++) {
+                buffer.put((byte) number);
+            }
+        });
+    }
+
+    private static int check(final ByteBuffer record, final int length) {
+        Assert.assertEquals(length, record.remaining());
+        final int number = record.getInt();
+        while (record.hasRemaining()) {
+            Assert.assertEquals((byte) number, record.get());
+        }
+        return number;
+    }
+}
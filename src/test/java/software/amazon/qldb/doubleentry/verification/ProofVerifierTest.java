@@ -0,0 +1,70 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.doubleentry.verification;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class ProofVerifierTest {
+
+    private final ProofVerifier verifier = new ProofVerifier(1_000_000);
+
+    @Test
+    public void verifiesSyntheticProofs() {
+        final ProofSet proofSet = SyntheticProofs.generate(256, 42L);
+
+        final VerificationReport first = verifier.verifyRevisionHashes(proofSet);
+        Assert.assertTrue(first.isSuccessful());
+        Assert.assertEquals(256, first.getVerified());
+
+        final VerificationReport second = verifier.verifyRevisionHashes(proofSet);
+        Assert.assertTrue(second.isSuccessful());
+        Assert.assertTrue(second.getCacheHits() > 0);
+    }
+
+    @Test
+    public void rejectsATamperedProof() {
+        final ProofSet proofSet = SyntheticProofs.generate(16, 7L);
+        final RevisionProof proof = proofSet.getProofs().get(3);
+        final List<byte[]> proofHashes = new ArrayList<>(proof.getProofHashes());
+        final byte[] tampered = proofHashes.get(1).clone();
+        tampered[0] ^= 1;
+        proofHashes.set(1, tampered);
+
+        Assert.assertFalse(verifier.verifyRevisionHash(new RevisionProof(proof.getDocumentId(),
+                proof.getBlockAddress(), proof.getRevisionHash(), proofHashes), proofSet.getDigest()));
+    }
+
+    @Test
+    public void rejectsAKnownNodeWhichDoesNotLeadToTheDigest() {
+        final ProofSet proofSet = SyntheticProofs.generate(16, 7L);
+        final RevisionProof proof = proofSet.getProofs().get(0);
+        Assert.assertTrue(verifier.verifyRevisionHash(proof, proofSet.getDigest()));
+
+        // A node on the verified path, followed by a proof which does not belong to it
+        final byte[] node = MerkleHashes.join(proof.getRevisionHash(), proof.getProofHashes().get(0));
+        final RevisionProof forged = new RevisionProof(proof.getDocumentId(), proof.getBlockAddress(), node,
+                Collections.singletonList(MerkleHashes.sha256(new byte[] {1})));
+        Assert.assertFalse(verifier.verifyRevisionHash(forged, proofSet.getDigest()));
+    }
+}